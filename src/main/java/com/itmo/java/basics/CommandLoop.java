@@ -0,0 +1,81 @@
+package com.itmo.java.basics;
+
+import com.itmo.java.basics.config.CommandExecutionMode;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Поток-владелец части таблиц в режиме {@link CommandExecutionMode#PARTITIONED}. Команды ставят в очередь
+ * потоки соединений без блокировок (очередь на CAS), а исполняет их по порядку один поток цикла.
+ * Когда команд нет, поток паркуется, и команда будит его, только если он действительно спит
+ */
+class CommandLoop implements Executor, AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(CommandLoop.class.getName());
+
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private volatile boolean parked;
+    private volatile boolean closed;
+
+    CommandLoop(String name) {
+        thread = new Thread(this::run, name);
+        thread.start();
+    }
+
+    /**
+     * @throws RejectedExecutionException если цикл уже закрыт
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (closed) {
+            throw new RejectedExecutionException(thread.getName() + " is closed");
+        }
+        commands.offer(command);
+        // цикл мог закрыться между проверкой и постановкой в очередь: тогда команду никто не исполнит
+        if (closed && commands.remove(command)) {
+            throw new RejectedExecutionException(thread.getName() + " is closed");
+        }
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Runnable command = commands.poll();
+            if (command == null) {
+                if (closed) {
+                    return;
+                }
+                parked = true;
+                // команда, поставленная до того, как цикл объявил, что спит, будет видна в очереди
+                if (commands.isEmpty() && !closed) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                continue;
+            }
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "command failed in " + thread.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Перестает принимать команды и дожидается, пока поток исполнит уже поставленные в очередь
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        LockSupport.unpark(thread);
+        thread.join();
+    }
+}
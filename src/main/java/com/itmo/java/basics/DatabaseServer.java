@@ -1,9 +1,13 @@
 package com.itmo.java.basics;
 
+import com.itmo.java.basics.config.CommandExecutionMode;
+import com.itmo.java.basics.config.StorageConfig;
 import com.itmo.java.basics.console.*;
 import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.initialization.impl.DatabaseServerInitializer;
 import com.itmo.java.basics.initialization.impl.InitializationContextImpl;
+import com.itmo.java.basics.logic.impl.GroupCommitter;
+import com.itmo.java.basics.logic.impl.StorageContext;
 import com.itmo.java.protocol.model.RespArray;
 import com.itmo.java.protocol.model.RespObject;
 
@@ -13,12 +17,32 @@ import com.itmo.java.basics.console.DatabaseCommandResult;
 import com.itmo.java.basics.console.ExecutionEnvironment;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.logging.Logger;
 
-public class DatabaseServer {
+public class DatabaseServer implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(DatabaseServer.class.getName());
+    /**
+     * Сколько {@link #close()} ждет исполнения уже принятых команд
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 30_000;
 
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    /**
+     * Команды исполняются пулом из {@link StorageConfig#getCommandThreads()} потоков.
+     * Команды разных клиентов идут параллельно, команды одного клиента - по порядку, потому что клиент
+     * дожидается результата команды, прежде чем прислать следующую. Запись в таблицу упорядочивается блокировками
+     * таблицы
+     */
+    private final ExecutorService executorService;
+    /**
+     * Потоки-владельцы таблиц в режиме {@link CommandExecutionMode#PARTITIONED} вместо общего пула
+     */
+    private final CommandLoop[] commandLoops;
 
     /**
      * Конструктор
@@ -39,22 +63,108 @@ public class DatabaseServer {
 
     private DatabaseServer(ExecutionEnvironment env){
         this.env = env;
+        StorageConfig config = env.getStorageContext().getConfig();
+        if (config.getCommandExecution() == CommandExecutionMode.PARTITIONED) {
+            executorService = null;
+            commandLoops = new CommandLoop[config.getCommandThreads()];
+            for (int i = 0; i < commandLoops.length; i++) {
+                commandLoops[i] = new CommandLoop("command-loop-" + (i + 1));
+            }
+            return;
+        }
+        commandLoops = null;
+        AtomicInteger workerNumber = new AtomicInteger();
+        executorService = Executors.newFixedThreadPool(config.getCommandThreads(),
+                runnable -> new Thread(runnable, "command-worker-" + workerNumber.incrementAndGet()));
     }
 
     public CompletableFuture<DatabaseCommandResult> executeNextCommand(RespArray message) {
-        return CompletableFuture.supplyAsync(() -> {
-            List<RespObject> messageObjects = message.getObjects();
-            String currentCommand = messageObjects.get(DatabaseCommandArgPositions.valueOf("COMMAND_NAME")
-                    .getPositionIndex()).asString();
-            return DatabaseCommands.valueOf(currentCommand).getCommand(env, messageObjects).execute();
-        }, executorService);
+        if (commandLoops == null) {
+            return CompletableFuture.supplyAsync(() -> executeDurably(parse(message)), executorService)
+                    .thenCompose(Function.identity());
+        }
+        DatabaseCommand command;
+        try {
+            command = parse(message);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return executeNextCommand(command);
     }
 
     public CompletableFuture<DatabaseCommandResult> executeNextCommand(DatabaseCommand command) {
-        return CompletableFuture.supplyAsync(() -> command.execute(), executorService);
+        return CompletableFuture.supplyAsync(() -> executeDurably(command), executorOf(command))
+                .thenCompose(Function.identity());
+    }
+
+    private DatabaseCommand parse(RespArray message) {
+        List<RespObject> messageObjects = message.getObjects();
+        String currentCommand = messageObjects.get(DatabaseCommandArgPositions.valueOf("COMMAND_NAME")
+                .getPositionIndex()).asString();
+        return DatabaseCommands.valueOf(currentCommand).getCommand(env, messageObjects);
+    }
+
+    /**
+     * В режиме {@link CommandExecutionMode#PARTITIONED} команда уходит владельцу ее таблицы
+     * (см. {@link DatabaseCommand#getPartitionKey()}), поэтому команды одной таблицы не исполняются одновременно
+     */
+    private Executor executorOf(DatabaseCommand command) {
+        if (commandLoops == null) {
+            return executorService;
+        }
+        String partitionKey = command.getPartitionKey();
+        int hash = partitionKey == null ? 0 : partitionKey.hashCode();
+        return commandLoops[Math.floorMod(hash ^ (hash >>> 16), commandLoops.length)];
+    }
+
+    /**
+     * Исполняет команду в потоке исполнителя. Если команда дописала записи, результат завершается только после того,
+     * как групповой коммит сбросит их на диск (см. {@link GroupCommitter#takeAppendedCommit()}). Чтения и команды,
+     * которые ничего не записали, fsync не ждут. Исполнитель не ждет коммита и сразу берет следующую команду,
+     * так что записи нескольких команд попадают в один fsync
+     */
+    private CompletableFuture<DatabaseCommandResult> executeDurably(DatabaseCommand command) {
+        GroupCommitter groupCommitter = env.getStorageContext().getGroupCommitter();
+        DatabaseCommandResult result;
+        CompletableFuture<Void> commit;
+        try {
+            result = command.execute();
+        } finally {
+            commit = groupCommitter.takeAppendedCommit();
+        }
+        if (commit == null) {
+            return CompletableFuture.completedFuture(result);
+        }
+        return commit.handle((ignored, exception) -> exception == null ? result : DatabaseCommandResult.error(
+                new DatabaseException("can't sync written data to disk", exception)));
     }
 
     public ExecutionEnvironment getEnv() {
         return env;
     }
+
+    /**
+     * Останавливает сервер: перестает принимать команды, дожидается уже принятых, затем останавливает фоновые
+     * задачи хранения и групповой коммит (см. {@link StorageContext#close()}). Соединения клиентов
+     * закрываются до этого (см. {@link com.itmo.java.basics.connector.JavaSocketServerConnector#close()})
+     */
+    @Override
+    public void close() {
+        try {
+            if (commandLoops == null) {
+                executorService.shutdown();
+                if (!executorService.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    LOGGER.warning("commands did not finish in " + CLOSE_TIMEOUT_MILLIS + " ms, interrupting");
+                    executorService.shutdownNow();
+                }
+            } else {
+                for (CommandLoop commandLoop : commandLoops) {
+                    commandLoop.close();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        env.getStorageContext().close();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.itmo.java.basics.config;
+
+/**
+ * Как сервер распределяет команды клиентов по потокам
+ */
+public enum CommandExecutionMode {
+    /**
+     * Общий пул: любую команду исполняет любой свободный поток, одновременные команды одной таблицы
+     * упорядочиваются ее блокировками
+     */
+    POOL,
+    /**
+     * У каждой таблицы один поток-владелец: таблицы распределены между потоками по хэшу имени, и все команды
+     * таблицы исполняются ее владельцем по очереди, так что команды за блокировки таблиц не соревнуются
+     */
+    PARTITIONED
+}
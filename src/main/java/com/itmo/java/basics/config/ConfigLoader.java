@@ -2,12 +2,18 @@ package com.itmo.java.basics.config;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
  * Класс, отвечающий за подгрузку данных из конфигурационного файла формата .properties
  */
 public class ConfigLoader {
+    private static final String SEGMENT_MAX_BYTES = "kvs.storage.segment.maxBytes";
+    private static final String TABLE_INDEX_TYPE = "kvs.storage.tableIndex.type";
+    private static final String MEMORY_TABLE_MAX_BYTES = "kvs.storage.memory.maxBytes";
+
     Properties configFileProp = new Properties();
 
     /**
@@ -42,7 +48,9 @@ public class ConfigLoader {
      * Если не удалось считать из заданного файла, или какого-то конкретно значения не оказалось,
      * то используют дефолтные значения из {@link DatabaseConfig} и {@link ServerConfig}
      * <br/>
-     * Читаются: "kvs.workingPath", "kvs.host", "kvs.port" (но в конфигурационном файле допустимы и другие проперти)
+     * Читаются: "kvs.workingPath", "kvs.host", "kvs.port", "kvs.maxConnections" (но в конфигурационном файле допустимы
+     * и другие проперти)
+     * и настройки хранения (см. {@link #readStorageConfig()})
      */
     public DatabaseServerConfig readConfig() {
         String workingPath = configFileProp.getProperty("kvs.workingPath");
@@ -57,11 +65,150 @@ public class ConfigLoader {
         } else {
             port = Integer.parseInt(stringPort);
         }
+        String stringMaxConnections = configFileProp.getProperty("kvs.maxConnections");
+        int maxConnections = stringMaxConnections == null
+                ? ServerConfig.DEFAULT_MAX_CONNECTIONS
+                : Integer.parseInt(stringMaxConnections);
         if (workingPath == null){
             workingPath = DatabaseConfig.DEFAULT_WORKING_PATH;
         }
-        ServerConfig serverConfig = new ServerConfig(host, port);
-        DatabaseConfig databaseConfig = new DatabaseConfig(workingPath);
+        ServerConfig serverConfig = new ServerConfig(host, port, maxConnections);
+        DatabaseConfig databaseConfig = new DatabaseConfig(workingPath, readStorageConfig());
         return new DatabaseServerConfig(serverConfig, databaseConfig);
     }
+
+    /**
+     * Читает "kvs.storage.mmap.enabled", "kvs.storage.mmap.maxBytes", "kvs.storage.durability" (none, group_fsync, fsync),
+     * "kvs.storage.groupCommit.windowMillis", "kvs.storage.groupCommit.maxBytes", "kvs.storage.compaction.enabled",
+     * "kvs.storage.compaction.intervalMillis", "kvs.storage.compaction.minSegments", "kvs.storage.compaction.bytesPerSecond",
+     * "kvs.storage.compaction.sorted", "kvs.storage.verifyChecksums", "kvs.storage.segment.maxBytes", "kvs.storage.segment.maxBytes.<таблица>"
+     * "kvs.storage.bloomFilter.bitsPerKey", "kvs.storage.tableIndex.type" (memory, mapped),
+     * "kvs.storage.tableIndex.type.<таблица>", "kvs.storage.tableIndex.cacheEntries", "kvs.storage.engine" (log, lsm, memory),
+     * "kvs.storage.memory.maxBytes", "kvs.storage.memory.maxBytes.<таблица>", "kvs.storage.recovery.parallelism"
+     * "kvs.storage.checkpoint.intervalMillis", "kvs.storage.table.lazyOpen", "kvs.storage.table.idleUnloadMillis"
+     * "kvs.storage.command.parallelism" и "kvs.storage.command.execution" (pool, partitioned).
+     * Вместо <таблица> указывается "база.таблица" или только имя таблицы - тогда значение действует для таблиц
+     * с этим именем во всех базах.
+     * Отсутствующие значения берутся по умолчанию из {@link StorageConfig}
+     */
+    private StorageConfig readStorageConfig() {
+        StorageConfig.StorageConfigBuilder builder = StorageConfig.builder();
+        String mmapEnabled = configFileProp.getProperty("kvs.storage.mmap.enabled");
+        if (mmapEnabled != null) {
+            builder.mmapEnabled(Boolean.parseBoolean(mmapEnabled));
+        }
+        String mmapMaxBytes = configFileProp.getProperty("kvs.storage.mmap.maxBytes");
+        if (mmapMaxBytes != null) {
+            builder.mmapMaxBytes(Long.parseLong(mmapMaxBytes));
+        }
+        String durability = configFileProp.getProperty("kvs.storage.durability");
+        if (durability != null) {
+            builder.durability(DurabilityMode.valueOf(durability.trim().toUpperCase()));
+        }
+        String groupCommitWindow = configFileProp.getProperty("kvs.storage.groupCommit.windowMillis");
+        if (groupCommitWindow != null) {
+            builder.groupCommitWindowMillis(Long.parseLong(groupCommitWindow));
+        }
+        String groupCommitMaxBytes = configFileProp.getProperty("kvs.storage.groupCommit.maxBytes");
+        if (groupCommitMaxBytes != null) {
+            builder.groupCommitMaxBytes(Long.parseLong(groupCommitMaxBytes));
+        }
+        String compactionEnabled = configFileProp.getProperty("kvs.storage.compaction.enabled");
+        if (compactionEnabled != null) {
+            builder.compactionEnabled(Boolean.parseBoolean(compactionEnabled));
+        }
+        String compactionInterval = configFileProp.getProperty("kvs.storage.compaction.intervalMillis");
+        if (compactionInterval != null) {
+            builder.compactionIntervalMillis(Long.parseLong(compactionInterval));
+        }
+        String compactionMinSegments = configFileProp.getProperty("kvs.storage.compaction.minSegments");
+        if (compactionMinSegments != null) {
+            builder.compactionMinSegments(Integer.parseInt(compactionMinSegments));
+        }
+        String compactionBytesPerSecond = configFileProp.getProperty("kvs.storage.compaction.bytesPerSecond");
+        if (compactionBytesPerSecond != null) {
+            builder.compactionBytesPerSecond(Long.parseLong(compactionBytesPerSecond));
+        }
+        String compactionSorted = configFileProp.getProperty("kvs.storage.compaction.sorted");
+        if (compactionSorted != null) {
+            builder.sortedCompaction(Boolean.parseBoolean(compactionSorted));
+        }
+        String verifyChecksums = configFileProp.getProperty("kvs.storage.verifyChecksums");
+        if (verifyChecksums != null) {
+            builder.verifyChecksums(Boolean.parseBoolean(verifyChecksums));
+        }
+        String segmentMaxBytes = configFileProp.getProperty(SEGMENT_MAX_BYTES);
+        if (segmentMaxBytes != null) {
+            builder.segmentMaxBytes(Long.parseLong(segmentMaxBytes));
+        }
+        Map<String, Long> tableSegmentMaxBytes = new HashMap<>();
+        for (String property : configFileProp.stringPropertyNames()) {
+            if (property.startsWith(SEGMENT_MAX_BYTES + ".")) {
+                tableSegmentMaxBytes.put(property.substring(SEGMENT_MAX_BYTES.length() + 1),
+                        Long.parseLong(configFileProp.getProperty(property)));
+            }
+        }
+        builder.tableSegmentMaxBytes(tableSegmentMaxBytes);
+        String bloomFilterBitsPerKey = configFileProp.getProperty("kvs.storage.bloomFilter.bitsPerKey");
+        if (bloomFilterBitsPerKey != null) {
+            builder.bloomFilterBitsPerKey(Integer.parseInt(bloomFilterBitsPerKey));
+        }
+        String tableIndexType = configFileProp.getProperty(TABLE_INDEX_TYPE);
+        if (tableIndexType != null) {
+            builder.tableIndexType(TableIndexType.valueOf(tableIndexType.trim().toUpperCase()));
+        }
+        Map<String, TableIndexType> tableIndexTypes = new HashMap<>();
+        for (String property : configFileProp.stringPropertyNames()) {
+            if (property.startsWith(TABLE_INDEX_TYPE + ".")) {
+                tableIndexTypes.put(property.substring(TABLE_INDEX_TYPE.length() + 1),
+                        TableIndexType.valueOf(configFileProp.getProperty(property).trim().toUpperCase()));
+            }
+        }
+        builder.tableIndexTypes(tableIndexTypes);
+        String tableIndexCacheEntries = configFileProp.getProperty("kvs.storage.tableIndex.cacheEntries");
+        if (tableIndexCacheEntries != null) {
+            builder.tableIndexCacheEntries(Integer.parseInt(tableIndexCacheEntries));
+        }
+        String storageEngine = configFileProp.getProperty("kvs.storage.engine");
+        if (storageEngine != null) {
+            builder.defaultStorageEngine(storageEngine.trim());
+        }
+        String memoryTableMaxBytes = configFileProp.getProperty(MEMORY_TABLE_MAX_BYTES);
+        if (memoryTableMaxBytes != null) {
+            builder.memoryTableMaxBytes(Long.parseLong(memoryTableMaxBytes));
+        }
+        Map<String, Long> tableMemoryMaxBytes = new HashMap<>();
+        for (String property : configFileProp.stringPropertyNames()) {
+            if (property.startsWith(MEMORY_TABLE_MAX_BYTES + ".")) {
+                tableMemoryMaxBytes.put(property.substring(MEMORY_TABLE_MAX_BYTES.length() + 1),
+                        Long.parseLong(configFileProp.getProperty(property)));
+            }
+        }
+        builder.tableMemoryMaxBytes(tableMemoryMaxBytes);
+        String recoveryParallelism = configFileProp.getProperty("kvs.storage.recovery.parallelism");
+        if (recoveryParallelism != null) {
+            builder.recoveryParallelism(Integer.parseInt(recoveryParallelism));
+        }
+        String checkpointInterval = configFileProp.getProperty("kvs.storage.checkpoint.intervalMillis");
+        if (checkpointInterval != null) {
+            builder.checkpointIntervalMillis(Long.parseLong(checkpointInterval));
+        }
+        String lazyTableOpen = configFileProp.getProperty("kvs.storage.table.lazyOpen");
+        if (lazyTableOpen != null) {
+            builder.lazyTableOpen(Boolean.parseBoolean(lazyTableOpen));
+        }
+        String tableIdleUnload = configFileProp.getProperty("kvs.storage.table.idleUnloadMillis");
+        if (tableIdleUnload != null) {
+            builder.tableIdleUnloadMillis(Long.parseLong(tableIdleUnload));
+        }
+        String commandParallelism = configFileProp.getProperty("kvs.storage.command.parallelism");
+        if (commandParallelism != null) {
+            builder.commandParallelism(Integer.parseInt(commandParallelism));
+        }
+        String commandExecution = configFileProp.getProperty("kvs.storage.command.execution");
+        if (commandExecution != null) {
+            builder.commandExecution(CommandExecutionMode.valueOf(commandExecution.trim().toUpperCase()));
+        }
+        return builder.build();
+    }
 }
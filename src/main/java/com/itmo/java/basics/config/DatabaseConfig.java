@@ -3,12 +3,22 @@ package com.itmo.java.basics.config;
 public class DatabaseConfig {
     public static final String DEFAULT_WORKING_PATH = "db_files";
     private final String finalWorkingPath;
+    private final StorageConfig storageConfig;
 
     public DatabaseConfig(String workingPath) {
+        this(workingPath, StorageConfig.builder().build());
+    }
+
+    public DatabaseConfig(String workingPath, StorageConfig storageConfig) {
         finalWorkingPath = workingPath;
+        this.storageConfig = storageConfig;
     }
 
     public String getWorkingPath() {
         return finalWorkingPath;
     }
+
+    public StorageConfig getStorageConfig() {
+        return storageConfig;
+    }
 }
@@ -0,0 +1,19 @@
+package com.itmo.java.basics.config;
+
+/**
+ * Когда записанные данные сбрасываются на диск
+ */
+public enum DurabilityMode {
+    /**
+     * Никогда: данные попадают в файл сразу, а на диск - когда решит ОС
+     */
+    NONE,
+    /**
+     * Записи нескольких команд собираются в одну запись и один fsync. Команда завершается после fsync
+     */
+    GROUP_FSYNC,
+    /**
+     * fsync после каждой записи
+     */
+    FSYNC
+}
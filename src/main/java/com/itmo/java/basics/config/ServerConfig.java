@@ -4,7 +4,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 
 /**
- * Какой хост и какой порт будет слушать наш сервер
+ * Какой хост и какой порт будет слушать наш сервер и сколько клиентов он обслуживает одновременно
  */
 @Getter
 @AllArgsConstructor
@@ -12,7 +12,17 @@ public class ServerConfig {
 
     public static final String DEFAULT_HOST = "localhost";
     public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_CONNECTIONS = 4096;
 
     private final String host;
     private final int port;
+    /**
+     * Сколько соединений открыто одновременно. Следующие клиенты ждут в очереди подключений ОС,
+     * пока одно из соединений не закроется
+     */
+    private final int maxConnections;
+
+    public ServerConfig(String host, int port) {
+        this(host, port, DEFAULT_MAX_CONNECTIONS);
+    }
 }
@@ -0,0 +1,245 @@
+package com.itmo.java.basics.config;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Map;
+
+/**
+ * Настройки хранения сегментов. Значения по умолчанию соответствуют поведению без конфигурационного файла
+ */
+@ToString
+@Getter
+@Builder
+public class StorageConfig {
+    public static final boolean DEFAULT_MMAP_ENABLED = false;
+    public static final long DEFAULT_MMAP_MAX_BYTES = 256L * 1024 * 1024;
+    public static final DurabilityMode DEFAULT_DURABILITY = DurabilityMode.NONE;
+    public static final long DEFAULT_GROUP_COMMIT_WINDOW_MILLIS = 2;
+    public static final long DEFAULT_GROUP_COMMIT_MAX_BYTES = 1024 * 1024;
+    public static final boolean DEFAULT_COMPACTION_ENABLED = true;
+    public static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = 10_000;
+    public static final int DEFAULT_COMPACTION_MIN_SEGMENTS = 8;
+    public static final long DEFAULT_COMPACTION_BYTES_PER_SECOND = 16L * 1024 * 1024;
+    public static final boolean DEFAULT_SORTED_COMPACTION = false;
+    public static final boolean DEFAULT_VERIFY_CHECKSUMS = true;
+    public static final long DEFAULT_SEGMENT_MAX_BYTES = 100_000;
+    public static final int DEFAULT_BLOOM_FILTER_BITS_PER_KEY = 10;
+    public static final TableIndexType DEFAULT_TABLE_INDEX_TYPE = TableIndexType.MEMORY;
+    public static final int DEFAULT_TABLE_INDEX_CACHE_ENTRIES = 64 * 1024;
+    public static final String DEFAULT_STORAGE_ENGINE = "log";
+    public static final long DEFAULT_MEMORY_TABLE_MAX_BYTES = 0;
+    public static final int DEFAULT_RECOVERY_PARALLELISM = 0;
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 30_000;
+    public static final boolean DEFAULT_LAZY_TABLE_OPEN = false;
+    public static final long DEFAULT_TABLE_IDLE_UNLOAD_MILLIS = 0;
+    public static final int DEFAULT_COMMAND_PARALLELISM = 0;
+    public static final CommandExecutionMode DEFAULT_COMMAND_EXECUTION = CommandExecutionMode.POOL;
+
+    /**
+     * Читать ли read-only сегменты через отображение файла в память
+     */
+    @Builder.Default
+    private final boolean mmapEnabled = DEFAULT_MMAP_ENABLED;
+
+    /**
+     * Сколько байт суммарно может быть отображено в память. Сегменты сверх лимита читаются позиционным чтением
+     */
+    @Builder.Default
+    private final long mmapMaxBytes = DEFAULT_MMAP_MAX_BYTES;
+
+    @Builder.Default
+    private final DurabilityMode durability = DEFAULT_DURABILITY;
+
+    /**
+     * Сколько групповой коммит ждет новых записей после первой несброшенной
+     */
+    @Builder.Default
+    private final long groupCommitWindowMillis = DEFAULT_GROUP_COMMIT_WINDOW_MILLIS;
+
+    /**
+     * Сколько байт может накопиться до группового коммита, не дожидаясь окончания окна
+     */
+    @Builder.Default
+    private final long groupCommitMaxBytes = DEFAULT_GROUP_COMMIT_MAX_BYTES;
+
+    /**
+     * Компактизировать ли неактивные сегменты в фоне
+     */
+    @Builder.Default
+    private final boolean compactionEnabled = DEFAULT_COMPACTION_ENABLED;
+
+    /**
+     * Как часто проверять, не пора ли компактизировать таблицы
+     */
+    @Builder.Default
+    private final long compactionIntervalMillis = DEFAULT_COMPACTION_INTERVAL_MILLIS;
+
+    /**
+     * Сколько новых неактивных сегментов должно накопиться в таблице, чтобы ее компактизировать
+     */
+    @Builder.Default
+    private final int compactionMinSegments = DEFAULT_COMPACTION_MIN_SEGMENTS;
+
+    /**
+     * Ограничение скорости чтения при компактизации, чтобы она не мешала основной нагрузке
+     */
+    @Builder.Default
+    private final long compactionBytesPerSecond = DEFAULT_COMPACTION_BYTES_PER_SECOND;
+
+    /**
+     * Переписывать ли компактизацией неактивные сегменты в один отсортированный по ключу сегмент
+     * с разреженным индексом блоков. Ключи отсортированного сегмента не занимают места в индексе таблицы
+     */
+    @Builder.Default
+    private final boolean sortedCompaction = DEFAULT_SORTED_COMPACTION;
+
+    /**
+     * Проверять ли контрольную сумму записи при каждом чтении значения. При старте и компактизации
+     * записи проверяются всегда
+     */
+    @Builder.Default
+    private final boolean verifyChecksums = DEFAULT_VERIFY_CHECKSUMS;
+
+    /**
+     * Размер, после которого сегмент становится read-only и запись переходит в новый сегмент
+     */
+    @Builder.Default
+    private final long segmentMaxBytes = DEFAULT_SEGMENT_MAX_BYTES;
+
+    /**
+     * Размер сегмента для отдельных таблиц, если он отличается от {@link #segmentMaxBytes}.
+     * Ключ - "база.таблица" или просто имя таблицы, тогда размер действует для таблицы с этим именем во всех базах
+     * (см. {@link #getSegmentMaxBytes(String, String)})
+     */
+    @Builder.Default
+    private final Map<String, Long> tableSegmentMaxBytes = Map.of();
+
+    /**
+     * Сколько бит фильтра Блума read-only сегмента приходится на запись (10 бит - около 1% ложноположительных
+     * ответов). 0 - фильтры не строятся
+     */
+    @Builder.Default
+    private final int bloomFilterBitsPerKey = DEFAULT_BLOOM_FILTER_BITS_PER_KEY;
+
+    /**
+     * Где хранится индекс таблиц
+     */
+    @Builder.Default
+    private final TableIndexType tableIndexType = DEFAULT_TABLE_INDEX_TYPE;
+
+    /**
+     * Тип индекса для отдельных таблиц, если он отличается от {@link #tableIndexType}.
+     * Ключ - "база.таблица" или имя таблицы во всех базах
+     */
+    @Builder.Default
+    private final Map<String, TableIndexType> tableIndexTypes = Map.of();
+
+    /**
+     * Сколько недавно использованных ключей индекс {@link TableIndexType#MAPPED} держит в куче
+     */
+    @Builder.Default
+    private final int tableIndexCacheEntries = DEFAULT_TABLE_INDEX_CACHE_ENTRIES;
+
+    /**
+     * Движок хранения таблиц, для которых движок не указан в CREATE_TABLE
+     * (см. {@link com.itmo.java.basics.engine.StorageEngine})
+     */
+    @Builder.Default
+    private final String defaultStorageEngine = DEFAULT_STORAGE_ENGINE;
+
+    /**
+     * Лимит памяти таблицы движка "memory", после которого записи вытесняются. 0 - без лимита
+     */
+    @Builder.Default
+    private final long memoryTableMaxBytes = DEFAULT_MEMORY_TABLE_MAX_BYTES;
+
+    /**
+     * Лимит памяти для отдельных таблиц, если он отличается от {@link #memoryTableMaxBytes}.
+     * Ключ - "база.таблица" или имя таблицы во всех базах
+     */
+    @Builder.Default
+    private final Map<String, Long> tableMemoryMaxBytes = Map.of();
+
+    /**
+     * Сколько потоков восстанавливают базы и таблицы при старте. 0 - по числу процессоров
+     */
+    @Builder.Default
+    private final int recoveryParallelism = DEFAULT_RECOVERY_PARALLELISM;
+
+    /**
+     * Как часто записывать снимок индекса таблиц, чтобы при старте читать только сегменты, дописанные после него.
+     * 0 - снимки не пишутся
+     */
+    @Builder.Default
+    private final long checkpointIntervalMillis = DEFAULT_CHECKPOINT_INTERVAL_MILLIS;
+
+    /**
+     * Открывать таблицы при первом обращении, а не при старте. При старте тогда читается только список директорий
+     */
+    @Builder.Default
+    private final boolean lazyTableOpen = DEFAULT_LAZY_TABLE_OPEN;
+
+    /**
+     * Через сколько миллисекунд без обращений таблица выгружается из памяти (индекс, кэш, открытые файлы)
+     * и открывается заново при следующем обращении. 0 - таблицы не выгружаются
+     */
+    @Builder.Default
+    private final long tableIdleUnloadMillis = DEFAULT_TABLE_IDLE_UNLOAD_MILLIS;
+
+    /**
+     * Сколько потоков исполняют команды клиентов. 0 - по числу процессоров
+     */
+    @Builder.Default
+    private final int commandParallelism = DEFAULT_COMMAND_PARALLELISM;
+
+    /**
+     * Как команды распределяются по этим потокам
+     */
+    @Builder.Default
+    private final CommandExecutionMode commandExecution = DEFAULT_COMMAND_EXECUTION;
+
+    /**
+     * @return размер сегмента указанной таблицы
+     */
+    public long getSegmentMaxBytes(String dbName, String tableName) {
+        return tableSetting(tableSegmentMaxBytes, dbName, tableName, segmentMaxBytes);
+    }
+
+    /**
+     * @return сколько потоков восстанавливают базы и таблицы при старте
+     */
+    public int getRecoveryThreads() {
+        return recoveryParallelism > 0 ? recoveryParallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return сколько потоков исполняют команды клиентов
+     */
+    public int getCommandThreads() {
+        return commandParallelism > 0 ? commandParallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return лимит памяти указанной таблицы движка "memory", 0 - без лимита
+     */
+    public long getMemoryTableMaxBytes(String dbName, String tableName) {
+        return tableSetting(tableMemoryMaxBytes, dbName, tableName, memoryTableMaxBytes);
+    }
+
+    /**
+     * @return тип индекса указанной таблицы
+     */
+    public TableIndexType getTableIndexType(String dbName, String tableName) {
+        return tableSetting(tableIndexTypes, dbName, tableName, tableIndexType);
+    }
+
+    /**
+     * Настройка таблицы ищется сначала по "база.таблица", затем по имени таблицы
+     */
+    private static <T> T tableSetting(Map<String, T> settings, String dbName, String tableName, T defaultValue) {
+        T value = settings.get(dbName + "." + tableName);
+        return value != null ? value : settings.getOrDefault(tableName, defaultValue);
+    }
+}
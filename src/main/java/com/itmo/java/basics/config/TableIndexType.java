@@ -0,0 +1,15 @@
+package com.itmo.java.basics.config;
+
+/**
+ * Где хранится индекс таблицы
+ */
+public enum TableIndexType {
+    /**
+     * В куче: самый быстрый, но все ключи таблицы должны помещаться в память
+     */
+    MEMORY,
+    /**
+     * В файлах, отображенных в память, с небольшим кэшем в куче. Для таблиц, ключи которых не помещаются в кучу
+     */
+    MAPPED
+}
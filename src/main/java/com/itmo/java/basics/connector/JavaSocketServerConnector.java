@@ -8,64 +8,156 @@ import com.itmo.java.basics.resp.CommandReader;
 import com.itmo.java.protocol.RespReader;
 import com.itmo.java.protocol.RespWriter;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 
 /**
  * Класс, который предоставляет доступ к серверу через сокеты
  */
 public class JavaSocketServerConnector implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(JavaSocketServerConnector.class.getName());
+    /**
+     * Потоки соединений почти все время ждут чтения из сокета, поэтому им хватает небольшого стека
+     */
+    private static final long CLIENT_THREAD_STACK_BYTES = 256 * 1024;
+    /**
+     * Очередь подключений ОС, которые еще не приняты. При очереди по умолчанию (50) волна подключений
+     * переполняет ее, пока поток приема создает потоки соединений, и лишние клиенты повторяют подключение
+     * только через секунду. ОС ограничивает очередь своим пределом (somaxconn)
+     */
+    private static final int ACCEPT_BACKLOG = 1024;
 
     /**
-     * Экзекьютор для выполнения ClientTask
+     * Экзекьютор для выполнения ClientTask: у каждого соединения свой поток, поэтому медленный клиент
+     * (долго присылает команду или долго читает ответ) не задерживает остальных. Число потоков ограничено
+     * {@link #connectionSlots}
      */
-    private final ExecutorService clientIOWorkers = Executors.newSingleThreadExecutor();
+    private final ExecutorService clientIOWorkers;
     private final ExecutorService connectionAcceptorExecutor = Executors.newSingleThreadExecutor();
     private final DatabaseServer databaseServer;
     private final ServerSocket serverSocket;
+    /**
+     * Свободные места под соединения ({@link ServerConfig#getMaxConnections()}). Пока мест нет, новые соединения
+     * не принимаются и ждут в очереди подключений ОС
+     */
+    private final Semaphore connectionSlots;
+    private final Set<ClientTask> clientTasks = ConcurrentHashMap.newKeySet();
 
     /**
      * Стартует сервер. По аналогии с сокетом открывает коннекшн в конструкторе.
      */
     public JavaSocketServerConnector(DatabaseServer databaseServer, ServerConfig config) throws IOException {
         this.databaseServer = databaseServer;
-        serverSocket = new ServerSocket(config.getPort());
+        serverSocket = new ServerSocket(config.getPort(), ACCEPT_BACKLOG);
+        connectionSlots = new Semaphore(config.getMaxConnections());
+        AtomicInteger clientNumber = new AtomicInteger();
+        clientIOWorkers = Executors.newCachedThreadPool(runnable -> new Thread(null, runnable,
+                "client-io-" + clientNumber.incrementAndGet(), CLIENT_THREAD_STACK_BYTES));
     }
  
      /**
      * Начинает слушать заданный порт, начинает аксептить клиентские сокеты. На каждый из них начинает клиентскую таску
      */
     public void start() {
-        connectionAcceptorExecutor.submit(() -> {
+        connectionAcceptorExecutor.submit(this::acceptClients);
+    }
+
+    /**
+     * Принимает соединения, пока сокет сервера не закрыт. Соединение занимает место до отключения клиента
+     */
+    private void acceptClients() {
+        while (!serverSocket.isClosed()) {
             try {
-                Socket clientSocket = serverSocket.accept();
-                clientIOWorkers.submit(() -> {
-                    ClientTask clientTask = new ClientTask(clientSocket, databaseServer);
-                    clientTask.run();
-                });
+                connectionSlots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            Socket clientSocket;
+            try {
+                clientSocket = serverSocket.accept();
             } catch (IOException e) {
-                throw new UncheckedIOException("exception in accepting new client socket", e);
+                connectionSlots.release();
+                if (!serverSocket.isClosed()) {
+                    LOGGER.log(Level.WARNING, "exception in accepting new client socket", e);
+                }
+                continue;
             }
-        });
+            try {
+                serve(clientSocket);
+            } catch (IOException | UncheckedIOException e) {
+                connectionSlots.release();
+                LOGGER.log(Level.WARNING, "can't serve client " + clientSocket.getRemoteSocketAddress(), e);
+                closeQuietly(clientSocket);
+            }
+        }
+    }
+
+    private void serve(Socket clientSocket) throws IOException {
+        // ответ на команду короткий, и клиент ждет его, прежде чем прислать следующую: без TCP_NODELAY
+        // ответ задерживался бы алгоритмом Нейгла до подтверждения предыдущего пакета
+        clientSocket.setTcpNoDelay(true);
+        ClientTask clientTask = new ClientTask(clientSocket, databaseServer);
+        clientTasks.add(clientTask);
+        try {
+            clientIOWorkers.submit(() -> {
+                try {
+                    clientTask.run();
+                } finally {
+                    clientTasks.remove(clientTask);
+                    connectionSlots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // коннектор закрывается: соединение принято, но обслуживать его уже некому
+            clientTasks.remove(clientTask);
+            connectionSlots.release();
+            clientTask.closeQuietly();
+            return;
+        }
+        // close() мог закрыть сокет сервера и обойти clientTasks до того, как сюда добавилось это соединение
+        if (serverSocket.isClosed()) {
+            clientTask.closeQuietly();
+        }
+    }
 
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "can't close client socket", e);
+        }
     }
 
     /**
      * Закрывает все, что нужно ¯\_(ツ)_/¯
+     * Сокеты клиентов закрываются явно: поток, ждущий чтения из сокета, на прерывание не реагирует
      */
     @Override
     public void close() {
         System.out.println("Stopping socket connector");
         try {
-            clientIOWorkers.shutdownNow();
             connectionAcceptorExecutor.shutdownNow();
             serverSocket.close();
+            for (ClientTask clientTask : clientTasks) {
+                clientTask.closeQuietly();
+            }
+            clientIOWorkers.shutdownNow();
         } catch (IOException e) {
             throw new UncheckedIOException("exception in closing server socket", e);
         }
@@ -84,6 +176,10 @@ public class JavaSocketServerConnector implements Closeable {
         private final DatabaseServer server;
         private final RespReader reader;
         private final RespWriter writer;
+        /**
+         * Ответ собирается в буфере и уходит в сокет одной записью
+         */
+        private final BufferedOutputStream output;
         /**
          * @param client клиентский сокет
          * @param server сервер, на котором исполняется задача
@@ -92,8 +188,10 @@ public class JavaSocketServerConnector implements Closeable {
             this.clientSocket = client;
             this.server = server;
             try {
-                reader = new RespReader(client.getInputStream());
-                writer = new RespWriter(client.getOutputStream());
+                // RespReader читает по байту, без буфера каждый байт команды был бы отдельным системным вызовом
+                reader = new RespReader(new BufferedInputStream(client.getInputStream()));
+                output = new BufferedOutputStream(client.getOutputStream());
+                writer = new RespWriter(output);
             } catch (IOException e) {
                 throw new UncheckedIOException("IOException in constructor of ClientTask", e);
             }
@@ -109,15 +207,22 @@ public class JavaSocketServerConnector implements Closeable {
         @Override
         public void run() {
             try(CommandReader commandReader = new CommandReader(reader, server.getEnv())) {
-                while (commandReader.hasNextCommand()) {
+                while (!Thread.currentThread().isInterrupted() && commandReader.hasNextCommand()) {
                     DatabaseCommand command = commandReader.readCommand();
                     DatabaseCommandResult databaseCommandResult = server.executeNextCommand(command).get();
                     writer.write(databaseCommandResult.serialize());
+                    output.flush();
                 }
+            } catch (IOException e) {
+                // клиент отключился или соединение закрыто при остановке сервера
+                LOGGER.log(Level.FINE, "client " + clientSocket.getRemoteSocketAddress() + " disconnected", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             } catch (Exception e) {
-                throw new UncheckedIOException("exception in run", (IOException) e);
+                LOGGER.log(Level.WARNING, "exception in serving client " + clientSocket.getRemoteSocketAddress(), e);
+            } finally {
+                closeQuietly();
             }
-            close();
         }
 
         /**
@@ -133,5 +238,13 @@ public class JavaSocketServerConnector implements Closeable {
                 throw new UncheckedIOException("exception in closing client socket command", e);
             }
         }
+
+        void closeQuietly() {
+            try {
+                close();
+            } catch (UncheckedIOException e) {
+                LOGGER.log(Level.FINE, "can't close client socket", e);
+            }
+        }
     }
 }
@@ -7,4 +7,15 @@ public interface DatabaseCommand {
      * @return Сообщение о выполнении результата команды.
      */
     DatabaseCommandResult execute();
+
+    /**
+     * В режиме {@link com.itmo.java.basics.config.CommandExecutionMode#PARTITIONED} команды с одинаковым ключом
+     * исполняет один и тот же поток по порядку поступления.
+     *
+     * @return путь таблицы ("база/таблица") или имя базы данных, с которыми работает команда,
+     * {@code null} - если команда ни к чему не привязана
+     */
+    default String getPartitionKey() {
+        return null;
+    }
 }
@@ -10,6 +10,7 @@ public enum DatabaseCommandArgPositions {
     DATABASE_NAME(2),
     TABLE_NAME(3),
     KEY(4),
+    STORAGE_ENGINE(4),
     VALUE(5);
 
     private final int positionIndex;
@@ -22,7 +22,7 @@ public enum DatabaseCommands {
         public DatabaseCommand getCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
             DatabaseFactory factory = (dbName, dbRoot) -> {
                 try {
-                    return DatabaseImpl.create(dbName, dbRoot);
+                    return DatabaseImpl.create(dbName, dbRoot, env.getStorageContext());
                 } catch (DatabaseException dex) {
                     throw new DatabaseException("Exception with creating Database: " + dbName, dex);
                 }
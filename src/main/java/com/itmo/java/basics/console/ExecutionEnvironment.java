@@ -1,6 +1,7 @@
 package com.itmo.java.basics.console;
 
 import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.impl.StorageContext;
 
 import java.nio.file.Path;
 import java.util.Optional;
@@ -25,4 +26,11 @@ public interface ExecutionEnvironment {
      * @param db база данных, которую нужно добавить
      */
     void addDatabase(Database db);
+
+    /**
+     * @return общие настройки и ресурсы хранения, с которыми создаются базы, таблицы и сегменты
+     */
+    default StorageContext getStorageContext() {
+        return StorageContext.DEFAULT;
+    }
 }
@@ -54,4 +54,9 @@ public class CreateDatabaseCommand implements DatabaseCommand {
         }
         return DatabaseCommandResult.success(("Database " + dbName + " created").getBytes(StandardCharsets.UTF_8));
     }
+
+    @Override
+    public String getPartitionKey() {
+        return dbName;
+    }
 }
@@ -23,20 +23,26 @@ public class CreateTableCommand implements DatabaseCommand {
      *
      * @param env         env
      * @param commandArgs аргументы для создания (порядок - {@link DatabaseCommandArgPositions}.
-     *                    Id команды, имя команды, имя бд, имя таблицы
+     *                    Id команды, имя команды, имя бд, имя таблицы и, необязательно, имя движка хранения
+     *                    ({@link com.itmo.java.basics.engine.StorageEngine}, по умолчанию - движок из настроек)
      * @throws IllegalArgumentException если передано неправильное количество аргументов
      */
     private final ExecutionEnvironment env;
     private final String dbName;
     private final String tableName;
+    private final String engineName;
     private final int numberOfArguments = 4;
+    private final int numberOfArgumentsWithType = 5;
     public CreateTableCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
-        if (commandArgs.size() != numberOfArguments)
+        if (commandArgs.size() != numberOfArguments && commandArgs.size() != numberOfArgumentsWithType)
             throw new IllegalArgumentException("not correct number of arguments, should be: "
-                    + numberOfArguments + " but we have: " + commandArgs.size());
+                    + numberOfArguments + " or " + numberOfArgumentsWithType + " but we have: " + commandArgs.size());
         this.env = env;
         dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
         tableName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
+        engineName = commandArgs.size() == numberOfArgumentsWithType
+                ? commandArgs.get(DatabaseCommandArgPositions.STORAGE_ENGINE.getPositionIndex()).asString()
+                : null;
     }
 
     /**
@@ -49,10 +55,19 @@ public class CreateTableCommand implements DatabaseCommand {
         try {
             if (env.getDatabase(dbName).isEmpty())
                 return DatabaseCommandResult.error("no this database " + dbName);
-            env.getDatabase(dbName).get().createTableIfNotExists(tableName);
+            if (engineName == null) {
+                env.getDatabase(dbName).get().createTableIfNotExists(tableName);
+            } else {
+                env.getDatabase(dbName).get().createTableIfNotExists(tableName, engineName);
+            }
         } catch (DatabaseException e) {
             return DatabaseCommandResult.error(e);
         }
         return DatabaseCommandResult.success(("Table " + tableName + " in database " + dbName + " is created").getBytes(StandardCharsets.UTF_8));
     }
+
+    @Override
+    public String getPartitionKey() {
+        return dbName + "/" + tableName;
+    }
 }
@@ -3,28 +3,31 @@ package com.itmo.java.basics.console.impl;
 import com.itmo.java.basics.config.DatabaseConfig;
 import com.itmo.java.basics.console.ExecutionEnvironment;
 import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.impl.StorageContext;
 
 import java.nio.file.Path;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ExecutionEnvironmentImpl implements ExecutionEnvironment {
     private final String workingPath;
-    private Map<String, Database> mapOfDatabases = new HashMap<>();
+    private final Map<String, Database> mapOfDatabases = new ConcurrentHashMap<>();
+    private final StorageContext storageContext;
 
     public ExecutionEnvironmentImpl(DatabaseConfig config) {
         workingPath = config.getWorkingPath();
+        storageContext = new StorageContext(config.getStorageConfig());
     }
 
     @Override
     public Optional<Database> getDatabase(String name) {
-        if (mapOfDatabases.containsKey(name)){
-            return Optional.of(mapOfDatabases.get(name));
-        }
-        return Optional.empty();
+        return name == null ? Optional.empty() : Optional.ofNullable(mapOfDatabases.get(name));
     }
 
+    /**
+     * Базы восстанавливаются, а команды исполняются параллельно, поэтому базы хранятся в {@link ConcurrentHashMap}
+     */
     @Override
     public void addDatabase(Database db) {
         mapOfDatabases.put(db.getName(), db);
@@ -34,4 +37,9 @@ public class ExecutionEnvironmentImpl implements ExecutionEnvironment {
     public Path getWorkingPath() {
         return Path.of(workingPath);
     }
+
+    @Override
+    public StorageContext getStorageContext() {
+        return storageContext;
+    }
 }
@@ -7,7 +7,6 @@ import com.itmo.java.basics.console.ExecutionEnvironment;
 import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.protocol.model.RespObject;
 
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,7 +28,7 @@ public class GetKeyCommand implements DatabaseCommand {
     private final ExecutionEnvironment env;
     private final String dbName;
     private final String tableName;
-    private final String key;
+    private final byte[] key;
     private final int numberOfArguments = 5;
     public GetKeyCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
         if (commandArgs.size() != numberOfArguments)
@@ -38,7 +37,7 @@ public class GetKeyCommand implements DatabaseCommand {
         this.env = env;
         dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
         tableName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
-        key = commandArgs.get(DatabaseCommandArgPositions.KEY.getPositionIndex()).asString();
+        key = commandArgs.get(DatabaseCommandArgPositions.KEY.getPositionIndex()).asBytes();
     }
 
     /**
@@ -59,6 +58,11 @@ public class GetKeyCommand implements DatabaseCommand {
         if (previous.isEmpty()){
             return DatabaseCommandResult.success(null);
         }
-        return DatabaseCommandResult.success((new String(previous.get())).getBytes(StandardCharsets.UTF_8));
+        return DatabaseCommandResult.success(previous.get());
+    }
+
+    @Override
+    public String getPartitionKey() {
+        return dbName + "/" + tableName;
     }
 }
@@ -16,6 +16,7 @@ import java.util.Optional;
  * Команда для создания записи значения
  */
 public class SetKeyCommand implements DatabaseCommand {
+    private static final byte[] PREVIOUS_VALUE_PREFIX = "set previous value was ".getBytes(StandardCharsets.UTF_8);
 
     /**
      * Создает команду.
@@ -30,8 +31,8 @@ public class SetKeyCommand implements DatabaseCommand {
     private final ExecutionEnvironment env;
     private final String dbName;
     private final String tableName;
-    private final String key;
-    private final String value;
+    private final byte[] key;
+    private final byte[] value;
     private final int numberOfArguments = 6;
     public SetKeyCommand(ExecutionEnvironment env, List<RespObject> commandArgs) {
         if (commandArgs.size() != numberOfArguments)
@@ -40,8 +41,8 @@ public class SetKeyCommand implements DatabaseCommand {
         this.env = env;
         dbName = commandArgs.get(DatabaseCommandArgPositions.DATABASE_NAME.getPositionIndex()).asString();
         tableName = commandArgs.get(DatabaseCommandArgPositions.TABLE_NAME.getPositionIndex()).asString();
-        key = commandArgs.get(DatabaseCommandArgPositions.KEY.getPositionIndex()).asString();
-        value = commandArgs.get(DatabaseCommandArgPositions.VALUE.getPositionIndex()).asString();
+        key = commandArgs.get(DatabaseCommandArgPositions.KEY.getPositionIndex()).asBytes();
+        value = commandArgs.get(DatabaseCommandArgPositions.VALUE.getPositionIndex()).asBytes();
     }
 
     /**
@@ -56,14 +57,21 @@ public class SetKeyCommand implements DatabaseCommand {
             if (env.getDatabase(dbName).isEmpty())
                 return DatabaseCommandResult.error("no this database " + dbName);
             previous = env.getDatabase(dbName).get().read(tableName, key);
-            env.getDatabase(dbName).get().write(tableName, key, value.getBytes(StandardCharsets.UTF_8));
+            env.getDatabase(dbName).get().write(tableName, key, value);
         } catch (DatabaseException e) {
             return DatabaseCommandResult.error(e);
         }
         if (previous.isEmpty()){
             return DatabaseCommandResult.success(null);
         }
-        return DatabaseCommandResult.success(("set previous value was " + new String(previous.get())).getBytes(StandardCharsets.UTF_8));
+        byte[] answer = Arrays.copyOf(PREVIOUS_VALUE_PREFIX, PREVIOUS_VALUE_PREFIX.length + previous.get().length);
+        System.arraycopy(previous.get(), 0, answer, PREVIOUS_VALUE_PREFIX.length, previous.get().length);
+        return DatabaseCommandResult.success(answer);
 
     }
+
+    @Override
+    public String getPartitionKey() {
+        return dbName + "/" + tableName;
+    }
 }
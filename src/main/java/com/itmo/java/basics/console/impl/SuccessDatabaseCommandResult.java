@@ -4,6 +4,8 @@ import com.itmo.java.basics.console.DatabaseCommandResult;
 import com.itmo.java.protocol.model.RespBulkString;
 import com.itmo.java.protocol.model.RespObject;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Результат успешной команды
  */
@@ -22,7 +24,7 @@ public class SuccessDatabaseCommandResult implements DatabaseCommandResult {
     public String getPayLoad() {
         if (payload == null)
             return null;
-        return new String(payload);
+        return new String(payload, StandardCharsets.UTF_8);
     }
 
     @Override
@@ -0,0 +1,42 @@
+package com.itmo.java.basics.engine;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.initialization.Initializer;
+import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.impl.StorageContext;
+
+import java.nio.file.Path;
+
+/**
+ * Движок хранения - способ, которым таблица хранит данные. Движок выбирается при создании таблицы
+ * (команда CREATE_TABLE), его имя сохраняется в метаданных таблицы ({@link com.itmo.java.basics.engine.impl.TableMetadata})
+ * и при старте по нему выбирается цепочка инициализации. Движки регистрируются в
+ * {@link com.itmo.java.basics.engine.impl.StorageEngineRegistry}
+ */
+public interface StorageEngine {
+    /**
+     * Возвращает имя движка. Имя сохраняется в метаданных таблиц, поэтому не должно меняться.
+     *
+     * @return имя движка в нижнем регистре
+     */
+    String getName();
+
+    /**
+     * Создает новую таблицу: директорию таблицы и все, что нужно движку для ее открытия.
+     *
+     * @param tableName    имя таблицы
+     * @param databasePath директория базы данных
+     * @return созданная таблица
+     * @throws DatabaseException если таблица уже существует или если произошла ошибка ввода-вывода
+     */
+    Table createTable(String tableName, Path databasePath, StorageContext storageContext) throws DatabaseException;
+
+    /**
+     * Возвращает цепочку инициализации существующей таблицы. Она получает контекст с заполненным
+     * {@link com.itmo.java.basics.initialization.InitializationContext#currentTableContext()} и должна добавить
+     * открытую таблицу в {@link com.itmo.java.basics.initialization.DatabaseInitializationContext#addTable(Table)}
+     *
+     * @return инициализатор таблицы
+     */
+    Initializer getTableInitializer();
+}
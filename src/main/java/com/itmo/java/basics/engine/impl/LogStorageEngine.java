@@ -0,0 +1,40 @@
+package com.itmo.java.basics.engine.impl;
+
+import com.itmo.java.basics.engine.StorageEngine;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.initialization.Initializer;
+import com.itmo.java.basics.initialization.impl.SegmentInitializer;
+import com.itmo.java.basics.initialization.impl.TableInitializer;
+import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.impl.StorageContext;
+import com.itmo.java.basics.logic.impl.TableImpl;
+
+import java.nio.file.Path;
+
+/**
+ * Журнал сегментов с индексом всех ключей таблицы ({@link TableImpl}): чтение любого ключа - одно обращение
+ * к диску, но индекс растет вместе с количеством ключей
+ */
+public class LogStorageEngine implements StorageEngine {
+    public static final String NAME = "log";
+
+    private final Initializer tableInitializer = new TableInitializer(new SegmentInitializer());
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Table createTable(String tableName, Path databasePath, StorageContext storageContext)
+            throws DatabaseException {
+        return TableImpl.create(tableName, databasePath,
+                storageContext.newTableIndex(databasePath.getFileName().toString(), tableName,
+                        databasePath.resolve(tableName)), storageContext);
+    }
+
+    @Override
+    public Initializer getTableInitializer() {
+        return tableInitializer;
+    }
+}
@@ -0,0 +1,37 @@
+package com.itmo.java.basics.engine.impl;
+
+import com.itmo.java.basics.engine.StorageEngine;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.initialization.Initializer;
+import com.itmo.java.basics.initialization.impl.LsmTableInitializer;
+import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.impl.LsmTable;
+import com.itmo.java.basics.logic.impl.StorageContext;
+
+import java.nio.file.Path;
+
+/**
+ * LSM-дерево ({@link LsmTable}): память не зависит от количества ключей, запись только последовательная.
+ * Для таблиц с интенсивной записью и очень большим количеством ключей
+ */
+public class LsmStorageEngine implements StorageEngine {
+    public static final String NAME = "lsm";
+
+    private final Initializer tableInitializer = new LsmTableInitializer();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Table createTable(String tableName, Path databasePath, StorageContext storageContext)
+            throws DatabaseException {
+        return LsmTable.create(tableName, databasePath, storageContext);
+    }
+
+    @Override
+    public Initializer getTableInitializer() {
+        return tableInitializer;
+    }
+}
@@ -0,0 +1,37 @@
+package com.itmo.java.basics.engine.impl;
+
+import com.itmo.java.basics.engine.StorageEngine;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.initialization.Initializer;
+import com.itmo.java.basics.initialization.impl.MemoryTableInitializer;
+import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.impl.MemoryTable;
+import com.itmo.java.basics.logic.impl.StorageContext;
+
+import java.nio.file.Path;
+
+/**
+ * Таблицы только в памяти ({@link MemoryTable}) с необязательным лимитом памяти и вытеснением.
+ * Данные не переживают перезапуск сервера, сохраняется только сама таблица
+ */
+public class MemoryStorageEngine implements StorageEngine {
+    public static final String NAME = "memory";
+
+    private final Initializer tableInitializer = new MemoryTableInitializer();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public Table createTable(String tableName, Path databasePath, StorageContext storageContext)
+            throws DatabaseException {
+        return MemoryTable.create(tableName, databasePath, storageContext);
+    }
+
+    @Override
+    public Initializer getTableInitializer() {
+        return tableInitializer;
+    }
+}
@@ -0,0 +1,64 @@
+package com.itmo.java.basics.engine.impl;
+
+import com.itmo.java.basics.engine.StorageEngine;
+import com.itmo.java.basics.exceptions.DatabaseException;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Движки хранения сервера по имени. Встроенные движки зарегистрированы сразу, остальные добавляются
+ * через {@link #register(StorageEngine)} до инициализации баз данных, иначе их таблицы не откроются
+ */
+public class StorageEngineRegistry {
+    private final Map<String, StorageEngine> engines = new ConcurrentHashMap<>();
+    private final String defaultEngineName;
+
+    /**
+     * @param defaultEngineName движок таблиц, для которых движок не указан при создании
+     */
+    public StorageEngineRegistry(String defaultEngineName) {
+        this.defaultEngineName = normalize(defaultEngineName);
+        register(new LogStorageEngine());
+        register(new LsmStorageEngine());
+        register(new MemoryStorageEngine());
+    }
+
+    /**
+     * @throws IllegalArgumentException если движок с таким именем уже зарегистрирован
+     */
+    public void register(StorageEngine engine) {
+        if (engines.putIfAbsent(normalize(engine.getName()), engine) != null) {
+            throw new IllegalArgumentException("storage engine " + engine.getName() + " is already registered");
+        }
+    }
+
+    /**
+     * @param engineName имя движка без учета регистра
+     * @throws DatabaseException если движок не зарегистрирован
+     */
+    public StorageEngine get(String engineName) throws DatabaseException {
+        StorageEngine engine = engines.get(normalize(engineName));
+        if (engine == null) {
+            throw new DatabaseException("unknown storage engine " + engineName + ", known engines: " + engines.keySet());
+        }
+        return engine;
+    }
+
+    /**
+     * @throws DatabaseException если движок по умолчанию не зарегистрирован
+     */
+    public StorageEngine getDefault() throws DatabaseException {
+        return get(defaultEngineName);
+    }
+
+    public Set<String> getEngineNames() {
+        return engines.keySet();
+    }
+
+    private static String normalize(String engineName) {
+        return engineName.trim().toLowerCase(Locale.ROOT);
+    }
+}
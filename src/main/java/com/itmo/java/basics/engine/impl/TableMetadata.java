@@ -0,0 +1,74 @@
+package com.itmo.java.basics.engine.impl;
+
+import com.itmo.java.basics.exceptions.CorruptedRecordException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Метаданные таблицы - файл {@link #FILE_NAME} в директории таблицы в формате {@link Properties}.
+ * Пока хранит только имя движка хранения ("engine"). У таблиц, созданных до появления метаданных, файла нет
+ */
+public class TableMetadata {
+    public static final String FILE_NAME = "table.properties";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String ENGINE = "engine";
+
+    private TableMetadata() {
+    }
+
+    public static boolean isMetadataFile(String fileName) {
+        return fileName.equals(FILE_NAME) || fileName.equals(FILE_NAME + TEMP_SUFFIX);
+    }
+
+    /**
+     * @return имя движка таблицы или пустой {@link Optional}, если у таблицы нет метаданных
+     * @throws CorruptedRecordException если в метаданных нет движка
+     * @throws IOException              если произошла ошибка ввода-вывода
+     */
+    public static Optional<String> readEngineName(Path tablePath) throws IOException {
+        Path metadataPath = tablePath.resolve(FILE_NAME);
+        if (!Files.isRegularFile(metadataPath)) {
+            return Optional.empty();
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(metadataPath, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        String engineName = properties.getProperty(ENGINE);
+        if (engineName == null) {
+            throw new CorruptedRecordException("no storage engine in " + metadataPath);
+        }
+        return Optional.of(engineName);
+    }
+
+    /**
+     * Записывает метаданные во временный файл, сбрасывает на диск и атомарно переименовывает
+     *
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    public static void write(Path tablePath, String engineName) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(ENGINE, engineName);
+        Path tempPath = tablePath.resolve(FILE_NAME + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8);
+            properties.store(writer, null);
+            writer.flush();
+            channel.force(true);
+        }
+        Files.move(tempPath, tablePath.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
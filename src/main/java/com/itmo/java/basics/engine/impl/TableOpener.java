@@ -0,0 +1,106 @@
+package com.itmo.java.basics.engine.impl;
+
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.engine.StorageEngine;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.initialization.impl.DatabaseInitializationContextImpl;
+import com.itmo.java.basics.initialization.impl.InitializationContextImpl;
+import com.itmo.java.basics.initialization.impl.TableInitializationContextImpl;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.impl.LsmTable;
+import com.itmo.java.basics.logic.impl.StorageContext;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Открытие существующей таблицы цепочкой инициализации ее движка ({@link StorageEngine#getTableInitializer()}).
+ * Используется при старте и при открытии таблицы по первому обращению
+ * ({@link com.itmo.java.basics.logic.impl.LazyTable})
+ */
+public class TableOpener {
+    private static final Logger LOGGER = Logger.getLogger(TableOpener.class.getName());
+
+    private TableOpener() {
+    }
+
+    /**
+     * @param dbName       имя базы данных
+     * @param databasePath директория базы данных
+     * @param tableName    имя таблицы
+     * @return открытая таблица
+     * @throws DatabaseException если у таблицы неизвестный движок или ее не удалось открыть
+     */
+    public static Table open(String dbName, Path databasePath, String tableName, StorageContext storageContext)
+            throws DatabaseException {
+        long startNanos = System.nanoTime();
+        Path tablePath = databasePath.resolve(tableName);
+        StorageEngine engine = storageContext.getStorageEngines().get(engineNameOf(tablePath));
+        DatabaseInitializationContextImpl dbContext = new DatabaseInitializationContextImpl(dbName,
+                databasePath.getParent());
+        TableInitializationContextImpl tableContext = new TableInitializationContextImpl(tableName, databasePath,
+                () -> storageContext.newTableIndex(dbName, tableName, tablePath));
+        try {
+            engine.getTableInitializer().perform(new InitializationContextImpl(new StorageEnvironment(storageContext,
+                    databasePath.getParent()), dbContext, tableContext, null));
+        } catch (DatabaseException dex) {
+            throw new DatabaseException("can't open table " + dbName + "." + tableName, dex);
+        }
+        Table table = dbContext.getTables().get(tableName);
+        if (table == null) {
+            throw new DatabaseException("engine " + engine.getName() + " didn't open table " + dbName + "." + tableName);
+        }
+        LOGGER.info(() -> String.format("opened table %s.%s (%s, %d segments) in %d ms", dbName, tableName,
+                engine.getName(), tableContext.getSegments().size(), (System.nanoTime() - startNanos) / 1_000_000));
+        return table;
+    }
+
+    /**
+     * Таблицы, созданные до появления метаданных, - журнал сегментов или LSM-дерево, если есть его манифест
+     */
+    private static String engineNameOf(Path tablePath) throws DatabaseException {
+        try {
+            return TableMetadata.readEngineName(tablePath)
+                    .orElse(LsmTable.isLsmTable(tablePath) ? LsmStorageEngine.NAME : LogStorageEngine.NAME);
+        } catch (IOException e) {
+            throw new DatabaseException("can't read metadata of table " + tablePath, e);
+        }
+    }
+
+    /**
+     * Цепочке инициализации таблицы от окружения нужен только контекст хранения. Таблица открывается и вне
+     * старта сервера, когда окружения под рукой нет
+     */
+    private static class StorageEnvironment implements ExecutionEnvironment {
+        private final StorageContext storageContext;
+        private final Path workingPath;
+
+        StorageEnvironment(StorageContext storageContext, Path workingPath) {
+            this.storageContext = storageContext;
+            this.workingPath = workingPath;
+        }
+
+        @Override
+        public Path getWorkingPath() {
+            return workingPath;
+        }
+
+        @Override
+        public Optional<Database> getDatabase(String name) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void addDatabase(Database db) {
+            throw new UnsupportedOperationException("databases are not opened while opening a table");
+        }
+
+        @Override
+        public StorageContext getStorageContext() {
+            return storageContext;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.itmo.java.basics.exceptions;
+
+import java.io.IOException;
+
+/**
+ * Запись сегмента оборвана, ее размеры не согласованы с файлом или не сходится контрольная сумма
+ */
+public class CorruptedRecordException extends IOException {
+    public CorruptedRecordException(String message) {
+        super(message);
+    }
+
+    public CorruptedRecordException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,53 @@
+package com.itmo.java.basics.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Ключ индекса: байты ключа как есть, без перекодирования, с заранее посчитанным хэшем.
+ * Массив не копируется, поэтому после создания ключа его нельзя изменять
+ */
+public final class DatabaseKey {
+    private final byte[] bytes;
+    private final int hash;
+
+    public DatabaseKey(byte[] bytes) {
+        this.bytes = bytes;
+        this.hash = Arrays.hashCode(bytes);
+    }
+
+    /**
+     * Переводит строковый ключ в байты (UTF-8). Используется только строковыми методами API
+     *
+     * @return байты ключа или {@code null}, если ключ {@code null}
+     */
+    public static byte[] encode(String key) {
+        return key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof DatabaseKey)) {
+            return false;
+        }
+        DatabaseKey other = (DatabaseKey) o;
+        return hash == other.hash && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,5 +1,10 @@
 package com.itmo.java.basics.index;
 
 public interface SegmentOffsetInfo {
+    /**
+     * @return номер сегмента в таблице
+     */
+    int getSegmentId();
+
     long getOffset();
 }
@@ -0,0 +1,148 @@
+package com.itmo.java.basics.index;
+
+import com.itmo.java.basics.index.impl.SegmentOffsetInfoImpl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Optional;
+
+/**
+ * Индекс таблицы: ключ - расположение последней записи ключа (номер сегмента в таблице и сдвиг в нем),
+ * упакованное в long. Удаленных ключей в индексе нет, поэтому чтение удаленного ключа не обращается к сегментам.
+ * Ключи отсортированного сегмента таблицы в индексе не хранятся: если ключа нет в индексе, его ищут там.
+ * Поэтому удаленный ключ, запись которого осталась в отсортированном сегменте, помечается {@link #DELETED}.
+ * Индекс не хранит ничего, чего нет в сегментах, и при старте строится заново по ним или загружается из снимка
+ * ({@link com.itmo.java.basics.index.impl.TableIndexCheckpoint}), после которого читаются только новые записи
+ */
+public interface TableIndex extends KvsIndex<DatabaseKey, SegmentOffsetInfo> {
+    /**
+     * Расположение отсутствующего ключа
+     */
+    long NO_LOCATION = -1;
+    /**
+     * Расположение удаленного ключа, запись которого осталась в отсортированном сегменте
+     */
+    long DELETED = -2;
+    /**
+     * Под сдвиг в сегменте отводятся младшие 40 бит расположения, под номер сегмента - остальные
+     */
+    int OFFSET_BITS = 40;
+    long MAX_OFFSET = (1L << OFFSET_BITS) - 1;
+    int MAX_SEGMENT_ID = (1 << (Long.SIZE - 1 - OFFSET_BITS)) - 1;
+
+    /**
+     * Запоминает расположение последней записи ключа
+     *
+     * @throws IOException если индекс хранится в файле и произошла ошибка ввода-вывода
+     */
+    void put(DatabaseKey key, int segmentId, long offset) throws IOException;
+
+    /**
+     * Запоминает, что ключ удален, хотя его запись осталась в отсортированном сегменте
+     *
+     * @throws IOException если индекс хранится в файле и произошла ошибка ввода-вывода
+     */
+    void markDeleted(DatabaseKey key) throws IOException;
+
+    /**
+     * @return упакованное расположение записи (см. {@link #segmentIdOf(long)}, {@link #offsetOf(long)}),
+     * {@link #NO_LOCATION}, если ключа нет, или {@link #DELETED}
+     * @throws IOException если индекс хранится в файле и произошла ошибка ввода-вывода
+     */
+    long getLocation(DatabaseKey key) throws IOException;
+
+    /**
+     * Удаляет ключ
+     *
+     * @return {@code true} - если ключ был в индексе
+     * @throws IOException если индекс хранится в файле и произошла ошибка ввода-вывода
+     */
+    boolean remove(DatabaseKey key) throws IOException;
+
+    /**
+     * @return количество ключей в индексе
+     */
+    long size();
+
+    /**
+     * @return {@code true} - если {@link #getLocation(DatabaseKey)} можно вызывать без блокировки таблицы
+     * параллельно с изменениями индекса (изменяет индекс всегда один поток). Запись, расположение которой
+     * вернул такой поиск, уже целиком лежит в сегменте
+     */
+    default boolean isConcurrentlyReadable() {
+        return false;
+    }
+
+    /**
+     * Освобождает место, которое занимают удаленные из индекса ключи, если индекс хранит их в файле.
+     * Вызывается компактизацией таблицы под блокировкой записи
+     *
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    default void compactStorage() throws IOException {
+    }
+
+    /**
+     * Освобождает файлы и отображения индекса при выгрузке таблицы. После вызова индексом пользоваться нельзя
+     *
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    default void close() throws IOException {
+    }
+
+    /**
+     * @param value расположение записи или {@code null}, если ключ удален
+     */
+    @Override
+    default void onIndexedEntityUpdated(DatabaseKey key, SegmentOffsetInfo value) {
+        try {
+            if (value == null) {
+                remove(key);
+            } else {
+                put(key, value.getSegmentId(), value.getOffset());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    default Optional<SegmentOffsetInfo> searchForKey(DatabaseKey key) {
+        long location;
+        try {
+            location = getLocation(key);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return location == NO_LOCATION || location == DELETED
+                ? Optional.empty()
+                : Optional.of(new SegmentOffsetInfoImpl(segmentIdOf(location), offsetOf(location)));
+    }
+
+    static long location(int segmentId, long offset) {
+        if (segmentId < 0 || segmentId > MAX_SEGMENT_ID || offset < 0 || offset > MAX_OFFSET) {
+            throw new IllegalArgumentException("segment " + segmentId + ", offset " + offset + " can't be indexed");
+        }
+        return ((long) segmentId << OFFSET_BITS) | offset;
+    }
+
+    static int segmentIdOf(long location) {
+        return (int) (location >>> OFFSET_BITS);
+    }
+
+    static long offsetOf(long location) {
+        return location & MAX_OFFSET;
+    }
+
+    /**
+     * Перемешивает биты хэша ключа (финализатор MurmurHash3), чтобы близкие ключи не попадали в соседние слоты
+     */
+    static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
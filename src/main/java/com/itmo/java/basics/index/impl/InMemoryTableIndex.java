@@ -0,0 +1,380 @@
+package com.itmo.java.basics.index.impl;
+
+import com.itmo.java.basics.index.DatabaseKey;
+import com.itmo.java.basics.index.TableIndex;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Индекс таблицы в куче (см. {@link TableIndex}).
+ * Хэш-таблица с открытой адресацией (линейное пробирование) на примитивных массивах: на слот приходятся
+ * хэш ключа, упакованное расположение записи и ссылка на байты ключа. Байты ключей лежат подряд в страницах (арене)
+ * с префиксом длины, поэтому на ключ не создается ни одного объекта.
+ * <p>
+ * Индекс меняет один поток, а читать его можно параллельно без блокировки. Новый ключ публикуется записью хэша
+ * в слот, новое расположение - записью расположения, обе с семантикой release: читатель, увидевший их,
+ * видит и байты ключа, и запись в сегменте, сделанную до обновления индекса. Изменения, которые переставляют
+ * слоты (удаление со сдвигом, изменение размера, перепись арены), идут под {@link #structureLock}, и читатель,
+ * заставший такое изменение, повторяет поиск
+ */
+public class InMemoryTableIndex implements TableIndex {
+    private static final VarHandle HASHES = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LOCATIONS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final int EMPTY = 0;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int PAGE_SIZE = 1 << 20;
+    private static final int PAGE_SHIFT = 32;
+
+    /**
+     * Хэши ключей, 0 - свободный слот
+     */
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private long[] locations = new long[INITIAL_CAPACITY];
+    /**
+     * Номер страницы арены в старших 32 битах, позиция в странице - в младших
+     */
+    private long[] keyPositions = new long[INITIAL_CAPACITY];
+    private int size;
+
+    private List<byte[]> pages = new ArrayList<>();
+    private byte[] currentPage;
+    private int currentPagePosition;
+    /**
+     * Сколько байт арены занято ключами, удаленными из индекса. Когда их становится больше, чем живых,
+     * арена переписывается заново
+     */
+    private long arenaBytes;
+    private long garbageBytes;
+    /**
+     * Берется на запись на время перестановки слотов. Читатели берут оптимистичную метку и проверяют ее после поиска
+     */
+    private final StampedLock structureLock = new StampedLock();
+
+    @Override
+    public void put(DatabaseKey key, int segmentId, long offset) {
+        put(key, TableIndex.location(segmentId, offset));
+    }
+
+    @Override
+    public void markDeleted(DatabaseKey key) {
+        put(key, DELETED);
+    }
+
+    private void put(DatabaseKey key, long location) {
+        int hash = mix(key.hashCode());
+        int slot = findSlot(key.getBytes(), hash);
+        if (hashes[slot] == EMPTY) {
+            if ((size + 1) * 4L > hashes.length * 3L) {
+                long stamp = structureLock.writeLock();
+                try {
+                    resize(hashes.length * 2);
+                } finally {
+                    structureLock.unlockWrite(stamp);
+                }
+                slot = findSlot(key.getBytes(), hash);
+            }
+            keyPositions[slot] = appendKey(key.getBytes());
+            LOCATIONS.setRelease(locations, slot, location);
+            HASHES.setRelease(hashes, slot, hash);
+            size++;
+            return;
+        }
+        LOCATIONS.setRelease(locations, slot, location);
+    }
+
+    /**
+     * Поиск без создания объектов и, если слоты в это время не переставлялись, без блокировки.
+     * Поиск, заставший перестановку слотов (метка не прошла проверку или поиск упал на несогласованных
+     * массивах), повторяется под блокировкой на чтение
+     */
+    @Override
+    public long getLocation(DatabaseKey key) {
+        byte[] keyBytes = key.getBytes();
+        int hash = mix(key.hashCode());
+        long stamp = structureLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                long location = findLocation(keyBytes, hash);
+                if (structureLock.validate(stamp)) {
+                    return location;
+                }
+            } catch (RuntimeException e) {
+                // массивы прочитаны посреди перестановки слотов, метка проверку не пройдет
+            }
+        }
+        stamp = structureLock.readLock();
+        try {
+            return findLocation(keyBytes, hash);
+        } finally {
+            structureLock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean isConcurrentlyReadable() {
+        return true;
+    }
+
+    /**
+     * Слот освобождается сдвигом следующих за ним записей цепочки, поэтому надгробий в таблице нет
+     */
+    @Override
+    public boolean remove(DatabaseKey key) {
+        int slot = findSlot(key.getBytes(), mix(key.hashCode()));
+        if (hashes[slot] == EMPTY) {
+            return false;
+        }
+        long stamp = structureLock.writeLock();
+        try {
+            removeSlot(slot, key);
+        } finally {
+            structureLock.unlockWrite(stamp);
+        }
+        return true;
+    }
+
+    private void removeSlot(int slot, DatabaseKey key) {
+        garbageBytes += Integer.BYTES + key.getBytes().length;
+        int mask = hashes.length - 1;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            if (hashes[next] == EMPTY) {
+                break;
+            }
+            int home = hashes[next] & mask;
+            boolean reachable = slot <= next ? slot < home && home <= next : slot < home || home <= next;
+            if (!reachable) {
+                hashes[slot] = hashes[next];
+                locations[slot] = locations[next];
+                keyPositions[slot] = keyPositions[next];
+                slot = next;
+            }
+        }
+        hashes[slot] = EMPTY;
+        size--;
+        if (hashes.length > INITIAL_CAPACITY && size * 8L < hashes.length) {
+            resize(hashes.length / 2);
+        }
+        if (garbageBytes > PAGE_SIZE && garbageBytes * 2 > arenaBytes) {
+            compactKeys();
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Копирует массивы слотов. Страницы арены не копируются: записанные байты ключей не меняются,
+     * а {@link #compactKeys()} переписывает ключи в новые страницы. Вызывающий не дает менять индекс во время копирования
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(hashes.clone(), locations.clone(), keyPositions.clone(), size, new ArrayList<>(pages),
+                currentPagePosition, arenaBytes, garbageBytes);
+    }
+
+    /**
+     * Заменяет содержимое индекса снимком, например прочитанным из {@link TableIndexCheckpoint}
+     */
+    void restore(Snapshot snapshot) {
+        long stamp = structureLock.writeLock();
+        try {
+            restoreSlots(snapshot);
+        } finally {
+            structureLock.unlockWrite(stamp);
+        }
+    }
+
+    private void restoreSlots(Snapshot snapshot) {
+        hashes = snapshot.hashes;
+        locations = snapshot.locations;
+        keyPositions = snapshot.keyPositions;
+        size = snapshot.size;
+        pages = new ArrayList<>(snapshot.pages);
+        currentPage = pages.isEmpty() ? null : pages.get(pages.size() - 1);
+        currentPagePosition = snapshot.currentPagePosition;
+        arenaBytes = snapshot.arenaBytes;
+        garbageBytes = snapshot.garbageBytes;
+    }
+
+    /**
+     * Поиск для читателей: массивы читаются один раз, хэш и расположение слота - с семантикой acquire
+     */
+    private long findLocation(byte[] key, int hash) {
+        int[] slotHashes = hashes;
+        long[] slotLocations = locations;
+        long[] slotKeyPositions = keyPositions;
+        List<byte[]> keyPages = pages;
+        int mask = slotHashes.length - 1;
+        int slot = hash & mask;
+        while (true) {
+            int slotHash = (int) HASHES.getAcquire(slotHashes, slot);
+            if (slotHash == EMPTY) {
+                return NO_LOCATION;
+            }
+            if (slotHash == hash && keyEquals(keyPages, slotKeyPositions[slot], key)) {
+                return (long) LOCATIONS.getAcquire(slotLocations, slot);
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Поиск слота пишущим потоком
+     */
+    private int findSlot(byte[] key, int hash) {
+        int mask = hashes.length - 1;
+        int slot = hash & mask;
+        while (hashes[slot] != EMPTY && (hashes[slot] != hash || !keyEquals(pages, keyPositions[slot], key))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static boolean keyEquals(List<byte[]> pages, long keyPosition, byte[] key) {
+        byte[] page = pages.get((int) (keyPosition >>> PAGE_SHIFT));
+        int position = (int) keyPosition;
+        int length = readLength(page, position);
+        int from = position + Integer.BYTES;
+        return length == key.length && Arrays.equals(page, from, from + length, key, 0, length);
+    }
+
+    private long appendKey(byte[] key) {
+        return appendKey(key, 0, key.length);
+    }
+
+    private long appendKey(byte[] source, int from, int length) {
+        int required = Integer.BYTES + length;
+        if (currentPage == null || currentPage.length - currentPagePosition < required) {
+            currentPage = new byte[Math.max(PAGE_SIZE, required)];
+            currentPagePosition = 0;
+            pages.add(currentPage);
+        }
+        int position = currentPagePosition;
+        currentPage[position] = (byte) (length >>> 24);
+        currentPage[position + 1] = (byte) (length >>> 16);
+        currentPage[position + 2] = (byte) (length >>> 8);
+        currentPage[position + 3] = (byte) length;
+        System.arraycopy(source, from, currentPage, position + Integer.BYTES, length);
+        currentPagePosition += required;
+        arenaBytes += required;
+        return ((long) (pages.size() - 1) << PAGE_SHIFT) | position;
+    }
+
+    private static int readLength(byte[] page, int position) {
+        return ((page[position] & 0xFF) << 24) | ((page[position + 1] & 0xFF) << 16)
+                | ((page[position + 2] & 0xFF) << 8) | (page[position + 3] & 0xFF);
+    }
+
+    /**
+     * Переписывает ключи живых слотов в новые страницы, освобождая место удаленных ключей
+     */
+    private void compactKeys() {
+        List<byte[]> oldPages = pages;
+        pages = new ArrayList<>();
+        currentPage = null;
+        currentPagePosition = 0;
+        arenaBytes = 0;
+        garbageBytes = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            if (hashes[i] == EMPTY) {
+                continue;
+            }
+            byte[] page = oldPages.get((int) (keyPositions[i] >>> PAGE_SHIFT));
+            int position = (int) keyPositions[i];
+            keyPositions[i] = appendKey(page, position + Integer.BYTES, readLength(page, position));
+        }
+    }
+
+    /**
+     * Перестраивает таблицу указанного размера по сохраненным хэшам, не читая байты ключей.
+     * Таблица растет вдвое при заполнении на 3/4 и сжимается вдвое, когда заполнена меньше чем на 1/8
+     * (например, после того как компактизация перенесла ключи в отсортированный сегмент)
+     */
+    private void resize(int capacity) {
+        int[] oldHashes = hashes;
+        long[] oldLocations = locations;
+        long[] oldKeyPositions = keyPositions;
+        hashes = new int[capacity];
+        locations = new long[capacity];
+        keyPositions = new long[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldHashes.length; i++) {
+            if (oldHashes[i] == EMPTY) {
+                continue;
+            }
+            int slot = oldHashes[i] & mask;
+            while (hashes[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = oldHashes[i];
+            locations[slot] = oldLocations[i];
+            keyPositions[slot] = oldKeyPositions[i];
+        }
+    }
+
+    /**
+     * 0 зарезервирован под свободный слот
+     */
+    private static int mix(int hash) {
+        hash = TableIndex.mix(hash);
+        return hash == EMPTY ? 1 : hash;
+    }
+
+    /**
+     * Согласованная копия индекса, которую можно читать без блокировки (см. {@link #snapshot()})
+     */
+    public static class Snapshot {
+        final int[] hashes;
+        final long[] locations;
+        final long[] keyPositions;
+        final int size;
+        final List<byte[]> pages;
+        /**
+         * Сколько байт занято в последней странице
+         */
+        final int currentPagePosition;
+        final long arenaBytes;
+        final long garbageBytes;
+
+        Snapshot(int[] hashes, long[] locations, long[] keyPositions, int size, List<byte[]> pages,
+                 int currentPagePosition, long arenaBytes, long garbageBytes) {
+            this.hashes = hashes;
+            this.locations = locations;
+            this.keyPositions = keyPositions;
+            this.size = size;
+            this.pages = pages;
+            this.currentPagePosition = currentPagePosition;
+            this.arenaBytes = arenaBytes;
+            this.garbageBytes = garbageBytes;
+        }
+
+        /**
+         * Переводит номера сегментов в расположениях ключей. Снимок не разделяет массивы с индексом,
+         * поэтому меняется только он сам
+         *
+         * @param segmentIds новый номер сегмента по старому, -1 - сегмента больше нет
+         * @throws IllegalStateException если ключ ссылается на сегмент, которого больше нет
+         */
+        public void remapSegments(int[] segmentIds) {
+            for (int i = 0; i < hashes.length; i++) {
+                if (hashes[i] == EMPTY || locations[i] < 0) {
+                    continue;
+                }
+                int segmentId = TableIndex.segmentIdOf(locations[i]);
+                int newSegmentId = segmentId < segmentIds.length ? segmentIds[segmentId] : -1;
+                if (newSegmentId < 0) {
+                    throw new IllegalStateException("index refers to unknown segment " + segmentId);
+                }
+                locations[i] = TableIndex.location(newSegmentId, TableIndex.offsetOf(locations[i]));
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.itmo.java.basics.index.impl;
+
+import com.itmo.java.basics.logic.io.MappedBuffers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Файл, отображенный в память кусками одинакового размера: одно отображение не может быть больше 2 ГиБ.
+ * Растет по мере необходимости, новые куски заполнены нулями.
+ * Числа читаются и пишутся внутри одного куска, вызывающий следит, чтобы они не пересекали границу куска.
+ * Содержимое нужно только пока файл открыт: {@link #close()} снимает отображения и удаляет файл
+ */
+class MappedFile implements Closeable {
+    private Path path;
+    private final FileChannel channel;
+    private final int chunkShift;
+    private final int chunkMask;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+
+    /**
+     * Создает файл заново: если файл существовал, его содержимое отбрасывается
+     */
+    MappedFile(Path path, int chunkShift) throws IOException {
+        Files.deleteIfExists(path);
+        this.path = path;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1 << chunkShift) - 1;
+    }
+
+    int chunkSize() {
+        return 1 << chunkShift;
+    }
+
+    long capacity() {
+        return (long) chunks.size() << chunkShift;
+    }
+
+    /**
+     * Отображает файл как минимум до указанного размера
+     */
+    void ensureCapacity(long size) throws IOException {
+        while (capacity() < size) {
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, capacity(), chunkSize()));
+        }
+    }
+
+    int getInt(long position) {
+        return chunk(position).getInt(index(position));
+    }
+
+    void putInt(long position, int value) {
+        chunk(position).putInt(index(position), value);
+    }
+
+    long getLong(long position) {
+        return chunk(position).getLong(index(position));
+    }
+
+    void putLong(long position, long value) {
+        chunk(position).putLong(index(position), value);
+    }
+
+    /**
+     * Записывает байты, при необходимости продолжая в следующем куске
+     */
+    void put(long position, byte[] bytes) {
+        int written = 0;
+        while (written < bytes.length) {
+            int index = index(position + written);
+            int length = Math.min(bytes.length - written, chunkSize() - index);
+            ByteBuffer view = chunk(position + written).duplicate();
+            view.position(index);
+            view.put(bytes, written, length);
+            written += length;
+        }
+    }
+
+    /**
+     * Читает байты, при необходимости продолжая в следующем куске
+     */
+    byte[] get(long position, int length) {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int index = index(position + read);
+            int chunkLength = Math.min(length - read, chunkSize() - index);
+            ByteBuffer view = chunk(position + read).duplicate();
+            view.position(index);
+            view.get(bytes, read, chunkLength);
+            read += chunkLength;
+        }
+        return bytes;
+    }
+
+    /**
+     * Переименовывает файл, не снимая отображений
+     */
+    void renameTo(Path target) throws IOException {
+        Files.move(path, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        path = target;
+    }
+
+    /**
+     * Снимает отображения, закрывает и удаляет файл. После вызова обращаться к файлу нельзя
+     */
+    @Override
+    public void close() throws IOException {
+        for (MappedByteBuffer chunk : chunks) {
+            MappedBuffers.unmap(chunk);
+        }
+        chunks.clear();
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Сравнивает байты файла с массивом, не копируя их в кучу
+     */
+    boolean contentEquals(long position, byte[] bytes) {
+        int compared = 0;
+        while (compared < bytes.length) {
+            MappedByteBuffer chunk = chunk(position + compared);
+            int index = index(position + compared);
+            int end = compared + Math.min(bytes.length - compared, chunkSize() - index);
+            for (; compared < end; compared++, index++) {
+                if (chunk.get(index) != bytes[compared]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private MappedByteBuffer chunk(long position) {
+        return chunks.get((int) (position >>> chunkShift));
+    }
+
+    private int index(long position) {
+        return (int) position & chunkMask;
+    }
+}
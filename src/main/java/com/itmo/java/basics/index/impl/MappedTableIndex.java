@@ -0,0 +1,496 @@
+package com.itmo.java.basics.index.impl;
+
+import com.itmo.java.basics.index.DatabaseKey;
+import com.itmo.java.basics.index.TableIndex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Индекс таблицы в файлах, отображенных в память, для таблиц, ключи которых не помещаются в кучу
+ * (см. {@link TableIndex}). В куче остается только небольшой кэш недавно использованных ключей.
+ * <p>
+ * Линейное хэширование: корзина - страница в 4 КиБ, на которую приходятся хэш ключа, упакованное расположение записи
+ * и ссылка на байты ключа. Переполненная корзина продолжается страницами переполнения. Когда средняя заполненность
+ * превышает {@link #MAX_LOAD}, делится одна корзина - та, на которую указывает split pointer, - поэтому индекс
+ * растет постепенно, без перестроения целиком. Байты ключей дописываются в отдельный файл с префиксом длины.
+ * <p>
+ * Файлы лежат в директории {@link #DIRECTORY_NAME} внутри директории таблицы. Индекс не переживает перезапуск:
+ * при открытии файлы создаются заново, и индекс строится по сегментам таблицы. Файлы открываются при первой записи
+ * и удаляются при выгрузке таблицы ({@link #close()}).
+ * <p>
+ * Байты удаленных ключей остаются в файле ключей, пока компактизация таблицы не вызовет {@link #compactStorage()}:
+ * когда мусор занимает больше половины файла, живые ключи переписываются в новый файл
+ */
+public class MappedTableIndex implements TableIndex {
+    public static final String DIRECTORY_NAME = ".index";
+    private static final String BUCKETS_FILE = "buckets";
+    private static final String OVERFLOW_FILE = "overflow";
+    private static final String KEYS_FILE = "keys";
+    private static final String COMPACTING_SUFFIX = ".compacting";
+    /**
+     * Меньше этого мусора в файле ключей не переписывается
+     */
+    private static final long MIN_KEYS_GARBAGE = 1 << 20;
+    private static final int CHUNK_SHIFT = 24;
+
+    private static final int PAGE_SIZE = 4096;
+    /**
+     * Заголовок страницы: количество записей и номер следующей страницы переполнения
+     */
+    private static final int PAGE_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    private static final int NEXT_PAGE_POSITION = Integer.BYTES;
+    /**
+     * Запись корзины: хэш, расположение записи в таблице, позиция ключа в файле ключей
+     */
+    private static final int ENTRY_SIZE = Integer.BYTES + Long.BYTES + Long.BYTES;
+    private static final int LOCATION_POSITION = Integer.BYTES;
+    private static final int KEY_POSITION = Integer.BYTES + Long.BYTES;
+    private static final int PAGE_ENTRIES = (PAGE_SIZE - PAGE_HEADER_SIZE) / ENTRY_SIZE;
+    /**
+     * Страницы переполнения нумеруются с единицы, 0 - конец цепочки
+     */
+    private static final long NO_PAGE = 0;
+    private static final int INITIAL_BUCKETS = 4;
+    private static final double MAX_LOAD = 0.8;
+    /**
+     * Признак того, что запись лежит на странице переполнения, в адресе записи (см. {@link #find(byte[], int)})
+     */
+    private static final long OVERFLOW_FLAG = 1L << 62;
+    private static final long NOT_FOUND = -1;
+
+    private final Path directory;
+    private MappedFile buckets;
+    private MappedFile overflow;
+    private MappedFile keys;
+
+    /**
+     * Уровень линейного хэширования: до split pointer корзины адресуются по (level + 1) младшим битам хэша
+     * (с учетом {@link #INITIAL_BUCKETS}), начиная с него - по level битам
+     */
+    private int level;
+    private long splitPointer;
+    private long bucketCount;
+    private long overflowPages;
+    private long freeOverflowPage = NO_PAGE;
+    private long keysEnd;
+    private long keysGarbage;
+    private long size;
+
+    /**
+     * Кэш в порядке доступа меняется и при чтении, а чтения таблицы идут параллельно, поэтому он синхронизирован
+     */
+    private final Map<DatabaseKey, Long> hotEntries;
+
+    /**
+     * @param tablePath    директория таблицы
+     * @param cacheEntries сколько недавно использованных ключей держать в куче, 0 - без кэша
+     */
+    public MappedTableIndex(Path tablePath, int cacheEntries) {
+        directory = tablePath.resolve(DIRECTORY_NAME);
+        hotEntries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<DatabaseKey, Long> eldest) {
+                return size() > cacheEntries;
+            }
+        });
+    }
+
+    @Override
+    public void put(DatabaseKey key, int segmentId, long offset) throws IOException {
+        put(key, TableIndex.location(segmentId, offset));
+    }
+
+    @Override
+    public void markDeleted(DatabaseKey key) throws IOException {
+        put(key, DELETED);
+    }
+
+    private void put(DatabaseKey key, long location) throws IOException {
+        open();
+        int hash = TableIndex.mix(key.hashCode());
+        long entry = find(key.getBytes(), hash);
+        if (entry != NOT_FOUND) {
+            file(entry).putLong(position(entry) + LOCATION_POSITION, location);
+        } else {
+            insert(bucketOf(hash), hash, location, appendKey(key.getBytes()));
+            size++;
+            if (size > MAX_LOAD * PAGE_ENTRIES * bucketCount) {
+                split();
+            }
+        }
+        hotEntries.put(key, location);
+    }
+
+    @Override
+    public long getLocation(DatabaseKey key) {
+        Long cached = hotEntries.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        if (buckets == null) {
+            return NO_LOCATION;
+        }
+        long entry = find(key.getBytes(), TableIndex.mix(key.hashCode()));
+        if (entry == NOT_FOUND) {
+            return NO_LOCATION;
+        }
+        long location = file(entry).getLong(position(entry) + LOCATION_POSITION);
+        hotEntries.put(key, location);
+        return location;
+    }
+
+    /**
+     * На место удаленной записи переносится последняя запись цепочки корзины, опустевшая страница переполнения
+     * возвращается в список свободных. Байты ключа остаются в файле ключей до {@link #compactStorage()}
+     */
+    @Override
+    public boolean remove(DatabaseKey key) {
+        hotEntries.remove(key);
+        if (buckets == null) {
+            return false;
+        }
+        int hash = TableIndex.mix(key.hashCode());
+        long entry = find(key.getBytes(), hash);
+        if (entry == NOT_FOUND) {
+            return false;
+        }
+        MappedFile previousFile = null;
+        long previousPage = 0;
+        MappedFile lastFile = buckets;
+        long lastPage = bucketOf(hash) * PAGE_SIZE;
+        long next = lastFile.getLong(lastPage + NEXT_PAGE_POSITION);
+        while (next != NO_PAGE) {
+            previousFile = lastFile;
+            previousPage = lastPage;
+            lastFile = overflow;
+            lastPage = overflowPosition(next);
+            next = lastFile.getLong(lastPage + NEXT_PAGE_POSITION);
+        }
+        int lastCount = lastFile.getInt(lastPage);
+        long lastEntry = lastPage + PAGE_HEADER_SIZE + (long) (lastCount - 1) * ENTRY_SIZE;
+        keysGarbage += Integer.BYTES + key.getBytes().length;
+        copyEntry(lastFile, lastEntry, file(entry), position(entry));
+        lastFile.putInt(lastPage, lastCount - 1);
+        if (lastCount == 1 && previousFile != null) {
+            long freedPage = previousFile.getLong(previousPage + NEXT_PAGE_POSITION);
+            previousFile.putLong(previousPage + NEXT_PAGE_POSITION, NO_PAGE);
+            freeOverflowPage(freedPage);
+        }
+        size--;
+        return true;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Переписывает живые ключи в новый файл ключей, если мусор занимает больше половины файла.
+     * Сначала ключи копируются в новый файл: если это не удалось, индекс остается прежним.
+     * Затем записи корзин тем же обходом переключаются на новые позиции ключей
+     */
+    @Override
+    public void compactStorage() throws IOException {
+        if (keys == null || keysGarbage < MIN_KEYS_GARBAGE || keysGarbage * 2 < keysEnd) {
+            return;
+        }
+        MappedFile compacted = new MappedFile(directory.resolve(KEYS_FILE + COMPACTING_SUFFIX), CHUNK_SHIFT);
+        long[] compactedEnd = {0};
+        try {
+            forEachEntry((file, entry) -> {
+                byte[] key = keyAt(file.getLong(entry + KEY_POSITION));
+                compactedEnd[0] = appendKey(compacted, compactedEnd[0], key) + Integer.BYTES + key.length;
+            });
+        } catch (IOException | RuntimeException e) {
+            compacted.close();
+            throw e;
+        }
+        long[] nextEnd = {0};
+        forEachEntry((file, entry) -> {
+            int keyLength = keys.getInt(file.getLong(entry + KEY_POSITION));
+            long position = keyPositionFor(compacted, nextEnd[0]);
+            nextEnd[0] = position + Integer.BYTES + keyLength;
+            file.putLong(entry + KEY_POSITION, position);
+        });
+        keys.close();
+        compacted.renameTo(directory.resolve(KEYS_FILE));
+        keys = compacted;
+        keysEnd = compactedEnd[0];
+        keysGarbage = 0;
+    }
+
+    /**
+     * Снимает отображения и удаляет файлы индекса
+     */
+    @Override
+    public void close() throws IOException {
+        hotEntries.clear();
+        if (buckets == null) {
+            return;
+        }
+        IOException failure = null;
+        for (MappedFile file : new MappedFile[]{buckets, overflow, keys}) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        buckets = null;
+        overflow = null;
+        keys = null;
+        Files.deleteIfExists(directory);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return сколько байт файла ключей занято, включая байты удаленных ключей
+     */
+    long getKeysFileSize() {
+        return keysEnd;
+    }
+
+    private void open() throws IOException {
+        if (buckets != null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        Files.deleteIfExists(directory.resolve(KEYS_FILE + COMPACTING_SUFFIX));
+        buckets = new MappedFile(directory.resolve(BUCKETS_FILE), CHUNK_SHIFT);
+        overflow = new MappedFile(directory.resolve(OVERFLOW_FILE), CHUNK_SHIFT);
+        keys = new MappedFile(directory.resolve(KEYS_FILE), CHUNK_SHIFT);
+        buckets.ensureCapacity((long) INITIAL_BUCKETS * PAGE_SIZE);
+        bucketCount = INITIAL_BUCKETS;
+    }
+
+    /**
+     * @return адрес записи ключа: позиция в файле корзин или, с {@link #OVERFLOW_FLAG}, в файле переполнения
+     */
+    private long find(byte[] key, int hash) {
+        MappedFile file = buckets;
+        long page = bucketOf(hash) * PAGE_SIZE;
+        while (true) {
+            int count = file.getInt(page);
+            for (int i = 0; i < count; i++) {
+                long entry = page + PAGE_HEADER_SIZE + (long) i * ENTRY_SIZE;
+                if (file.getInt(entry) == hash && keyEquals(file.getLong(entry + KEY_POSITION), key)) {
+                    return file == overflow ? entry | OVERFLOW_FLAG : entry;
+                }
+            }
+            long next = file.getLong(page + NEXT_PAGE_POSITION);
+            if (next == NO_PAGE) {
+                return NOT_FOUND;
+            }
+            file = overflow;
+            page = overflowPosition(next);
+        }
+    }
+
+    private MappedFile file(long entry) {
+        return (entry & OVERFLOW_FLAG) != 0 ? overflow : buckets;
+    }
+
+    private static long position(long entry) {
+        return entry & ~OVERFLOW_FLAG;
+    }
+
+    private long bucketOf(int hash) {
+        long unsignedHash = Integer.toUnsignedLong(hash);
+        long bucket = unsignedHash & (((long) INITIAL_BUCKETS << level) - 1);
+        if (bucket < splitPointer) {
+            bucket = unsignedHash & (((long) INITIAL_BUCKETS << (level + 1)) - 1);
+        }
+        return bucket;
+    }
+
+    /**
+     * Дописывает запись в последнюю страницу цепочки корзины, при необходимости добавляя страницу переполнения
+     */
+    private void insert(long bucket, int hash, long location, long keyPosition) throws IOException {
+        MappedFile file = buckets;
+        long page = bucket * PAGE_SIZE;
+        long next = file.getLong(page + NEXT_PAGE_POSITION);
+        while (next != NO_PAGE) {
+            file = overflow;
+            page = overflowPosition(next);
+            next = file.getLong(page + NEXT_PAGE_POSITION);
+        }
+        int count = file.getInt(page);
+        if (count == PAGE_ENTRIES) {
+            long newPage = allocateOverflowPage();
+            file.putLong(page + NEXT_PAGE_POSITION, newPage);
+            file = overflow;
+            page = overflowPosition(newPage);
+            count = 0;
+        }
+        long entry = page + PAGE_HEADER_SIZE + (long) count * ENTRY_SIZE;
+        file.putInt(entry, hash);
+        file.putLong(entry + LOCATION_POSITION, location);
+        file.putLong(entry + KEY_POSITION, keyPosition);
+        file.putInt(page, count + 1);
+    }
+
+    /**
+     * Делит корзину split pointer: добавляет в конец новую корзину и перераспределяет записи между ними
+     * по следующему биту хэша
+     */
+    private void split() throws IOException {
+        long splitBucket = splitPointer;
+        buckets.ensureCapacity((bucketCount + 1) * PAGE_SIZE);
+        initPage(buckets, bucketCount * PAGE_SIZE);
+        bucketCount++;
+        splitPointer++;
+        if (splitPointer == ((long) INITIAL_BUCKETS << level)) {
+            level++;
+            splitPointer = 0;
+        }
+        int[] hashes = new int[PAGE_ENTRIES];
+        long[] locations = new long[PAGE_ENTRIES];
+        long[] keyPositions = new long[PAGE_ENTRIES];
+        int moved = 0;
+        MappedFile file = buckets;
+        long page = splitBucket * PAGE_SIZE;
+        long next = file.getLong(page + NEXT_PAGE_POSITION);
+        while (true) {
+            int count = file.getInt(page);
+            if (moved + count > hashes.length) {
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+                locations = Arrays.copyOf(locations, locations.length * 2);
+                keyPositions = Arrays.copyOf(keyPositions, keyPositions.length * 2);
+            }
+            for (int i = 0; i < count; i++, moved++) {
+                long entry = page + PAGE_HEADER_SIZE + (long) i * ENTRY_SIZE;
+                hashes[moved] = file.getInt(entry);
+                locations[moved] = file.getLong(entry + LOCATION_POSITION);
+                keyPositions[moved] = file.getLong(entry + KEY_POSITION);
+            }
+            if (file == overflow) {
+                freeOverflowPage(overflowPage(page));
+            }
+            if (next == NO_PAGE) {
+                break;
+            }
+            file = overflow;
+            page = overflowPosition(next);
+            next = file.getLong(page + NEXT_PAGE_POSITION);
+        }
+        initPage(buckets, splitBucket * PAGE_SIZE);
+        for (int i = 0; i < moved; i++) {
+            insert(bucketOf(hashes[i]), hashes[i], locations[i], keyPositions[i]);
+        }
+    }
+
+    private long allocateOverflowPage() throws IOException {
+        long page = freeOverflowPage;
+        if (page != NO_PAGE) {
+            freeOverflowPage = overflow.getLong(overflowPosition(page) + NEXT_PAGE_POSITION);
+        } else {
+            page = ++overflowPages;
+            overflow.ensureCapacity(page * PAGE_SIZE);
+        }
+        initPage(overflow, overflowPosition(page));
+        return page;
+    }
+
+    /**
+     * Возвращает страницу переполнения в список свободных, связанный через поле следующей страницы
+     */
+    private void freeOverflowPage(long page) {
+        overflow.putInt(overflowPosition(page), 0);
+        overflow.putLong(overflowPosition(page) + NEXT_PAGE_POSITION, freeOverflowPage);
+        freeOverflowPage = page;
+    }
+
+    private static void initPage(MappedFile file, long page) {
+        file.putInt(page, 0);
+        file.putLong(page + NEXT_PAGE_POSITION, NO_PAGE);
+    }
+
+    private static long overflowPosition(long page) {
+        return (page - 1) * PAGE_SIZE;
+    }
+
+    private static long overflowPage(long position) {
+        return position / PAGE_SIZE + 1;
+    }
+
+    private static void copyEntry(MappedFile from, long fromEntry, MappedFile to, long toEntry) {
+        to.putInt(toEntry, from.getInt(fromEntry));
+        to.putLong(toEntry + LOCATION_POSITION, from.getLong(fromEntry + LOCATION_POSITION));
+        to.putLong(toEntry + KEY_POSITION, from.getLong(fromEntry + KEY_POSITION));
+    }
+
+    private long appendKey(byte[] key) throws IOException {
+        long position = appendKey(keys, keysEnd, key);
+        keysEnd = position + Integer.BYTES + key.length;
+        return position;
+    }
+
+    /**
+     * Дописывает ключ в файл ключей после позиции end
+     *
+     * @return позиция ключа
+     */
+    private static long appendKey(MappedFile file, long end, byte[] key) throws IOException {
+        long position = keyPositionFor(file, end);
+        file.ensureCapacity(position + Integer.BYTES + key.length);
+        file.putInt(position, key.length);
+        file.put(position + Integer.BYTES, key);
+        return position;
+    }
+
+    /**
+     * Префикс длины не пересекает границу куска отображения, байты ключа - могут
+     */
+    private static long keyPositionFor(MappedFile file, long end) {
+        int chunkRemaining = file.chunkSize() - (int) (end & (file.chunkSize() - 1));
+        return chunkRemaining < Integer.BYTES ? end + chunkRemaining : end;
+    }
+
+    private byte[] keyAt(long keyPosition) {
+        return keys.get(keyPosition + Integer.BYTES, keys.getInt(keyPosition));
+    }
+
+    /**
+     * Обходит записи всех корзин, включая страницы переполнения, всегда в одном и том же порядке
+     */
+    private void forEachEntry(EntryVisitor visitor) throws IOException {
+        for (long bucket = 0; bucket < bucketCount; bucket++) {
+            MappedFile file = buckets;
+            long page = bucket * PAGE_SIZE;
+            while (true) {
+                int count = file.getInt(page);
+                for (int i = 0; i < count; i++) {
+                    visitor.visit(file, page + PAGE_HEADER_SIZE + (long) i * ENTRY_SIZE);
+                }
+                long next = file.getLong(page + NEXT_PAGE_POSITION);
+                if (next == NO_PAGE) {
+                    break;
+                }
+                file = overflow;
+                page = overflowPosition(next);
+            }
+        }
+    }
+
+    private interface EntryVisitor {
+        void visit(MappedFile file, long entry) throws IOException;
+    }
+
+    private boolean keyEquals(long keyPosition, byte[] key) {
+        return keys.getInt(keyPosition) == key.length && keys.contentEquals(keyPosition + Integer.BYTES, key);
+    }
+}
@@ -1,6 +0,0 @@
-package com.itmo.java.basics.index.impl;
-
-import com.itmo.java.basics.index.SegmentOffsetInfo;
-
-public class SegmentIndex extends MapBasedKvsIndex<String, SegmentOffsetInfo> {
-}
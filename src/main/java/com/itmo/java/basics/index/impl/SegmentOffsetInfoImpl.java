@@ -3,12 +3,19 @@ package com.itmo.java.basics.index.impl;
 import com.itmo.java.basics.index.SegmentOffsetInfo;
 
 public class SegmentOffsetInfoImpl implements SegmentOffsetInfo {
+    private final int segmentId;
     private final long offset;
 
-    public SegmentOffsetInfoImpl(long offset) {
+    public SegmentOffsetInfoImpl(int segmentId, long offset) {
+        this.segmentId = segmentId;
         this.offset = offset;
     }
 
+    @Override
+    public int getSegmentId() {
+        return segmentId;
+    }
+
     @Override
     public long getOffset() {
         return this.offset;
@@ -1,6 +0,0 @@
-package com.itmo.java.basics.index.impl;
-
-import com.itmo.java.basics.logic.Segment;
-
-public class TableIndex extends MapBasedKvsIndex<String, Segment> {
-}
@@ -0,0 +1,357 @@
+package com.itmo.java.basics.index.impl;
+
+import com.itmo.java.basics.exceptions.CorruptedRecordException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Снимок индекса таблицы ({@link InMemoryTableIndex}) на диске вместе с позицией в сегментах, которую он покрывает.
+ * При старте индекс загружается из снимка массивами, а из сегментов читаются только записи, дописанные после него.
+ * Номер сегмента в расположениях ключей - его порядковый номер в списке сегментов снимка.
+ * Формат:
+ * - MAGIC, версия
+ * - количество сегментов; для каждого: длина имени, имя (UTF-8), до какого смещения записи сегмента есть в снимке
+ * - емкость и размер хэш-таблицы, занятая часть последней страницы арены, байты арены, из них удаленных, количество страниц
+ * - массивы хэшей, расположений и ссылок на ключи
+ * - страницы арены: размер страницы, занятые байты
+ * - CRC32C всего предыдущего содержимого
+ * Снимок пишется во временный файл, сбрасывается на диск и атомарно переименовывается
+ */
+public class TableIndexCheckpoint {
+    public static final String FILE_NAME = "index.checkpoint";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x4b434b50;
+    private static final int VERSION = 1;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_NAME_LENGTH = 4096;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private final Path path;
+    private final List<String> segmentNames;
+    private final long[] indexedSizes;
+
+    private TableIndexCheckpoint(Path path, List<String> segmentNames, long[] indexedSizes) {
+        this.path = path;
+        this.segmentNames = segmentNames;
+        this.indexedSizes = indexedSizes;
+    }
+
+    /**
+     * @return {@code true} - если файл с таким именем является снимком индекса или его временной копией
+     */
+    public static boolean isCheckpointFile(String fileName) {
+        return fileName.equals(FILE_NAME) || fileName.equals(FILE_NAME + TEMP_SUFFIX);
+    }
+
+    /**
+     * @return имена сегментов, записи которых есть в снимке, в порядке их появления
+     */
+    public List<String> getSegmentNames() {
+        return segmentNames;
+    }
+
+    /**
+     * @return до какого смещения записи сегмента с указанным порядковым номером есть в снимке
+     */
+    public long getIndexedSize(int segment) {
+        return indexedSizes[segment];
+    }
+
+    /**
+     * Читает из снимка только список сегментов, чтобы проверить, подходит ли он к файлам таблицы
+     *
+     * @return снимок или {@code null}, если его нет
+     * @throws CorruptedRecordException если снимок не удается разобрать
+     * @throws IOException              если произошла ошибка ввода-вывода
+     */
+    public static TableIndexCheckpoint open(Path tablePath) throws IOException {
+        Path path = tablePath.resolve(FILE_NAME);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Input input = new Input(channel);
+            List<String> segmentNames = new ArrayList<>();
+            long[] indexedSizes = readSegments(input, segmentNames);
+            return new TableIndexCheckpoint(path, segmentNames, indexedSizes);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static long[] readSegments(Input input, List<String> segmentNames) throws IOException {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw new CorruptedRecordException("unknown index checkpoint format");
+        }
+        int segmentCount = input.readInt();
+        if (segmentCount < 0) {
+            throw new CorruptedRecordException("invalid segment count " + segmentCount);
+        }
+        long[] indexedSizes = new long[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            int nameLength = input.readLength();
+            if (nameLength > MAX_NAME_LENGTH) {
+                throw new CorruptedRecordException("invalid segment name length " + nameLength);
+            }
+            byte[] name = input.readBytes(new byte[nameLength], nameLength);
+            segmentNames.add(new String(name, StandardCharsets.UTF_8));
+            indexedSizes[i] = input.readLong();
+        }
+        return indexedSizes;
+    }
+
+    /**
+     * Заменяет содержимое индекса снимком. Индекс меняется только после проверки контрольной суммы
+     *
+     * @throws CorruptedRecordException если снимок поврежден
+     * @throws IOException              если произошла ошибка ввода-вывода
+     */
+    public void loadInto(InMemoryTableIndex index) throws IOException {
+        InMemoryTableIndex.Snapshot snapshot;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Input input = new Input(channel);
+            readSegments(input, new ArrayList<>());
+            int capacity = input.readLength();
+            int size = input.readLength();
+            int currentPagePosition = input.readLength();
+            long arenaBytes = input.readLong();
+            long garbageBytes = input.readLong();
+            int pageCount = input.readLength();
+            if (Integer.bitCount(capacity) != 1 || capacity > MAX_CAPACITY || size > capacity) {
+                throw new CorruptedRecordException("invalid index capacity " + capacity + " for " + size + " keys");
+            }
+            int[] hashes = input.readInts(new int[capacity]);
+            long[] locations = input.readLongs(new long[capacity]);
+            long[] keyPositions = input.readLongs(new long[capacity]);
+            List<byte[]> pages = new ArrayList<>(pageCount);
+            for (int i = 0; i < pageCount; i++) {
+                byte[] page = new byte[input.readLength()];
+                int used = i == pageCount - 1 ? currentPagePosition : page.length;
+                if (used > page.length) {
+                    throw new CorruptedRecordException("invalid arena page size " + page.length);
+                }
+                pages.add(input.readBytes(page, used));
+            }
+            int expectedCrc = (int) input.crc.getValue();
+            if (input.readInt() != expectedCrc) {
+                throw new CorruptedRecordException("checksum mismatch in index checkpoint " + path);
+            }
+            snapshot = new InMemoryTableIndex.Snapshot(hashes, locations, keyPositions, size, pages,
+                    currentPagePosition, arenaBytes, garbageBytes);
+        }
+        index.restore(snapshot);
+    }
+
+    /**
+     * Записывает снимок индекса в директорию таблицы
+     *
+     * @param segmentNames имена сегментов по номерам, которые использует снимок
+     * @param indexedSizes до какого смещения записи каждого сегмента есть в снимке
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    public static void write(Path tablePath, List<String> segmentNames, long[] indexedSizes,
+                             InMemoryTableIndex.Snapshot snapshot) throws IOException {
+        Path tempPath = tablePath.resolve(FILE_NAME + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output output = new Output(channel);
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(segmentNames.size());
+            for (int i = 0; i < segmentNames.size(); i++) {
+                byte[] name = segmentNames.get(i).getBytes(StandardCharsets.UTF_8);
+                output.writeInt(name.length);
+                output.writeBytes(name, name.length);
+                output.writeLong(indexedSizes[i]);
+            }
+            output.writeInt(snapshot.hashes.length);
+            output.writeInt(snapshot.size);
+            output.writeInt(snapshot.currentPagePosition);
+            output.writeLong(snapshot.arenaBytes);
+            output.writeLong(snapshot.garbageBytes);
+            output.writeInt(snapshot.pages.size());
+            output.writeInts(snapshot.hashes);
+            output.writeLongs(snapshot.locations);
+            output.writeLongs(snapshot.keyPositions);
+            for (int i = 0; i < snapshot.pages.size(); i++) {
+                byte[] page = snapshot.pages.get(i);
+                output.writeInt(page.length);
+                output.writeBytes(page, i == snapshot.pages.size() - 1 ? snapshot.currentPagePosition : page.length);
+            }
+            output.flush();
+            output.writeInt((int) output.crc.getValue());
+            output.flush();
+            channel.force(true);
+        }
+        Files.move(tempPath, tablePath.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Последовательная запись большими блоками с подсчетом контрольной суммы
+     */
+    private static class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+        private final CRC32C crc = new CRC32C();
+
+        Output(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void writeInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void writeLong(long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void writeInts(int[] values) throws IOException {
+            for (int from = 0; from < values.length; ) {
+                ensure(Integer.BYTES);
+                int count = Math.min(values.length - from, buffer.remaining() / Integer.BYTES);
+                buffer.asIntBuffer().put(values, from, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                from += count;
+            }
+        }
+
+        void writeLongs(long[] values) throws IOException {
+            for (int from = 0; from < values.length; ) {
+                ensure(Long.BYTES);
+                int count = Math.min(values.length - from, buffer.remaining() / Long.BYTES);
+                buffer.asLongBuffer().put(values, from, count);
+                buffer.position(buffer.position() + count * Long.BYTES);
+                from += count;
+            }
+        }
+
+        void writeBytes(byte[] values, int length) throws IOException {
+            for (int from = 0; from < length; ) {
+                ensure(1);
+                int count = Math.min(length - from, buffer.remaining());
+                buffer.put(values, from, count);
+                from += count;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * Отдает накопленное в файл, контрольная сумма считается по тому, что уже записано
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Последовательное чтение большими блоками с подсчетом контрольной суммы прочитанного
+     */
+    private static class Input {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE).limit(0);
+        private final CRC32C crc = new CRC32C();
+
+        Input(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        int readInt() throws IOException {
+            ensure(Integer.BYTES);
+            crc.update(buffer.duplicate().limit(buffer.position() + Integer.BYTES));
+            return buffer.getInt();
+        }
+
+        /**
+         * @return неотрицательное число
+         */
+        int readLength() throws IOException {
+            int length = readInt();
+            if (length < 0) {
+                throw new CorruptedRecordException("invalid length " + length + " in index checkpoint");
+            }
+            return length;
+        }
+
+        long readLong() throws IOException {
+            ensure(Long.BYTES);
+            crc.update(buffer.duplicate().limit(buffer.position() + Long.BYTES));
+            return buffer.getLong();
+        }
+
+        int[] readInts(int[] values) throws IOException {
+            for (int from = 0; from < values.length; ) {
+                ensure(Integer.BYTES);
+                int count = Math.min(values.length - from, buffer.remaining() / Integer.BYTES);
+                crc.update(buffer.duplicate().limit(buffer.position() + count * Integer.BYTES));
+                buffer.asIntBuffer().get(values, from, count);
+                buffer.position(buffer.position() + count * Integer.BYTES);
+                from += count;
+            }
+            return values;
+        }
+
+        long[] readLongs(long[] values) throws IOException {
+            for (int from = 0; from < values.length; ) {
+                ensure(Long.BYTES);
+                int count = Math.min(values.length - from, buffer.remaining() / Long.BYTES);
+                crc.update(buffer.duplicate().limit(buffer.position() + count * Long.BYTES));
+                buffer.asLongBuffer().get(values, from, count);
+                buffer.position(buffer.position() + count * Long.BYTES);
+                from += count;
+            }
+            return values;
+        }
+
+        /**
+         * Читает {@code length} байт в начало массива
+         */
+        byte[] readBytes(byte[] values, int length) throws IOException {
+            for (int from = 0; from < length; ) {
+                ensure(1);
+                int count = Math.min(length - from, buffer.remaining());
+                crc.update(buffer.duplicate().limit(buffer.position() + count));
+                buffer.get(values, from, count);
+                from += count;
+            }
+            return values;
+        }
+
+        /**
+         * Дочитывает файл так, чтобы в буфере было не меньше {@code bytes} байт
+         */
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new CorruptedRecordException("index checkpoint is truncated");
+                }
+            }
+            buffer.flip();
+        }
+    }
+}
@@ -1,6 +1,6 @@
 package com.itmo.java.basics.initialization;
 
-import com.itmo.java.basics.index.impl.SegmentIndex;
+import com.itmo.java.basics.logic.io.SegmentBloomFilter;
 
 import java.nio.file.Path;
 
@@ -20,16 +20,39 @@ public interface SegmentInitializationContext {
     Path getSegmentPath();
 
     /**
-     * Возвращает индекс инициализируемого сегмента.
+     * Возвращает текущий размер инициализируемого сегмента.
      *
-     * @return индекс инициализируемого сегмента
+     * @return текущий размер инициализируемого сегмента
      */
-    SegmentIndex getIndex();
+    long getCurrentSize();
 
     /**
-     * Возвращает текущий размер инициализируемого сегмента.
+     * Возвращает версию формата файла сегмента (см. {@link com.itmo.java.basics.logic.io.SegmentFormat}).
      *
-     * @return текущий размер инициализируемого сегмента
+     * @return версию формата файла сегмента
      */
-    long getCurrentSize();
+    int getFormatVersion();
+
+    /**
+     * Является ли сегмент последним в таблице, то есть тем, в который шла запись.
+     * Только у него оборванный хвост восстанавливается обрезанием файла
+     *
+     * @return {@code true} - если сегмент последний в таблице
+     */
+    boolean isLastSegment();
+
+    /**
+     * Возвращает фильтр Блума сегмента, прочитанный или построенный при инициализации.
+     *
+     * @return фильтр Блума сегмента или {@code null}, если его нет
+     */
+    SegmentBloomFilter getBloomFilter();
+
+    /**
+     * Возвращает, до какого смещения записи сегмента уже есть в индексе таблицы, загруженном из снимка
+     * ({@link com.itmo.java.basics.index.impl.TableIndexCheckpoint}).
+     *
+     * @return смещение, до которого записи сегмента не нужно переносить в индекс, 0 - если снимка нет
+     */
+    long getIndexedSize();
 }
@@ -1,9 +1,10 @@
 package com.itmo.java.basics.initialization;
 
-import com.itmo.java.basics.index.impl.TableIndex;
+import com.itmo.java.basics.index.TableIndex;
 import com.itmo.java.basics.logic.Segment;
 
 import java.nio.file.Path;
+import java.util.List;
 
 public interface TableInitializationContext {
     /**
@@ -40,4 +41,11 @@ public interface TableInitializationContext {
      * @param segment новый сегмент
      */
     void updateCurrentSegment(Segment segment);
+
+    /**
+     * Возвращает все сегменты, переданные в {@link #updateCurrentSegment(Segment)}, в порядке их появления.
+     *
+     * @return сегменты инициализируемой таблицы
+     */
+    List<Segment> getSegments();
 }
@@ -31,8 +31,11 @@ public class DatabaseInitializationContextImpl implements DatabaseInitialization
         return mapOfTablesContext;
     }
 
+    /**
+     * Таблицы базы восстанавливаются параллельно, поэтому добавление синхронизировано
+     */
     @Override
-    public void addTable(Table table){
+    public synchronized void addTable(Table table){
         if (mapOfTablesContext.containsKey(table))
             throw new RuntimeException("already have table: " + table.getName() + "in database " + dbName);
         mapOfTablesContext.put(table.getName(), table);
@@ -1,28 +1,50 @@
 package com.itmo.java.basics.initialization.impl;
 
+import com.itmo.java.basics.config.StorageConfig;
+import com.itmo.java.basics.engine.StorageEngine;
+import com.itmo.java.basics.engine.impl.TableOpener;
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.index.impl.TableIndex;
 import com.itmo.java.basics.initialization.InitializationContext;
 import com.itmo.java.basics.initialization.Initializer;
+import com.itmo.java.basics.logic.Table;
 import com.itmo.java.basics.logic.impl.DatabaseImpl;
+import com.itmo.java.basics.logic.impl.LazyTable;
+import com.itmo.java.basics.logic.impl.StorageContext;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
 
 public class DatabaseInitializer implements Initializer {
-    private final TableInitializer tableInitializer;
+    private static final Logger LOGGER = Logger.getLogger(DatabaseInitializer.class.getName());
+
+    public DatabaseInitializer() {
+    }
+
+    /**
+     * Цепочка инициализации таблицы задается движком хранения таблицы ({@link StorageEngine#getTableInitializer()}),
+     * переданный инициализатор не используется
+     */
+    @Deprecated
     public DatabaseInitializer(TableInitializer tableInitializer) {
-        this.tableInitializer = tableInitializer;
+        this();
     }
 
     /**
      * Добавляет в контекст информацию об инициализируемой бд.
-     * Запускает инициализацию всех таблиц это базы
+     * Запускает инициализацию всех таблиц это базы цепочкой инициализации движка хранения таблицы.
+     * Таблицы восстанавливаются параллельно (см. {@link DatabaseServerInitializer}), сегменты одной таблицы -
+     * последовательно в порядке появления.
+     * Если включено {@link StorageConfig#isLazyTableOpen()}, таблицы только регистрируются по списку директорий
+     * и открываются при первом обращении ({@link LazyTable}). Если включена выгрузка простаивающих таблиц,
+     * открытые таблицы оборачиваются в {@link LazyTable}
      *
      * @param initialContext контекст с информацией об инициализируемой бд и об окружении
      * @throws DatabaseException если в контексте лежит неправильный путь к базе, невозможно прочитать содержимого папки,
-     *  или если возникла ошибка дочерних инициализаторов
+     *  у таблицы неизвестный движок или если возникла ошибка дочерних инициализаторов
      */
     @Override
     public void perform(InitializationContext initialContext) throws DatabaseException {
@@ -31,22 +53,35 @@ public class DatabaseInitializer implements Initializer {
         if (!(f.exists() && f.isDirectory())) {
             throw new DatabaseException("No such database from context");
         }
+        StorageContext storageContext = initialContext.executionEnvironment().getStorageContext();
+        StorageConfig config = storageContext.getConfig();
+        String dbName = initialContext.currentDbContext().getDbName();
+        long startNanos = System.nanoTime();
         String[] listOfTablesNames = f.list();
         Arrays.sort(listOfTablesNames);
+        List<RecoveryTasks.RecoveryTask> tables = new ArrayList<>();
         for (String tableName : listOfTablesNames) {
-            if (new File(String.valueOf(pathToDatabase.resolve(tableName))).isDirectory()) {
-                TableIndex tableIndex = new TableIndex();
-                TableInitializationContextImpl currentTableContext = new TableInitializationContextImpl(tableName, pathToDatabase,
-                        tableIndex);
-                InitializationContextImpl initialContext2 = new InitializationContextImpl(initialContext.executionEnvironment(),
-                        initialContext.currentDbContext(), currentTableContext, null);
-                try {
-                    tableInitializer.perform(initialContext2);
-                } catch (DatabaseException dex) {
-                    throw new DatabaseException("DatabaseExeption in DatabaseInitializer perform ", dex);
-                }
+            Path tablePath = pathToDatabase.resolve(tableName);
+            if (!new File(String.valueOf(tablePath)).isDirectory()) {
+                continue;
+            }
+            LazyTable.Opener opener = () -> TableOpener.open(dbName, pathToDatabase, tableName, storageContext);
+            if (config.isLazyTableOpen()) {
+                initialContext.currentDbContext().addTable(LazyTable.unopened(tableName, opener, storageContext));
+                continue;
             }
+            tables.add(() -> {
+                Table table = opener.open();
+                initialContext.currentDbContext().addTable(config.getTableIdleUnloadMillis() > 0
+                        ? LazyTable.opened(tableName, opener, table, storageContext)
+                        : table);
+            });
         }
-        initialContext.executionEnvironment().addDatabase(DatabaseImpl.initializeFromContext(initialContext.currentDbContext()));
+        RecoveryTasks.runAll(tables, config.getRecoveryThreads());
+        initialContext.executionEnvironment().addDatabase(DatabaseImpl.initializeFromContext(initialContext.currentDbContext(),
+                storageContext));
+        LOGGER.info(() -> String.format("recovered database %s (%d tables%s) in %d ms", dbName,
+                initialContext.currentDbContext().getTables().size(), config.isLazyTableOpen() ? ", opened lazily" : "",
+                (System.nanoTime() - startNanos) / 1_000_000));
     }
 }
@@ -6,8 +6,13 @@ import com.itmo.java.basics.initialization.Initializer;
 
 import java.io.File;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
 
 public class DatabaseServerInitializer implements Initializer {
+    private static final Logger LOGGER = Logger.getLogger(DatabaseServerInitializer.class.getName());
+
     private final DatabaseInitializer dbInitializer;
 
     public DatabaseServerInitializer(DatabaseInitializer databaseInitializer) {
@@ -16,7 +21,10 @@ public class DatabaseServerInitializer implements Initializer {
 
     /**
      * Если заданная в окружении директория не существует - создает ее
-     * Добавляет информацию о существующих в директории базах, начинает их инициализацию
+     * Добавляет информацию о существующих в директории базах, начинает их инициализацию.
+     * Базы инициализируются параллельно в {@link java.util.concurrent.ForkJoinPool} на
+     * {@link com.itmo.java.basics.config.StorageConfig#getRecoveryThreads()} потоках, в том же пуле параллельно
+     * восстанавливаются и их таблицы
      *
      * @param context контекст, содержащий информацию об окружении
      * @throws DatabaseException если произошла ошибка при создании директории, ее обходе или ошибка инициализации бд
@@ -29,17 +37,25 @@ public class DatabaseServerInitializer implements Initializer {
             f.mkdir();
             return;
         }
+        long startNanos = System.nanoTime();
         String[] listOfDatabaseNames = f.list();
+        List<RecoveryTasks.RecoveryTask> databases = new ArrayList<>();
         for (String dbName : listOfDatabaseNames) {
             if (new File(String.valueOf(pathToEnvironment.resolve(dbName))).isDirectory()) {
-                DatabaseInitializationContextImpl currentDbContext = new DatabaseInitializationContextImpl(dbName, pathToEnvironment);
-                InitializationContextImpl context2 = new InitializationContextImpl(context.executionEnvironment(), currentDbContext, null, null);
-                try {
-                    dbInitializer.perform(context2);
-                } catch (DatabaseException dex) {
-                    throw new DatabaseException("Exeption in Databasetinit perform", dex);
-                }
+                databases.add(() -> {
+                    DatabaseInitializationContextImpl currentDbContext = new DatabaseInitializationContextImpl(dbName, pathToEnvironment);
+                    InitializationContextImpl context2 = new InitializationContextImpl(context.executionEnvironment(), currentDbContext, null, null);
+                    try {
+                        dbInitializer.perform(context2);
+                    } catch (DatabaseException dex) {
+                        throw new DatabaseException("Exeption in Databasetinit perform", dex);
+                    }
+                });
             }
         }
+        int threads = context.executionEnvironment().getStorageContext().getConfig().getRecoveryThreads();
+        RecoveryTasks.runAll(databases, threads);
+        LOGGER.info(() -> String.format("recovered %d databases in %d ms on %d threads", databases.size(),
+                (System.nanoTime() - startNanos) / 1_000_000, threads));
     }
-}
\ No newline at end of file
+}
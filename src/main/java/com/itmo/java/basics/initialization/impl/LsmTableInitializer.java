@@ -0,0 +1,21 @@
+package com.itmo.java.basics.initialization.impl;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.initialization.InitializationContext;
+import com.itmo.java.basics.initialization.Initializer;
+import com.itmo.java.basics.logic.impl.LsmTable;
+
+public class LsmTableInitializer implements Initializer {
+    /**
+     * Открывает LSM-таблицу по ее манифесту (см. {@link LsmTable#initialize}) и добавляет ее в контекст бд.
+     * Сегменты LSM-таблицы перечислены в манифесте, поэтому инициализатор сегментов не нужен
+     *
+     * @param context контекст с информацией об инициализируемой бд, окружении, таблицы
+     * @throws DatabaseException если манифест или сегменты повреждены или произошла ошибка ввода-вывода
+     */
+    @Override
+    public void perform(InitializationContext context) throws DatabaseException {
+        context.currentDbContext().addTable(LsmTable.initialize(context.currentTableContext().getTableName(),
+                context.currentTableContext().getTablePath(), context.executionEnvironment().getStorageContext()));
+    }
+}
@@ -0,0 +1,19 @@
+package com.itmo.java.basics.initialization.impl;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.initialization.InitializationContext;
+import com.itmo.java.basics.initialization.Initializer;
+import com.itmo.java.basics.logic.impl.MemoryTable;
+
+public class MemoryTableInitializer implements Initializer {
+    /**
+     * Добавляет в контекст бд пустую таблицу в памяти (см. {@link MemoryTable}): ее данные не сохраняются на диск
+     *
+     * @param context контекст с информацией об инициализируемой бд, окружении, таблицы
+     */
+    @Override
+    public void perform(InitializationContext context) throws DatabaseException {
+        context.currentDbContext().addTable(MemoryTable.initialize(context.currentDbContext().getDbName(),
+                context.currentTableContext().getTableName(), context.executionEnvironment().getStorageContext()));
+    }
+}
@@ -0,0 +1,101 @@
+package com.itmo.java.basics.initialization.impl;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Параллельный запуск независимых шагов восстановления (баз данных, таблиц) в {@link ForkJoinPool}.
+ * Шаг, запущенный из потока пула, запускает вложенные шаги в том же пуле: ожидающий поток сам берет
+ * их в работу, поэтому вложенность не занимает лишних потоков
+ */
+class RecoveryTasks {
+    private RecoveryTasks() {
+    }
+
+    interface RecoveryTask {
+        void run() throws DatabaseException;
+    }
+
+    /**
+     * Выполняет все шаги и дожидается их. Если шаги упали, выбрасывается ошибка первого из них,
+     * ошибки остальных добавлены к ней как подавленные
+     *
+     * @param parallelism сколько потоков использовать, если вызов сделан не из потока пула
+     * @throws DatabaseException ошибка первого упавшего шага
+     */
+    static void runAll(List<RecoveryTask> tasks, int parallelism) throws DatabaseException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        if (ForkJoinTask.inForkJoinPool()) {
+            runSteps(tasks);
+            return;
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            DatabaseException[] failure = new DatabaseException[1];
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    try {
+                        runSteps(tasks);
+                    } catch (DatabaseException e) {
+                        failure[0] = e;
+                    }
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void runSteps(List<RecoveryTask> tasks) throws DatabaseException {
+        List<Step> steps = new ArrayList<>();
+        for (RecoveryTask task : tasks) {
+            steps.add(new Step(task));
+        }
+        ForkJoinTask.invokeAll(steps);
+        DatabaseException failure = null;
+        for (Step step : steps) {
+            if (step.failure == null) {
+                continue;
+            }
+            if (failure == null) {
+                failure = step.failure;
+            } else {
+                failure.addSuppressed(step.failure);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static class Step extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RecoveryTask task;
+        private DatabaseException failure;
+
+        Step(RecoveryTask task) {
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                task.run();
+            } catch (DatabaseException e) {
+                failure = e;
+            }
+        }
+    }
+}
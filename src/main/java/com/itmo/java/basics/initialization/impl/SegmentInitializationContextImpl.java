@@ -1,7 +1,8 @@
 package com.itmo.java.basics.initialization.impl;
 
-import com.itmo.java.basics.index.impl.SegmentIndex;
 import com.itmo.java.basics.initialization.SegmentInitializationContext;
+import com.itmo.java.basics.logic.io.SegmentBloomFilter;
+import com.itmo.java.basics.logic.io.SegmentFormat;
 
 import java.nio.file.Path;
 
@@ -10,12 +11,25 @@ public class SegmentInitializationContextImpl implements SegmentInitializationCo
     private final String segmentName;
     private final Path segmentPath;
     private final long currentSize;
-    private final SegmentIndex index;
-    public SegmentInitializationContextImpl(String segmentName, Path segmentPath, long currentSize, SegmentIndex index) {
+    private final int formatVersion;
+    private final boolean lastSegment;
+    private final SegmentBloomFilter bloomFilter;
+    private final long indexedSize;
+
+    public SegmentInitializationContextImpl(String segmentName, Path segmentPath, long currentSize,
+                                            int formatVersion, boolean lastSegment) {
+        this(segmentName, segmentPath, currentSize, formatVersion, lastSegment, null);
+    }
+
+    public SegmentInitializationContextImpl(String segmentName, Path segmentPath, long currentSize,
+                                            int formatVersion, boolean lastSegment, SegmentBloomFilter bloomFilter) {
         this.segmentName = segmentName;
         this.segmentPath = segmentPath;
         this.currentSize = currentSize;
-        this.index = index;
+        this.formatVersion = formatVersion;
+        this.lastSegment = lastSegment;
+        this.bloomFilter = bloomFilter;
+        indexedSize = 0;
     }
 
     /**
@@ -25,11 +39,31 @@ public class SegmentInitializationContextImpl implements SegmentInitializationCo
         this.segmentName = segmentName;
         segmentPath = tablePath.resolve(segmentName);
         this.currentSize = currentSize;
-        index = null;
+        formatVersion = SegmentFormat.CURRENT_VERSION;
+        lastSegment = false;
+        bloomFilter = null;
+        indexedSize = 0;
     }
 
     public SegmentInitializationContextImpl(String segmentName, Path tablePath) {
-        this(segmentName, tablePath.resolve(segmentName), 0, new SegmentIndex());
+        this(segmentName, tablePath.resolve(segmentName), 0, SegmentFormat.CURRENT_VERSION, false);
+    }
+
+    public SegmentInitializationContextImpl(String segmentName, Path tablePath, boolean lastSegment) {
+        this(segmentName, tablePath, lastSegment, 0);
+    }
+
+    /**
+     * @param indexedSize до какого смещения записи сегмента уже есть в индексе таблицы
+     */
+    public SegmentInitializationContextImpl(String segmentName, Path tablePath, boolean lastSegment, long indexedSize) {
+        this.segmentName = segmentName;
+        segmentPath = tablePath.resolve(segmentName);
+        currentSize = 0;
+        formatVersion = SegmentFormat.CURRENT_VERSION;
+        this.lastSegment = lastSegment;
+        bloomFilter = null;
+        this.indexedSize = indexedSize;
     }
 
     @Override
@@ -43,12 +77,27 @@ public class SegmentInitializationContextImpl implements SegmentInitializationCo
     }
 
     @Override
-    public SegmentIndex getIndex() {
-        return index;
+    public long getCurrentSize() {
+        return currentSize;
+    }
+
+    @Override
+    public int getFormatVersion() {
+        return formatVersion;
     }
 
     @Override
-    public long getCurrentSize() {
-        return currentSize;
+    public boolean isLastSegment() {
+        return lastSegment;
+    }
+
+    @Override
+    public SegmentBloomFilter getBloomFilter() {
+        return bloomFilter;
+    }
+
+    @Override
+    public long getIndexedSize() {
+        return indexedSize;
     }
 }
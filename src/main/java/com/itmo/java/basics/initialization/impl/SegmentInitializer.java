@@ -1,61 +1,199 @@
 package com.itmo.java.basics.initialization.impl;
 
+import com.itmo.java.basics.exceptions.CorruptedRecordException;
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.index.impl.SegmentIndex;
-import com.itmo.java.basics.index.impl.SegmentOffsetInfoImpl;
+import com.itmo.java.basics.index.DatabaseKey;
+import com.itmo.java.basics.index.TableIndex;
 import com.itmo.java.basics.initialization.InitializationContext;
 import com.itmo.java.basics.initialization.Initializer;
-import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.initialization.SegmentInitializationContext;
 import com.itmo.java.basics.logic.Segment;
 import com.itmo.java.basics.logic.impl.SegmentImpl;
-import com.itmo.java.basics.logic.io.DatabaseInputStream;
+import com.itmo.java.basics.logic.impl.SortedSegment;
+import com.itmo.java.basics.logic.impl.StorageContext;
+import com.itmo.java.basics.logic.io.SegmentBloomFilter;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
+import com.itmo.java.basics.logic.io.SegmentScanner;
 
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.Optional;
-import java.util.Vector;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class SegmentInitializer implements Initializer {
+    private static final Logger LOGGER = Logger.getLogger(SegmentInitializer.class.getName());
+    private static final int REMOVED_OBJECT_SIZE = -1;
 
     /**
      * Добавляет в контекст информацию об инициализируемом сегменте.
-     * Составляет индекс сегмента
-     * Обновляет инфу в индексе таблицы
+     * Переносит записи сегмента в индекс таблицы: по hint-файлу, если он есть и цел, иначе полным чтением сегмента
+     * без разбора значений ({@link SegmentScanner}), после которого для read-only сегмента пишется hint-файл.
+     * Сегменты инициализируются от старых к новым, поэтому запись значения заменяет расположение ключа, а надгробие удаляет ключ из индекса.
+     * Read-only - любой сегмент, кроме последнего (в том числе результат компактизации, который меньше максимального
+     * размера), и последний, если он заполнен.
+     * Номер сегмента в индексе - его порядковый номер в таблице.
+     * Фильтр Блума сегмента читается из файла, а если его нет - строится по тем же записям (только для read-only сегмента).
+     * Если индекс таблицы загружен из снимка ({@link SegmentInitializationContext#getIndexedSize()}), в него переносятся
+     * только записи после покрытого снимком смещения, и если фильтр строить не нужно, читаются только они.
+     * Отсортированный сегмент ({@link SortedSegment}) в индекс не переносится, а надгробие ключа, запись которого
+     * есть в отсортированном сегменте, оставляет в индексе пометку {@link TableIndex#DELETED}.
+     * Если при полном чтении последнего сегмента таблицы встречена оборванная или поврежденная запись,
+     * файл обрезается по началу этой записи: это хвост, не дописанный до сбоя
      *
      * @param context контекст с информацией об инициализируемой бд и об окружении
      * @throws DatabaseException если в контексте лежит неправильный путь к сегменту, невозможно прочитать содержимое. Ошибка в содержании
      */
     @Override
     public void perform(InitializationContext context) throws DatabaseException {
-        Path pathToSegment = context.currentSegmentContext().getSegmentPath();
-        String pathSeg = String.valueOf(pathToSegment);
-        SegmentIndex segIndex = new SegmentIndex();
-        Vector<String> vectorOfKeys = new Vector<>();
+        SegmentInitializationContext segmentContext = context.currentSegmentContext();
+        Path pathToSegment = segmentContext.getSegmentPath();
+        TableIndex tableIndex = context.currentTableContext().getTableIndex();
+        int segmentId = context.currentTableContext().getSegments().size();
+        StorageContext storageContext = context.executionEnvironment().getStorageContext();
+        SortedSegment sortedSegment = sortedSegmentOf(context);
         long currentOffset = 0;
-        try (FileInputStream segmentInputStream = new FileInputStream(pathSeg)) {
-            DatabaseInputStream dataInputStream = new DatabaseInputStream(segmentInputStream);
-            Optional<DatabaseRecord> tempRec = dataInputStream.readDbUnit();
-            while (!tempRec.isEmpty()) {
-                segIndex.onIndexedEntityUpdated(new String(tempRec.get().getKey()),
-                        new SegmentOffsetInfoImpl(currentOffset));
-                vectorOfKeys.addElement(new String(tempRec.get().getKey()));
-                currentOffset += tempRec.get().size();
-                tempRec = dataInputStream.readDbUnit();
+        try {
+            if (SortedSegment.isSortedSegment(pathToSegment)) {
+                context.currentTableContext().updateCurrentSegment(
+                        SortedSegment.open(segmentContext.getSegmentName(), pathToSegment, storageContext));
+                return;
+            }
+            long segmentSize = Files.size(pathToSegment);
+            int formatVersion;
+            try (FileChannel channel = FileChannel.open(pathToSegment, StandardOpenOption.READ)) {
+                formatVersion = SegmentFormat.readVersion(channel);
+            } catch (CorruptedRecordException e) {
+                truncateTail(segmentContext, 0, e);
+                formatVersion = SegmentFormat.CURRENT_VERSION;
+                segmentSize = 0;
+            }
+            SegmentBloomFilter bloomFilter = SegmentBloomFilter.load(pathToSegment, segmentSize);
+            boolean readOnly = !segmentContext.isLastSegment() || segmentSize >= storageContext.getConfig()
+                    .getSegmentMaxBytes(context.currentDbContext().getDbName(), context.currentTableContext().getTableName());
+            SegmentBloomFilter.Builder bloomFilterBuilder = bloomFilter == null && readOnly
+                    ? SegmentImpl.newBloomFilterBuilder(storageContext)
+                    : null;
+            long indexedSize = segmentContext.getIndexedSize();
+            boolean tailOnly = indexedSize > 0 && bloomFilterBuilder == null;
+            SegmentHintFile.EntryVisitor indexUpdater = (key, offset, valueSize) -> {
+                if (offset >= indexedSize) {
+                    updateIndex(tableIndex, sortedSegment, key, segmentId, offset, valueSize != REMOVED_OBJECT_SIZE);
+                }
+                if (bloomFilterBuilder != null) {
+                    bloomFilterBuilder.add(key);
+                }
+            };
+            boolean loadedFromHint = !tailOnly && SegmentHintFile.load(pathToSegment, segmentSize, indexUpdater);
+            SegmentHintFile.Builder hintBuilder = null;
+            if (loadedFromHint) {
+                currentOffset = segmentSize;
+            } else if (segmentSize > 0) {
+                SegmentHintFile.Builder newHintBuilder = tailOnly ? null : new SegmentHintFile.Builder();
+                hintBuilder = newHintBuilder;
+                try (FileChannel channel = FileChannel.open(pathToSegment, StandardOpenOption.READ)) {
+                    SegmentScanner scanner = new SegmentScanner(channel, formatVersion, segmentSize);
+                    if (tailOnly) {
+                        scanner.seek(indexedSize);
+                    }
+                    try {
+                        scanner.scan((key, offset, valueSize) -> {
+                            indexUpdater.visit(key, offset, valueSize);
+                            if (newHintBuilder != null) {
+                                newHintBuilder.add(key, offset, valueSize);
+                            }
+                        });
+                    } catch (CorruptedRecordException e) {
+                        truncateTail(segmentContext, scanner.getOffset(), e);
+                    }
+                    currentOffset = scanner.getOffset();
+                }
+            }
+            boolean bloomFilterBuilt = bloomFilterBuilder != null;
+            if (bloomFilterBuilt) {
+                bloomFilter = bloomFilterBuilder.build();
             }
             SegmentInitializationContextImpl currentSegmentCont = new SegmentInitializationContextImpl(
-                    context.currentSegmentContext().getSegmentName(), pathToSegment,
-                    currentOffset, segIndex);
-            Segment segment = SegmentImpl.initializeFromContext(currentSegmentCont);
-            context.currentTableContext().updateCurrentSegment(segment);
-            for (String vectorOfKey : vectorOfKeys) {
-                context.currentTableContext().getTableIndex().onIndexedEntityUpdated(vectorOfKey, segment);
+                    segmentContext.getSegmentName(), pathToSegment, currentOffset, formatVersion,
+                    segmentContext.isLastSegment(), bloomFilter);
+            Segment segment = SegmentImpl.initializeFromContext(currentSegmentCont, storageContext);
+            if (hintBuilder != null && segment.isReadOnly()) {
+                writeHint(hintBuilder, pathToSegment, currentOffset);
             }
-        } catch (FileNotFoundException e) {
-            throw new DatabaseException("File " + context.currentSegmentContext().getSegmentName() + " not found", e);
+            if (bloomFilterBuilt && segment.isReadOnly()) {
+                writeBloomFilter(bloomFilter, pathToSegment, currentOffset);
+            }
+            context.currentTableContext().updateCurrentSegment(segment);
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            throw new DatabaseException("File " + segmentContext.getSegmentName() + " not found", e);
+        } catch (IOException e) {
+            throw new DatabaseException("IOexception while reading file " + segmentContext.getSegmentName(), e);
+        }
+    }
+
+    private static void updateIndex(TableIndex tableIndex, SortedSegment sortedSegment, byte[] objectKey, int segmentId,
+                                    long offset, boolean valuePresented) throws IOException {
+        DatabaseKey key = new DatabaseKey(objectKey);
+        if (valuePresented) {
+            tableIndex.put(key, segmentId, offset);
+        } else if (sortedSegment != null && sortedSegment.contains(objectKey)) {
+            tableIndex.markDeleted(key);
+        } else {
+            tableIndex.remove(key);
+        }
+    }
+
+    /**
+     * Отсортированный сегмент может быть только первым в таблице (см. {@link TableInitializer})
+     */
+    private static SortedSegment sortedSegmentOf(InitializationContext context) {
+        List<Segment> segments = context.currentTableContext().getSegments();
+        return !segments.isEmpty() && segments.get(0) instanceof SortedSegment ? (SortedSegment) segments.get(0) : null;
+    }
+
+    /**
+     * Отбрасывает хвост последнего сегмента таблицы, начиная с первой поврежденной записи.
+     * Повреждение в середине таблицы не может быть следствием оборванной записи, поэтому для остальных
+     * сегментов это ошибка
+     */
+    private void truncateTail(SegmentInitializationContext segmentContext, long validSize, CorruptedRecordException cause)
+            throws IOException {
+        if (!segmentContext.isLastSegment()) {
+            throw new IOException("corrupted record at " + validSize + " in segment " + segmentContext.getSegmentName(), cause);
+        }
+        LOGGER.log(Level.WARNING, "segment " + segmentContext.getSegmentName() + " is truncated to " + validSize
+                + " bytes: " + cause.getMessage());
+        try (FileChannel channel = FileChannel.open(segmentContext.getSegmentPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(validSize);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Фильтр, как и hint-файл, только ускоряет работу, поэтому ошибка его записи не прерывает инициализацию
+     */
+    private void writeBloomFilter(SegmentBloomFilter bloomFilter, Path pathToSegment, long segmentSize) {
+        try {
+            bloomFilter.writeFor(pathToSegment, segmentSize);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "can't write bloom filter for segment " + pathToSegment, e);
+        }
+    }
+
+    /**
+     * Hint-файл нужен только для ускорения следующего старта, поэтому ошибка его записи не прерывает инициализацию
+     */
+    private void writeHint(SegmentHintFile.Builder hintBuilder, Path pathToSegment, long segmentSize) {
+        try {
+            hintBuilder.writeFor(pathToSegment, segmentSize);
         } catch (IOException e) {
-            throw new DatabaseException("IOexception while reading file " + context.currentSegmentContext().getSegmentName(), e);
+            LOGGER.log(Level.WARNING, "can't write hint file for segment " + pathToSegment, e);
         }
     }
 }
@@ -1,22 +1,36 @@
 package com.itmo.java.basics.initialization.impl;
 
-import com.itmo.java.basics.index.impl.TableIndex;
+import com.itmo.java.basics.index.TableIndex;
 import com.itmo.java.basics.initialization.TableInitializationContext;
 import com.itmo.java.basics.logic.Segment;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
 
 public class TableInitializationContextImpl implements TableInitializationContext {
     private String tableName;
     private Path tablePath;
     private TableIndex tableIndex;
+    /**
+     * Создает индекс при первом обращении: индекс нужен не каждому движку хранения
+     */
+    private Supplier<TableIndex> tableIndexFactory;
     private Segment currentSegment;
+    private final List<Segment> segments = new ArrayList<>();
     public TableInitializationContextImpl(String tableName, Path databasePath, TableIndex tableIndex) {
         this.tableName = tableName;
         tablePath = databasePath.resolve(tableName);
         this.tableIndex = tableIndex;
     }
 
+    public TableInitializationContextImpl(String tableName, Path databasePath, Supplier<TableIndex> tableIndexFactory) {
+        this.tableName = tableName;
+        tablePath = databasePath.resolve(tableName);
+        this.tableIndexFactory = tableIndexFactory;
+    }
+
     @Override
     public String getTableName() {
         return tableName;
@@ -29,6 +43,9 @@ public class TableInitializationContextImpl implements TableInitializationContex
 
     @Override
     public TableIndex getTableIndex() {
+        if (tableIndex == null && tableIndexFactory != null) {
+            tableIndex = tableIndexFactory.get();
+        }
         return tableIndex;
     }
 
@@ -40,5 +57,11 @@ public class TableInitializationContextImpl implements TableInitializationContex
     @Override
     public void updateCurrentSegment(Segment segment) {
         currentSegment = segment;
+        segments.add(segment);
+    }
+
+    @Override
+    public List<Segment> getSegments() {
+        return segments;
     }
 }
@@ -1,15 +1,33 @@
 package com.itmo.java.basics.initialization.impl;
 
+import com.itmo.java.basics.engine.impl.TableMetadata;
 import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.index.TableIndex;
+import com.itmo.java.basics.index.impl.InMemoryTableIndex;
+import com.itmo.java.basics.index.impl.TableIndexCheckpoint;
 import com.itmo.java.basics.initialization.InitializationContext;
 import com.itmo.java.basics.initialization.Initializer;
+import com.itmo.java.basics.initialization.TableInitializationContext;
+import com.itmo.java.basics.logic.impl.SegmentNames;
+import com.itmo.java.basics.logic.impl.SortedSegment;
 import com.itmo.java.basics.logic.impl.TableImpl;
+import com.itmo.java.basics.logic.io.SegmentBloomFilter;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class TableInitializer implements Initializer {
+    private static final Logger LOGGER = Logger.getLogger(TableInitializer.class.getName());
+    private static final long[] NOT_INDEXED = new long[0];
+
     private final SegmentInitializer segmentInitializer;
     public TableInitializer(SegmentInitializer segmentInitializer) {
         this.segmentInitializer = segmentInitializer;
@@ -17,7 +35,13 @@ public class TableInitializer implements Initializer {
 
     /**
      * Добавляет в контекст информацию об инициализируемой таблице.
-     * Запускает инициализацию всех сегментов в порядке их создания (из имени)
+     * Запускает инициализацию всех сегментов в порядке их создания (из имени, см. {@link SegmentNames#order(String)}).
+     * Поддиректории (например, файлы индекса {@link com.itmo.java.basics.index.impl.MappedTableIndex}) и метаданные таблицы
+     * ({@link TableMetadata}) сегментами не являются.
+     * Если у таблицы есть подходящий снимок индекса ({@link TableIndexCheckpoint}), индекс загружается из него,
+     * и из сегментов читаются только записи, дописанные после снимка.
+     * Отсортированный сегмент содержит все данные сегментов, появившихся до него, поэтому если компактизация
+     * прервалась, не успев удалить их, они удаляются здесь. Недописанные отсортированные сегменты тоже удаляются
      *
      * @param context контекст с информацией об инициализируемой бд, окружении, таблицы
      * @throws DatabaseException если в контексте лежит неправильный путь к таблице, невозможно прочитать содержимого папки,
@@ -30,11 +54,22 @@ public class TableInitializer implements Initializer {
         if (!(f.exists() && f.isDirectory())) {
             throw new DatabaseException("invalid context in TableInitializer");
         }
-        String[] listOfSegmentsNames = f.list();
-        Arrays.sort(listOfSegmentsNames);
-        for (String segmentName : listOfSegmentsNames) {
-            SegmentInitializationContextImpl currentSegmentContext = new SegmentInitializationContextImpl(segmentName,
-                    pathToTable, 0);
+        String[] listOfSegmentsNames = Arrays.stream(f.list())
+                .filter(name -> new File(f, name).isFile())
+                .filter(name -> !SegmentHintFile.isHintFile(name) && !SegmentBloomFilter.isBloomFile(name))
+                .filter(name -> !TableMetadata.isMetadataFile(name) && !TableIndexCheckpoint.isCheckpointFile(name))
+                .sorted(SegmentNames.order(context.currentTableContext().getTableName()))
+                .toArray(String[]::new);
+        try {
+            listOfSegmentsNames = removeMergedSegments(pathToTable, listOfSegmentsNames);
+        } catch (IOException e) {
+            throw new DatabaseException("can't clean up compacted segments of table " + pathToTable, e);
+        }
+        long[] indexedSizes = loadCheckpoint(context.currentTableContext(), listOfSegmentsNames);
+        for (int i = 0; i < listOfSegmentsNames.length; i++) {
+            SegmentInitializationContextImpl currentSegmentContext = new SegmentInitializationContextImpl(
+                    listOfSegmentsNames[i], pathToTable, i == listOfSegmentsNames.length - 1,
+                    i < indexedSizes.length ? indexedSizes[i] : 0);
             InitializationContextImpl context3 = new InitializationContextImpl(context.executionEnvironment(),
                     context.currentDbContext(), context.currentTableContext(), currentSegmentContext);
             try {
@@ -43,6 +78,73 @@ public class TableInitializer implements Initializer {
                 throw new DatabaseException("DatabaseExeption in TableInitializer perform", dex);
             }
         }
-        context.currentDbContext().addTable(TableImpl.initializeFromContext(context.currentTableContext()));
+        context.currentDbContext().addTable(TableImpl.initializeFromContext(context.currentTableContext(),
+                context.executionEnvironment().getStorageContext()));
+    }
+
+    /**
+     * Загружает индекс таблицы из снимка, если снимок подходит к файлам таблицы: его сегменты - первые сегменты таблицы,
+     * и ни один из них не стал короче покрытой снимком части. Иначе (компактизация переписала сегменты, хвост сегмента
+     * обрезан после сбоя, снимок поврежден) индекс строится по сегментам целиком
+     *
+     * @return до какого смещения записи каждого из первых сегментов уже есть в индексе
+     */
+    private long[] loadCheckpoint(TableInitializationContext tableContext, String[] segmentNames) {
+        TableIndex tableIndex = tableContext.getTableIndex();
+        if (!(tableIndex instanceof InMemoryTableIndex)) {
+            return NOT_INDEXED;
+        }
+        Path tablePath = tableContext.getTablePath();
+        try {
+            TableIndexCheckpoint checkpoint = TableIndexCheckpoint.open(tablePath);
+            if (checkpoint == null) {
+                return NOT_INDEXED;
+            }
+            List<String> checkpointSegments = checkpoint.getSegmentNames();
+            if (checkpointSegments.size() > segmentNames.length) {
+                return NOT_INDEXED;
+            }
+            long[] indexedSizes = new long[checkpointSegments.size()];
+            for (int i = 0; i < indexedSizes.length; i++) {
+                indexedSizes[i] = checkpoint.getIndexedSize(i);
+                if (!checkpointSegments.get(i).equals(segmentNames[i])
+                        || Files.size(tablePath.resolve(segmentNames[i])) < indexedSizes[i]) {
+                    return NOT_INDEXED;
+                }
+            }
+            checkpoint.loadInto((InMemoryTableIndex) tableIndex);
+            LOGGER.fine(() -> "index of table " + tableContext.getTableName() + " is loaded from checkpoint ("
+                    + tableIndex.size() + " keys)");
+            return indexedSizes;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "can't load index checkpoint of table " + tableContext.getTableName()
+                    + ", index is rebuilt from segments", e);
+            return NOT_INDEXED;
+        }
+    }
+
+    /**
+     * @return сегменты, начиная с последнего отсортированного
+     */
+    private String[] removeMergedSegments(Path pathToTable, String[] segmentNames) throws IOException {
+        List<String> segments = new ArrayList<>();
+        for (String name : segmentNames) {
+            Path segmentPath = pathToTable.resolve(name);
+            if (SortedSegment.isTemporaryFile(name)) {
+                Files.delete(segmentPath);
+                continue;
+            }
+            if (SortedSegment.isSortedSegment(segmentPath)) {
+                for (String merged : segments) {
+                    Path mergedPath = pathToTable.resolve(merged);
+                    Files.deleteIfExists(mergedPath);
+                    Files.deleteIfExists(SegmentHintFile.pathFor(mergedPath));
+                    Files.deleteIfExists(SegmentBloomFilter.pathFor(mergedPath));
+                }
+                segments.clear();
+            }
+            segments.add(name);
+        }
+        return segments.toArray(String[]::new);
     }
 }
@@ -1,6 +1,7 @@
 package com.itmo.java.basics.logic;
 
 import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.index.DatabaseKey;
 
 import java.util.Optional;
 
@@ -20,6 +21,16 @@ public interface Database {
      */
     void createTableIfNotExists(String tableName) throws DatabaseException;
 
+    /**
+     * Создает таблицу с указанным именем на заданном движке хранения, если это имя еще не занято.
+     *
+     * @param tableName  имя таблицы
+     * @param engineName имя движка хранения (см. {@link com.itmo.java.basics.engine.StorageEngine})
+     * @throws DatabaseException если таблица с данным именем уже существует, движок неизвестен
+     *                           или если произошла ошибка ввода-вывода
+     */
+    void createTableIfNotExists(String tableName, String engineName) throws DatabaseException;
+
     /**
      * Записывает значение в указанную таблицу по переданному ключу.
      *
@@ -28,7 +39,14 @@ public interface Database {
      * @param objectValue значение, которое нужно записать
      * @throws DatabaseException если указанная таблица не была найдена или если произошла ошибка ввода-вывода
      */
-    void write(String tableName, String objectKey, byte[] objectValue) throws DatabaseException;
+    void write(String tableName, byte[] objectKey, byte[] objectValue) throws DatabaseException;
+
+    /**
+     * Записывает значение по строковому ключу (в UTF-8), см. {@link #write(String, byte[], byte[])}
+     */
+    default void write(String tableName, String objectKey, byte[] objectValue) throws DatabaseException {
+        write(tableName, DatabaseKey.encode(objectKey), objectValue);
+    }
 
     /**
      * Считывает значение из указанной таблицы по заданному ключу.
@@ -38,7 +56,18 @@ public interface Database {
      * @return значение, которое находится по ключу
      * @throws DatabaseException если не была найдена указанная таблица, или произошла ошибка ввода-вывода
      */
-    Optional<byte[]> read(String tableName, String objectKey) throws DatabaseException;
+    Optional<byte[]> read(String tableName, byte[] objectKey) throws DatabaseException;
+
+    /**
+     * Считывает значение по строковому ключу (в UTF-8), см. {@link #read(String, byte[])}
+     */
+    default Optional<byte[]> read(String tableName, String objectKey) throws DatabaseException {
+        return read(tableName, DatabaseKey.encode(objectKey));
+    }
+
+    void delete(String tableName, byte[] objectKey) throws DatabaseException;
 
-    void delete(String tableName, String objectKey) throws DatabaseException;
+    default void delete(String tableName, String objectKey) throws DatabaseException {
+        delete(tableName, DatabaseKey.encode(objectKey));
+    }
 }
@@ -1,5 +1,7 @@
 package com.itmo.java.basics.logic;
 
+import com.itmo.java.basics.index.DatabaseKey;
+
 import java.io.IOException;
 import java.util.Optional;
 
@@ -18,24 +20,37 @@ public interface Segment {
      */
     String getName();
 
+    /**
+     * Сдвиг, возвращаемый операциями записи, если сегмент открыт только на чтение и запись не выполнена
+     */
+    long NOT_WRITTEN = -1;
+
     /**
      * Записывает значение по указанному ключу в сегмент.
      *
      * @param objectKey ключ, по которому нужно записать значение
      * @param objectValue значение, которое нужно записать
-     * @return {@code true} - если значение записалось, {@code false} - если нет
+     * @return сдвиг записи в сегменте или {@link #NOT_WRITTEN}, если значение не записалось
      * @throws IOException если произошла ошибка ввода-вывода.
      */
-    boolean write(String objectKey, byte[] objectValue) throws IOException;
+    long write(byte[] objectKey, byte[] objectValue) throws IOException;
 
     /**
-     * Считывает значение из сегмента по переданному ключу.
+     * Записывает значение по строковому ключу (в UTF-8), см. {@link #write(byte[], byte[])}
+     */
+    default long write(String objectKey, byte[] objectValue) throws IOException {
+        return write(DatabaseKey.encode(objectKey), objectValue);
+    }
+
+    /**
+     * Считывает значение записи, начинающейся с указанного сдвига. Сдвиги хранит индекс таблицы,
+     * сам сегмент ключи не индексирует
      *
-     * @param objectKey ключ, по которому нужно получить значение
-     * @return значение, которое находится по ключу
-     * @throws IOException если произошла ошибка ввода-вывода
+     * @param offset сдвиг записи, полученный из {@link #write(byte[], byte[])}
+     * @return значение записи или пустой {@code Optional}, если запись является надгробием
+     * @throws IOException если произошла ошибка ввода-вывода или запись повреждена
      */
-    Optional<byte[]> read(String objectKey) throws IOException;
+    Optional<byte[]> read(long offset) throws IOException;
 
     /**
      * Возвращает {@code true} - если данный сегмент открыт только на чтение, {@code false} - если данный сегмент открыт на чтение и запись.
@@ -44,5 +59,14 @@ public interface Segment {
      */
     boolean isReadOnly();
 
-    boolean delete(String objectKey) throws IOException;
-}
\ No newline at end of file
+    /**
+     * Записывает в сегмент надгробие ключа.
+     *
+     * @return сдвиг надгробия в сегменте или {@link #NOT_WRITTEN}, если оно не записалось
+     */
+    long delete(byte[] objectKey) throws IOException;
+
+    default long delete(String objectKey) throws IOException {
+        return delete(DatabaseKey.encode(objectKey));
+    }
+}
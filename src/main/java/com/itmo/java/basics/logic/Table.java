@@ -1,6 +1,7 @@
 package com.itmo.java.basics.logic;
 
 import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.index.DatabaseKey;
 
 import java.util.Optional;
 
@@ -28,7 +29,14 @@ public interface Table {
      * @param objectValue значение, которое нужно записать
      * @throws DatabaseException если произошла ошибка ввода-вывода
      */
-    void write(String objectKey, byte[] objectValue) throws DatabaseException;
+    void write(byte[] objectKey, byte[] objectValue) throws DatabaseException;
+
+    /**
+     * Записывает значение по строковому ключу (в UTF-8), см. {@link #write(byte[], byte[])}
+     */
+    default void write(String objectKey, byte[] objectValue) throws DatabaseException {
+        write(DatabaseKey.encode(objectKey), objectValue);
+    }
 
     /**
      * Считывает значение из таблицы по заданному ключу.
@@ -37,8 +45,29 @@ public interface Table {
      * @return значение, которое находится по ключу
      * @throws DatabaseException если произошла ошибка ввода-вывода
      */
-    Optional<byte[]> read(String objectKey) throws DatabaseException;
+    Optional<byte[]> read(byte[] objectKey) throws DatabaseException;
 
-    void delete(String objectKey) throws DatabaseException;
-}
+    /**
+     * Считывает значение по строковому ключу (в UTF-8), см. {@link #read(byte[])}
+     */
+    default Optional<byte[]> read(String objectKey) throws DatabaseException {
+        return read(DatabaseKey.encode(objectKey));
+    }
 
+    void delete(byte[] objectKey) throws DatabaseException;
+
+    default void delete(String objectKey) throws DatabaseException {
+        delete(DatabaseKey.encode(objectKey));
+    }
+
+    /**
+     * Выгружает таблицу из памяти: освобождает индекс, кэш, открытые файлы и снимает таблицу с фоновых задач.
+     * Данные остаются на диске, и таблицу можно открыть снова. После выгрузки объектом таблицы пользоваться нельзя.
+     *
+     * @return {@code false} - если таблицу нельзя выгрузить (например, ее данные есть только в памяти)
+     * @throws DatabaseException если не удалось сбросить записи таблицы на диск, таблица при этом не выгружается
+     */
+    default boolean unload() throws DatabaseException {
+        return false;
+    }
+}
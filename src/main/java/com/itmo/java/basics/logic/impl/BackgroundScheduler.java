@@ -0,0 +1,74 @@
+package com.itmo.java.basics.logic.impl;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Общий пул фоновых задач хранения: компактизации ({@link Compactor}), снимков индекса ({@link IndexCheckpointer}),
+ * выгрузки простаивающих таблиц ({@link TableUnloader}) и сброса memtable LSM-таблиц ({@link LsmTable}).
+ * Потоков по числу видов задач, чтобы долгая компактизация не откладывала остальные. Потоки создаются
+ * при постановке первых задач, периодическая задача не выполняется в двух потоках одновременно.
+ * Пулом владеет {@link StorageContext} и останавливает его в {@link StorageContext#close()}
+ */
+public class BackgroundScheduler implements AutoCloseable {
+    private static final Logger LOGGER = Logger.getLogger(BackgroundScheduler.class.getName());
+    private static final int THREADS = 4;
+    /**
+     * Сколько {@link #close()} ждет задач, которые уже выполняются, прежде чем прервать их
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 30_000;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    public BackgroundScheduler() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ScheduledThreadPoolExecutor(THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "storage-background-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Запускает задачу раз в {@code periodMillis} после завершения предыдущего запуска.
+     * После {@link #close()} задача не ставится
+     */
+    void scheduleWithFixedDelay(Runnable task, long periodMillis) {
+        try {
+            executor.scheduleWithFixedDelay(task, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOGGER.fine("background scheduler is closed, periodic task is not scheduled");
+        }
+    }
+
+    /**
+     * Выполняет задачу в фоне
+     *
+     * @throws RejectedExecutionException если планировщик уже закрыт
+     */
+    void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Снимает периодические задачи и дожидается тех, что уже выполняются (не дольше {@link #CLOSE_TIMEOUT_MILLIS},
+     * затем они прерываются). Повторный вызов ничего не делает
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                LOGGER.warning("background storage tasks did not finish in " + CLOSE_TIMEOUT_MILLIS + " ms, interrupting");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
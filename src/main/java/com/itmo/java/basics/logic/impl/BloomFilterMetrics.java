@@ -0,0 +1,61 @@
+package com.itmo.java.basics.logic.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики обращений к фильтрам Блума сегментов.
+ * Доля ложноположительных ответов - доля ответов "возможно есть" среди обращений по ключам,
+ * записей которых в сегменте на самом деле нет
+ */
+public class BloomFilterMetrics {
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    void onProbe(boolean mightContain) {
+        probes.increment();
+        if (!mightContain) {
+            negatives.increment();
+        }
+    }
+
+    /**
+     * Оповещает о том, что фильтр ответил "возможно есть", а записи ключа в сегменте не оказалось
+     */
+    public void onFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * @return сколько раз фильтры были опрошены
+     */
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    /**
+     * @return сколько обращений к сегментам отсечено фильтрами
+     */
+    public long getNegatives() {
+        return negatives.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * @return доля ложноположительных ответов, 0 - если промахов еще не было
+     */
+    public double getFalsePositiveRate() {
+        long falsePositiveCount = falsePositives.sum();
+        long misses = falsePositiveCount + negatives.sum();
+        return misses == 0 ? 0 : (double) falsePositiveCount / misses;
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilterMetrics(probes=" + getProbes() + ", negatives=" + getNegatives()
+                + ", falsePositives=" + getFalsePositives() + ", falsePositiveRate=" + getFalsePositiveRate() + ")";
+    }
+}
@@ -3,18 +3,27 @@ package com.itmo.java.basics.logic.impl;
 import com.itmo.java.basics.exceptions.DatabaseException;
 import com.itmo.java.basics.logic.Table;
 
+import java.util.Arrays;
 import java.util.Optional;
 
 /**
- * Декоратор для таблицы. Кэширует данные
+ * Декоратор для таблицы. Кэширует данные.
+ * Запись в таблицу и обновление кэша идут под блокировкой части ключей ({@link #WRITE_STRIPES} частей по хэшу),
+ * иначе при параллельной записи одного ключа в кэше могло бы остаться не последнее значение.
+ * Чтения блокировку записи не берут
  */
 public class CachingTable implements Table {
+    private static final int WRITE_STRIPES = 64;
 
     Table table;
     DatabaseCacheImpl databaseCache = new DatabaseCacheImpl();
+    private final Object[] writeLocks = new Object[WRITE_STRIPES];
 
     public CachingTable(Table table){
         this.table = table;
+        for (int i = 0; i < WRITE_STRIPES; i++) {
+            writeLocks[i] = new Object();
+        }
     }
 
     @Override
@@ -23,19 +32,22 @@ public class CachingTable implements Table {
     }
 
     @Override
-    public void write(String objectKey, byte[] objectValue) throws DatabaseException {
-        try {
-            table.write(objectKey, objectValue);
-        } catch (DatabaseException dex){
-            throw new DatabaseException("DatabaseException while write in table: " + table.getName());
+    public void write(byte[] objectKey, byte[] objectValue) throws DatabaseException {
+        synchronized (writeLockOf(objectKey)) {
+            try {
+                table.write(objectKey, objectValue);
+            } catch (DatabaseException dex){
+                throw new DatabaseException("DatabaseException while write in table: " + table.getName());
+            }
+            databaseCache.set(objectKey, objectValue);
         }
-        databaseCache.set(objectKey, objectValue);
     }
 
     @Override
-    public Optional<byte[]> read(String objectKey) throws DatabaseException {
-        if (databaseCache.get(objectKey) != null){
-            return Optional.of(databaseCache.get(objectKey));
+    public Optional<byte[]> read(byte[] objectKey) throws DatabaseException {
+        byte[] cached = databaseCache.get(objectKey);
+        if (cached != null){
+            return Optional.of(cached);
         }
         try {
             return table.read(objectKey);
@@ -45,12 +57,23 @@ public class CachingTable implements Table {
     }
 
     @Override
-    public void delete(String objectKey) throws DatabaseException {
-        try {
-            table.delete(objectKey);
-        } catch (DatabaseException dex){
-            throw new DatabaseException("DatabaseException while delete in table: " + table.getName());
+    public void delete(byte[] objectKey) throws DatabaseException {
+        synchronized (writeLockOf(objectKey)) {
+            try {
+                table.delete(objectKey);
+            } catch (DatabaseException dex){
+                throw new DatabaseException("DatabaseException while delete in table: " + table.getName());
+            }
+            databaseCache.delete(objectKey);
         }
-        databaseCache.delete(objectKey);
+    }
+
+    private Object writeLockOf(byte[] objectKey) {
+        return objectKey == null ? writeLocks[0] : writeLocks[Arrays.hashCode(objectKey) & (WRITE_STRIPES - 1)];
+    }
+
+    @Override
+    public boolean unload() throws DatabaseException {
+        return table.unload();
     }
 }
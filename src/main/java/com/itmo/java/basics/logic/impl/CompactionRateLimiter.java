@@ -0,0 +1,48 @@
+package com.itmo.java.basics.logic.impl;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничивает скорость, с которой компактизация читает сегменты. Используется одним потоком
+ */
+public class CompactionRateLimiter {
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long bytesPerSecond;
+    private long windowStart = System.nanoTime();
+    private long bytesInWindow;
+
+    /**
+     * @param bytesPerSecond сколько байт в секунду можно прочитать. Неположительное значение - без ограничений
+     */
+    public CompactionRateLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Учитывает прочитанные байты и засыпает, если скорость превышена
+     *
+     * @throws InterruptedIOException если поток был прерван во время ожидания
+     */
+    public void acquire(long bytes) throws InterruptedIOException {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        bytesInWindow += bytes;
+        long allowedNanos = bytesInWindow * WINDOW_NANOS / bytesPerSecond;
+        long elapsedNanos = System.nanoTime() - windowStart;
+        if (allowedNanos > elapsedNanos) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(allowedNanos - elapsedNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("compaction interrupted");
+            }
+        }
+        if (System.nanoTime() - windowStart >= WINDOW_NANOS) {
+            windowStart = System.nanoTime();
+            bytesInWindow = 0;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.StorageConfig;
+import com.itmo.java.basics.exceptions.DatabaseException;
+
+/**
+ * Фоновая компактизация таблиц (см. {@link TableImpl#compact(CompactionRateLimiter)},
+ * {@link LsmTable#compact(CompactionRateLimiter)}).
+ * Таблицы обходятся по очереди в {@link BackgroundScheduler}, чтение ограничено
+ * {@link StorageConfig#getCompactionBytesPerSecond()}
+ */
+public class Compactor {
+    private final StorageConfig config;
+    private final CompactionRateLimiter rateLimiter;
+    private final TableSweep<RegisteredTable> sweep;
+
+    public Compactor(StorageConfig config, BackgroundScheduler scheduler) {
+        this.config = config;
+        rateLimiter = new CompactionRateLimiter(config.getCompactionBytesPerSecond());
+        sweep = new TableSweep<>("compaction", scheduler, config.getCompactionIntervalMillis(),
+                registered -> registered.name, registered -> registered.task.compact(rateLimiter));
+    }
+
+    /**
+     * Добавляет таблицу в обход. Обход ставится в планировщик при регистрации первой таблицы
+     */
+    void register(TableImpl table) {
+        register(table, table.getName(), table::compact);
+    }
+
+    void register(LsmTable table) {
+        register(table, table.getName(), table::compact);
+    }
+
+    private void register(Object table, String tableName, CompactionTask task) {
+        if (!config.isCompactionEnabled()) {
+            return;
+        }
+        sweep.add(new RegisteredTable(table, tableName, task));
+    }
+
+    /**
+     * Убирает таблицу из обхода, например перед ее выгрузкой. Компактизация, которая уже идет, не прерывается
+     */
+    void unregister(Object table) {
+        sweep.removeIf(registered -> registered.table == table);
+    }
+
+    /**
+     * Один шаг компактизации таблицы
+     */
+    interface CompactionTask {
+        /**
+         * @return {@code true} - если компактизация была выполнена
+         */
+        boolean compact(CompactionRateLimiter rateLimiter) throws DatabaseException;
+    }
+
+    private static class RegisteredTable {
+        private final Object table;
+        private final String name;
+        private final CompactionTask task;
+
+        RegisteredTable(Object table, String name, CompactionTask task) {
+            this.table = table;
+            this.name = name;
+            this.task = task;
+        }
+    }
+}
@@ -1,39 +1,78 @@
 package com.itmo.java.basics.logic.impl;
 
+import com.itmo.java.basics.index.DatabaseKey;
 import com.itmo.java.basics.logic.DatabaseCache;
 
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
-
+/**
+ * LRU-кэш значений таблицы. Команды исполняются параллельно, а кэш в порядке доступа меняется и при чтении,
+ * поэтому он разбит на части по хэшу ключа, у каждой своя блокировка и свое LRU-вытеснение
+ */
 public class DatabaseCacheImpl implements DatabaseCache {
     private static final int CAPACITY = 5_000;
 
 
     private static final int databaseSize = 1000;
-    private final Map<String, byte[]> cache;
+    private static final int STRIPES = 16;
+    private final List<Map<DatabaseKey, byte[]>> stripes;
 
     public DatabaseCacheImpl() {
-        this.cache = new LinkedHashMap<>(databaseSize, 1f, true) {
-            @Override
-            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
-                return size() > databaseSize;
-            }
-        };
+        int stripeSize = (databaseSize + STRIPES - 1) / STRIPES;
+        stripes = new ArrayList<>(STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new LruStripe(stripeSize));
+        }
     }
 
     @Override
-    public byte[] get(String key) {
-        return cache.get(key);
+    public byte[] get(byte[] key) {
+        DatabaseKey databaseKey = new DatabaseKey(key);
+        Map<DatabaseKey, byte[]> stripe = stripeOf(databaseKey);
+        synchronized (stripe) {
+            return stripe.get(databaseKey);
+        }
     }
 
     @Override
-    public void set(String key, byte[] value) {
-        cache.put(key, value);
+    public void set(byte[] key, byte[] value) {
+        DatabaseKey databaseKey = new DatabaseKey(key);
+        Map<DatabaseKey, byte[]> stripe = stripeOf(databaseKey);
+        synchronized (stripe) {
+            stripe.put(databaseKey, value);
+        }
     }
 
     @Override
-    public void delete(String key) {
-        cache.remove(key);
+    public void delete(byte[] key) {
+        DatabaseKey databaseKey = new DatabaseKey(key);
+        Map<DatabaseKey, byte[]> stripe = stripeOf(databaseKey);
+        synchronized (stripe) {
+            stripe.remove(databaseKey);
+        }
+    }
+
+    private Map<DatabaseKey, byte[]> stripeOf(DatabaseKey key) {
+        int hash = key.hashCode();
+        return stripes.get((hash ^ (hash >>> 16)) & (STRIPES - 1));
+    }
+
+    private static class LruStripe extends LinkedHashMap<DatabaseKey, byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        LruStripe(int maxSize) {
+            super(maxSize, 1f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<DatabaseKey, byte[]> eldest) {
+            return size() > maxSize;
+        }
     }
 }
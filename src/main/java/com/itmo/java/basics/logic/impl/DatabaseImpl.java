@@ -1,17 +1,26 @@
 package com.itmo.java.basics.logic.impl;
 
+import com.itmo.java.basics.engine.StorageEngine;
+import com.itmo.java.basics.engine.impl.TableMetadata;
+import com.itmo.java.basics.engine.impl.TableOpener;
 import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.index.DatabaseKey;
 import com.itmo.java.basics.initialization.DatabaseInitializationContext;
-import com.itmo.java.basics.index.impl.TableIndex;
 import com.itmo.java.basics.logic.Database;
 import com.itmo.java.basics.logic.Table;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class DatabaseImpl implements Database {
     /**
@@ -21,10 +30,18 @@ public class DatabaseImpl implements Database {
 
     private final String nameOfData;
     private final File dataBaseFile;
-    private Map<String, Table> mapOfTables = new HashMap<>();
+    /**
+     * Команды исполняются параллельно, поэтому таблицы ищутся без блокировки, а создаются под блокировкой базы
+     */
+    private final Map<String, Table> mapOfTables;
+    private final StorageContext storageContext;
 
 
     public static Database create(String dbName, Path databaseRoot) throws DatabaseException {
+        return create(dbName, databaseRoot, StorageContext.DEFAULT);
+    }
+
+    public static Database create(String dbName, Path databaseRoot, StorageContext storageContext) throws DatabaseException {
         if (dbName == null) {
             throw new DatabaseException(" dbName is null in creating DataBase");
         }
@@ -32,23 +49,31 @@ public class DatabaseImpl implements Database {
         if (!(new File(pathtoDatabase).mkdir())) {
             throw new DatabaseException("can't create Database" + dbName);
         }
-        return new DatabaseImpl(String.valueOf(databaseRoot.resolve(dbName)), dbName);
+        return new DatabaseImpl(String.valueOf(databaseRoot.resolve(dbName)), dbName, storageContext);
     }
 
     public static Database initializeFromContext(DatabaseInitializationContext context) {
+        return initializeFromContext(context, StorageContext.DEFAULT);
+    }
+
+    public static Database initializeFromContext(DatabaseInitializationContext context, StorageContext storageContext) {
         return new DatabaseImpl(String.valueOf(context.getDatabasePath()), context.getDbName(),
-                context.getTables());
+                context.getTables(), storageContext);
     }
 
-    private DatabaseImpl(String pathName, String nameOfData, Map<String, Table> mapOfTables){
+    private DatabaseImpl(String pathName, String nameOfData, Map<String, Table> mapOfTables,
+                         StorageContext storageContext){
         dataBaseFile = new File(pathName);
         this.nameOfData = nameOfData;
-        this.mapOfTables = mapOfTables;
+        this.mapOfTables = new ConcurrentHashMap<>(mapOfTables);
+        this.storageContext = storageContext;
     }
 
-    private DatabaseImpl(String pathName, String dataBaseName){
+    private DatabaseImpl(String pathName, String dataBaseName, StorageContext storageContext){
         dataBaseFile = new File(pathName);
         nameOfData = dataBaseName;
+        this.mapOfTables = new ConcurrentHashMap<>();
+        this.storageContext = storageContext;
     }
 
 
@@ -59,6 +84,21 @@ public class DatabaseImpl implements Database {
 
     @Override
     public void createTableIfNotExists(String tableName) throws DatabaseException {
+        createTableIfNotExists(tableName, storageContext.getStorageEngines().getDefault());
+    }
+
+    @Override
+    public void createTableIfNotExists(String tableName, String engineName) throws DatabaseException {
+        createTableIfNotExists(tableName, storageContext.getStorageEngines().get(engineName));
+    }
+
+    /**
+     * Создает таблицу на движке и записывает его имя в метаданные таблицы, по ним таблица откроется при старте.
+     * Если метаданные записать не удалось, таблица выгружается, а ее директория удаляется: иначе при старте
+     * движок угадывался бы по содержимому директории, а повторное создание упало бы на существующей директории.
+     * Если включена выгрузка простаивающих таблиц, таблица оборачивается в {@link LazyTable}
+     */
+    private synchronized void createTableIfNotExists(String tableName, StorageEngine engine) throws DatabaseException {
         if (tableName == null) {
             throw new DatabaseException("tableName is null");
         }
@@ -66,56 +106,93 @@ public class DatabaseImpl implements Database {
             throw new DatabaseException("already have this table" + tableName);
         }
         Table table;
-        TableIndex tableindex = new TableIndex();
         try {
-            table = TableImpl.create(tableName, Paths.get(dataBaseFile.getAbsolutePath()), tableindex);
+            table = engine.createTable(tableName, Paths.get(dataBaseFile.getAbsolutePath()), storageContext);
         } catch (DatabaseException dex) {
             throw new DatabaseException("can't create table", dex);
         }
+        Path tablePath = dataBaseFile.toPath().resolve(tableName);
+        try {
+            TableMetadata.write(tablePath, engine.getName());
+        } catch (IOException e) {
+            DatabaseException failure = new DatabaseException("can't write metadata of table " + tableName, e);
+            discard(table, tablePath, failure);
+            throw failure;
+        }
+        if (storageContext.getConfig().getTableIdleUnloadMillis() > 0) {
+            Path databasePath = dataBaseFile.toPath();
+            table = LazyTable.opened(tableName, () -> TableOpener.open(nameOfData, databasePath, tableName,
+                    storageContext), table, storageContext);
+        }
         mapOfTables.put(tableName, table);
     }
 
-    @Override
-    public void write(String tableName, String objectKey, byte[] objectValue) throws DatabaseException {
-        if (!mapOfTables.containsKey(tableName)) {
-            throw new DatabaseException("table" + tableName + "is not exist");
+    /**
+     * Откатывает создание таблицы: выгружает ее (отписывает от фоновых задач, закрывает файлы) и удаляет директорию.
+     * Ошибки отката добавляются к {@code failure}
+     */
+    private static void discard(Table table, Path tablePath, DatabaseException failure) {
+        try {
+            table.unload();
+        } catch (DatabaseException | RuntimeException e) {
+            failure.addSuppressed(e);
         }
+        try (Stream<Path> paths = Files.walk(tablePath)) {
+            List<Path> deepestFirst = paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path : deepestFirst) {
+                Files.deleteIfExists(path);
+            }
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    @Override
+    public void write(String tableName, byte[] objectKey, byte[] objectValue) throws DatabaseException {
         if (objectKey == null || tableName == null)
             throw new DatabaseException("key or tableName is null");
+        Table table = tableOf(tableName);
         try {
-            mapOfTables.get(tableName).write(objectKey, objectValue);
+            table.write(objectKey, objectValue);
         } catch (DatabaseException dex) {
-            throw new DatabaseException("DatabaseEx when writing of objectKey: " + objectKey, dex);
+            throw new DatabaseException("DatabaseEx when writing of objectKey: " + new DatabaseKey(objectKey), dex);
         }
     }
 
     @Override
-    public Optional<byte[]> read(String tableName, String objectKey) throws DatabaseException {
-        if (!mapOfTables.containsKey(tableName)){
-            throw new DatabaseException("table" + tableName + "is not exist");
-        }
+    public Optional<byte[]> read(String tableName, byte[] objectKey) throws DatabaseException {
         if (objectKey == null || tableName == null){
             throw new DatabaseException("key or tableName is null");
         }
+        Table table = tableOf(tableName);
         try {
-            Optional<byte[]> nullTest = mapOfTables.get(tableName).read(objectKey);
+            Optional<byte[]> nullTest = table.read(objectKey);
             if (nullTest.isEmpty())
                 return Optional.empty();
             return nullTest;
         } catch (DatabaseException dex) {
-            throw new DatabaseException("can't read Key:" + objectKey, dex);
+            throw new DatabaseException("can't read Key:" + new DatabaseKey(objectKey), dex);
         }
     }
 
     @Override
-    public void delete(String tableName, String objectKey) throws DatabaseException {
-        if (!mapOfTables.containsKey(tableName)){
-            throw new DatabaseException("table" + tableName + "is not exist");
+    public void delete(String tableName, byte[] objectKey) throws DatabaseException {
+        if (objectKey == null || tableName == null) {
+            throw new DatabaseException("key or tableName is null");
         }
+        Table table = tableOf(tableName);
         try {
-            mapOfTables.get(tableName).delete(objectKey);
+            table.delete(objectKey);
         } catch (DatabaseException dex) {
-            throw new DatabaseException("DatabaseEx when deleting of objectKey: " + objectKey, dex);
+            throw new DatabaseException("DatabaseEx when deleting of objectKey: " + new DatabaseKey(objectKey), dex);
+        }
+    }
+
+    private Table tableOf(String tableName) throws DatabaseException {
+        Table table = mapOfTables.get(tableName);
+        if (table == null) {
+            throw new DatabaseException("table" + tableName + "is not exist");
         }
+        return table;
     }
 }
@@ -0,0 +1,147 @@
+package com.itmo.java.basics.logic.impl;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Групповой коммит: записи, накопленные сегментами за короткое окно (или до лимита байт), передаются в файл
+ * одним вызовом write на сегмент и сбрасываются на диск одним fsync. Все команды, ждущие этого коммита,
+ * завершаются вместе
+ */
+public class GroupCommitter {
+    private final long windowMillis;
+    private final long maxBytes;
+    private final Object lock = new Object();
+    private final Set<SegmentImpl> dirtySegments = new LinkedHashSet<>();
+    private long pendingBytes;
+    private CompletableFuture<Void> nextCommit = new CompletableFuture<>();
+    /**
+     * Коммит, который сбросит на диск записи, добавленные текущим потоком (см. {@link #takeAppendedCommit()})
+     */
+    private final ThreadLocal<CompletableFuture<Void>> appendedCommit = new ThreadLocal<>();
+    private Thread committerThread;
+    private boolean closed;
+
+    public GroupCommitter(long windowMillis, long maxBytes) {
+        this.windowMillis = windowMillis;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Оповещает о том, что в сегмент добавлена несброшенная запись. Вызывается потоком, который дописал запись:
+     * он запоминает коммит, которого ему нужно дождаться
+     */
+    void onAppended(SegmentImpl segment, long bytes) {
+        CompletableFuture<Void> commit;
+        synchronized (lock) {
+            dirtySegments.add(segment);
+            pendingBytes += bytes;
+            if (committerThread == null && !closed) {
+                committerThread = new Thread(this::runCommitLoop, "group-commit");
+                committerThread.setDaemon(true);
+                committerThread.start();
+            }
+            lock.notifyAll();
+            // после close() записи больше не сбрасываются
+            commit = closed && committerThread == null
+                    ? CompletableFuture.failedFuture(new IOException("group committer is closed"))
+                    : nextCommit;
+        }
+        // потоки, которые не забирают коммит (например, компактизация), не должны копить цепочку ожиданий
+        CompletableFuture<Void> previous = appendedCommit.get();
+        if (previous == null || previous == commit || previous.isDone() && !previous.isCompletedExceptionally()) {
+            appendedCommit.set(commit);
+        } else if (!previous.isDone()) {
+            appendedCommit.set(CompletableFuture.allOf(previous, commit));
+        }
+    }
+
+    /**
+     * Возвращает future, который завершится, когда записи, добавленные текущим потоком после предыдущего вызова,
+     * будут на диске, и забывает его. Команда, которая ничего не дописала (например, чтение), получает
+     * {@code null} и fsync не ждет
+     */
+    public CompletableFuture<Void> takeAppendedCommit() {
+        CompletableFuture<Void> commit = appendedCommit.get();
+        appendedCommit.remove();
+        return commit;
+    }
+
+    /**
+     * Сбрасывает накопленные записи без ожидания окна и останавливает поток коммита.
+     * Вызывается, когда команды больше не исполняются. Повторный вызов ничего не делает
+     */
+    public void close() {
+        Thread thread;
+        synchronized (lock) {
+            closed = true;
+            thread = committerThread;
+            lock.notifyAll();
+        }
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runCommitLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            List<SegmentImpl> batch;
+            CompletableFuture<Void> commit;
+            try {
+                synchronized (lock) {
+                    while (dirtySegments.isEmpty()) {
+                        if (closed) {
+                            committerThread = null;
+                            return;
+                        }
+                        lock.wait();
+                    }
+                    long deadline = System.currentTimeMillis() + windowMillis;
+                    long remaining = windowMillis;
+                    while (!closed && pendingBytes < maxBytes && remaining > 0) {
+                        lock.wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                    batch = new ArrayList<>(dirtySegments);
+                    dirtySegments.clear();
+                    pendingBytes = 0;
+                    commit = nextCommit;
+                    nextCommit = new CompletableFuture<>();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                commit(batch);
+                commit.complete(null);
+            } catch (IOException | RuntimeException e) {
+                commit.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void commit(List<SegmentImpl> batch) throws IOException {
+        List<FileChannel> channels = new ArrayList<>(batch.size());
+        for (SegmentImpl segment : batch) {
+            channels.add(segment.flushPending());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            FileChannel channel = channels.get(i);
+            if (channel != null) {
+                channel.force(false);
+            }
+            batch.get(i).closeIfSealed();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.StorageConfig;
+
+/**
+ * Фоновая запись снимков индекса таблиц (см. {@link TableImpl#checkpoint()}).
+ * Таблицы обходятся по очереди в {@link BackgroundScheduler} раз в {@link StorageConfig#getCheckpointIntervalMillis()}.
+ * Обход идет в своем потоке планировщика, поэтому долгая компактизация не откладывает снимки
+ */
+public class IndexCheckpointer {
+    private final StorageConfig config;
+    private final TableSweep<TableImpl> sweep;
+
+    public IndexCheckpointer(StorageConfig config, BackgroundScheduler scheduler) {
+        this.config = config;
+        sweep = new TableSweep<>("index checkpoint", scheduler, config.getCheckpointIntervalMillis(),
+                TableImpl::getName, TableImpl::checkpoint);
+    }
+
+    /**
+     * Добавляет таблицу в обход. Обход ставится в планировщик при регистрации первой таблицы
+     */
+    void register(TableImpl table) {
+        if (config.getCheckpointIntervalMillis() <= 0) {
+            return;
+        }
+        sweep.add(table);
+    }
+
+    void unregister(TableImpl table) {
+        sweep.removeIf(registered -> registered == table);
+    }
+}
@@ -0,0 +1,155 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.Table;
+
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Таблица, которая открывается при первом обращении и может быть выгружена из памяти, если к ней долго
+ * не обращались (см. {@link TableUnloader}). Одновременные первые обращения открывают таблицу один раз.
+ * <p>
+ * Операции берут блокировку на чтение, выгрузка - на запись и только если блокировку удалось взять сразу,
+ * поэтому выгрузка не ждет операций и не останавливает их
+ */
+public class LazyTable implements Table {
+
+    /**
+     * Открывает таблицу с диска
+     */
+    @FunctionalInterface
+    public interface Opener {
+        Table open() throws DatabaseException;
+    }
+
+    private final String tableName;
+    private final Opener opener;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Table table;
+    private volatile long lastAccessNanos = System.nanoTime();
+
+    private LazyTable(String tableName, Opener opener, Table table) {
+        this.tableName = tableName;
+        this.opener = opener;
+        this.table = table;
+    }
+
+    /**
+     * Регистрирует таблицу без чтения ее файлов, таблица откроется при первом обращении
+     */
+    public static LazyTable unopened(String tableName, Opener opener, StorageContext storageContext) {
+        LazyTable lazyTable = new LazyTable(tableName, opener, null);
+        storageContext.getTableUnloader().register(lazyTable);
+        return lazyTable;
+    }
+
+    /**
+     * Оборачивает уже открытую таблицу, чтобы ее можно было выгружать
+     */
+    public static LazyTable opened(String tableName, Opener opener, Table table, StorageContext storageContext) {
+        LazyTable lazyTable = new LazyTable(tableName, opener, table);
+        storageContext.getTableUnloader().register(lazyTable);
+        return lazyTable;
+    }
+
+    @Override
+    public String getName() {
+        return tableName;
+    }
+
+    @Override
+    public void write(byte[] objectKey, byte[] objectValue) throws DatabaseException {
+        lock.readLock().lock();
+        try {
+            table().write(objectKey, objectValue);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<byte[]> read(byte[] objectKey) throws DatabaseException {
+        lock.readLock().lock();
+        try {
+            return table().read(objectKey);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void delete(byte[] objectKey) throws DatabaseException {
+        lock.readLock().lock();
+        try {
+            table().delete(objectKey);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean unload() throws DatabaseException {
+        lock.writeLock().lock();
+        try {
+            return unloadOpened();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return {@code true} - если таблица открыта
+     */
+    public boolean isOpen() {
+        return table != null;
+    }
+
+    /**
+     * Выгружает таблицу, если к ней не обращались дольше {@code idleNanos} и сейчас с ней никто не работает
+     *
+     * @return {@code true} - если таблица была выгружена
+     * @throws DatabaseException если не удалось сбросить записи таблицы на диск, таблица остается открытой
+     */
+    boolean unloadIfIdle(long idleNanos) throws DatabaseException {
+        if (table == null || System.nanoTime() - lastAccessNanos < idleNanos || !lock.writeLock().tryLock()) {
+            return false;
+        }
+        try {
+            return System.nanoTime() - lastAccessNanos >= idleNanos && unloadOpened();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Вызывается под блокировкой на запись
+     */
+    private boolean unloadOpened() throws DatabaseException {
+        Table opened = table;
+        if (opened == null || !opened.unload()) {
+            return false;
+        }
+        table = null;
+        return true;
+    }
+
+    /**
+     * Вызывается под блокировкой на чтение, поэтому открытая таблица не может быть выгружена до конца операции
+     */
+    private Table table() throws DatabaseException {
+        lastAccessNanos = System.nanoTime();
+        Table opened = table;
+        if (opened != null) {
+            return opened;
+        }
+        synchronized (this) {
+            opened = table;
+            if (opened == null) {
+                opened = opener.open();
+                table = opened;
+            }
+            return opened;
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.index.DatabaseKey;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Сортирует по ключу живые записи (ключ и расположение), которые отсортированная компактизация переносит
+ * в отсортированный сегмент, не держа их все в куче. Записи копятся в буфере ограниченного размера,
+ * заполненный буфер сортируется и сбрасывается во временный файл-серию. Отсортированный порядок дает
+ * слияние серий и остатка буфера.
+ * <p>
+ * Файлы серий имеют суффикс {@link SortedSegment#TEMP_SUFFIX}, поэтому оставшиеся после сбоя серии
+ * удаляются при открытии таблицы, как недописанные сегменты
+ */
+class LiveRecordSorter implements AutoCloseable {
+    /**
+     * Сколько байт кучи занимают записи в буфере, прежде чем он сбрасывается в серию
+     */
+    static final long DEFAULT_BUFFER_BYTES = 8L << 20;
+    /**
+     * Оценка памяти на одну запись буфера сверх байтов ключа: запись, ключ и массив ключа
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int RUN_BUFFER_SIZE = 64 * 1024;
+    private static final Comparator<DatabaseKey> KEY_ORDER =
+            (first, second) -> Arrays.compareUnsigned(first.getBytes(), second.getBytes());
+
+    private final Path directory;
+    private final String runPrefix;
+    private final long bufferBytes;
+    private final List<Entry> buffer = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private final List<Long> runSizes = new ArrayList<>();
+    private long bufferedBytes;
+    private long size;
+
+    /**
+     * @param directory   директория таблицы, в которой создаются файлы серий
+     * @param runPrefix   начало имени файлов серий (имя сегмента, который пишет компактизация)
+     * @param bufferBytes размер буфера в куче
+     */
+    LiveRecordSorter(Path directory, String runPrefix, long bufferBytes) {
+        this.directory = directory;
+        this.runPrefix = runPrefix;
+        this.bufferBytes = bufferBytes;
+    }
+
+    void add(DatabaseKey key, long location) throws IOException {
+        buffer.add(new Entry(key, location));
+        bufferedBytes += key.getBytes().length + ENTRY_OVERHEAD;
+        size++;
+        if (bufferedBytes >= bufferBytes) {
+            spill();
+        }
+    }
+
+    /**
+     * @return сколько записей добавлено
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return сколько серий сброшено на диск
+     */
+    int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Открывает курсор, который обходит все добавленные записи по возрастанию ключа (ключи без знака).
+     * После этого записи добавлять нельзя
+     */
+    Cursor sorted() throws IOException {
+        buffer.sort(Comparator.comparing(entry -> entry.key, KEY_ORDER));
+        List<Cursor> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                inputs.add(new RunCursor(runs.get(i), runSizes.get(i)));
+            }
+        } catch (IOException e) {
+            for (Cursor input : inputs) {
+                input.close();
+            }
+            throw e;
+        }
+        inputs.add(new BufferCursor(buffer));
+        return inputs.size() == 1 ? inputs.get(0) : new MergingCursor(inputs);
+    }
+
+    /**
+     * Обходит все добавленные записи в произвольном порядке: сначала буфер, затем серии подряд
+     */
+    void forEach(Visitor visitor) throws IOException {
+        for (Entry entry : buffer) {
+            visitor.visit(entry.key, entry.location);
+        }
+        for (int i = 0; i < runs.size(); i++) {
+            try (RunCursor run = new RunCursor(runs.get(i), runSizes.get(i))) {
+                while (run.next()) {
+                    visitor.visit(run.key(), run.location());
+                }
+            }
+        }
+    }
+
+    /**
+     * Удаляет файлы серий
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        runs.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void spill() throws IOException {
+        buffer.sort(Comparator.comparing(entry -> entry.key, KEY_ORDER));
+        Path run = directory.resolve(runPrefix + ".run" + (runs.size() + 1) + SortedSegment.TEMP_SUFFIX);
+        runs.add(run);
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(run), RUN_BUFFER_SIZE))) {
+            for (Entry entry : buffer) {
+                byte[] key = entry.key.getBytes();
+                output.writeInt(key.length);
+                output.write(key);
+                output.writeLong(entry.location);
+            }
+        }
+        runSizes.add((long) buffer.size());
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    interface Visitor {
+        void visit(DatabaseKey key, long location) throws IOException;
+    }
+
+    /**
+     * Последовательный обход записей
+     */
+    interface Cursor extends AutoCloseable {
+        /**
+         * Переходит к следующей записи
+         *
+         * @return {@code false} - если записи кончились
+         */
+        boolean next() throws IOException;
+
+        DatabaseKey key();
+
+        long location();
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static class Entry {
+        private final DatabaseKey key;
+        private final long location;
+
+        Entry(DatabaseKey key, long location) {
+            this.key = key;
+            this.location = location;
+        }
+    }
+
+    private static class BufferCursor implements Cursor {
+        private final List<Entry> entries;
+        private int next;
+        private Entry current;
+
+        BufferCursor(List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean next() {
+            current = next < entries.size() ? entries.get(next++) : null;
+            return current != null;
+        }
+
+        @Override
+        public DatabaseKey key() {
+            return current.key;
+        }
+
+        @Override
+        public long location() {
+            return current.location;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class RunCursor implements Cursor {
+        private final DataInputStream input;
+        private long remaining;
+        private DatabaseKey key;
+        private long location;
+
+        RunCursor(Path run, long size) throws IOException {
+            this.input = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), RUN_BUFFER_SIZE));
+            this.remaining = size;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (remaining == 0) {
+                key = null;
+                return false;
+            }
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            key = new DatabaseKey(bytes);
+            location = input.readLong();
+            remaining--;
+            return true;
+        }
+
+        @Override
+        public DatabaseKey key() {
+            return key;
+        }
+
+        @Override
+        public long location() {
+            return location;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Слияние отсортированных курсоров. Каждый ключ встречается только в одном из них:
+     * индекс таблицы указывает ровно на одну запись ключа
+     */
+    private static class MergingCursor implements Cursor {
+        private final List<Cursor> inputs;
+        private final PriorityQueue<Cursor> queue = new PriorityQueue<>(Comparator.comparing(Cursor::key, KEY_ORDER));
+        private Cursor current;
+        private boolean started;
+
+        MergingCursor(List<Cursor> inputs) {
+            this.inputs = inputs;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (!started) {
+                started = true;
+                for (Cursor input : inputs) {
+                    if (input.next()) {
+                        queue.add(input);
+                    }
+                }
+            } else if (current != null && current.next()) {
+                queue.add(current);
+            }
+            current = queue.poll();
+            return current != null;
+        }
+
+        @Override
+        public DatabaseKey key() {
+            return current.key();
+        }
+
+        @Override
+        public long location() {
+            return current.location();
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (Cursor input : inputs) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.exceptions.CorruptedRecordException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Манифест LSM-таблицы ({@link LsmTable}) - единственный источник правды о том, какие отсортированные сегменты
+ * на каком уровне лежат. Файлы, которых нет в манифесте, при старте удаляются. Текстовый формат (UTF-8):
+ * - "lsm 1"
+ * - "next N" - номер, с которого продолжается нумерация файлов таблицы
+ * - "log N" - номер последнего журнала упреждающей записи, сброшенного в отсортированный сегмент
+ * - "L имя" - по строке на отсортированный сегмент уровня L; уровень 0 - от новых к старым,
+ * остальные - по возрастанию ключей
+ * Манифест пишется во временный файл, сбрасывается на диск и атомарно переименовывается
+ */
+class LsmManifest {
+    static final String FILE_NAME = "MANIFEST";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String HEADER = "lsm 1";
+    private static final String NEXT_FILE_NUMBER = "next";
+    private static final String FLUSHED_LOG_NUMBER = "log";
+
+    private final long nextFileNumber;
+    private final long flushedLogNumber;
+    private final List<List<String>> levels;
+
+    LsmManifest(long nextFileNumber, long flushedLogNumber, List<List<String>> levels) {
+        this.nextFileNumber = nextFileNumber;
+        this.flushedLogNumber = flushedLogNumber;
+        this.levels = levels;
+    }
+
+    long getNextFileNumber() {
+        return nextFileNumber;
+    }
+
+    long getFlushedLogNumber() {
+        return flushedLogNumber;
+    }
+
+    /**
+     * @return имена сегментов по уровням
+     */
+    List<List<String>> getLevels() {
+        return levels;
+    }
+
+    static boolean exists(Path tablePath) {
+        return Files.isRegularFile(tablePath.resolve(FILE_NAME));
+    }
+
+    static boolean isManifestFile(String fileName) {
+        return fileName.equals(FILE_NAME) || fileName.equals(FILE_NAME + TEMP_SUFFIX);
+    }
+
+    /**
+     * @throws CorruptedRecordException если манифест не удается разобрать
+     * @throws IOException              если произошла ошибка ввода-вывода
+     */
+    static LsmManifest read(Path tablePath, int levelCount) throws IOException {
+        List<String> lines = Files.readAllLines(tablePath.resolve(FILE_NAME), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+            throw new CorruptedRecordException("unknown manifest format in " + tablePath);
+        }
+        long nextFileNumber = 0;
+        long flushedLogNumber = 0;
+        List<List<String>> levels = new ArrayList<>();
+        for (int i = 0; i < levelCount; i++) {
+            levels.add(new ArrayList<>());
+        }
+        try {
+            for (String line : lines.subList(1, lines.size())) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split(" ", 2);
+                if (parts.length != 2) {
+                    throw new CorruptedRecordException("invalid manifest line \"" + line + "\" in " + tablePath);
+                }
+                if (parts[0].equals(NEXT_FILE_NUMBER)) {
+                    nextFileNumber = Long.parseLong(parts[1]);
+                } else if (parts[0].equals(FLUSHED_LOG_NUMBER)) {
+                    flushedLogNumber = Long.parseLong(parts[1]);
+                } else {
+                    levels.get(Integer.parseInt(parts[0])).add(parts[1]);
+                }
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new CorruptedRecordException("invalid manifest in " + tablePath, e);
+        }
+        return new LsmManifest(nextFileNumber, flushedLogNumber, levels);
+    }
+
+    void write(Path tablePath) throws IOException {
+        StringBuilder content = new StringBuilder(HEADER).append('\n')
+                .append(NEXT_FILE_NUMBER).append(' ').append(nextFileNumber).append('\n')
+                .append(FLUSHED_LOG_NUMBER).append(' ').append(flushedLogNumber).append('\n');
+        for (int level = 0; level < levels.size(); level++) {
+            for (String segmentName : levels.get(level)) {
+                content.append(level).append(' ').append(segmentName).append('\n');
+            }
+        }
+        Path tempPath = tablePath.resolve(FILE_NAME + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(content.toString());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, tablePath.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,821 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.exceptions.CorruptedRecordException;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.io.DatabaseInputStream;
+import com.itmo.java.basics.logic.io.SegmentBloomFilter;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Таблица в виде LSM-дерева. В отличие от {@link TableImpl} не держит в памяти индекс всех ключей:
+ * - новые записи попадают в memtable (конкурентный skip-list, отсортированный по ключу) и в журнал упреждающей
+ * записи - обычный сегмент ({@link SegmentImpl}), поэтому для журнала действуют те же режимы
+ * {@link com.itmo.java.basics.config.DurabilityMode}
+ * - когда журнал дорастает до размера сегмента таблицы, memtable замораживается, и запись продолжается в новые
+ * memtable и журнал. Замороженная memtable сбрасывается в отсортированный сегмент ({@link SortedSegment}) уровня 0
+ * в фоне ({@link BackgroundScheduler}), после этого ее журнал удаляется. Запись ждет сброса, только если
+ * заполнилась и следующая memtable
+ * - уровневая компактизация в фоне ({@link Compactor}) сливает сегменты уровня L с пересекающимися по ключам
+ * сегментами уровня L + 1. Сегменты уровней с 1-го не пересекаются по ключам, каждый уровень в
+ * {@link #LEVEL_SIZE_MULTIPLIER} раз больше предыдущего
+ * <p>
+ * Чтение идет без блокировки по неизменяемому срезу таблицы ({@link View}) от новых данных к старым: memtable,
+ * замороженная memtable, сегменты уровня 0 от новых к старым, затем по одному сегменту на каждом следующем уровне. Сегмент отсекается по диапазону ключей и фильтру Блума, иначе читается один его блок.
+ * Удаление - надгробие, которое выбрасывается, только дойдя до последнего непустого уровня.
+ * Состав уровней хранится в {@link LsmManifest}
+ */
+public class LsmTable implements Table {
+    private static final Logger LOGGER = Logger.getLogger(LsmTable.class.getName());
+
+    static final int LEVEL_COUNT = 7;
+    /**
+     * Сколько сегментов должно накопиться на уровне 0, чтобы слить их с уровнем 1
+     */
+    static final int LEVEL0_COMPACTION_TRIGGER = 4;
+    static final int LEVEL_SIZE_MULTIPLIER = 10;
+    private static final String LOG_SUFFIX = ".wal";
+    /**
+     * Значение удаленного ключа в memtable. Сравнивается по ссылке
+     */
+    private static final byte[] TOMBSTONE = new byte[0];
+    private static final Comparator<byte[]> KEY_ORDER = Arrays::compareUnsigned;
+
+    private final String tableName;
+    private final Path tablePath;
+    private final StorageContext storageContext;
+    /**
+     * Размер журнала, после которого memtable сбрасывается на диск. Он же - размер сегментов уровней с 1-го
+     */
+    private final long memtableMaxBytes;
+    /**
+     * Изменяемое состояние таблицы (memtable, журнал, уровни) меняется под блокировкой объекта таблицы,
+     * после каждого изменения, видного чтению, публикуется новый срез {@link #view}
+     */
+    private ConcurrentSkipListMap<byte[], byte[]> memtable = new ConcurrentSkipListMap<>(KEY_ORDER);
+    /**
+     * Замороженная memtable, которая сейчас сбрасывается в фоне, или {@code null}
+     */
+    private FrozenMemtable frozenMemtable;
+    private SegmentImpl writeAheadLog;
+    private long writeAheadLogNumber;
+    private long flushedLogNumber;
+    private long nextFileNumber = 1;
+    private final List<List<SortedSegment>> levels = new ArrayList<>();
+    /**
+     * Последний ключ сегмента, компактизированного на уровне последним: следующий выбирается после него,
+     * чтобы уровень переписывался по кругу
+     */
+    private final byte[][] compactionPointers = new byte[LEVEL_COUNT][];
+    /**
+     * Компактизация и выгрузка таблицы не идут одновременно
+     */
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    private volatile boolean unloaded;
+    private volatile View view;
+
+    private LsmTable(String tableName, Path tablePath, StorageContext storageContext) {
+        this.tableName = tableName;
+        this.tablePath = tablePath;
+        this.storageContext = storageContext;
+        this.memtableMaxBytes = storageContext.getConfig()
+                .getSegmentMaxBytes(tablePath.getParent().getFileName().toString(), tableName);
+        for (int i = 0; i < LEVEL_COUNT; i++) {
+            levels.add(new ArrayList<>());
+        }
+        publish();
+    }
+
+    public static Table create(String tableName, Path pathToDatabaseRoot, StorageContext storageContext)
+            throws DatabaseException {
+        if (tableName == null) {
+            throw new DatabaseException("tableName is null in creating table");
+        }
+        Path tablePath = pathToDatabaseRoot.resolve(tableName);
+        if (!tablePath.toFile().mkdir()) {
+            throw new DatabaseException("can't create table: " + tableName);
+        }
+        LsmTable table = new LsmTable(tableName, tablePath, storageContext);
+        try {
+            table.writeManifest();
+        } catch (IOException e) {
+            throw new DatabaseException("can't write manifest of table " + tableName, e);
+        }
+        storageContext.getCompactor().register(table);
+        return new CachingTable(table);
+    }
+
+    /**
+     * @return {@code true} - если в директории таблицы лежит манифест LSM-таблицы
+     */
+    public static boolean isLsmTable(Path tablePath) {
+        return LsmManifest.exists(tablePath);
+    }
+
+    /**
+     * Открывает таблицу по манифесту: открывает сегменты уровней, удаляет файлы, которых нет в манифесте
+     * (результаты прерванных сбросов и компактизаций), проигрывает несброшенные журналы в memtable
+     * и сразу сбрасывает ее в сегмент уровня 0
+     *
+     * @throws DatabaseException если манифест или сегменты повреждены или произошла ошибка ввода-вывода
+     */
+    public static Table initialize(String tableName, Path tablePath, StorageContext storageContext)
+            throws DatabaseException {
+        LsmTable table = new LsmTable(tableName, tablePath, storageContext);
+        try {
+            table.recover();
+        } catch (IOException e) {
+            throw new DatabaseException("can't open table " + tableName, e);
+        }
+        storageContext.getCompactor().register(table);
+        return new CachingTable(table);
+    }
+
+    private void recover() throws IOException {
+        LsmManifest manifest = LsmManifest.read(tablePath, LEVEL_COUNT);
+        flushedLogNumber = manifest.getFlushedLogNumber();
+        nextFileNumber = Math.max(nextFileNumber, manifest.getNextFileNumber());
+        Set<String> liveSegments = new HashSet<>();
+        for (int level = 0; level < LEVEL_COUNT; level++) {
+            for (String segmentName : manifest.getLevels().get(level)) {
+                levels.get(level).add(SortedSegment.open(segmentName, tablePath.resolve(segmentName), storageContext));
+                liveSegments.add(segmentName);
+            }
+        }
+        Map<Long, Path> logs = new TreeMap<>();
+        File[] files = tablePath.toFile().listFiles(File::isFile);
+        for (File file : files == null ? new File[0] : files) {
+            String fileName = file.getName();
+            String baseName = baseNameOf(fileName);
+            long number = SegmentNames.sequenceOf(tableName, baseName);
+            if (LsmManifest.isManifestFile(fileName) || number == 0) {
+                continue;
+            }
+            if (fileName.endsWith(LOG_SUFFIX) && number > flushedLogNumber) {
+                logs.put(number, file.toPath());
+            } else if (!liveSegments.contains(baseName) || SortedSegment.isTemporaryFile(fileName)) {
+                Files.delete(file.toPath());
+                continue;
+            }
+            nextFileNumber = Math.max(nextFileNumber, number + 1);
+        }
+        for (Map.Entry<Long, Path> log : logs.entrySet()) {
+            replay(log.getValue());
+            writeAheadLogNumber = log.getKey();
+        }
+        if (!logs.isEmpty()) {
+            flushMemtable();
+            for (Path log : logs.values()) {
+                Files.deleteIfExists(log);
+            }
+        }
+        publish();
+    }
+
+    /**
+     * @return имя сегмента, к которому относится файл (журнал, фильтр Блума, недописанный сегмент)
+     */
+    private static String baseNameOf(String fileName) {
+        for (String suffix : new String[]{LOG_SUFFIX, SegmentBloomFilter.SUFFIX, SortedSegment.TEMP_SUFFIX,
+                SegmentHintFile.SUFFIX}) {
+            if (fileName.endsWith(suffix)) {
+                return fileName.substring(0, fileName.length() - suffix.length());
+            }
+        }
+        return fileName;
+    }
+
+    /**
+     * Переносит записи журнала в memtable. Журнал может быть оборван сбоем посреди записи:
+     * все, что до обрыва, уже подтверждено клиенту, хвост отбрасывается
+     */
+    private void replay(Path log) throws IOException {
+        long size = Files.size(log);
+        int formatVersion;
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            formatVersion = SegmentFormat.readVersion(channel);
+        } catch (CorruptedRecordException e) {
+            LOGGER.log(Level.WARNING, "write-ahead log " + log + " has no valid header, skipped", e);
+            return;
+        }
+        long offset = SegmentFormat.headerSize(formatVersion);
+        FileInputStream file = new FileInputStream(log.toFile());
+        file.getChannel().position(offset);
+        try (DatabaseInputStream input = new DatabaseInputStream(new BufferedInputStream(file, 64 * 1024))) {
+            Optional<DatabaseRecord> record = input.readDbUnit(formatVersion, size - offset);
+            while (record.isPresent()) {
+                memtable.put(record.get().getKey(), record.get().isValuePresented() ? record.get().getValue() : TOMBSTONE);
+                offset += SegmentFormat.recordSize(record.get(), formatVersion);
+                record = input.readDbUnit(formatVersion, size - offset);
+            }
+        } catch (CorruptedRecordException e) {
+            LOGGER.log(Level.WARNING, "write-ahead log " + log + " is truncated at " + offset + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return tableName;
+    }
+
+    @Override
+    public synchronized void write(byte[] objectKey, byte[] objectValue) throws DatabaseException {
+        if (objectKey == null) {
+            throw new DatabaseException("key is null");
+        }
+        try {
+            while (writeAheadLog == null || writeAheadLog.isReadOnly()) {
+                rollOver();
+            }
+            long offset = objectValue == null
+                    ? writeAheadLog.delete(objectKey)
+                    : writeAheadLog.write(objectKey, objectValue);
+            if (offset == Segment.NOT_WRITTEN) {
+                throw new IOException("write-ahead log " + writeAheadLog.getName() + " is read-only");
+            }
+            memtable.put(objectKey, objectValue == null ? TOMBSTONE : objectValue);
+        } catch (IOException | DatabaseException e) {
+            throw new DatabaseException("error with write in table: " + tableName, e);
+        }
+    }
+
+    /**
+     * Читает без блокировки по текущему срезу. Компактизация выводит сегменты из использования после публикации
+     * нового среза, поэтому чтение, упавшее на закрытом сегменте, повторяется по более новому срезу
+     */
+    @Override
+    public Optional<byte[]> read(byte[] objectKey) throws DatabaseException {
+        if (objectKey == null) {
+            throw new DatabaseException("key is null in reading in table: " + tableName);
+        }
+        View current = view;
+        while (true) {
+            try {
+                return current.read(objectKey);
+            } catch (IOException e) {
+                View latest = view;
+                if (latest == current) {
+                    throw new DatabaseException("error with reading key in table " + tableName, e);
+                }
+                current = latest;
+            }
+        }
+    }
+
+    /**
+     * Удаление не проверяет, есть ли ключ: запись надгробия не требует чтения
+     */
+    @Override
+    public void delete(byte[] objectKey) throws DatabaseException {
+        if (objectKey == null) {
+            throw new DatabaseException("null key in table: " + tableName);
+        }
+        write(objectKey, null);
+    }
+
+    private static Optional<byte[]> valueOf(DatabaseRecord record) {
+        return record.isValuePresented() ? Optional.of(record.getValue()) : Optional.empty();
+    }
+
+    private static boolean covers(SortedSegment segment, byte[] objectKey) {
+        return KEY_ORDER.compare(segment.getFirstKey(), objectKey) <= 0
+                && KEY_ORDER.compare(objectKey, segment.getLastKey()) <= 0;
+    }
+
+    /**
+     * @return сегмент уровня (с 1-го), в диапазон которого попадает ключ, или {@code null}
+     */
+    private static SortedSegment segmentFor(List<SortedSegment> level, byte[] objectKey) {
+        int low = 0;
+        int high = level.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (KEY_ORDER.compare(level.get(middle).getFirstKey(), objectKey) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high >= 0 && covers(level.get(high), objectKey) ? level.get(high) : null;
+    }
+
+    /**
+     * Замораживает memtable заполненного журнала и начинает новый журнал. Если предыдущая замороженная memtable
+     * еще сбрасывается, сначала дожидается ее: в памяти не бывает больше двух memtable
+     */
+    private void rollOver() throws IOException, DatabaseException {
+        awaitFrozenMemtable();
+        if (writeAheadLog != null && !writeAheadLog.isReadOnly()) {
+            // пока запись ждала сброса, новый журнал начал другой писатель
+            return;
+        }
+        if (writeAheadLog != null) {
+            freezeMemtable();
+        }
+        writeAheadLogNumber = nextFileNumber++;
+        writeAheadLog = SegmentImpl.createWriteAheadLog(
+                SegmentNames.create(tableName, writeAheadLogNumber) + LOG_SUFFIX, tablePath, storageContext);
+    }
+
+    private void freezeMemtable() {
+        FrozenMemtable frozen = new FrozenMemtable(memtable, writeAheadLog, writeAheadLogNumber);
+        frozenMemtable = frozen;
+        memtable = new ConcurrentSkipListMap<>(KEY_ORDER);
+        writeAheadLog = null;
+        publish();
+        try {
+            storageContext.getBackgroundScheduler().execute(() -> flushInBackground(frozen));
+        } catch (RejectedExecutionException e) {
+            // планировщик уже остановлен: memtable будет сброшена той записью, которая ее дождется
+            frozen.failed = true;
+        }
+    }
+
+    private void flushInBackground(FrozenMemtable frozen) {
+        try {
+            flushFrozenMemtable(frozen);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "can't flush memtable of table " + tableName + ", will retry on next roll over", e);
+            synchronized (this) {
+                frozen.failed = true;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Дожидается сброса замороженной memtable. Если фоновый сброс не удался, повторяет его в текущем потоке
+     */
+    private void awaitFrozenMemtable() throws IOException {
+        while (frozenMemtable != null && !frozenMemtable.failed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while waiting for memtable flush of table " + tableName);
+            }
+        }
+        if (frozenMemtable != null) {
+            flushFrozenMemtable(frozenMemtable);
+        }
+    }
+
+    /**
+     * Пишет замороженную memtable в новый сегмент уровня 0 без блокировки таблицы, затем под блокировкой добавляет
+     * сегмент в уровень и записывает манифест. Только после этого журнал замороженной memtable удаляется
+     */
+    private void flushFrozenMemtable(FrozenMemtable frozen) throws IOException {
+        SortedSegment segment = writeSegment(frozen.memtable, allocateFileNumber());
+        synchronized (this) {
+            long previousFlushedLogNumber = flushedLogNumber;
+            if (segment != null) {
+                levels.get(0).add(0, segment);
+            }
+            flushedLogNumber = frozen.logNumber;
+            try {
+                writeManifest();
+            } catch (IOException e) {
+                // сегмент не попал в манифест: при повторном сбросе будет записан новый, этот удалится при открытии
+                if (segment != null) {
+                    levels.get(0).remove(segment);
+                    segment.retire();
+                }
+                flushedLogNumber = previousFlushedLogNumber;
+                throw e;
+            }
+            frozenMemtable = null;
+            publish();
+            notifyAll();
+        }
+        frozen.log.retire();
+        Files.deleteIfExists(tablePath.resolve(frozen.log.getName()));
+    }
+
+    /**
+     * Сбрасывает текущую memtable в текущем потоке (при открытии и выгрузке таблицы, когда записи не идут)
+     * и удаляет журнал
+     */
+    private void flushMemtable() throws IOException {
+        SortedSegment segment = writeSegment(memtable, nextFileNumber++);
+        if (segment != null) {
+            levels.get(0).add(0, segment);
+        }
+        flushedLogNumber = writeAheadLogNumber;
+        writeManifest();
+        memtable = new ConcurrentSkipListMap<>(KEY_ORDER);
+        publish();
+        if (writeAheadLog != null) {
+            writeAheadLog.retire();
+            Files.deleteIfExists(tablePath.resolve(writeAheadLog.getName()));
+            writeAheadLog = null;
+        }
+    }
+
+    /**
+     * @return сегмент с записями memtable или {@code null}, если memtable пуста
+     */
+    private SortedSegment writeSegment(ConcurrentSkipListMap<byte[], byte[]> source, long fileNumber)
+            throws IOException {
+        if (source.isEmpty()) {
+            return null;
+        }
+        try (SortedSegment.Writer writer = new SortedSegment.Writer(SegmentNames.create(tableName, fileNumber),
+                tablePath, storageContext)) {
+            for (Map.Entry<byte[], byte[]> entry : source.entrySet()) {
+                writer.append(entry.getKey(), entry.getValue() == TOMBSTONE ? null : entry.getValue());
+            }
+            return writer.finish();
+        }
+    }
+
+    /**
+     * Публикует срез текущего состояния для чтения. Вызывается под блокировкой таблицы
+     */
+    private void publish() {
+        List<List<SortedSegment>> levelsCopy = new ArrayList<>(levels.size());
+        for (List<SortedSegment> level : levels) {
+            levelsCopy.add(List.copyOf(level));
+        }
+        view = new View(memtable, frozenMemtable == null ? null : frozenMemtable.memtable, List.copyOf(levelsCopy));
+    }
+
+    private void writeManifest() throws IOException {
+        List<List<String>> segmentNames = new ArrayList<>();
+        for (List<SortedSegment> level : levels) {
+            List<String> names = new ArrayList<>();
+            for (SortedSegment segment : level) {
+                names.add(segment.getName());
+            }
+            segmentNames.add(names);
+        }
+        new LsmManifest(nextFileNumber, flushedLogNumber, segmentNames).write(tablePath);
+    }
+
+    private synchronized long allocateFileNumber() {
+        return nextFileNumber++;
+    }
+
+    /**
+     * Компактизирует таблицу, пока у какого-либо уровня есть превышение (см. {@link #levelToCompact()}).
+     * Компактизатор обходит таблицы редко, а запись продолжает добавлять сегменты в уровень 0,
+     * поэтому за один обход дерево приводится к форме полностью
+     *
+     * @return {@code true} - если была выполнена хотя бы одна компактизация
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    boolean compact(CompactionRateLimiter rateLimiter) throws DatabaseException {
+        maintenanceLock.lock();
+        try {
+            boolean compacted = false;
+            while (!unloaded && compactLevel(rateLimiter)) {
+                compacted = true;
+            }
+            return compacted;
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Выгружает таблицу: дожидается идущей компактизации, снимает таблицу с компактизации, сбрасывает memtable
+     * в сегмент уровня 0 (тогда при открытии не придется проигрывать журнал) и закрывает файлы сегментов
+     */
+    @Override
+    public boolean unload() throws DatabaseException {
+        maintenanceLock.lock();
+        try {
+            synchronized (this) {
+                if (unloaded) {
+                    return true;
+                }
+                try {
+                    awaitFrozenMemtable();
+                    if (writeAheadLog != null) {
+                        flushMemtable();
+                    }
+                } catch (IOException e) {
+                    throw new DatabaseException("can't flush memtable of table " + tableName + " before unloading", e);
+                }
+                storageContext.getCompactor().unregister(this);
+                unloaded = true;
+                for (List<SortedSegment> level : levels) {
+                    for (SortedSegment segment : level) {
+                        try {
+                            segment.retire();
+                        } catch (IOException e) {
+                            LOGGER.log(Level.WARNING, "can't close segment " + segment.getName()
+                                    + " of unloaded table " + tableName, e);
+                        }
+                    }
+                }
+                return true;
+            }
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Один шаг уровневой компактизации. Уровень 0 сливается с уровнем 1 целиком, с остальных уровней берется
+     * следующий по кругу сегмент и сливается с пересекающимися с ним сегментами следующего уровня.
+     * <p>
+     * Слияние идет без блокировки таблицы, под блокировкой выбираются сегменты и подменяются уровни
+     */
+    private boolean compactLevel(CompactionRateLimiter rateLimiter) throws DatabaseException {
+        int level;
+        List<SortedSegment> upper;
+        List<SortedSegment> lower;
+        boolean bottom;
+        synchronized (this) {
+            level = levelToCompact();
+            if (level < 0) {
+                return false;
+            }
+            upper = level == 0 ? new ArrayList<>(levels.get(0)) : List.of(nextSegmentToCompact(level));
+            byte[] firstKey = upper.get(0).getFirstKey();
+            byte[] lastKey = upper.get(0).getLastKey();
+            for (SortedSegment segment : upper) {
+                firstKey = KEY_ORDER.compare(segment.getFirstKey(), firstKey) < 0 ? segment.getFirstKey() : firstKey;
+                lastKey = KEY_ORDER.compare(segment.getLastKey(), lastKey) > 0 ? segment.getLastKey() : lastKey;
+            }
+            lower = new ArrayList<>();
+            for (SortedSegment segment : levels.get(level + 1)) {
+                if (KEY_ORDER.compare(segment.getLastKey(), firstKey) >= 0
+                        && KEY_ORDER.compare(segment.getFirstKey(), lastKey) <= 0) {
+                    lower.add(segment);
+                }
+            }
+            bottom = true;
+            for (int deeper = level + 2; deeper < LEVEL_COUNT; deeper++) {
+                bottom &= levels.get(deeper).isEmpty();
+            }
+        }
+        if (level > 0 && lower.isEmpty() && !bottom) {
+            moveDown(level, upper.get(0));
+            return true;
+        }
+        List<SortedSegment> inputs = new ArrayList<>(upper);
+        inputs.addAll(lower);
+        List<SortedSegment> outputs = merge(inputs, bottom, rateLimiter);
+        synchronized (this) {
+            levels.get(level).removeAll(upper);
+            List<SortedSegment> target = levels.get(level + 1);
+            target.removeAll(lower);
+            target.addAll(outputs);
+            target.sort(Comparator.comparing(SortedSegment::getFirstKey, KEY_ORDER));
+            if (level > 0) {
+                compactionPointers[level] = upper.get(0).getLastKey();
+            }
+            publish();
+            try {
+                writeManifest();
+                for (SortedSegment segment : inputs) {
+                    segment.retire();
+                }
+            } catch (IOException e) {
+                throw new DatabaseException("can't update manifest of table " + tableName + " after compaction", e);
+            }
+        }
+        for (SortedSegment segment : inputs) {
+            deleteSegmentFile(segment);
+        }
+        return true;
+    }
+
+    /**
+     * Переносит сегмент на следующий уровень без перезаписи: на нем нет сегментов с пересекающимися ключами,
+     * а надгробия сегмента все равно нельзя выбросить
+     */
+    private synchronized void moveDown(int level, SortedSegment segment) throws DatabaseException {
+        levels.get(level).remove(segment);
+        List<SortedSegment> target = levels.get(level + 1);
+        target.add(segment);
+        target.sort(Comparator.comparing(SortedSegment::getFirstKey, KEY_ORDER));
+        compactionPointers[level] = segment.getLastKey();
+        publish();
+        try {
+            writeManifest();
+        } catch (IOException e) {
+            throw new DatabaseException("can't update manifest of table " + tableName + " after compaction", e);
+        }
+    }
+
+    /**
+     * Уровень, сильнее всего превысивший свой предел: для уровня 0 - {@link #LEVEL0_COMPACTION_TRIGGER} сегментов,
+     * для уровня 1 - {@link #LEVEL_SIZE_MULTIPLIER} размеров memtable, дальше каждый уровень в
+     * {@link #LEVEL_SIZE_MULTIPLIER} раз больше. Сравнение по доле превышения не дает уровню 0 забрать
+     * всю компактизацию себе, пока уровень 1 растет
+     *
+     * @return номер уровня или -1, если превышений нет
+     */
+    private int levelToCompact() {
+        int level = -1;
+        double maxScore = 1;
+        if (levels.get(0).size() >= LEVEL0_COMPACTION_TRIGGER) {
+            level = 0;
+            maxScore = (double) levels.get(0).size() / LEVEL0_COMPACTION_TRIGGER;
+        }
+        long maxBytes = memtableMaxBytes * LEVEL_SIZE_MULTIPLIER;
+        for (int i = 1; i < LEVEL_COUNT - 1; i++, maxBytes *= LEVEL_SIZE_MULTIPLIER) {
+            long bytes = 0;
+            for (SortedSegment segment : levels.get(i)) {
+                bytes += segment.getSize();
+            }
+            double score = (double) bytes / maxBytes;
+            if (score > maxScore) {
+                maxScore = score;
+                level = i;
+            }
+        }
+        return level;
+    }
+
+    private SortedSegment nextSegmentToCompact(int level) {
+        byte[] pointer = compactionPointers[level];
+        for (SortedSegment segment : levels.get(level)) {
+            if (pointer == null || KEY_ORDER.compare(segment.getFirstKey(), pointer) > 0) {
+                return segment;
+            }
+        }
+        return levels.get(level).get(0);
+    }
+
+    /**
+     * Сливает сегменты в новые сегменты размером около {@link #memtableMaxBytes}. Из нескольких записей ключа
+     * остается запись из сегмента, который идет в списке раньше (более новая)
+     *
+     * @param dropTombstones ниже результата нет данных, поэтому надгробия больше ничего не скрывают
+     */
+    private List<SortedSegment> merge(List<SortedSegment> inputs, boolean dropTombstones,
+                                      CompactionRateLimiter rateLimiter) throws DatabaseException {
+        List<SortedSegment> outputs = new ArrayList<>();
+        List<SortedSegment.Cursor> cursors = new ArrayList<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((first, second) -> {
+            int compared = KEY_ORDER.compare(cursors.get(first).current().getKey(), cursors.get(second).current().getKey());
+            return compared != 0 ? compared : Integer.compare(first, second);
+        });
+        SortedSegment.Writer writer = null;
+        try {
+            for (SortedSegment input : inputs) {
+                cursors.add(input.openCursor());
+                if (cursors.get(cursors.size() - 1).next()) {
+                    queue.add(cursors.size() - 1);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int newest = queue.poll();
+                DatabaseRecord record = cursors.get(newest).current();
+                rateLimiter.acquire(record.size());
+                if (record.isValuePresented() || !dropTombstones) {
+                    if (writer == null) {
+                        writer = new SortedSegment.Writer(SegmentNames.create(tableName, allocateFileNumber()),
+                                tablePath, storageContext);
+                    }
+                    writer.append(record.getKey(), record.isValuePresented() ? record.getValue() : null);
+                    if (writer.getDataSize() >= memtableMaxBytes) {
+                        outputs.add(writer.finish());
+                        writer.close();
+                        writer = null;
+                    }
+                }
+                while (!queue.isEmpty() && Arrays.equals(cursors.get(queue.peek()).current().getKey(), record.getKey())) {
+                    int older = queue.poll();
+                    rateLimiter.acquire(cursors.get(older).current().size());
+                    if (cursors.get(older).next()) {
+                        queue.add(older);
+                    }
+                }
+                if (cursors.get(newest).next()) {
+                    queue.add(newest);
+                }
+            }
+            if (writer != null) {
+                outputs.add(writer.finish());
+                writer.close();
+                writer = null;
+            }
+            return outputs;
+        } catch (IOException e) {
+            for (SortedSegment output : outputs) {
+                deleteSegmentFile(output);
+            }
+            throw new DatabaseException("error while compacting table: " + tableName, e);
+        } finally {
+            closeQuietly(writer);
+            for (SortedSegment.Cursor cursor : cursors) {
+                closeQuietly(cursor);
+            }
+        }
+    }
+
+    private void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "can't close compaction file of table " + tableName, e);
+        }
+    }
+
+    private void deleteSegmentFile(SortedSegment segment) throws DatabaseException {
+        try {
+            Path segmentPath = tablePath.resolve(segment.getName());
+            Files.deleteIfExists(segmentPath);
+            Files.deleteIfExists(SegmentBloomFilter.pathFor(segmentPath));
+        } catch (IOException e) {
+            throw new DatabaseException("can't delete segment " + segment.getName() + " in table " + tableName, e);
+        }
+    }
+
+    /**
+     * Неизменяемый срез таблицы для чтения без блокировки: memtable (в нее продолжается запись, но это
+     * конкурентный skip-list), замороженная memtable и копии списков уровней
+     */
+    private static class View {
+        private final ConcurrentSkipListMap<byte[], byte[]> memtable;
+        private final ConcurrentSkipListMap<byte[], byte[]> frozenMemtable;
+        private final List<List<SortedSegment>> levels;
+
+        View(ConcurrentSkipListMap<byte[], byte[]> memtable, ConcurrentSkipListMap<byte[], byte[]> frozenMemtable,
+             List<List<SortedSegment>> levels) {
+            this.memtable = memtable;
+            this.frozenMemtable = frozenMemtable;
+            this.levels = levels;
+        }
+
+        Optional<byte[]> read(byte[] objectKey) throws IOException {
+            byte[] value = memtable.get(objectKey);
+            if (value == null && frozenMemtable != null) {
+                value = frozenMemtable.get(objectKey);
+            }
+            if (value != null) {
+                return value == TOMBSTONE ? Optional.empty() : Optional.of(value);
+            }
+            for (SortedSegment segment : levels.get(0)) {
+                Optional<DatabaseRecord> record = covers(segment, objectKey)
+                        ? segment.lookupRecord(objectKey)
+                        : Optional.empty();
+                if (record.isPresent()) {
+                    return valueOf(record.get());
+                }
+            }
+            for (int level = 1; level < LEVEL_COUNT; level++) {
+                SortedSegment segment = segmentFor(levels.get(level), objectKey);
+                Optional<DatabaseRecord> record = segment == null ? Optional.empty() : segment.lookupRecord(objectKey);
+                if (record.isPresent()) {
+                    return valueOf(record.get());
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Memtable заполненного журнала, которая сбрасывается в сегмент уровня 0 в фоне
+     */
+    private static class FrozenMemtable {
+        private final ConcurrentSkipListMap<byte[], byte[]> memtable;
+        private final SegmentImpl log;
+        private final long logNumber;
+        /**
+         * Фоновый сброс не удался (или не был запущен). Меняется под блокировкой таблицы
+         */
+        private boolean failed;
+
+        FrozenMemtable(ConcurrentSkipListMap<byte[], byte[]> memtable, SegmentImpl log, long logNumber) {
+            this.memtable = memtable;
+            this.log = log;
+            this.logNumber = logNumber;
+        }
+    }
+}
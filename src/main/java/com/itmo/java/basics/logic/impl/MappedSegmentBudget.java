@@ -0,0 +1,48 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.logic.io.MappedBuffers;
+
+import java.nio.MappedByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограничивает суммарный объем сегментов, отображенных в память, и освобождает отображения детерминированно,
+ * не дожидаясь сборщика мусора ({@link MappedBuffers})
+ */
+public class MappedSegmentBudget {
+    private final long maxBytes;
+    private final AtomicLong mappedBytes = new AtomicLong();
+
+    public MappedSegmentBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Резервирует место под отображение.
+     *
+     * @return {@code true} - если место зарезервировано, {@code false} - если лимит будет превышен
+     */
+    public boolean tryReserve(long bytes) {
+        while (true) {
+            long current = mappedBytes.get();
+            if (current + bytes > maxBytes) {
+                return false;
+            }
+            if (mappedBytes.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Снимает отображение и возвращает его размер в бюджет. После вызова обращаться к буферу нельзя
+     */
+    public void release(MappedByteBuffer buffer) {
+        mappedBytes.addAndGet(-buffer.capacity());
+        MappedBuffers.unmap(buffer);
+    }
+
+    public long getMappedBytes() {
+        return mappedBytes.get();
+    }
+}
@@ -0,0 +1,178 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.index.DatabaseKey;
+import com.itmo.java.basics.logic.Table;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Таблица только в памяти: значения лежат в {@link ConcurrentHashMap} и не пишутся на диск, после перезапуска
+ * таблица пуста. На диске есть только директория таблицы с ее метаданными, чтобы таблица открылась при старте.
+ * Для данных, которые можно восстановить из другого источника (кэши).
+ * <p>
+ * Если для таблицы задан лимит памяти ({@link com.itmo.java.basics.config.StorageConfig#getMemoryTableMaxBytes(String, String)}),
+ * то при его превышении записи вытесняются алгоритмом "часы": стрелка обходит таблицу, прочитанные с прошлого обхода
+ * записи получают второй шанс, остальные удаляются
+ */
+public class MemoryTable implements Table {
+    /**
+     * Примерный расход памяти на запись помимо ключа и значения: узел таблицы, ключ, запись, заголовки массивов
+     */
+    static final int ENTRY_OVERHEAD_BYTES = 96;
+
+    private final String tableName;
+    /**
+     * Лимит памяти таблицы, 0 - без лимита
+     */
+    private final long maxBytes;
+    private final ConcurrentHashMap<DatabaseKey, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong usedBytes = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    /**
+     * Стрелка вытеснения. Итератор {@link ConcurrentHashMap} не ломается от параллельных изменений,
+     * поэтому переживает вызовы и продолжает обход с того места, где остановился
+     */
+    private Iterator<Map.Entry<DatabaseKey, Entry>> clockHand;
+
+    private MemoryTable(String tableName, long maxBytes) {
+        this.tableName = tableName;
+        this.maxBytes = maxBytes;
+    }
+
+    public static Table create(String tableName, Path pathToDatabaseRoot, StorageContext storageContext)
+            throws DatabaseException {
+        if (tableName == null) {
+            throw new DatabaseException("tableName is null in creating table");
+        }
+        if (!pathToDatabaseRoot.resolve(tableName).toFile().mkdir()) {
+            throw new DatabaseException("can't create table: " + tableName);
+        }
+        return initialize(pathToDatabaseRoot.getFileName().toString(), tableName, storageContext);
+    }
+
+    /**
+     * @return пустая таблица: данные таблицы не переживают перезапуск
+     */
+    public static Table initialize(String dbName, String tableName, StorageContext storageContext) {
+        return new MemoryTable(tableName, storageContext.getConfig().getMemoryTableMaxBytes(dbName, tableName));
+    }
+
+    @Override
+    public String getName() {
+        return tableName;
+    }
+
+    /**
+     * @throws DatabaseException если ключ {@code null} или запись больше лимита памяти таблицы
+     */
+    @Override
+    public void write(byte[] objectKey, byte[] objectValue) throws DatabaseException {
+        if (objectKey == null) {
+            throw new DatabaseException("key is null");
+        }
+        if (objectValue == null) {
+            delete(objectKey);
+            return;
+        }
+        Entry entry = new Entry(objectKey, objectValue);
+        if (maxBytes > 0 && entry.size > maxBytes) {
+            throw new DatabaseException("record of " + entry.size + " bytes doesn't fit into memory limit "
+                    + maxBytes + " of table " + tableName);
+        }
+        Entry previous = entries.put(new DatabaseKey(objectKey), entry);
+        usedBytes.addAndGet(previous == null ? entry.size : entry.size - previous.size);
+        evictIfNeeded();
+    }
+
+    @Override
+    public Optional<byte[]> read(byte[] objectKey) throws DatabaseException {
+        if (objectKey == null) {
+            throw new DatabaseException("key is null in reading in table: " + tableName);
+        }
+        Entry entry = entries.get(new DatabaseKey(objectKey));
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return Optional.of(entry.value);
+    }
+
+    @Override
+    public void delete(byte[] objectKey) throws DatabaseException {
+        if (objectKey == null) {
+            throw new DatabaseException("null key in table: " + tableName);
+        }
+        Entry previous = entries.remove(new DatabaseKey(objectKey));
+        if (previous != null) {
+            usedBytes.addAndGet(-previous.size);
+        }
+    }
+
+    /**
+     * @return примерный объем памяти, занятый записями таблицы
+     */
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * @return сколько записей было вытеснено из-за лимита памяти
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Вытесняет записи, пока таблица не уложится в лимит. Вытесняет один поток, остальные пишут дальше:
+     * лимит может быть ненадолго превышен на размер параллельных записей. Если все записи постоянно читаются,
+     * после двух полных оборотов стрелки второй шанс больше не дается
+     */
+    private void evictIfNeeded() {
+        if (maxBytes == 0 || usedBytes.get() <= maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            long scanned = 0;
+            while (usedBytes.get() > maxBytes && !entries.isEmpty()) {
+                if (clockHand == null || !clockHand.hasNext()) {
+                    clockHand = entries.entrySet().iterator();
+                    if (!clockHand.hasNext()) {
+                        return;
+                    }
+                }
+                Map.Entry<DatabaseKey, Entry> candidate = clockHand.next();
+                Entry entry = candidate.getValue();
+                if (entry.referenced && scanned++ < 2L * entries.size()) {
+                    entry.referenced = false;
+                    continue;
+                }
+                if (entries.remove(candidate.getKey(), entry)) {
+                    usedBytes.addAndGet(-entry.size);
+                    evictedCount.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        private final byte[] value;
+        private final long size;
+        /**
+         * Запись читалась с прошлого прохода стрелки вытеснения
+         */
+        private volatile boolean referenced;
+
+        Entry(byte[] key, byte[] value) {
+            this.value = value;
+            this.size = (long) key.length + value.length + ENTRY_OVERHEAD_BYTES;
+        }
+    }
+}
@@ -5,23 +5,29 @@ import com.itmo.java.basics.logic.WritableDatabaseRecord;
 /**
  * Запись в БД, означающая удаление значения по ключу
  */
-import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 
 public class RemoveDatabaseRecord implements WritableDatabaseRecord {
 
-    private final String recordKey;
+    private final byte[] recordKey;
     private final int recordKeySize;
     private static final int recordValueSize = -1;
 
+    /**
+     * Ключ кодируется в UTF-8, размер ключа - длина в байтах, а не в символах
+     */
     public RemoveDatabaseRecord(String _key) {
+        this(_key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public RemoveDatabaseRecord(byte[] _key) {
         recordKey = _key;
-        recordKeySize = _key.length();
+        recordKeySize = _key.length;
     }
 
     @Override
     public byte[] getKey() {
-        return recordKey.getBytes(StandardCharsets.UTF_8);
+        return recordKey;
     }
 
     @Override
@@ -1,42 +1,130 @@
 package com.itmo.java.basics.logic.impl;
 
-import com.itmo.java.basics.index.impl.SegmentIndex;
-import com.itmo.java.basics.index.impl.SegmentOffsetInfoImpl;
-import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.config.DurabilityMode;
+import com.itmo.java.basics.config.StorageConfig;
 import com.itmo.java.basics.initialization.SegmentInitializationContext;
+import com.itmo.java.basics.exceptions.CorruptedRecordException;
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.initialization.SegmentInitializationContext;
-import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.DatabaseRecord;
 import com.itmo.java.basics.logic.Segment;
-import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.WritableDatabaseRecord;
 import com.itmo.java.basics.logic.io.DatabaseInputStream;
+import com.itmo.java.basics.logic.io.DatabaseOutputBuffer;
 import com.itmo.java.basics.logic.io.DatabaseOutputStream;
+import com.itmo.java.basics.logic.io.SegmentBloomFilter;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
 
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Сегмент - append-only файл, хранящий пары ключ-значение, разделенные специальным символом.
- * - имеет ограниченный размер, большие значения (>100000) записываются в последний сегмент, если он не read-only
+ * - имеет ограниченный размер ({@link StorageConfig#getSegmentMaxBytes(String, String)}), большие значения записываются
+ * в последний сегмент, если он не read-only
  * - при превышении размера сегмента создается новый сегмент и дальнейшие операции записи производятся в него
  * - именование файла-сегмента должно позволять установить очередность их появления
  * - является неизменяемым после появления более нового сегмента
  */
 public class SegmentImpl implements Segment {
+    private static final Logger LOGGER = Logger.getLogger(SegmentImpl.class.getName());
+
+    /**
+     * Сколько байт читается первым позиционным чтением. Для типичных записей этого хватает на заголовок и значение
+     */
+    private static final int READ_WINDOW_SIZE = 4 * 1024;
+    /**
+     * Окно первого чтения переиспользуется потоком: на каждое чтение выделяется только массив значения
+     */
+    private static final ThreadLocal<ByteBuffer> READ_WINDOW =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_WINDOW_SIZE));
+    private static final int REMOVED_OBJECT_SIZE = -1;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
 
     private final File fileSeg;
     private final String nameSegment;
     private long offsetSegment;
-    private SegmentIndex segIndex = new SegmentIndex();
     private final String pathSeg;
+    /**
+     * Версия формата файла (см. {@link SegmentFormat}). Новые сегменты пишутся в текущей версии,
+     * старые дописываются в той, в которой были созданы
+     */
+    private final int formatVersion;
+    /**
+     * Размер, после которого сегмент становится read-only. Задается для таблицы, которой принадлежит сегмент
+     */
+    private final long maxSizeBytes;
+    /**
+     * Канал на дозапись, открыт пока сегмент не стал read-only
+     */
+    private FileChannel appendChannel;
+    private DatabaseOutputBuffer recordBuffer;
+    private DatabaseOutputStream recordOutputStream;
+    /**
+     * Сколько байт уже передано в файл. Записи в диапазоне [flushedOffset, offsetSegment) ждут группового коммита
+     * в {@link #recordBuffer}
+     */
+    private volatile long flushedOffset;
+    /**
+     * Записи будущего hint-файла. Накапливаются, только если сегмент пишется с нуля
+     */
+    private SegmentHintFile.Builder hintBuilder;
+    /**
+     * Хэши ключей будущего фильтра Блума. Накапливаются вместе с {@link #hintBuilder}
+     */
+    private SegmentBloomFilter.Builder bloomFilterBuilder;
+    /**
+     * Фильтр Блума read-only сегмента, {@code null} - пока сегмент открыт на запись или если фильтры выключены
+     */
+    private volatile SegmentBloomFilter bloomFilter;
+    /**
+     * Общий для всех читателей канал. Позиционные чтения не сдвигают позицию канала, поэтому блокировки не нужны
+     */
+    private volatile FileChannel readChannel;
+    /**
+     * Отображение read-only сегмента в память, если оно включено в {@link StorageConfig} и укладывается в лимит
+     */
+    private volatile MappedByteBuffer mappedSegment;
+    private boolean mappingAttempted;
+    /**
+     * Чтения отображения в памяти, которые идут прямо сейчас. Таблица читает сегменты и без блокировки, поэтому
+     * отображение выведенного из использования сегмента снимает последнее из таких чтений (см. {@link #retire()})
+     */
+    private final AtomicInteger mappedReaders = new AtomicInteger();
+    private final AtomicReference<MappedByteBuffer> retiredMapping = new AtomicReference<>();
+    private volatile boolean retired;
+    private final StorageContext storageContext;
+    /**
+     * Сегмент закрыт на запись явно, независимо от размера (например, результат компактизации)
+     */
+    private volatile boolean sealed;
+    /**
+     * Сегмент используется как журнал упреждающей записи ({@link LsmTable}): после заполнения он не читается,
+     * поэтому hint-файл и фильтр Блума для него не пишутся
+     */
+    private boolean writeAheadLog;
 
 
     public static Segment create(String segmentName, Path tableRootPath) throws DatabaseException {
+        return create(segmentName, tableRootPath, StorageContext.DEFAULT);
+    }
+
+    public static Segment create(String segmentName, Path tableRootPath, StorageContext storageContext) throws DatabaseException {
         if (segmentName == null || tableRootPath == null){
             throw new DatabaseException("one of param is null in create in class segment");
         }
@@ -48,36 +136,81 @@ public class SegmentImpl implements Segment {
         } catch (IOException e) {
             throw new DatabaseException("IO exception during to creating file" + segmentName, e);
         }
-        return new SegmentImpl(new File(String.valueOf(tableRootPath), segmentName), segmentName, pathtoSegment);
+        SegmentImpl segment = new SegmentImpl(new File(String.valueOf(tableRootPath), segmentName), segmentName, pathtoSegment,
+                storageContext);
+        try {
+            segment.openAppendChannel();
+        } catch (IOException e) {
+            throw new DatabaseException("can't open segment " + segmentName + " for append", e);
+        }
+        return segment;
+    }
+
+    /**
+     * Создает сегмент-журнал упреждающей записи: обычный сегмент без hint-файла и фильтра Блума
+     */
+    static SegmentImpl createWriteAheadLog(String segmentName, Path tableRootPath, StorageContext storageContext)
+            throws DatabaseException {
+        SegmentImpl segment = (SegmentImpl) create(segmentName, tableRootPath, storageContext);
+        segment.disableSealedFiles();
+        return segment;
+    }
+
+    private synchronized void disableSealedFiles() {
+        writeAheadLog = true;
+        hintBuilder = null;
+        bloomFilterBuilder = null;
     }
 
     public static Segment initializeFromContext(SegmentInitializationContext context) {
+        return initializeFromContext(context, StorageContext.DEFAULT);
+    }
+
+    /**
+     * Открывает существующий сегмент. Дописывать можно только в последний сегмент таблицы: все предыдущие
+     * когда-то уже были закрыты на запись, в том числе результаты компактизации, которые меньше максимального размера
+     */
+    public static Segment initializeFromContext(SegmentInitializationContext context, StorageContext storageContext) {
         return new SegmentImpl(new File(String.valueOf(context.getSegmentPath())), context.getSegmentName(),
-                String.valueOf(context.getSegmentPath()), context.getCurrentSize(), context.getIndex());
+                String.valueOf(context.getSegmentPath()), context.getCurrentSize(), context.getFormatVersion(),
+                !context.isLastSegment(), context.getBloomFilter(), storageContext);
     }
 
-    private SegmentImpl(File fileSeg, String nameSegment, String path, long offsetSegment, SegmentIndex segIndex) {
+    private SegmentImpl(File fileSeg, String nameSegment, String path, long offsetSegment, int formatVersion,
+                        boolean sealed, SegmentBloomFilter bloomFilter, StorageContext storageContext) {
         this.nameSegment = nameSegment;
+        this.formatVersion = formatVersion;
         this.fileSeg = fileSeg;
         this.pathSeg = path;
         this.offsetSegment = offsetSegment;
-        this.segIndex = segIndex;
+        this.flushedOffset = offsetSegment;
+        this.storageContext = storageContext;
+        this.maxSizeBytes = maxSizeBytes(fileSeg, storageContext);
+        this.sealed = sealed;
+        if (isReadOnly()) {
+            this.bloomFilter = bloomFilter;
+        }
     }
 
-    private SegmentImpl(File _fileSeg, String _nameSegment, String _path) {
+    private SegmentImpl(File _fileSeg, String _nameSegment, String _path, StorageContext _storageContext) {
         nameSegment = _nameSegment;
         fileSeg = _fileSeg;
         pathSeg = _path;
         offsetSegment = 0;
+        formatVersion = SegmentFormat.CURRENT_VERSION;
+        storageContext = _storageContext;
+        maxSizeBytes = maxSizeBytes(_fileSeg, _storageContext);
     }
 
-     static String createSegmentName(String tableName) {
-         try {
-             Thread.sleep(0);
-         } catch (InterruptedException e) {
-             e.printStackTrace();
-         }
-        return tableName + "_" + System.currentTimeMillis();
+    /**
+     * Директория сегмента названа по имени таблицы, а директория над ней - по имени базы данных,
+     * поэтому размер сегмента таблицы определяется по ним
+     */
+    private static long maxSizeBytes(File fileSeg, StorageContext storageContext) {
+        File tableDirectory = fileSeg.getAbsoluteFile().getParentFile();
+        File databaseDirectory = tableDirectory == null ? null : tableDirectory.getParentFile();
+        return storageContext.getConfig().getSegmentMaxBytes(databaseDirectory == null ? "" : databaseDirectory.getName(),
+                tableDirectory == null ? "" : tableDirectory.getName());
     }
 
     @Override
@@ -87,71 +220,444 @@ public class SegmentImpl implements Segment {
 
 
     @Override
-    public boolean write(String objectKey, byte[] objectValue) throws IOException {
+    public long write(byte[] objectKey, byte[] objectValue) throws IOException {
         if (objectKey == null) {
             throw new IOException("object key is null in write in class SegmentImpl");
         }
         if (isReadOnly()) {
-            return false;
+            return NOT_WRITTEN;
         }
         if (objectValue == null){
             return delete(objectKey);
         }
-        try(FileOutputStream SegmentOutputStream = new FileOutputStream(pathSeg, true)){
-            SetDatabaseRecord rec1 = new SetDatabaseRecord(objectKey, objectValue);
-            SegmentOffsetInfoImpl segmentOffsetInformation = new SegmentOffsetInfoImpl(offsetSegment);
-            segIndex.onIndexedEntityUpdated(objectKey, segmentOffsetInformation);
-            DatabaseOutputStream DataOutputStream = new DatabaseOutputStream(SegmentOutputStream);
-            DataOutputStream.write(rec1);
-            offsetSegment += rec1.size();
-        }
-        return true;
+        SetDatabaseRecord rec1 = new SetDatabaseRecord(objectKey, objectValue);
+        return append(rec1);
     }
 
     @Override
-    public Optional<byte[]> read(String objectKey) throws IOException {
-        if (segIndex.searchForKey(objectKey).isEmpty()){
-            return Optional.empty();
-        }
-        try (FileInputStream segmentInputStream = new FileInputStream(pathSeg)) {
-            DatabaseInputStream dataInputStream = new DatabaseInputStream(segmentInputStream);
-            long nowOffSet = segIndex.searchForKey(objectKey).get().getOffset();
-            if (dataInputStream.skip(nowOffSet) != nowOffSet){
-                throw new IOException("can't skip enough to read key: " + objectKey);
+    public Optional<byte[]> read(long offset) throws IOException {
+        if (offset < SegmentFormat.headerSize(formatVersion)) {
+            throw new IOException("no record at " + offset + " in segment " + nameSegment);
+        }
+        if (offset >= flushedOffset) {
+            synchronized (this) {
+                if (offset >= flushedOffset) {
+                    return readValueAt(recordBuffer.toByteBuffer(), (int) (offset - flushedOffset));
+                }
+            }
+        }
+        MappedByteBuffer mapped = mappedSegment();
+        if (mapped != null) {
+            mappedReaders.incrementAndGet();
+            try {
+                if (!retired) {
+                    return readValueAt(mapped, (int) offset);
+                }
+            } finally {
+                if (mappedReaders.decrementAndGet() == 0 && retired) {
+                    releaseRetiredMapping();
+                }
+            }
+            throw new ClosedChannelException();
+        }
+        return readValueAt(offset);
+    }
+
+    /**
+     * Читает значение записи из буфера в памяти (отображенного сегмента или еще не сброшенных записей):
+     * без системных вызовов, только копирование значения. Запись должна целиком лежать в буфере
+     */
+    private Optional<byte[]> readValueAt(ByteBuffer buffer, int position) throws IOException {
+        try {
+            int keySizePosition = position + SegmentFormat.checksumSize(formatVersion);
+            int keySize = buffer.getInt(keySizePosition);
+            int valueSizePosition = keySizePosition + Integer.BYTES + keySize;
+            int valueSize = buffer.getInt(valueSizePosition);
+            int valuePosition = valueSizePosition + Integer.BYTES;
+            if (keySizePosition != position && storageContext.getConfig().isVerifyChecksums()
+                    && SegmentFormat.checksum(buffer, keySizePosition, valuePosition + Math.max(valueSize, 0))
+                    != buffer.getInt(position)) {
+                throw new CorruptedRecordException("checksum mismatch at " + position + " in segment " + nameSegment);
             }
-            Optional<DatabaseRecord> tempRec = dataInputStream.readDbUnit();
-            if (tempRec.isPresent()){
-                return Optional.of(tempRec.get().getValue());
+            if (valueSize == REMOVED_OBJECT_SIZE) {
+                return Optional.empty();
             }
-            return Optional.empty();
+            byte[] value = new byte[valueSize];
+            ByteBuffer view = buffer.duplicate();
+            view.position(valuePosition);
+            view.get(value);
+            return Optional.of(value);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException
+                | BufferUnderflowException e) {
+            throw new CorruptedRecordException("can't read record at " + position + " in segment " + nameSegment, e);
         }
     }
 
+    /**
+     * Читает значение записи, начинающейся с указанного сдвига (формат см. {@link SegmentFormat}).
+     * Запись читается одним позиционным чтением, если она не больше {@link #READ_WINDOW_SIZE}, иначе
+     * сначала читается окно с заголовком, а затем запись целиком
+     */
+    private Optional<byte[]> readValueAt(long offset) throws IOException {
+        FileChannel channel = readChannel();
+        long available = flushedOffset - offset;
+        int keySizePosition = SegmentFormat.checksumSize(formatVersion);
+        if (available < keySizePosition + Integer.BYTES) {
+            throw new CorruptedRecordException("can't read record at " + offset + " in segment " + nameSegment);
+        }
+        ByteBuffer window = READ_WINDOW.get();
+        window.clear().limit((int) Math.min(READ_WINDOW_SIZE, available));
+        readFully(channel, window, offset);
+        window.flip();
+        int keySize = window.getInt(keySizePosition);
+        long valueSizePosition = keySizePosition + Integer.BYTES + (long) keySize;
+        if (keySize < 0 || valueSizePosition + Integer.BYTES > available) {
+            throw new CorruptedRecordException("invalid key size " + keySize + " at " + offset + " in segment " + nameSegment);
+        }
+        int valueSize = valueSizePosition + Integer.BYTES <= window.limit()
+                ? window.getInt((int) valueSizePosition)
+                : readFully(channel, offset + valueSizePosition, Integer.BYTES).getInt();
+        long recordSize = valueSizePosition + Integer.BYTES + Math.max(valueSize, 0);
+        if (valueSize < REMOVED_OBJECT_SIZE || recordSize > available) {
+            throw new CorruptedRecordException("invalid value size " + valueSize + " at " + offset + " in segment " + nameSegment);
+        }
+        if (recordSize > window.limit()) {
+            window = readFully(channel, offset, (int) recordSize);
+        }
+        return readValueAt(window, 0);
+    }
+
+    private ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        if (length < Integer.BYTES) {
+            throw new IOException("can't read record at " + position + " in segment " + nameSegment);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer, position);
+        return buffer.flip();
+    }
+
+    private void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("unexpected end of segment " + nameSegment + " at " + position);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Лениво отображает read-only сегмент в память. Попытка делается один раз: если лимит
+     * {@link StorageConfig#getMmapMaxBytes()} исчерпан, сегмент продолжает читаться позиционным чтением
+     */
+    private MappedByteBuffer mappedSegment() throws IOException {
+        MappedByteBuffer mapped = mappedSegment;
+        if (mapped != null || !isReadOnly() || !storageContext.getConfig().isMmapEnabled()) {
+            return mapped;
+        }
+        synchronized (this) {
+            if (mappingAttempted || flushedOffset != offsetSegment) {
+                return mappedSegment;
+            }
+            mappingAttempted = true;
+            if (offsetSegment > Integer.MAX_VALUE
+                    || !storageContext.getMappedSegmentBudget().tryReserve(offsetSegment)) {
+                return null;
+            }
+            mapped = readChannel().map(FileChannel.MapMode.READ_ONLY, 0, offsetSegment);
+            mappedSegment = mapped;
+            return mapped;
+        }
+    }
+
+    /**
+     * Выводит сегмент из использования (например, после компактизации): закрывает каналы и снимает
+     * отображение в память. Чтения, которые идут параллельно (таблица читает без блокировки), либо успевают
+     * дочитать отображение - тогда его снимает последнее из них, - либо падают с {@link ClosedChannelException}.
+     * Заново сегмент не открывается
+     */
+    public synchronized void retire() throws IOException {
+        MappedByteBuffer mapped = mappedSegment;
+        mappedSegment = null;
+        mappingAttempted = true;
+        retiredMapping.set(mapped);
+        retired = true;
+        if (mappedReaders.get() == 0) {
+            releaseRetiredMapping();
+        }
+        if (appendChannel != null) {
+            closeAppendChannel();
+        }
+        FileChannel channel = readChannel;
+        readChannel = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private void releaseRetiredMapping() {
+        MappedByteBuffer mapped = retiredMapping.getAndSet(null);
+        if (mapped != null) {
+            storageContext.getMappedSegmentBudget().release(mapped);
+        }
+    }
+
+    private FileChannel readChannel() throws IOException {
+        FileChannel channel = readChannel;
+        if (channel == null) {
+            synchronized (this) {
+                channel = readChannel;
+                if (retired) {
+                    throw new ClosedChannelException();
+                }
+                if (channel == null) {
+                    channel = FileChannel.open(Path.of(pathSeg), StandardOpenOption.READ);
+                    readChannel = channel;
+                }
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Проверяет по фильтру Блума, может ли в сегменте быть запись ключа. Сегмент, открытый на запись,
+     * и сегмент без фильтра отвечают "возможно есть".
+     * Если после положительного ответа записи не оказалось, вызывающий сообщает об этом
+     * в {@link BloomFilterMetrics#onFalsePositive()}
+     *
+     * @return {@code false} - если записи ключа в сегменте точно нет
+     */
+    public boolean mightContain(byte[] objectKey) {
+        SegmentBloomFilter filter = bloomFilter;
+        if (filter == null) {
+            return true;
+        }
+        boolean mightContain = filter.mightContain(objectKey);
+        storageContext.getBloomFilterMetrics().onProbe(mightContain);
+        return mightContain;
+    }
+
     @Override
     public boolean isReadOnly() {
-        if (offsetSegment >= 100_000){
+        if (sealed || offsetSegment >= maxSizeBytes){
             return true;
         }
         return false;
     }
 
     @Override
-    public boolean delete(String objectKey) throws IOException {
+    public long delete(byte[] objectKey) throws IOException {
         if (objectKey == null) {
             throw new IOException("objectKey is null in deleting in class SegmentImpl");
         }
         if (isReadOnly()) {
-            return false;
-        }
-        try (FileOutputStream segmentOutputStream = new FileOutputStream(pathSeg, true)) {
-            RemoveDatabaseRecord removeRecord = new RemoveDatabaseRecord(objectKey);
-            segIndex.onIndexedEntityUpdated(objectKey, null);
-            DatabaseOutputStream dataOutputStream = new DatabaseOutputStream(segmentOutputStream);
-            if (dataOutputStream.write(removeRecord) != removeRecord.size()) {
-                throw new IOException("can't write in segment " + nameSegment);
+            return NOT_WRITTEN;
+        }
+        RemoveDatabaseRecord removeRecord = new RemoveDatabaseRecord(objectKey);
+        return append(removeRecord);
+    }
+
+    /**
+     * Кодирует запись в переиспользуемый буфер и дописывает ее в конец сегмента одним вызовом write.
+     * В режиме {@link DurabilityMode#GROUP_FSYNC} запись остается в буфере до ближайшего группового коммита,
+     * в режиме {@link DurabilityMode#FSYNC} каждая запись сбрасывается на диск сразу.
+     * Когда сегмент заполняется и все записи переданы в файл, канал на дозапись закрывается
+     *
+     * @return сдвиг записанной записи
+     */
+    private synchronized long append(WritableDatabaseRecord record) throws IOException {
+        if (appendChannel == null) {
+            openAppendChannel();
+        }
+        DurabilityMode durability = storageContext.getConfig().getDurability();
+        if (durability != DurabilityMode.GROUP_FSYNC) {
+            recordBuffer.reset();
+        }
+        long recordSize = SegmentFormat.recordSize(record, formatVersion);
+        if (recordOutputStream.write(record, formatVersion) != recordSize) {
+            throw new IOException("can't write in segment " + nameSegment);
+        }
+        long recordOffset = offsetSegment;
+        if (hintBuilder != null) {
+            hintBuilder.add(record.getKey(), recordOffset, record.getValueSize());
+        }
+        if (bloomFilterBuilder != null) {
+            bloomFilterBuilder.add(record.getKey());
+        }
+        offsetSegment += recordSize;
+        if (durability == DurabilityMode.GROUP_FSYNC) {
+            storageContext.getGroupCommitter().onAppended(this, recordSize);
+            return recordOffset;
+        }
+        flushPending();
+        if (durability == DurabilityMode.FSYNC) {
+            appendChannel.force(false);
+        }
+        closeIfSealed();
+        return recordOffset;
+    }
+
+    /**
+     * Передает накопленные записи в файл одним вызовом write (без fsync)
+     *
+     * @return канал, который нужно сбросить на диск, или {@code null}, если сегмент уже закрыт на запись
+     */
+    synchronized FileChannel flushPending() throws IOException {
+        if (appendChannel == null) {
+            return null;
+        }
+        ByteBuffer pending = recordBuffer.toByteBuffer();
+        while (pending.hasRemaining()) {
+            appendChannel.write(pending);
+        }
+        recordBuffer.reset();
+        flushedOffset = offsetSegment;
+        return appendChannel;
+    }
+
+    /**
+     * Закрывает канал на дозапись, если сегмент заполнен и все его записи переданы в файл
+     */
+    synchronized void closeIfSealed() throws IOException {
+        if (appendChannel != null && isReadOnly() && flushedOffset == offsetSegment) {
+            closeAppendChannel();
+            writeSealedFiles();
+        }
+    }
+
+    /**
+     * Закрывает сегмент на запись: сбрасывает накопленные записи на диск и закрывает канал на дозапись
+     */
+    synchronized void seal() throws IOException {
+        sealed = true;
+        FileChannel channel = flushPending();
+        if (channel != null) {
+            channel.force(false);
+            closeAppendChannel();
+            writeSealedFiles();
+        }
+    }
+
+    /**
+     * Пишет hint-файл и фильтр Блума закрытого на запись сегмента. Если записи не накапливались (сегмент был
+     * открыт уже непустым), они собираются последовательным чтением сегмента. Ошибка не фатальна: без hint-файла
+     * сегмент будет прочитан целиком при старте, без фильтра - обращения к сегменту не отсекаются
+     */
+    private void writeSealedFiles() {
+        if (writeAheadLog) {
+            return;
+        }
+        SegmentHintFile.Builder hints = hintBuilder;
+        SegmentBloomFilter.Builder filterBuilder = bloomFilterBuilder;
+        hintBuilder = null;
+        bloomFilterBuilder = null;
+        try {
+            if (hints == null) {
+                SegmentHintFile.Builder scannedHints = new SegmentHintFile.Builder();
+                SegmentBloomFilter.Builder scannedKeys = newBloomFilterBuilder(storageContext);
+                scan((record, offset) -> {
+                    scannedHints.add(record.getKey(), offset,
+                            record.isValuePresented() ? record.getValue().length : REMOVED_OBJECT_SIZE);
+                    if (scannedKeys != null) {
+                        scannedKeys.add(record.getKey());
+                    }
+                });
+                hints = scannedHints;
+                filterBuilder = scannedKeys;
             }
-            offsetSegment += removeRecord.size();
+            hints.writeFor(Path.of(pathSeg), offsetSegment);
+        } catch (IOException | DatabaseException e) {
+            LOGGER.log(Level.WARNING, "can't write hint file for segment " + nameSegment, e);
+        }
+        if (filterBuilder != null) {
+            SegmentBloomFilter filter = filterBuilder.build();
+            bloomFilter = filter;
+            try {
+                filter.writeFor(Path.of(pathSeg), offsetSegment);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "can't write bloom filter for segment " + nameSegment, e);
+            }
+        }
+    }
+
+    /**
+     * @return накопитель ключей фильтра Блума или {@code null}, если фильтры выключены
+     */
+    public static SegmentBloomFilter.Builder newBloomFilterBuilder(StorageContext storageContext) {
+        int bitsPerKey = storageContext.getConfig().getBloomFilterBitsPerKey();
+        return bitsPerKey > 0 ? new SegmentBloomFilter.Builder(bitsPerKey) : null;
+    }
+
+    /**
+     * @return смещение, с которого будет дописана следующая запись, включая записи, которые ждут группового коммита
+     */
+    synchronized long getSize() {
+        return offsetSegment;
+    }
+
+    /**
+     * Передает накопленные записи в файл и сбрасывает файл на диск. Диск сбрасывается через канал на чтение:
+     * канал на дозапись может закрыться параллельно, а блокировка сегмента на время fsync остановила бы запись
+     */
+    void sync() throws IOException {
+        flushPending();
+        readChannel().force(false);
+    }
+
+    /**
+     * @return {@code true} - если часть записей еще не передана в файл (ждет группового коммита)
+     */
+    boolean hasPendingWrites() {
+        return flushedOffset != offsetSegment;
+    }
+
+    /**
+     * Последовательно читает все записи сегмента большими буферизованными блоками, проверяя их целостность
+     */
+    void scan(RecordVisitor visitor) throws IOException, DatabaseException {
+        FileInputStream file = new FileInputStream(pathSeg);
+        file.getChannel().position(SegmentFormat.headerSize(formatVersion));
+        try (DatabaseInputStream input = new DatabaseInputStream(new BufferedInputStream(file, SCAN_BUFFER_SIZE))) {
+            long offset = SegmentFormat.headerSize(formatVersion);
+            Optional<DatabaseRecord> record = input.readDbUnit(formatVersion, offsetSegment - offset);
+            while (record.isPresent()) {
+                visitor.visit(record.get(), offset);
+                offset += SegmentFormat.recordSize(record.get(), formatVersion);
+                record = input.readDbUnit(formatVersion, offsetSegment - offset);
+            }
+        }
+    }
+
+    /**
+     * Обработчик записей при последовательном чтении сегмента
+     */
+    interface RecordVisitor {
+        void visit(DatabaseRecord record, long offset) throws IOException, DatabaseException;
+    }
+
+    private void openAppendChannel() throws IOException {
+        appendChannel = FileChannel.open(Path.of(pathSeg), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (offsetSegment == 0) {
+            ByteBuffer header = SegmentFormat.header();
+            while (header.hasRemaining()) {
+                appendChannel.write(header);
+            }
+            offsetSegment = SegmentFormat.HEADER_SIZE;
+            flushedOffset = offsetSegment;
+            hintBuilder = new SegmentHintFile.Builder();
+            bloomFilterBuilder = newBloomFilterBuilder(storageContext);
+        }
+        recordBuffer = new DatabaseOutputBuffer();
+        recordOutputStream = new DatabaseOutputStream(recordBuffer);
+    }
+
+    private void closeAppendChannel() throws IOException {
+        try {
+            appendChannel.close();
+        } finally {
+            appendChannel = null;
+            recordBuffer = null;
+            recordOutputStream = null;
         }
-        return true;
     }
 }
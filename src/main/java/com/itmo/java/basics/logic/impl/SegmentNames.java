@@ -0,0 +1,56 @@
+package com.itmo.java.basics.logic.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Имена файлов-сегментов: имя таблицы, "_" и порядковый номер сегмента, дополненный нулями.
+ * Выход компактизации называется по последнему переписанному сегменту с суффиксом "_cNNNN".
+ * Старые сегменты именовались временем создания в миллисекундах - это тоже номер, только с пропусками,
+ * поэтому новые номера продолжают последовательность после наибольшего существующего
+ */
+public class SegmentNames {
+    private static final String SEPARATOR = "_";
+    private static final String COMPACTION_SEPARATOR = "_c";
+    private static final long[] UNKNOWN = new long[0];
+
+    private SegmentNames() {
+    }
+
+    static String create(String tableName, long sequence) {
+        return tableName + SEPARATOR + String.format("%019d", sequence);
+    }
+
+    /**
+     * @return номер сегмента или 0, если имя не соответствует формату
+     */
+    static long sequenceOf(String tableName, String segmentName) {
+        long[] numbers = parse(tableName, segmentName);
+        return numbers.length == 0 ? 0 : numbers[0];
+    }
+
+    /**
+     * Порядок появления сегментов таблицы: по номеру, выход компактизации - сразу за сегментом,
+     * по которому он назван. Файлы с именами другого формата идут первыми
+     */
+    public static Comparator<String> order(String tableName) {
+        return Comparator.<String, long[]>comparing(name -> parse(tableName, name), Arrays::compare)
+                .thenComparing(Comparator.naturalOrder());
+    }
+
+    private static long[] parse(String tableName, String segmentName) {
+        if (!segmentName.startsWith(tableName + SEPARATOR)) {
+            return UNKNOWN;
+        }
+        String[] parts = segmentName.substring(tableName.length() + SEPARATOR.length()).split(COMPACTION_SEPARATOR, -1);
+        long[] numbers = new long[parts.length];
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                numbers[i] = Long.parseLong(parts[i]);
+            }
+        } catch (NumberFormatException e) {
+            return UNKNOWN;
+        }
+        return numbers;
+    }
+}
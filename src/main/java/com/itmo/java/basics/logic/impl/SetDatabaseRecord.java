@@ -5,27 +5,32 @@ import com.itmo.java.basics.logic.WritableDatabaseRecord;
 /**
  * Запись в БД, означающая добавление значения по ключу
  */
-import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
 
 public class SetDatabaseRecord implements WritableDatabaseRecord {
 
-    private final String recordKey;
+    private final byte[] recordKey;
     private final byte[] recordValue;
     private final int recordKeySize;
     private final int recordValueSize;
 
+    /**
+     * Ключ кодируется в UTF-8, размер ключа - длина в байтах, а не в символах
+     */
     public SetDatabaseRecord(String _key, byte[] _value) {
+        this(_key.getBytes(StandardCharsets.UTF_8), _value);
+    }
+
+    public SetDatabaseRecord(byte[] _key, byte[] _value) {
         recordKey = _key;
-        recordKeySize = _key.length();
+        recordKeySize = _key.length;
         recordValue = _value;
         recordValueSize = _value.length;
     }
 
     @Override
     public byte[] getKey() {
-        return recordKey.getBytes(StandardCharsets.UTF_8);
+        return recordKey;
     }
 
     @Override
@@ -0,0 +1,704 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.exceptions.CorruptedRecordException;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.logic.DatabaseRecord;
+import com.itmo.java.basics.logic.Segment;
+import com.itmo.java.basics.logic.io.DatabaseInputStream;
+import com.itmo.java.basics.logic.io.DatabaseOutputBuffer;
+import com.itmo.java.basics.logic.io.DatabaseOutputStream;
+import com.itmo.java.basics.logic.io.SegmentBloomFilter;
+import com.itmo.java.basics.logic.io.SegmentFormat;
+
+import java.io.BufferedInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * Отсортированный сегмент - неизменяемый файл, в котором живые записи таблицы лежат по возрастанию ключа
+ * (байты ключа сравниваются как беззнаковые). Пишется компактизацией вместо обычных сегментов (см.
+ * {@link TableImpl#compact(CompactionRateLimiter)}) и LSM-таблицами ({@link LsmTable}). Надгробия есть только
+ * в сегментах LSM-таблиц: там более старые записи ключа могут лежать на следующих уровнях. Формат:
+ * - заголовок: MAGIC, номер версии
+ * - блоки данных: записи в формате {@link SegmentFormat#CHECKSUMMED_VERSION}, блок закрывается, когда в нем
+ * набирается {@link #BLOCK_SIZE} байт, запись между блоками не делится
+ * - разреженный индекс: для каждого блока размер первого ключа, первый ключ, сдвиг и размер блока
+ * - подвал фиксированного размера: сдвиг и размер индекса, количество блоков и записей, CRC32C индекса, MAGIC
+ * <p>
+ * В памяти держится только разреженный индекс (одна запись на блок) и фильтр Блума, поэтому ключи
+ * отсортированного сегмента в индексе таблицы не хранятся. Поиск ключа - двоичный поиск по первым ключам блоков
+ * и одно позиционное чтение блока
+ */
+public class SortedSegment implements Segment {
+    private static final Logger LOGGER = Logger.getLogger(SortedSegment.class.getName());
+
+    /**
+     * Блок, к которому обращается поиск ключа. Не больше окна первого чтения обычного сегмента,
+     * поэтому поиск в отсортированном сегменте читает с диска столько же
+     */
+    public static final int BLOCK_SIZE = 4 * 1024;
+    /**
+     * Суффикс файла, который еще пишется. Такой файл при старте не считается сегментом
+     */
+    public static final String TEMP_SUFFIX = ".sorting";
+    private static final int MAGIC = 0xDB5E6A55;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final int FOOTER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final int RECORD_VERSION = SegmentFormat.CHECKSUMMED_VERSION;
+    private static final int REMOVED_OBJECT_SIZE = -1;
+    private static final int SCAN_BUFFER_SIZE = 64 * 1024;
+    /**
+     * Буфер чтения блока переиспользуется потоком. Буфер в куче, чтобы ключи сравнивались
+     * {@link Arrays#compareUnsigned(byte[], int, int, byte[], int, int)}, а не по байту.
+     * Блок бывает больше {@link #BLOCK_SIZE} на размер последней записи, такие блоки и блоки с большими
+     * значениями читаются в отдельный буфер
+     */
+    private static final ThreadLocal<ByteBuffer> BLOCK_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(2 * BLOCK_SIZE));
+
+    private final String name;
+    private final Path path;
+    private final long size;
+    private final long recordCount;
+    private final byte[] lastKey;
+    /**
+     * Разреженный индекс: первый ключ, сдвиг и размер каждого блока
+     */
+    private final byte[][] firstKeys;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final long dataEnd;
+    private final SegmentBloomFilter bloomFilter;
+    private final StorageContext storageContext;
+    /**
+     * Общий для всех читателей канал. Позиционные чтения не сдвигают позицию канала, поэтому блокировки не нужны
+     */
+    private volatile FileChannel readChannel;
+    private boolean retired;
+
+    private SortedSegment(String name, Path path, long size, long recordCount, byte[] lastKey, byte[][] firstKeys,
+                          long[] blockOffsets, int[] blockLengths, long dataEnd, SegmentBloomFilter bloomFilter,
+                          StorageContext storageContext) {
+        this.name = name;
+        this.path = path;
+        this.size = size;
+        this.recordCount = recordCount;
+        this.lastKey = lastKey;
+        this.firstKeys = firstKeys;
+        this.blockOffsets = blockOffsets;
+        this.blockLengths = blockLengths;
+        this.dataEnd = dataEnd;
+        this.bloomFilter = bloomFilter;
+        this.storageContext = storageContext;
+    }
+
+    /**
+     * @return {@code true} - если файл начинается с заголовка отсортированного сегмента
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    public static boolean isSortedSegment(Path segmentPath) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(Integer.BYTES);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic, magic.position()) < 0) {
+                    return false;
+                }
+            }
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * @return {@code true} - если файл с таким именем - недописанный отсортированный сегмент
+     */
+    public static boolean isTemporaryFile(String fileName) {
+        return fileName.endsWith(TEMP_SUFFIX);
+    }
+
+    /**
+     * Открывает отсортированный сегмент: читает и проверяет подвал и разреженный индекс. Фильтр Блума читается
+     * из файла рядом с сегментом, а если его нет - строится по ключам сегмента и записывается
+     *
+     * @throws CorruptedRecordException если подвал или индекс повреждены
+     * @throws IOException              если произошла ошибка ввода-вывода
+     */
+    public static SortedSegment open(String segmentName, Path segmentPath, StorageContext storageContext) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + FOOTER_SIZE) {
+                throw new CorruptedRecordException("sorted segment " + segmentName + " is shorter than its footer");
+            }
+            ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            ByteBuffer footer = readFully(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+            long indexOffset = footer.getLong();
+            int indexLength = footer.getInt();
+            int blockCount = footer.getInt();
+            long recordCount = footer.getLong();
+            int indexChecksum = footer.getInt();
+            if (header.getInt(0) != MAGIC || header.getInt(Integer.BYTES) != VERSION || footer.getInt() != MAGIC
+                    || indexOffset < HEADER_SIZE || indexLength < 0 || blockCount < 0
+                    || indexOffset + indexLength != size - FOOTER_SIZE) {
+                throw new CorruptedRecordException("invalid footer of sorted segment " + segmentName);
+            }
+            ByteBuffer index = readFully(channel, indexOffset, indexLength);
+            CRC32C crc = new CRC32C();
+            crc.update(index.duplicate());
+            if ((int) crc.getValue() != indexChecksum) {
+                throw new CorruptedRecordException("index checksum mismatch in sorted segment " + segmentName);
+            }
+            byte[][] firstKeys = new byte[blockCount][];
+            long[] blockOffsets = new long[blockCount];
+            int[] blockLengths = new int[blockCount];
+            try {
+                for (int i = 0; i < blockCount; i++) {
+                    firstKeys[i] = new byte[index.getInt()];
+                    index.get(firstKeys[i]);
+                    blockOffsets[i] = index.getLong();
+                    blockLengths[i] = index.getInt();
+                    long previousEnd = i == 0 ? HEADER_SIZE : blockOffsets[i - 1] + blockLengths[i - 1];
+                    if (blockOffsets[i] != previousEnd || blockLengths[i] <= 0) {
+                        throw new CorruptedRecordException("invalid block " + i + " in sorted segment " + segmentName);
+                    }
+                }
+            } catch (BufferUnderflowException | NegativeArraySizeException e) {
+                throw new CorruptedRecordException("invalid index of sorted segment " + segmentName, e);
+            }
+            long dataEnd = blockCount == 0 ? HEADER_SIZE : blockOffsets[blockCount - 1] + blockLengths[blockCount - 1];
+            if (dataEnd != indexOffset) {
+                throw new CorruptedRecordException("blocks don't end at index in sorted segment " + segmentName);
+            }
+            byte[] lastKey = blockCount == 0
+                    ? new byte[0]
+                    : lastKeyOf(readFully(channel, blockOffsets[blockCount - 1], blockLengths[blockCount - 1]), segmentName);
+            SegmentBloomFilter bloomFilter = SegmentBloomFilter.load(segmentPath, size);
+            SortedSegment segment = new SortedSegment(segmentName, segmentPath, size, recordCount, lastKey, firstKeys,
+                    blockOffsets, blockLengths, dataEnd, bloomFilter, storageContext);
+            if (bloomFilter == null) {
+                return segment.withRebuiltBloomFilter();
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Фильтр Блума только ускоряет поиск, поэтому ошибка его записи не мешает открыть сегмент
+     */
+    private SortedSegment withRebuiltBloomFilter() throws IOException {
+        SegmentBloomFilter.Builder builder = SegmentImpl.newBloomFilterBuilder(storageContext);
+        if (builder == null) {
+            return this;
+        }
+        try {
+            scan((record, offset) -> builder.add(record.getKey()));
+        } catch (DatabaseException e) {
+            throw new IOException("can't read sorted segment " + name, e);
+        }
+        SegmentBloomFilter filter = builder.build();
+        try {
+            filter.writeFor(path, size);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "can't write bloom filter for sorted segment " + name, e);
+        }
+        return new SortedSegment(name, path, size, recordCount, lastKey, firstKeys, blockOffsets, blockLengths, dataEnd,
+                filter, storageContext);
+    }
+
+    /**
+     * Проходит последний блок до конца: последний ключ сегмента нужен, чтобы знать диапазон его ключей
+     */
+    private static byte[] lastKeyOf(ByteBuffer block, String segmentName) throws CorruptedRecordException {
+        int position = 0;
+        int keyPosition = 0;
+        int keySize = 0;
+        try {
+            while (position < block.limit()) {
+                keySize = block.getInt(position + Integer.BYTES);
+                keyPosition = position + 2 * Integer.BYTES;
+                int valueSize = block.getInt(keyPosition + keySize);
+                position = keyPosition + keySize + Integer.BYTES + Math.max(valueSize, 0);
+            }
+            return Arrays.copyOfRange(block.array(), keyPosition, keyPosition + keySize);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new CorruptedRecordException("can't read last block of sorted segment " + segmentName, e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Отсортированный сегмент неизменяем
+     */
+    @Override
+    public long write(byte[] objectKey, byte[] objectValue) {
+        return NOT_WRITTEN;
+    }
+
+    /**
+     * Читает значение записи по сдвигу, который выдал {@link #scan(SegmentImpl.RecordVisitor)}.
+     * Ключи отсортированного сегмента в индексе таблицы не хранятся, поэтому таблица ищет их через {@link #lookup(byte[])}
+     */
+    @Override
+    public Optional<byte[]> read(long offset) throws IOException {
+        int block = blockOf(offset);
+        if (block < 0) {
+            throw new IOException("no record at " + offset + " in segment " + name);
+        }
+        return valueAt(readBlock(block), (int) (offset - blockOffsets[block]));
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public long delete(byte[] objectKey) {
+        return NOT_WRITTEN;
+    }
+
+    /**
+     * @return количество записей (и ключей) в сегменте
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return размер файла сегмента
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return наименьший ключ сегмента (пустой массив, если сегмент пуст)
+     */
+    public byte[] getFirstKey() {
+        return firstKeys.length == 0 ? lastKey : firstKeys[0];
+    }
+
+    /**
+     * @return наибольший ключ сегмента (пустой массив, если сегмент пуст)
+     */
+    public byte[] getLastKey() {
+        return lastKey;
+    }
+
+    /**
+     * @return количество блоков, то есть записей разреженного индекса
+     */
+    public int getBlockCount() {
+        return blockOffsets.length;
+    }
+
+    /**
+     * Ищет значение ключа: проверяет фильтр Блума, двоичным поиском находит блок, в который попадает ключ,
+     * и читает только этот блок. Если фильтр ответил "возможно есть", а ключа не оказалось, это учитывается
+     * в {@link BloomFilterMetrics#onFalsePositive()}
+     *
+     * @return значение или пустой {@code Optional}, если ключа в сегменте нет
+     * @throws IOException если произошла ошибка ввода-вывода или блок поврежден
+     */
+    public Optional<byte[]> lookup(byte[] objectKey) throws IOException {
+        return lookupRecord(objectKey).filter(DatabaseRecord::isValuePresented).map(DatabaseRecord::getValue);
+    }
+
+    /**
+     * Ищет запись ключа так же, как {@link #lookup(byte[])}, но отличает надгробие от отсутствия записи
+     *
+     * @return запись ключа (возможно, надгробие) или пустой {@code Optional}, если записи ключа в сегменте нет
+     * @throws IOException если произошла ошибка ввода-вывода или блок поврежден
+     */
+    public Optional<DatabaseRecord> lookupRecord(byte[] objectKey) throws IOException {
+        if (bloomFilter != null) {
+            boolean mightContain = bloomFilter.mightContain(objectKey);
+            storageContext.getBloomFilterMetrics().onProbe(mightContain);
+            if (!mightContain) {
+                return Optional.empty();
+            }
+        }
+        int block = blockFor(objectKey);
+        if (block >= 0) {
+            ByteBuffer buffer = readBlock(block);
+            int position = find(buffer, objectKey);
+            if (position >= 0) {
+                Optional<byte[]> value = valueAt(buffer, position);
+                return Optional.of(value.isPresent()
+                        ? new SetDatabaseRecord(objectKey, value.get())
+                        : new RemoveDatabaseRecord(objectKey));
+            }
+        }
+        if (bloomFilter != null) {
+            storageContext.getBloomFilterMetrics().onFalsePositive();
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return {@code true} - если в сегменте есть запись ключа
+     */
+    public boolean contains(byte[] objectKey) throws IOException {
+        return lookup(objectKey).isPresent();
+    }
+
+    /**
+     * Читает все записи сегмента по возрастанию ключа большими буферизованными блоками, проверяя их целостность
+     */
+    void scan(SegmentImpl.RecordVisitor visitor) throws IOException, DatabaseException {
+        try (Cursor cursor = openCursor()) {
+            while (cursor.next()) {
+                visitor.visit(cursor.current(), cursor.currentOffset());
+            }
+        }
+    }
+
+    /**
+     * @return курсор, который читает записи сегмента по возрастанию ключа (например, для слияния сегментов)
+     */
+    Cursor openCursor() throws IOException {
+        return new Cursor();
+    }
+
+    /**
+     * Последовательное чтение записей отсортированного сегмента через отдельный канал
+     */
+    class Cursor implements AutoCloseable {
+        private final DatabaseInputStream input;
+        private long nextOffset = HEADER_SIZE;
+        private long currentOffset;
+        private DatabaseRecord current;
+
+        private Cursor() throws IOException {
+            InputStream file = Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ).position(HEADER_SIZE));
+            input = new DatabaseInputStream(new BufferedInputStream(file, SCAN_BUFFER_SIZE));
+        }
+
+        /**
+         * Переходит к следующей записи
+         *
+         * @return {@code false} - если записи кончились
+         * @throws CorruptedRecordException если запись повреждена
+         */
+        boolean next() throws IOException {
+            if (nextOffset >= dataEnd) {
+                current = null;
+                return false;
+            }
+            Optional<DatabaseRecord> record = input.readDbUnit(RECORD_VERSION, dataEnd - nextOffset);
+            if (record.isEmpty()) {
+                throw new CorruptedRecordException("invalid record at " + nextOffset + " in sorted segment " + name);
+            }
+            current = record.get();
+            currentOffset = nextOffset;
+            nextOffset += SegmentFormat.recordSize(current, RECORD_VERSION);
+            return true;
+        }
+
+        DatabaseRecord current() {
+            return current;
+        }
+
+        long currentOffset() {
+            return currentOffset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Выводит сегмент из использования (например, после компактизации). Параллельные чтения
+     * (таблица читает без блокировки) падают с {@link ClosedChannelException}, заново
+     * канал не открывается
+     */
+    public synchronized void retire() throws IOException {
+        retired = true;
+        FileChannel channel = readChannel;
+        readChannel = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * @return номер последнего блока, первый ключ которого не больше искомого, или -1
+     */
+    private int blockFor(byte[] objectKey) {
+        int low = 0;
+        int high = firstKeys.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (Arrays.compareUnsigned(firstKeys[middle], objectKey) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    private int blockOf(long offset) {
+        int block = Arrays.binarySearch(blockOffsets, offset);
+        if (block >= 0) {
+            return block;
+        }
+        block = -block - 2;
+        return block >= 0 && offset < blockOffsets[block] + blockLengths[block] ? block : -1;
+    }
+
+    /**
+     * Ищет запись ключа в блоке. Записи отсортированы, поэтому поиск останавливается на первом большем ключе
+     *
+     * @return позиция записи в блоке или -1
+     */
+    private int find(ByteBuffer block, byte[] objectKey) throws CorruptedRecordException {
+        int position = 0;
+        try {
+            while (position < block.limit()) {
+                int keySize = block.getInt(position + Integer.BYTES);
+                int keyPosition = position + 2 * Integer.BYTES;
+                int compared = compareKey(block, keyPosition, keySize, objectKey);
+                if (compared == 0) {
+                    return position;
+                }
+                if (compared > 0) {
+                    return -1;
+                }
+                int valueSize = block.getInt(keyPosition + keySize);
+                if (valueSize < REMOVED_OBJECT_SIZE) {
+                    throw new CorruptedRecordException("invalid value size " + valueSize + " in sorted segment " + name);
+                }
+                position = keyPosition + keySize + Integer.BYTES + Math.max(valueSize, 0);
+            }
+        } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new CorruptedRecordException("can't read block of sorted segment " + name, e);
+        }
+        return -1;
+    }
+
+    private static int compareKey(ByteBuffer block, int position, int size, byte[] objectKey) {
+        return Arrays.compareUnsigned(block.array(), position, position + size, objectKey, 0, objectKey.length);
+    }
+
+    private Optional<byte[]> valueAt(ByteBuffer block, int position) throws IOException {
+        try {
+            int keySizePosition = position + Integer.BYTES;
+            int keySize = block.getInt(keySizePosition);
+            int valueSizePosition = keySizePosition + Integer.BYTES + keySize;
+            int valueSize = block.getInt(valueSizePosition);
+            int valuePosition = valueSizePosition + Integer.BYTES;
+            if (storageContext.getConfig().isVerifyChecksums()
+                    && SegmentFormat.checksum(block, keySizePosition, valuePosition + Math.max(valueSize, 0))
+                    != block.getInt(position)) {
+                throw new CorruptedRecordException("checksum mismatch at " + position + " in sorted segment " + name);
+            }
+            if (valueSize == REMOVED_OBJECT_SIZE) {
+                return Optional.empty();
+            }
+            byte[] value = new byte[valueSize];
+            ByteBuffer view = block.duplicate();
+            view.position(valuePosition);
+            view.get(value);
+            return Optional.of(value);
+        } catch (IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException
+                | BufferUnderflowException e) {
+            throw new CorruptedRecordException("can't read record at " + position + " in sorted segment " + name, e);
+        }
+    }
+
+    private ByteBuffer readBlock(int block) throws IOException {
+        int length = blockLengths[block];
+        if (length > 2 * BLOCK_SIZE) {
+            return readFully(readChannel(), blockOffsets[block], length);
+        }
+        ByteBuffer buffer = BLOCK_BUFFER.get();
+        buffer.clear().limit(length);
+        readFully(readChannel(), buffer, blockOffsets[block]);
+        return buffer.flip();
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer, position);
+        return buffer.flip();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new CorruptedRecordException("unexpected end of sorted segment at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    private FileChannel readChannel() throws IOException {
+        FileChannel channel = readChannel;
+        if (channel == null) {
+            synchronized (this) {
+                channel = readChannel;
+                if (retired) {
+                    throw new ClosedChannelException();
+                }
+                if (channel == null) {
+                    channel = FileChannel.open(path, StandardOpenOption.READ);
+                    readChannel = channel;
+                }
+            }
+        }
+        return channel;
+    }
+
+    /**
+     * Пишет отсортированный сегмент во временный файл рядом с итоговым. Ключи должны подаваться строго
+     * по возрастанию. {@link #finish()} сбрасывает файл на диск и атомарно переименовывает его,
+     * поэтому после сбоя на диске остается либо целый сегмент, либо временный файл
+     */
+    static class Writer implements AutoCloseable {
+        private final String name;
+        private final Path path;
+        private final Path tempPath;
+        private final StorageContext storageContext;
+        private final FileChannel channel;
+        private final DatabaseOutputBuffer block = new DatabaseOutputBuffer(2 * BLOCK_SIZE);
+        private final DatabaseOutputStream blockOutput = new DatabaseOutputStream(block);
+        private final DatabaseOutputBuffer index = new DatabaseOutputBuffer();
+        private final DataOutputStream indexOutput = new DataOutputStream(index);
+        private final SegmentBloomFilter.Builder bloomFilterBuilder;
+        private byte[] blockFirstKey;
+        private byte[] lastKey;
+        private long blockOffset = HEADER_SIZE;
+        private int blockCount;
+        private long recordCount;
+
+        Writer(String segmentName, Path tablePath, StorageContext storageContext) throws IOException {
+            this.name = segmentName;
+            this.path = tablePath.resolve(segmentName);
+            this.tempPath = tablePath.resolve(segmentName + TEMP_SUFFIX);
+            this.storageContext = storageContext;
+            this.bloomFilterBuilder = SegmentImpl.newBloomFilterBuilder(storageContext);
+            channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            writeFully(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip());
+        }
+
+        /**
+         * @param value значение или {@code null} для надгробия
+         */
+        void append(byte[] key, byte[] value) throws IOException {
+            if (lastKey != null && Arrays.compareUnsigned(lastKey, key) >= 0) {
+                throw new IOException("keys of sorted segment " + name + " are out of order");
+            }
+            lastKey = key;
+            if (blockFirstKey == null) {
+                blockFirstKey = key;
+            }
+            blockOutput.write(value == null ? new RemoveDatabaseRecord(key) : new SetDatabaseRecord(key, value),
+                    RECORD_VERSION);
+            if (bloomFilterBuilder != null) {
+                bloomFilterBuilder.add(key);
+            }
+            recordCount++;
+            if (block.size() >= BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+
+        long getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * @return сколько байт данных уже записано, включая незакрытый блок
+         */
+        long getDataSize() {
+            return blockOffset + block.size();
+        }
+
+        private void flushBlock() throws IOException {
+            if (block.size() == 0) {
+                return;
+            }
+            indexOutput.writeInt(blockFirstKey.length);
+            indexOutput.write(blockFirstKey);
+            indexOutput.writeLong(blockOffset);
+            indexOutput.writeInt(block.size());
+            blockOffset += block.size();
+            blockCount++;
+            writeFully(block.toByteBuffer());
+            block.reset();
+            blockFirstKey = null;
+        }
+
+        /**
+         * Дописывает индекс и подвал, сбрасывает файл на диск, переименовывает его и записывает фильтр Блума
+         *
+         * @return открытый на чтение сегмент
+         */
+        SortedSegment finish() throws IOException {
+            flushBlock();
+            ByteBuffer indexBytes = index.toByteBuffer();
+            CRC32C crc = new CRC32C();
+            crc.update(indexBytes.duplicate());
+            writeFully(indexBytes);
+            writeFully(ByteBuffer.allocate(FOOTER_SIZE)
+                    .putLong(blockOffset)
+                    .putInt(index.size())
+                    .putInt(blockCount)
+                    .putLong(recordCount)
+                    .putInt((int) crc.getValue())
+                    .putInt(MAGIC)
+                    .flip());
+            channel.force(true);
+            long size = channel.size();
+            channel.close();
+            Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE);
+            if (bloomFilterBuilder != null) {
+                try {
+                    bloomFilterBuilder.build().writeFor(path, size);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "can't write bloom filter for sorted segment " + name, e);
+                }
+            }
+            return open(name, path, storageContext);
+        }
+
+        private void writeFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        /**
+         * Удаляет недописанный файл, если {@link #finish()} не был вызван или не удался
+         */
+        @Override
+        public void close() throws IOException {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+            Files.deleteIfExists(tempPath);
+        }
+    }
+}
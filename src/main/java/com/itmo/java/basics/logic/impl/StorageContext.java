@@ -0,0 +1,103 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.StorageConfig;
+import com.itmo.java.basics.config.TableIndexType;
+import com.itmo.java.basics.engine.impl.StorageEngineRegistry;
+import com.itmo.java.basics.index.TableIndex;
+import com.itmo.java.basics.index.impl.InMemoryTableIndex;
+import com.itmo.java.basics.index.impl.MappedTableIndex;
+
+import java.nio.file.Path;
+
+/**
+ * Общие для всего сервера настройки и ресурсы хранения, которые передаются таблицам и сегментам.
+ * Фоновые потоки контекста (общий {@link BackgroundScheduler} и поток группового коммита) останавливает
+ * {@link #close()}
+ */
+public class StorageContext implements AutoCloseable {
+
+    /**
+     * Контекст с настройками по умолчанию. Используется, когда сущность создается без явного контекста
+     */
+    public static final StorageContext DEFAULT = new StorageContext(StorageConfig.builder().build());
+
+    private final StorageConfig config;
+    private final MappedSegmentBudget mappedSegmentBudget;
+    private final GroupCommitter groupCommitter;
+    private final BackgroundScheduler backgroundScheduler = new BackgroundScheduler();
+    private final Compactor compactor;
+    private final IndexCheckpointer indexCheckpointer;
+    private final TableUnloader tableUnloader;
+    private final BloomFilterMetrics bloomFilterMetrics = new BloomFilterMetrics();
+    private final StorageEngineRegistry storageEngines;
+
+    public StorageContext(StorageConfig config) {
+        this.config = config;
+        mappedSegmentBudget = new MappedSegmentBudget(config.getMmapMaxBytes());
+        groupCommitter = new GroupCommitter(config.getGroupCommitWindowMillis(), config.getGroupCommitMaxBytes());
+        compactor = new Compactor(config, backgroundScheduler);
+        indexCheckpointer = new IndexCheckpointer(config, backgroundScheduler);
+        tableUnloader = new TableUnloader(config, backgroundScheduler);
+        storageEngines = new StorageEngineRegistry(config.getDefaultStorageEngine());
+    }
+
+    public StorageConfig getConfig() {
+        return config;
+    }
+
+    public MappedSegmentBudget getMappedSegmentBudget() {
+        return mappedSegmentBudget;
+    }
+
+    public GroupCommitter getGroupCommitter() {
+        return groupCommitter;
+    }
+
+    public Compactor getCompactor() {
+        return compactor;
+    }
+
+    public IndexCheckpointer getIndexCheckpointer() {
+        return indexCheckpointer;
+    }
+
+    public TableUnloader getTableUnloader() {
+        return tableUnloader;
+    }
+
+    public BackgroundScheduler getBackgroundScheduler() {
+        return backgroundScheduler;
+    }
+
+    public BloomFilterMetrics getBloomFilterMetrics() {
+        return bloomFilterMetrics;
+    }
+
+    public StorageEngineRegistry getStorageEngines() {
+        return storageEngines;
+    }
+
+    /**
+     * Создает пустой индекс таблицы того типа, который задан для нее в
+     * {@link StorageConfig#getTableIndexType(String, String)}
+     *
+     * @param tablePath директория таблицы, в ней хранится индекс {@link TableIndexType#MAPPED}
+     */
+    public TableIndex newTableIndex(String dbName, String tableName, Path tablePath) {
+        if (config.getTableIndexType(dbName, tableName) == TableIndexType.MAPPED) {
+            return new MappedTableIndex(tablePath, config.getTableIndexCacheEntries());
+        }
+        return new InMemoryTableIndex();
+    }
+
+    /**
+     * Останавливает фоновые задачи (дожидаясь тех, что уже идут), затем сбрасывает на диск накопленные групповым
+     * коммитом записи и останавливает его поток. Вызывается, когда команды больше не исполняются.
+     * {@link #DEFAULT} общий для всех, его не закрывают
+     */
+    @Override
+    public void close() {
+        backgroundScheduler.close();
+        groupCommitter.close();
+    }
+}
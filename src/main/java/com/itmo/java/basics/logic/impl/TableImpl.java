@@ -1,15 +1,33 @@
 package com.itmo.java.basics.logic.impl;
 
 import com.itmo.java.basics.exceptions.DatabaseException;
-import com.itmo.java.basics.index.impl.TableIndex;
+import com.itmo.java.basics.index.DatabaseKey;
+import com.itmo.java.basics.index.TableIndex;
+import com.itmo.java.basics.index.impl.InMemoryTableIndex;
+import com.itmo.java.basics.index.impl.TableIndexCheckpoint;
 import com.itmo.java.basics.initialization.TableInitializationContext;
 import com.itmo.java.basics.logic.Segment;
 import com.itmo.java.basics.logic.Table;
+import com.itmo.java.basics.logic.io.SegmentBloomFilter;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Таблица - логическая сущность, представляющая собой набор файлов-сегментов, которые объединены одним
@@ -21,13 +39,61 @@ import java.util.Optional;
  * и хранящую файлы-сегменты данной таблицы
  */
 public class TableImpl implements Table {
+    private static final Logger LOGGER = Logger.getLogger(TableImpl.class.getName());
 
     private final String nameOfTable;
     private final File fileSegment;
     private final TableIndex tableIndex;
     private Segment activeSegment;
+    private final StorageContext storageContext;
+    /**
+     * Все сегменты таблицы в порядке появления, последний из них - активный
+     */
+    private final List<Segment> segments = new ArrayList<>();
+    /**
+     * Сегменты по номерам, которыми на них ссылается индекс таблицы. Номер выдается при открытии сегмента
+     * и не переиспользуется, место выведенного из использования сегмента остается пустым.
+     * Меняется редко, а читается и без блокировки таблицы (см. {@link #read(byte[])})
+     */
+    private final List<Segment> segmentsById = new CopyOnWriteArrayList<>();
+    private int activeSegmentId;
+    /**
+     * Сегменты, записанные последней компактизацией. Сами по себе не повод компактизировать снова
+     */
+    private final Set<Segment> compactedSegments = new HashSet<>();
+    /**
+     * Отсортированный сегмент, в который компактизация переписала старые данные таблицы, или {@code null}.
+     * Всегда первый в {@link #segments}. Ключи, которых нет в индексе таблицы, ищутся в нем
+     */
+    private volatile SortedSegment sortedSegment;
+    /**
+     * Номер последнего созданного сегмента (см. {@link SegmentNames})
+     */
+    private long lastSegmentNumber;
+    /**
+     * Сегменты и их размеры, которые покрывает последний записанный снимок индекса. Пока они не изменились,
+     * новый снимок не нужен
+     */
+    private List<Segment> checkpointedSegments = List.of();
+    private long[] checkpointedSizes = new long[0];
+    /**
+     * Компактизация, запись снимка индекса и выгрузка таблицы не идут одновременно
+     */
+    private final ReentrantLock maintenanceLock = new ReentrantLock();
+    /**
+     * Чтения таблицы идут параллельно, запись, удаление и подмена сегментов и индекса - под блокировкой на запись.
+     * Если индекс можно читать параллельно с записью ({@link TableIndex#isConcurrentlyReadable()}), чтение
+     * сначала идет без блокировки
+     */
+    private final ReentrantReadWriteLock tableLock = new ReentrantReadWriteLock();
+    private volatile boolean unloaded;
 
     public static Table create(String tableName, Path pathToDatabaseRoot, TableIndex tableIndex) throws DatabaseException {
+        return create(tableName, pathToDatabaseRoot, tableIndex, StorageContext.DEFAULT);
+    }
+
+    public static Table create(String tableName, Path pathToDatabaseRoot, TableIndex tableIndex,
+                               StorageContext storageContext) throws DatabaseException {
         if (tableName == null) {
             throw new DatabaseException("tableName is null in creating table");
         }
@@ -35,25 +101,49 @@ public class TableImpl implements Table {
         if (!(new File(pathtoTable).mkdir())){
             throw new DatabaseException("can't create table: " + tableName);
         }
-        return new CachingTable(new TableImpl(String.valueOf(pathToDatabaseRoot.resolve(tableName)), tableName, tableIndex));
+        TableImpl table = new TableImpl(String.valueOf(pathToDatabaseRoot.resolve(tableName)), tableName, tableIndex,
+                storageContext);
+        storageContext.getCompactor().register(table);
+        storageContext.getIndexCheckpointer().register(table);
+        return new CachingTable(table);
     }
 
     public static Table initializeFromContext(TableInitializationContext context) {
-        return new CachingTable(new TableImpl(String.valueOf(context.getTablePath()), context.getTableName(),
-                context.getTableIndex(), context.getCurrentSegment()));
+        return initializeFromContext(context, StorageContext.DEFAULT);
+    }
+
+    public static Table initializeFromContext(TableInitializationContext context, StorageContext storageContext) {
+        TableImpl table = new TableImpl(String.valueOf(context.getTablePath()), context.getTableName(),
+                context.getTableIndex(), context.getSegments(), context.getCurrentSegment(), storageContext);
+        storageContext.getCompactor().register(table);
+        storageContext.getIndexCheckpointer().register(table);
+        return new CachingTable(table);
     }
 
-    private TableImpl(String pathName, String tableName, TableIndex tableIndex, Segment activeSegment) {
+    private TableImpl(String pathName, String tableName, TableIndex tableIndex, List<Segment> segments,
+                      Segment activeSegment, StorageContext storageContext) {
         fileSegment = new File(pathName);
         nameOfTable = tableName;
         this.tableIndex = tableIndex;
+        this.segments.addAll(segments);
+        this.segmentsById.addAll(segments);
         this.activeSegment = activeSegment;
+        this.activeSegmentId = segments.size() - 1;
+        this.storageContext = storageContext;
+        if (!segments.isEmpty() && segments.get(0) instanceof SortedSegment) {
+            sortedSegment = (SortedSegment) segments.get(0);
+            compactedSegments.add(sortedSegment);
+        }
+        for (Segment segment : segments) {
+            lastSegmentNumber = Math.max(lastSegmentNumber, SegmentNames.sequenceOf(tableName, segment.getName()));
+        }
     }
 
-    private TableImpl(String pathName, String tableName, TableIndex tableIndex) {
+    private TableImpl(String pathName, String tableName, TableIndex tableIndex, StorageContext storageContext) {
         fileSegment = new File(pathName);
         nameOfTable = tableName;
         this.tableIndex = tableIndex;
+        this.storageContext = storageContext;
     }
 
     @Override
@@ -62,54 +152,619 @@ public class TableImpl implements Table {
     }
 
     @Override
-    public void write(String objectKey, byte[] objectValue) throws DatabaseException {
+    public void write(byte[] objectKey, byte[] objectValue) throws DatabaseException {
         if (objectKey == null){
             throw new DatabaseException("key is null");
         }
+        tableLock.writeLock().lock();
         try{
             if (activeSegment == null || activeSegment.isReadOnly()) {
-                activeSegment = SegmentImpl.create(SegmentImpl.createSegmentName(nameOfTable), fileSegment.toPath());
+                rollOver();
+            }
+            DatabaseKey key = new DatabaseKey(objectKey);
+            boolean sorted = objectValue == null && isInSortedSegment(objectKey);
+            long offset = requireWritten(activeSegment.write(objectKey, objectValue));
+            if (objectValue == null) {
+                forget(key, sorted);
+            } else {
+                tableIndex.put(key, activeSegmentId, offset);
             }
-            activeSegment.write(objectKey, objectValue);
-            tableIndex.onIndexedEntityUpdated(objectKey, activeSegment);
         } catch (IOException io) {
             throw new DatabaseException("error with write in table: " + nameOfTable, io);
+        } finally {
+            tableLock.writeLock().unlock();
         }
     }
 
     @Override
-    public Optional<byte[]> read(String objectKey) throws DatabaseException {
+    public Optional<byte[]> read(byte[] objectKey) throws DatabaseException {
         if (objectKey == null) {
             throw new DatabaseException("key is null in reading in table: " + nameOfTable);
         }
-        if (tableIndex.searchForKey(objectKey).isEmpty()) {
-            return Optional.empty();
+        DatabaseKey key = new DatabaseKey(objectKey);
+        if (tableIndex.isConcurrentlyReadable()) {
+            try {
+                Optional<byte[]> value = readUnlocked(key);
+                if (value != null) {
+                    return value;
+                }
+            } catch (IOException | RuntimeException e) {
+                // чтение застало подмену сегментов компактизацией и повторяется под блокировкой
+            }
         }
+        tableLock.readLock().lock();
         try {
-            Optional<Segment> nullTest = tableIndex.searchForKey(objectKey);
-            if (nullTest.isEmpty()){
-                return Optional.empty();
+            Optional<byte[]> value = readUnlocked(key);
+            if (value == null) {
+                throw new IOException("segment of key " + key + " is not open");
             }
-            return nullTest.get().read(objectKey);
+            return value;
         } catch (IOException e) {
-            throw new DatabaseException("error with reading key: " + objectKey, e);
+            throw new DatabaseException("error with reading key: " + key, e);
+        } finally {
+            tableLock.readLock().unlock();
         }
     }
 
+    /**
+     * Чтение по индексу. Без блокировки таблицы может идти параллельно с записью и компактизацией: запись
+     * попадает в сегмент раньше, чем ее расположение - в индекс, а новый отсортированный сегмент публикуется
+     * раньше, чем из индекса убираются перенесенные в него ключи. Если сегмент из индекса уже выведен
+     * из использования, чтение из него падает с {@link java.nio.channels.ClosedChannelException}
+     *
+     * @return значение или {@code null}, если сегмента с записью уже нет
+     */
+    private Optional<byte[]> readUnlocked(DatabaseKey key) throws IOException {
+        long location = tableIndex.getLocation(key);
+        if (location == TableIndex.DELETED) {
+            return Optional.empty();
+        }
+        if (location == TableIndex.NO_LOCATION) {
+            SortedSegment sorted = sortedSegment;
+            return sorted == null ? Optional.empty() : sorted.lookup(key.getBytes());
+        }
+        Segment segment = segmentsById.get(TableIndex.segmentIdOf(location));
+        return segment == null ? null : segment.read(TableIndex.offsetOf(location));
+    }
+
    @Override
-   public void delete(String objectKey) throws DatabaseException {
-       if (tableIndex.searchForKey(objectKey).isPresent()) {
-           if (objectKey == null)
-               throw new DatabaseException("null key in table: " + nameOfTable);
-           try {
-               if (activeSegment == null || activeSegment.isReadOnly()){
-                   activeSegment = SegmentImpl.create(SegmentImpl.createSegmentName(nameOfTable), fileSegment.toPath());
-               }
-               activeSegment.delete(objectKey);
-               tableIndex.onIndexedEntityUpdated(objectKey, activeSegment);
-           } catch (IOException io) {
-               throw new DatabaseException("error with write in table: " + nameOfTable, io);
+   public void delete(byte[] objectKey) throws DatabaseException {
+       if (objectKey == null)
+           throw new DatabaseException("null key in table: " + nameOfTable);
+       DatabaseKey key = new DatabaseKey(objectKey);
+       tableLock.writeLock().lock();
+       try {
+           long location = tableIndex.getLocation(key);
+           if (location == TableIndex.DELETED) {
+               return;
+           }
+           boolean sorted = isInSortedSegment(objectKey);
+           if (location == TableIndex.NO_LOCATION && !sorted) {
+               return;
            }
+           if (activeSegment == null || activeSegment.isReadOnly()){
+               rollOver();
+           }
+           requireWritten(activeSegment.delete(objectKey));
+           forget(key, sorted);
+       } catch (IOException io) {
+           throw new DatabaseException("error with write in table: " + nameOfTable, io);
+       } finally {
+           tableLock.writeLock().unlock();
        }
    }
+
+    private boolean isInSortedSegment(byte[] objectKey) throws IOException {
+        return sortedSegment != null && sortedSegment.contains(objectKey);
+    }
+
+    /**
+     * Убирает удаленный ключ из индекса. Если запись ключа осталась в отсортированном сегменте,
+     * ключ остается в индексе с пометкой {@link TableIndex#DELETED}, иначе он "воскрес" бы при чтении
+     */
+    private void forget(DatabaseKey key, boolean inSortedSegment) throws IOException {
+        if (inSortedSegment) {
+            tableIndex.markDeleted(key);
+        } else {
+            tableIndex.remove(key);
+        }
+    }
+
+    private void rollOver() throws DatabaseException {
+        activeSegment = SegmentImpl.create(SegmentNames.create(nameOfTable, ++lastSegmentNumber), fileSegment.toPath(),
+                storageContext);
+        activeSegmentId = register(activeSegment);
+        segments.add(activeSegment);
+    }
+
+    /**
+     * Выдает сегменту номер, по которому на него будет ссылаться индекс таблицы
+     */
+    private int register(Segment segment) throws DatabaseException {
+        tableLock.writeLock().lock();
+        try {
+            if (segmentsById.size() > TableIndex.MAX_SEGMENT_ID) {
+                throw new DatabaseException("too many segments in table " + nameOfTable);
+            }
+            segmentsById.add(segment);
+            return segmentsById.size() - 1;
+        } finally {
+            tableLock.writeLock().unlock();
+        }
+    }
+
+    private long requireWritten(long offset) throws IOException {
+        if (offset == Segment.NOT_WRITTEN) {
+            throw new IOException("segment " + activeSegment.getName() + " is read-only");
+        }
+        return offset;
+    }
+
+    /**
+     * Записывает снимок индекса таблицы ({@link TableIndexCheckpoint}), если таблица изменилась с прошлого снимка.
+     * Под блокировкой таблицы на чтение запоминается позиция (сегменты и их размеры) и копируются массивы индекса,
+     * запись снимка и fsync идут без блокировки, поэтому запись в таблицу не останавливается.
+     * Номера сегментов в снимке заменяются порядковыми номерами, которые сегменты получат при старте.
+     * Перед публикацией снимка покрытые им записи сбрасываются на диск, иначе после сбоя снимок ссылался бы
+     * на записи, которых в файле нет
+     *
+     * @return {@code true} - если снимок был записан
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    boolean checkpoint() throws DatabaseException {
+        maintenanceLock.lock();
+        try {
+            return !unloaded && writeCheckpoint();
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    private boolean writeCheckpoint() throws DatabaseException {
+        if (!(tableIndex instanceof InMemoryTableIndex)) {
+            return false;
+        }
+        List<Segment> covered;
+        long[] indexedSizes;
+        int[] segmentOrdinals;
+        InMemoryTableIndex.Snapshot snapshot;
+        tableLock.readLock().lock();
+        try {
+            if (segments.isEmpty()) {
+                return false;
+            }
+            covered = new ArrayList<>(segments);
+            indexedSizes = new long[covered.size()];
+            Map<Segment, Integer> ordinals = new IdentityHashMap<>();
+            for (int i = 0; i < covered.size(); i++) {
+                Segment segment = covered.get(i);
+                indexedSizes[i] = segment instanceof SegmentImpl ? ((SegmentImpl) segment).getSize() : 0;
+                ordinals.put(segment, i);
+            }
+            if (covered.equals(checkpointedSegments) && Arrays.equals(indexedSizes, checkpointedSizes)) {
+                return false;
+            }
+            segmentOrdinals = new int[segmentsById.size()];
+            for (int id = 0; id < segmentOrdinals.length; id++) {
+                segmentOrdinals[id] = ordinals.getOrDefault(segmentsById.get(id), -1);
+            }
+            snapshot = ((InMemoryTableIndex) tableIndex).snapshot();
+        } finally {
+            tableLock.readLock().unlock();
+        }
+        List<String> segmentNames = new ArrayList<>(covered.size());
+        try {
+            snapshot.remapSegments(segmentOrdinals);
+            for (Segment segment : covered) {
+                segmentNames.add(segment.getName());
+                if (segment instanceof SegmentImpl
+                        && (segment == covered.get(covered.size() - 1) || ((SegmentImpl) segment).hasPendingWrites())) {
+                    ((SegmentImpl) segment).sync();
+                }
+            }
+            TableIndexCheckpoint.write(fileSegment.toPath(), segmentNames, indexedSizes, snapshot);
+        } catch (IOException | IllegalStateException e) {
+            throw new DatabaseException("can't write index checkpoint of table " + nameOfTable, e);
+        }
+        tableLock.writeLock().lock();
+        try {
+            checkpointedSegments = covered;
+            checkpointedSizes = indexedSizes;
+        } finally {
+            tableLock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Компактизирует таблицу, если с прошлой компактизации накопилось не меньше
+     * {@link com.itmo.java.basics.config.StorageConfig#getCompactionMinSegments()} неактивных сегментов.
+     * Все неактивные сегменты переписываются в новые, куда попадают только живые записи (на которые указывает индекс
+     * таблицы). Удаленные ключи выбрасываются вместе с надгробиями: более старых сегментов, где они могли бы
+     * "воскреснуть", после компактизации не остается.
+     * Если включена {@link com.itmo.java.basics.config.StorageConfig#isSortedCompaction()} или у таблицы уже есть
+     * отсортированный сегмент, неактивные сегменты переписываются в новый отсортированный сегмент
+     * (см. {@link #compactSorted(List, List, CompactionRateLimiter)}).
+     * <p>
+     * Копирование идет без блокировки таблицы, чтения и записи продолжают работать со старыми сегментами.
+     * Живость копируемой записи проверяется без блокировки записи (см. {@link #currentLocation(DatabaseKey)}),
+     * под блокировкой записи только атомарно подменяются индекс и список сегментов.
+     * Старые файлы удаляются от старых к новым, чтобы после сбоя не воскресить удаленный ключ
+     *
+     * @param rateLimiter ограничивает скорость чтения, чтобы не мешать основной нагрузке
+     * @return {@code true} - если компактизация была выполнена
+     * @throws DatabaseException если произошла ошибка ввода-вывода
+     */
+    boolean compact(CompactionRateLimiter rateLimiter) throws DatabaseException {
+        maintenanceLock.lock();
+        try {
+            return !unloaded && compactSegments(rateLimiter);
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Выгружает таблицу: дожидается идущей компактизации, снимает таблицу с компактизации и снимков индекса,
+     * записывает снимок индекса, чтобы следующее открытие прочитало только его, сбрасывает на диск записи
+     * и закрывает файлы сегментов и индекса. Если снимок записать не удалось, таблица все равно выгружается: при открытии
+     * индекс будет построен по сегментам
+     */
+    @Override
+    public boolean unload() throws DatabaseException {
+        maintenanceLock.lock();
+        try {
+            if (unloaded) {
+                return true;
+            }
+            tableLock.writeLock().lock();
+            try {
+                for (Segment segment : segments) {
+                    if (segment instanceof SegmentImpl && ((SegmentImpl) segment).hasPendingWrites()) {
+                        ((SegmentImpl) segment).sync();
+                    }
+                }
+            } finally {
+                tableLock.writeLock().unlock();
+            }
+            storageContext.getCompactor().unregister(this);
+            storageContext.getIndexCheckpointer().unregister(this);
+            try {
+                writeCheckpoint();
+            } catch (DatabaseException e) {
+                LOGGER.log(Level.WARNING, "can't write index checkpoint of unloaded table " + nameOfTable, e);
+            }
+            tableLock.writeLock().lock();
+            try {
+                unloaded = true;
+                for (Segment segment : segments) {
+                    closeQuietly(segment);
+                }
+                try {
+                    tableIndex.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "can't close index of unloaded table " + nameOfTable, e);
+                }
+            } finally {
+                tableLock.writeLock().unlock();
+            }
+            return true;
+        } catch (IOException e) {
+            throw new DatabaseException("can't flush table " + nameOfTable + " before unloading", e);
+        } finally {
+            maintenanceLock.unlock();
+        }
+    }
+
+    /**
+     * Освобождает в индексе место удаленных ключей. Вызывается под блокировкой записи после подмены сегментов:
+     * компактизация к этому моменту уже завершена, поэтому ошибка только записывается в журнал
+     */
+    private void compactIndexStorage() {
+        try {
+            tableIndex.compactStorage();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "can't free removed keys in index of table " + nameOfTable, e);
+        }
+    }
+
+    private void closeQuietly(Segment segment) {
+        try {
+            if (segment instanceof SortedSegment) {
+                ((SortedSegment) segment).retire();
+            } else if (segment instanceof SegmentImpl) {
+                ((SegmentImpl) segment).retire();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "can't close segment " + segment.getName() + " of unloaded table " + nameOfTable, e);
+        }
+    }
+
+    private boolean compactSegments(CompactionRateLimiter rateLimiter) throws DatabaseException {
+        List<Segment> merged = new ArrayList<>();
+        List<Integer> mergedIds = new ArrayList<>();
+        tableLock.readLock().lock();
+        try {
+            int freshSegments = 0;
+            for (Segment segment : segments) {
+                if (segment == sortedSegment) {
+                    merged.add(segment);
+                    mergedIds.add(segmentsById.indexOf(segment));
+                    continue;
+                }
+                if (segment == activeSegment || !(segment instanceof SegmentImpl)
+                        || ((SegmentImpl) segment).hasPendingWrites()) {
+                    break;
+                }
+                merged.add(segment);
+                mergedIds.add(segmentsById.indexOf(segment));
+                if (!compactedSegments.contains(segment)) {
+                    freshSegments++;
+                }
+            }
+            if (freshSegments == 0 || freshSegments < storageContext.getConfig().getCompactionMinSegments()) {
+                return false;
+            }
+        } finally {
+            tableLock.readLock().unlock();
+        }
+        if (sortedSegment != null || storageContext.getConfig().isSortedCompaction()) {
+            return compactSorted(merged, mergedIds, rateLimiter);
+        }
+        String outputPrefix = merged.get(merged.size() - 1).getName() + "_c";
+        List<SegmentImpl> outputs = new ArrayList<>();
+        List<Integer> outputIds = new ArrayList<>();
+        List<DatabaseKey> movedKeys = new ArrayList<>();
+        List<Long> movedFrom = new ArrayList<>();
+        List<Long> movedTo = new ArrayList<>();
+        try {
+            for (int i = 0; i < merged.size(); i++) {
+                int sourceId = mergedIds.get(i);
+                ((SegmentImpl) merged.get(i)).scan((record, offset) -> {
+                    rateLimiter.acquire(record.size());
+                    if (!record.isValuePresented()) {
+                        return;
+                    }
+                    DatabaseKey key = new DatabaseKey(record.getKey());
+                    long location = TableIndex.location(sourceId, offset);
+                    if (currentLocation(key) != location) {
+                        return;
+                    }
+                    SegmentImpl output = outputs.isEmpty() ? null : outputs.get(outputs.size() - 1);
+                    long outputOffset = output == null
+                            ? Segment.NOT_WRITTEN
+                            : output.write(record.getKey(), record.getValue());
+                    if (outputOffset == Segment.NOT_WRITTEN) {
+                        output = createCompactionOutput(outputPrefix, outputs.size() + 1);
+                        outputs.add(output);
+                        outputIds.add(register(output));
+                        outputOffset = output.write(record.getKey(), record.getValue());
+                    }
+                    movedKeys.add(key);
+                    movedFrom.add(location);
+                    movedTo.add(TableIndex.location(outputIds.get(outputIds.size() - 1), outputOffset));
+                });
+            }
+            for (SegmentImpl output : outputs) {
+                output.seal();
+            }
+        } catch (IOException | DatabaseException e) {
+            tableLock.writeLock().lock();
+            try {
+                for (int outputId : outputIds) {
+                    segmentsById.set(outputId, null);
+                }
+            } finally {
+                tableLock.writeLock().unlock();
+            }
+            for (SegmentImpl output : outputs) {
+                deleteSegmentFile(output);
+            }
+            throw new DatabaseException("error while compacting table: " + nameOfTable, e);
+        }
+        tableLock.writeLock().lock();
+        try {
+            try {
+                for (int i = 0; i < movedKeys.size(); i++) {
+                    if (tableIndex.getLocation(movedKeys.get(i)) == movedFrom.get(i)) {
+                        long location = movedTo.get(i);
+                        tableIndex.put(movedKeys.get(i), TableIndex.segmentIdOf(location), TableIndex.offsetOf(location));
+                    }
+                }
+            } catch (IOException e) {
+                throw new DatabaseException("can't update index of table " + nameOfTable + " after compaction", e);
+            }
+            segments.removeAll(merged);
+            segments.addAll(0, outputs);
+            compactedSegments.clear();
+            compactedSegments.addAll(outputs);
+            retire(merged, mergedIds);
+            compactIndexStorage();
+        } finally {
+            tableLock.writeLock().unlock();
+        }
+        for (Segment segment : merged) {
+            deleteSegmentFile(segment);
+        }
+        return true;
+    }
+
+    /**
+     * Расположение ключа для проверки, жива ли копируемая запись. Блокировка записи здесь не нужна: при подмене
+     * сегментов живость каждой перенесенной записи проверяется заново под блокировкой, а запись, которая уже
+     * мертва, ожить не может. Индекс, который можно читать параллельно с изменениями, читается без блокировки,
+     * остальные - под блокировкой чтения, вместе с читателями таблицы
+     */
+    private long currentLocation(DatabaseKey key) throws IOException {
+        if (tableIndex.isConcurrentlyReadable()) {
+            return tableIndex.getLocation(key);
+        }
+        tableLock.readLock().lock();
+        try {
+            return tableIndex.getLocation(key);
+        } finally {
+            tableLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Переписывает отсортированный сегмент и следующие за ним неактивные сегменты в новый отсортированный сегмент.
+     * Живые записи обычных сегментов (ключ и расположение) сортируются {@link LiveRecordSorter}: в куче держится
+     * только буфер ограниченного размера, остальное лежит в сериях на диске. Затем они сливаются
+     * с отсортированным сегментом, который читается по порядку. Запись отсортированного сегмента жива, если ключа
+     * нет в индексе таблицы: более новой записи у ключа нет и он не удален. Живость проверяется без блокировки
+     * записи (см. {@link #currentLocation(DatabaseKey)}).
+     * <p>
+     * После подмены ключи перенесенных записей убираются из индекса - теперь их ищут в отсортированном сегменте.
+     * Если ключ удалили, пока шло копирование, он остается в индексе с пометкой {@link TableIndex#DELETED}.
+     * Пометки ключей, которые не попали в новый сегмент, больше не нужны и снимаются
+     */
+    private boolean compactSorted(List<Segment> merged, List<Integer> mergedIds, CompactionRateLimiter rateLimiter)
+            throws DatabaseException {
+        String outputName = merged.get(merged.size() - 1).getName() + "_c0001";
+        List<DatabaseKey> droppedDeletions = new ArrayList<>();
+        SortedSegment output;
+        try (LiveRecordSorter liveRecords = new LiveRecordSorter(fileSegment.toPath(), outputName,
+                LiveRecordSorter.DEFAULT_BUFFER_BYTES)) {
+            try (SortedSegment.Writer writer = new SortedSegment.Writer(outputName, fileSegment.toPath(), storageContext)) {
+                SortedSegment source = null;
+                for (int i = 0; i < merged.size(); i++) {
+                    if (merged.get(i) instanceof SortedSegment) {
+                        source = (SortedSegment) merged.get(i);
+                        continue;
+                    }
+                    int sourceId = mergedIds.get(i);
+                    ((SegmentImpl) merged.get(i)).scan((record, offset) -> {
+                        rateLimiter.acquire(record.size());
+                        if (!record.isValuePresented()) {
+                            return;
+                        }
+                        DatabaseKey key = new DatabaseKey(record.getKey());
+                        long location = TableIndex.location(sourceId, offset);
+                        if (currentLocation(key) == location) {
+                            liveRecords.add(key, location);
+                        }
+                    });
+                }
+                try (LiveRecordSorter.Cursor live = liveRecords.sorted()) {
+                    boolean[] hasLive = {live.next()};
+                    if (source != null) {
+                        source.scan((record, offset) -> {
+                            rateLimiter.acquire(record.size());
+                            byte[] objectKey = record.getKey();
+                            while (hasLive[0] && Arrays.compareUnsigned(live.key().getBytes(), objectKey) < 0) {
+                                copyLiveRecord(live, writer);
+                                hasLive[0] = live.next();
+                            }
+                            if (hasLive[0] && Arrays.equals(live.key().getBytes(), objectKey)) {
+                                copyLiveRecord(live, writer);
+                                hasLive[0] = live.next();
+                                return;
+                            }
+                            DatabaseKey key = new DatabaseKey(objectKey);
+                            long location = currentLocation(key);
+                            if (location == TableIndex.NO_LOCATION) {
+                                writer.append(objectKey, record.getValue());
+                            } else if (location == TableIndex.DELETED) {
+                                droppedDeletions.add(key);
+                            }
+                        });
+                    }
+                    while (hasLive[0]) {
+                        copyLiveRecord(live, writer);
+                        hasLive[0] = live.next();
+                    }
+                }
+                output = writer.getRecordCount() == 0 ? null : writer.finish();
+            }
+            tableLock.writeLock().lock();
+            try {
+                // читатели без блокировки ищут ключи, которых нет в индексе, в отсортированном сегменте: удаленные
+                // ключи помечаются до публикации нового сегмента, а перенесенные убираются из индекса после нее
+                liveRecords.forEach((key, location) -> {
+                    if (tableIndex.getLocation(key) == TableIndex.NO_LOCATION) {
+                        tableIndex.markDeleted(key);
+                    }
+                });
+                sortedSegment = output;
+                liveRecords.forEach((key, location) -> {
+                    if (tableIndex.getLocation(key) == location) {
+                        tableIndex.remove(key);
+                    }
+                });
+                for (DatabaseKey key : droppedDeletions) {
+                    if (tableIndex.getLocation(key) == TableIndex.DELETED) {
+                        tableIndex.remove(key);
+                    }
+                }
+                segments.removeAll(merged);
+                compactedSegments.clear();
+                if (output != null) {
+                    register(output);
+                    segments.add(0, output);
+                    compactedSegments.add(output);
+                }
+                retire(merged, mergedIds);
+                compactIndexStorage();
+            } finally {
+                tableLock.writeLock().unlock();
+            }
+        } catch (IOException | DatabaseException e) {
+            throw new DatabaseException("error while compacting table: " + nameOfTable, e);
+        }
+        for (Segment segment : merged) {
+            deleteSegmentFile(segment);
+        }
+        return true;
+    }
+
+    /**
+     * Копирует живую запись обычного сегмента, на которую указывает курсор, в отсортированный сегмент
+     */
+    private void copyLiveRecord(LiveRecordSorter.Cursor live, SortedSegment.Writer writer) throws IOException {
+        long location = live.location();
+        Segment segment = segmentsById.get(TableIndex.segmentIdOf(location));
+        Optional<byte[]> value = segment == null ? Optional.empty() : segment.read(TableIndex.offsetOf(location));
+        if (value.isEmpty()) {
+            throw new IOException("record at " + TableIndex.offsetOf(location) + " in segment "
+                    + (segment == null ? TableIndex.segmentIdOf(location) : segment.getName()) + " is not a value");
+        }
+        writer.append(live.key().getBytes(), value.get());
+    }
+
+    /**
+     * Выводит из использования переписанные компактизацией сегменты. Вызывается под блокировкой таблицы
+     */
+    private void retire(List<Segment> merged, List<Integer> mergedIds) throws DatabaseException {
+        for (int mergedId : mergedIds) {
+            segmentsById.set(mergedId, null);
+        }
+        for (Segment segment : merged) {
+            try {
+                if (segment instanceof SortedSegment) {
+                    ((SortedSegment) segment).retire();
+                } else {
+                    ((SegmentImpl) segment).retire();
+                }
+            } catch (IOException e) {
+                throw new DatabaseException("can't close compacted segment " + segment.getName(), e);
+            }
+        }
+    }
+
+    private SegmentImpl createCompactionOutput(String prefix, int number) throws DatabaseException {
+        return (SegmentImpl) SegmentImpl.create(prefix + String.format("%04d", number), fileSegment.toPath(),
+                storageContext);
+    }
+
+    private void deleteSegmentFile(Segment segment) throws DatabaseException {
+        try {
+            Path segmentPath = fileSegment.toPath().resolve(segment.getName());
+            Files.deleteIfExists(segmentPath);
+            Files.deleteIfExists(SegmentHintFile.pathFor(segmentPath));
+            Files.deleteIfExists(SegmentBloomFilter.pathFor(segmentPath));
+        } catch (IOException e) {
+            throw new DatabaseException("can't delete segment " + segment.getName() + " in table " + nameOfTable, e);
+        }
+    }
 }
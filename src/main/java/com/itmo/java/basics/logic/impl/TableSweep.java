@@ -0,0 +1,82 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.exceptions.DatabaseException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Периодический обход зарегистрированных таблиц в {@link BackgroundScheduler}: общая часть {@link Compactor},
+ * {@link IndexCheckpointer} и {@link TableUnloader}. Обход ставится в планировщик при регистрации первой таблицы,
+ * ошибка на одной таблице записывается в журнал и не прерывает обход остальных
+ *
+ * @param <T> зарегистрированная таблица
+ */
+class TableSweep<T> {
+    private static final Logger LOGGER = Logger.getLogger(TableSweep.class.getName());
+
+    private final String taskName;
+    private final BackgroundScheduler scheduler;
+    private final long periodMillis;
+    private final Function<T, String> tableName;
+    private final Task<T> task;
+    private final List<T> tables = new CopyOnWriteArrayList<>();
+    private boolean scheduled;
+
+    /**
+     * @param taskName     название задачи для журнала
+     * @param periodMillis пауза между обходами
+     * @param tableName    имя таблицы для журнала
+     */
+    TableSweep(String taskName, BackgroundScheduler scheduler, long periodMillis, Function<T, String> tableName,
+               Task<T> task) {
+        this.taskName = taskName;
+        this.scheduler = scheduler;
+        this.periodMillis = periodMillis;
+        this.tableName = tableName;
+        this.task = task;
+    }
+
+    void add(T table) {
+        tables.add(table);
+        scheduleIfNeeded();
+    }
+
+    void removeIf(Predicate<T> filter) {
+        tables.removeIf(filter);
+    }
+
+    private synchronized void scheduleIfNeeded() {
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+        scheduler.scheduleWithFixedDelay(this::sweep, periodMillis);
+    }
+
+    private void sweep() {
+        for (T table : tables) {
+            try {
+                if (task.run(table)) {
+                    LOGGER.fine(() -> taskName + " done for table " + tableName.apply(table));
+                }
+            } catch (DatabaseException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, taskName + " of table " + tableName.apply(table) + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Задача обхода для одной таблицы
+     */
+    interface Task<T> {
+        /**
+         * @return {@code true} - если с таблицей что-то было сделано
+         */
+        boolean run(T table) throws DatabaseException;
+    }
+}
@@ -0,0 +1,35 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.StorageConfig;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Фоновая выгрузка таблиц, к которым не обращались дольше {@link StorageConfig#getTableIdleUnloadMillis()}
+ * (см. {@link LazyTable}). Таблицы обходятся в {@link BackgroundScheduler} несколько раз за этот срок, так что таблица
+ * выгружается не позже чем через полтора срока после последнего обращения
+ */
+public class TableUnloader {
+    private static final long MIN_SWEEP_PERIOD_MILLIS = 100;
+
+    private final StorageConfig config;
+    private final TableSweep<LazyTable> sweep;
+
+    public TableUnloader(StorageConfig config, BackgroundScheduler scheduler) {
+        this.config = config;
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(config.getTableIdleUnloadMillis());
+        sweep = new TableSweep<>("unloading", scheduler,
+                Math.max(config.getTableIdleUnloadMillis() / 2, MIN_SWEEP_PERIOD_MILLIS),
+                LazyTable::getName, table -> table.unloadIfIdle(idleNanos));
+    }
+
+    /**
+     * Добавляет таблицу в обход. Обход ставится в планировщик при регистрации первой таблицы
+     */
+    void register(LazyTable table) {
+        if (config.getTableIdleUnloadMillis() <= 0) {
+            return;
+        }
+        sweep.add(table);
+    }
+}
@@ -1,5 +1,6 @@
 package com.itmo.java.basics.logic.io;
 
+import com.itmo.java.basics.exceptions.CorruptedRecordException;
 import com.itmo.java.basics.logic.DatabaseRecord;
 import com.itmo.java.basics.logic.WritableDatabaseRecord;
 import com.itmo.java.basics.logic.impl.RemoveDatabaseRecord;
@@ -31,17 +32,61 @@ public class DatabaseInputStream extends DataInputStream {
         try {
             int keySize = readInt();
             byte[] key = new byte[keySize];
-            read(key);
+            readFully(key);
             int valueSize = readInt();
             if (valueSize == REMOVED_OBJECT_SIZE){
-                return  Optional.of(new RemoveDatabaseRecord(new String(key)));
+                return  Optional.of(new RemoveDatabaseRecord(key));
             }
             byte[] value = new byte[valueSize];
-            read(value);
-            SetDatabaseRecord ReadDatabaseRecord = new SetDatabaseRecord(new String(key), value);
+            readFully(value);
+            SetDatabaseRecord ReadDatabaseRecord = new SetDatabaseRecord(key, value);
             return Optional.of(ReadDatabaseRecord);
         } catch (EOFException _eof) {
             return Optional.empty();
         }
     }
+
+    /**
+     * Читает следующую запись сегмента указанной версии формата (см. {@link SegmentFormat}), проверяя ее целостность
+     *
+     * @param maxRecordSize сколько байт осталось до конца сегмента. Запись, объявляющая больший размер, считается поврежденной
+     * @return следующую запись, если она существует. {@link Optional#empty()} - если конец файла достигнут на границе записи
+     * @throws CorruptedRecordException если запись оборвана, ее размеры не согласованы или не сходится контрольная сумма
+     * @throws IOException              если произошла ошибка ввода-вывода
+     */
+    public Optional<DatabaseRecord> readDbUnit(int formatVersion, long maxRecordSize) throws IOException {
+        int firstByte = read();
+        if (firstByte < 0) {
+            return Optional.empty();
+        }
+        try {
+            int firstInt = (firstByte << 24) | (readUnsignedByte() << 16) | (readUnsignedByte() << 8) | readUnsignedByte();
+            boolean checksummed = SegmentFormat.checksumSize(formatVersion) > 0;
+            int keySize = checksummed ? readInt() : firstInt;
+            long remaining = maxRecordSize - SegmentFormat.checksumSize(formatVersion) - 2 * Integer.BYTES;
+            if (keySize < 0 || keySize > remaining) {
+                throw new CorruptedRecordException("invalid key size " + keySize);
+            }
+            byte[] key = new byte[keySize];
+            readFully(key);
+            int valueSize = readInt();
+            if (valueSize < REMOVED_OBJECT_SIZE || valueSize > remaining - keySize) {
+                throw new CorruptedRecordException("invalid value size " + valueSize);
+            }
+            byte[] value = null;
+            if (valueSize != REMOVED_OBJECT_SIZE) {
+                value = new byte[valueSize];
+                readFully(value);
+            }
+            if (checksummed && SegmentFormat.checksum(keySize, key, valueSize, value) != firstInt) {
+                throw new CorruptedRecordException("checksum mismatch");
+            }
+            if (value == null) {
+                return Optional.of(new RemoveDatabaseRecord(key));
+            }
+            return Optional.of(new SetDatabaseRecord(key, value));
+        } catch (EOFException e) {
+            throw new CorruptedRecordException("record is truncated", e);
+        }
+    }
 }
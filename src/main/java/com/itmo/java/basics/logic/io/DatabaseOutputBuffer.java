@@ -0,0 +1,26 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Переиспользуемый буфер, в который кодируются записи перед тем, как попасть в файл сегмента.
+ * В отличие от {@link ByteArrayOutputStream#toByteArray()} не копирует накопленные байты.
+ */
+public class DatabaseOutputBuffer extends ByteArrayOutputStream {
+
+    public DatabaseOutputBuffer() {
+        super();
+    }
+
+    public DatabaseOutputBuffer(int initialSize) {
+        super(initialSize);
+    }
+
+    /**
+     * Возвращает накопленные байты без копирования. Буфер действителен до следующего {@link #reset()} или записи
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+}
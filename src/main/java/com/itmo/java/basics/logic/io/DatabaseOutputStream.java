@@ -44,4 +44,20 @@ public class DatabaseOutputStream extends DataOutputStream {
         }
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Записывает запись в формате указанной версии (см. {@link SegmentFormat}): для версии с контрольными суммами
+     * перед записью пишется CRC32C ее байтов
+     *
+     * @return размер записи вместе с контрольной суммой
+     * @throws IOException если запись не удалась
+     */
+    public int write(WritableDatabaseRecord databaseRecord, int formatVersion) throws IOException {
+        if (SegmentFormat.checksumSize(formatVersion) > 0) {
+            writeInt(SegmentFormat.checksum(databaseRecord.getKeySize(), databaseRecord.getKey(),
+                    databaseRecord.getValueSize(), databaseRecord.isValuePresented() ? databaseRecord.getValue() : null));
+        }
+        write(databaseRecord);
+        return (int) SegmentFormat.recordSize(databaseRecord, formatVersion);
+    }
+}
@@ -0,0 +1,220 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Фильтр Блума read-only сегмента: по ключу без обращения к диску отвечает, что записи ключа в сегменте
+ * точно нет или, возможно, есть. Учитываются все записи сегмента, включая надгробия.
+ * Хранится рядом с сегментом. Формат:
+ * - MAGIC
+ * - размер сегмента в байтах, количество хэш-функций, количество 64-битных слов
+ * - слова битового массива
+ * - CRC32 всего предыдущего содержимого
+ * Размер сегмента защищает от устаревшего фильтра: если сегмент дописывался после записи фильтра, фильтр не читается
+ */
+public class SegmentBloomFilter {
+    public static final String SUFFIX = ".bloom";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x424c4f4d;
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + 2 * Integer.BYTES;
+    private static final int MAX_HASHES = 30;
+    /**
+     * Номер бита вычисляется в 32 битах, поэтому больше 2^32 бит фильтру не нужно
+     */
+    private static final int MAX_WORDS = 1 << 26;
+
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+
+    private SegmentBloomFilter(long[] words, int hashCount) {
+        this.words = words;
+        this.bitCount = (long) words.length * Long.SIZE;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * @return путь файла фильтра для указанного сегмента
+     */
+    public static Path pathFor(Path segmentPath) {
+        return segmentPath.resolveSibling(segmentPath.getFileName() + SUFFIX);
+    }
+
+    /**
+     * @return {@code true} - если файл с таким именем является файлом фильтра или его временной копией
+     */
+    public static boolean isBloomFile(String fileName) {
+        return fileName.endsWith(SUFFIX) || fileName.endsWith(SUFFIX + TEMP_SUFFIX);
+    }
+
+    /**
+     * @return {@code false} - если записи ключа в сегменте точно нет
+     */
+    public boolean mightContain(byte[] key) {
+        long hash = hash(key);
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Integer.toUnsignedLong(first + i * second) % bitCount;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void add(long hash) {
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        for (int i = 1; i <= hashCount; i++) {
+            long bit = Integer.toUnsignedLong(first + i * second) % bitCount;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return размер фильтра в памяти
+     */
+    public long sizeInBytes() {
+        return (long) words.length * Long.BYTES;
+    }
+
+    /**
+     * Ожидаемая доля ложноположительных ответов по заполненности битового массива: (доля единиц)^k
+     */
+    public double expectedFalsePositiveRate() {
+        long setBits = 0;
+        for (long word : words) {
+            setBits += Long.bitCount(word);
+        }
+        return Math.pow((double) setBits / bitCount, hashCount);
+    }
+
+    /**
+     * Читает фильтр сегмента
+     *
+     * @param segmentSize текущий размер файла сегмента
+     * @return фильтр или {@code null}, если файла нет, он поврежден или построен для другого состояния сегмента
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    public static SegmentBloomFilter load(Path segmentPath, long segmentSize) throws IOException {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(pathFor(segmentPath));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (content.length < HEADER_SIZE + Integer.BYTES) {
+            return null;
+        }
+        ByteBuffer filter = ByteBuffer.wrap(content);
+        long recordedSegmentSize = filter.getLong(Integer.BYTES);
+        int hashCount = filter.getInt(Integer.BYTES + Long.BYTES);
+        int wordCount = filter.getInt(Integer.BYTES + Long.BYTES + Integer.BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - Integer.BYTES);
+        if (filter.getInt(0) != MAGIC || recordedSegmentSize != segmentSize
+                || hashCount <= 0 || hashCount > MAX_HASHES || wordCount <= 0 || wordCount > MAX_WORDS
+                || content.length != HEADER_SIZE + (long) wordCount * Long.BYTES + Integer.BYTES
+                || (int) crc.getValue() != filter.getInt(content.length - Integer.BYTES)) {
+            return null;
+        }
+        long[] words = new long[wordCount];
+        filter.position(HEADER_SIZE);
+        filter.asLongBuffer().get(words);
+        return new SegmentBloomFilter(words, hashCount);
+    }
+
+    /**
+     * Записывает фильтр рядом с сегментом. Файл сначала пишется во временный и затем переименовывается,
+     * поэтому читатели видят либо полный файл, либо никакой
+     */
+    public void writeFor(Path segmentPath, long segmentSize) throws IOException {
+        DatabaseOutputBuffer buffer = new DatabaseOutputBuffer(HEADER_SIZE + words.length * Long.BYTES + Integer.BYTES);
+        DataOutputStream output = new DataOutputStream(buffer);
+        output.writeInt(MAGIC);
+        output.writeLong(segmentSize);
+        output.writeInt(hashCount);
+        output.writeInt(words.length);
+        for (long word : words) {
+            output.writeLong(word);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.toByteBuffer());
+        output.writeInt((int) crc.getValue());
+        Path filterPath = pathFor(segmentPath);
+        Path tempPath = filterPath.resolveSibling(filterPath.getFileName() + TEMP_SUFFIX);
+        try (OutputStream file = Files.newOutputStream(tempPath)) {
+            buffer.writeTo(file);
+        }
+        Files.move(tempPath, filterPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 64-битный FNV-1a с перемешиванием финализатором MurmurHash3. Половины дают две независимые
+     * хэш-функции, из которых строятся остальные (схема Кирша-Митценмахера)
+     */
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Накапливает хэши ключей, пока сегмент открыт на запись: размер фильтра известен только после
+     * того, как сегмент закрыт на запись
+     */
+    public static class Builder {
+        private final int bitsPerKey;
+        private long[] hashes = new long[64];
+        private int size;
+
+        /**
+         * @param bitsPerKey бит фильтра на запись. 10 бит дают около 1% ложноположительных ответов
+         */
+        public Builder(int bitsPerKey) {
+            if (bitsPerKey <= 0) {
+                throw new IllegalArgumentException("bitsPerKey must be positive: " + bitsPerKey);
+            }
+            this.bitsPerKey = bitsPerKey;
+        }
+
+        public void add(byte[] key) {
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            hashes[size++] = hash(key);
+        }
+
+        /**
+         * Строит фильтр оптимального для количества записей размера: ln 2 * bitsPerKey хэш-функций
+         */
+        public SegmentBloomFilter build() {
+            long bits = Math.max((long) size * bitsPerKey, Long.SIZE);
+            int wordCount = (int) Math.min((bits + Long.SIZE - 1) / Long.SIZE, MAX_WORDS);
+            int hashCount = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerKey * Math.log(2))));
+            SegmentBloomFilter filter = new SegmentBloomFilter(new long[wordCount], hashCount);
+            for (int i = 0; i < size; i++) {
+                filter.add(hashes[i]);
+            }
+            return filter;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.exceptions.CorruptedRecordException;
+import com.itmo.java.basics.logic.DatabaseRecord;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Версии формата файла сегмента.
+ * - версия 1: файл без заголовка, записи вида размер ключа, ключ, размер значения, значение
+ * - версия 2: заголовок (MAGIC, номер версии), перед каждой записью CRC32C ее байтов
+ * MAGIC отрицателен, поэтому не совпадает с размером ключа первой записи файла версии 1
+ */
+public class SegmentFormat {
+    public static final int LEGACY_VERSION = 1;
+    public static final int CHECKSUMMED_VERSION = 2;
+    public static final int CURRENT_VERSION = CHECKSUMMED_VERSION;
+    public static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final int MAGIC = 0xDB5E6A00;
+
+    private SegmentFormat() {
+    }
+
+    /**
+     * @return размер заголовка файла, с которого начинаются записи
+     */
+    public static int headerSize(int version) {
+        return version == LEGACY_VERSION ? 0 : HEADER_SIZE;
+    }
+
+    /**
+     * @return сколько байт занимает контрольная сумма перед каждой записью
+     */
+    public static int checksumSize(int version) {
+        return version == LEGACY_VERSION ? 0 : Integer.BYTES;
+    }
+
+    /**
+     * @return размер записи в файле сегмента с учетом контрольной суммы
+     */
+    public static long recordSize(DatabaseRecord record, int version) {
+        return record.size() + checksumSize(version);
+    }
+
+    /**
+     * @return заголовок нового файла текущей версии
+     */
+    public static ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(CURRENT_VERSION).flip();
+    }
+
+    /**
+     * Определяет версию формата по началу файла. Пустой файл считается файлом текущей версии
+     *
+     * @throws CorruptedRecordException если заголовок оборван или версия неизвестна
+     * @throws IOException              если произошла ошибка ввода-вывода
+     */
+    public static int readVersion(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return CURRENT_VERSION;
+        }
+        if (size < Integer.BYTES) {
+            throw new CorruptedRecordException("segment is shorter than its header");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                break;
+            }
+        }
+        if (header.getInt(0) != MAGIC) {
+            return LEGACY_VERSION;
+        }
+        if (header.position() < HEADER_SIZE) {
+            throw new CorruptedRecordException("segment is shorter than its header");
+        }
+        int version = header.getInt(Integer.BYTES);
+        if (version != CHECKSUMMED_VERSION) {
+            throw new CorruptedRecordException("unknown segment format version " + version);
+        }
+        return version;
+    }
+
+    /**
+     * Считает CRC32C байтов записи: размер ключа, ключ, размер значения, значение (если оно есть)
+     */
+    public static int checksum(int keySize, byte[] key, int valueSize, byte[] value) {
+        CRC32C crc = new CRC32C();
+        updateInt(crc, keySize);
+        crc.update(key);
+        updateInt(crc, valueSize);
+        if (value != null) {
+            crc.update(value);
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Считает CRC32C байтов записи, лежащих в буфере в диапазоне [from, to)
+     */
+    public static int checksum(ByteBuffer buffer, int from, int to) {
+        ByteBuffer body = buffer.duplicate();
+        body.limit(to).position(from);
+        CRC32C crc = new CRC32C();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static void updateInt(CRC32C crc, int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+}
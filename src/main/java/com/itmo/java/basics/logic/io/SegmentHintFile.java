@@ -0,0 +1,143 @@
+package com.itmo.java.basics.logic.io;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Hint-файл - компактный спутник read-only сегмента, по которому индекс восстанавливается без чтения значений.
+ * Формат:
+ * - MAGIC
+ * - записи: размер ключа, ключ, сдвиг записи в сегменте, размер значения (-1 для надгробия)
+ * - количество записей, размер сегмента в байтах, CRC32 всего предыдущего содержимого
+ */
+public class SegmentHintFile {
+    public static final String SUFFIX = ".hint";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int MAGIC = 0x48494e54;
+    private static final int FOOTER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private SegmentHintFile() {
+    }
+
+    /**
+     * @return путь hint-файла для указанного сегмента
+     */
+    public static Path pathFor(Path segmentPath) {
+        return segmentPath.resolveSibling(segmentPath.getFileName() + SUFFIX);
+    }
+
+    /**
+     * @return {@code true} - если файл с таким именем является hint-файлом или его временной копией
+     */
+    public static boolean isHintFile(String fileName) {
+        return fileName.endsWith(SUFFIX) || fileName.endsWith(SUFFIX + TEMP_SUFFIX);
+    }
+
+    /**
+     * Читает hint-файл и передает его записи в порядке их появления в сегменте.
+     * Записи передаются только после проверки контрольной суммы и размера сегмента
+     *
+     * @param segmentSize текущий размер файла сегмента
+     * @return {@code false} - если hint-файла нет, он поврежден или относится к другому состоянию сегмента
+     * @throws IOException если произошла ошибка ввода-вывода
+     */
+    public static boolean load(Path segmentPath, long segmentSize, EntryVisitor visitor) throws IOException {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(pathFor(segmentPath));
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (content.length < Integer.BYTES + FOOTER_SIZE) {
+            return false;
+        }
+        ByteBuffer hint = ByteBuffer.wrap(content);
+        int footerStart = content.length - FOOTER_SIZE;
+        int entryCount = hint.getInt(footerStart);
+        long recordedSegmentSize = hint.getLong(footerStart + Integer.BYTES);
+        int recordedCrc = hint.getInt(footerStart + Integer.BYTES + Long.BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length - Integer.BYTES);
+        if (hint.getInt(0) != MAGIC || (int) crc.getValue() != recordedCrc || recordedSegmentSize != segmentSize) {
+            return false;
+        }
+        hint.position(Integer.BYTES).limit(footerStart);
+        try {
+            for (int i = 0; i < entryCount; i++) {
+                byte[] key = new byte[hint.getInt()];
+                hint.get(key);
+                long offset = hint.getLong();
+                int valueSize = hint.getInt();
+                visitor.visit(key, offset, valueSize);
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("corrupted hint file for segment " + segmentPath, e);
+        }
+        return true;
+    }
+
+    /**
+     * Обработчик записей hint-файла
+     */
+    public interface EntryVisitor {
+        void visit(byte[] key, long offset, int valueSize) throws IOException;
+    }
+
+    /**
+     * Накапливает записи hint-файла в памяти, пока сегмент открыт на запись
+     */
+    public static class Builder {
+        private final DatabaseOutputBuffer buffer = new DatabaseOutputBuffer();
+        private final DataOutputStream output = new DataOutputStream(buffer);
+        private int entryCount;
+
+        public Builder() {
+            try {
+                output.writeInt(MAGIC);
+            } catch (IOException e) {
+                throw new IllegalStateException("in-memory write failed", e);
+            }
+        }
+
+        /**
+         * @param valueSize размер значения, -1 для надгробия
+         */
+        public void add(byte[] key, long offset, int valueSize) {
+            try {
+                output.writeInt(key.length);
+                output.write(key);
+                output.writeLong(offset);
+                output.writeInt(valueSize);
+            } catch (IOException e) {
+                throw new IllegalStateException("in-memory write failed", e);
+            }
+            entryCount++;
+        }
+
+        /**
+         * Записывает hint-файл рядом с сегментом. Файл сначала пишется во временный и затем переименовывается,
+         * поэтому читатели видят либо полный файл, либо никакой
+         */
+        public void writeFor(Path segmentPath, long segmentSize) throws IOException {
+            output.writeInt(entryCount);
+            output.writeLong(segmentSize);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.toByteBuffer());
+            output.writeInt((int) crc.getValue());
+            Path hintPath = pathFor(segmentPath);
+            Path tempPath = hintPath.resolveSibling(hintPath.getFileName() + TEMP_SUFFIX);
+            try (OutputStream file = Files.newOutputStream(tempPath)) {
+                buffer.writeTo(file);
+            }
+            Files.move(tempPath, hintPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
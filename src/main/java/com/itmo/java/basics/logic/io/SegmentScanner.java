@@ -0,0 +1,171 @@
+package com.itmo.java.basics.logic.io;
+
+import com.itmo.java.basics.exceptions.CorruptedRecordException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32C;
+
+/**
+ * Чтение ключей сегмента при старте без разбора записей в объекты. Файл читается большими блоками
+ * позиционным чтением, заголовки записей разбираются прямо в буфере, значения не копируются: по ним только
+ * считается контрольная сумма (для формата без контрольных сумм они пропускаются без чтения).
+ * Выделяется только массив ключа, который нужен индексу. Проверки целостности те же,
+ * что в {@link DatabaseInputStream#readDbUnit(int, long)}
+ */
+public class SegmentScanner {
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+    private static final int REMOVED_OBJECT_SIZE = -1;
+
+    private final FileChannel channel;
+    private final int formatVersion;
+    private final long segmentSize;
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer buffer;
+    /**
+     * Смещение в файле, соответствующее началу буфера
+     */
+    private long bufferOffset;
+    /**
+     * Смещение в файле после последней целой записи
+     */
+    private long offset;
+
+    /**
+     * @param segmentSize до какого смещения читать файл
+     */
+    public SegmentScanner(FileChannel channel, int formatVersion, long segmentSize) {
+        this(channel, formatVersion, segmentSize, DEFAULT_CHUNK_SIZE);
+    }
+
+    public SegmentScanner(FileChannel channel, int formatVersion, long segmentSize, int chunkSize) {
+        this.channel = channel;
+        this.formatVersion = formatVersion;
+        this.segmentSize = segmentSize;
+        this.offset = SegmentFormat.headerSize(formatVersion);
+        this.bufferOffset = offset;
+        this.buffer = ByteBuffer.allocate((int) Math.max(Math.min(chunkSize, segmentSize - offset), 64)).limit(0);
+    }
+
+    /**
+     * @return смещение после последней целой записи: после успешного {@link #scan} - конец сегмента,
+     * после {@link CorruptedRecordException} - начало поврежденной записи
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Продолжает чтение с записи по указанному смещению, например с первой записи, которой нет в снимке индекса
+     *
+     * @param recordOffset смещение начала записи
+     */
+    public void seek(long recordOffset) {
+        offset = recordOffset;
+        bufferOffset = recordOffset;
+        buffer.clear().limit(0);
+    }
+
+    /**
+     * Передает посетителю ключ, смещение и размер значения каждой записи ({@code -1} - надгробие)
+     *
+     * @throws CorruptedRecordException если запись оборвана, ее размеры не согласованы или не сходится контрольная сумма
+     * @throws IOException              если произошла ошибка ввода-вывода или ее выбросил посетитель
+     */
+    public void scan(SegmentHintFile.EntryVisitor visitor) throws IOException {
+        int checksumSize = SegmentFormat.checksumSize(formatVersion);
+        boolean checksummed = checksumSize > 0;
+        while (offset < segmentSize) {
+            if (!ensure(checksumSize + Integer.BYTES)) {
+                throw new CorruptedRecordException("record is truncated");
+            }
+            int expectedChecksum = checksummed ? buffer.getInt() : 0;
+            int bodyStart = buffer.position();
+            int keySize = buffer.getInt();
+            long remaining = segmentSize - offset - checksumSize - 2 * Integer.BYTES;
+            if (keySize < 0 || keySize > remaining) {
+                throw new CorruptedRecordException("invalid key size " + keySize);
+            }
+            buffer.position(bodyStart);
+            if (!ensure(2 * Integer.BYTES + keySize)) {
+                throw new CorruptedRecordException("record is truncated");
+            }
+            bodyStart = buffer.position();
+            buffer.position(bodyStart + Integer.BYTES);
+            byte[] key = new byte[keySize];
+            buffer.get(key);
+            int valueSize = buffer.getInt();
+            if (valueSize < REMOVED_OBJECT_SIZE || valueSize > remaining - keySize) {
+                throw new CorruptedRecordException("invalid value size " + valueSize);
+            }
+            if (checksummed) {
+                crc.reset();
+                crc.update(buffer.duplicate().limit(buffer.position()).position(bodyStart));
+            }
+            skipValue(Math.max(valueSize, 0), checksummed);
+            if (checksummed && (int) crc.getValue() != expectedChecksum) {
+                throw new CorruptedRecordException("checksum mismatch");
+            }
+            visitor.visit(key, offset, valueSize);
+            offset = bufferOffset + buffer.position();
+        }
+    }
+
+    /**
+     * Пропускает значение, считая по нему контрольную сумму. Без контрольной суммы значение за пределами буфера
+     * не читается
+     */
+    private void skipValue(long valueSize, boolean checksummed) throws IOException {
+        long left = valueSize;
+        while (left > 0) {
+            if (!buffer.hasRemaining()) {
+                if (!checksummed) {
+                    bufferOffset += buffer.position() + left;
+                    buffer.clear().limit(0);
+                    return;
+                }
+                if (!ensure(1)) {
+                    throw new CorruptedRecordException("record is truncated");
+                }
+            }
+            int chunk = (int) Math.min(left, buffer.remaining());
+            if (checksummed) {
+                crc.update(buffer.duplicate().limit(buffer.position() + chunk));
+            }
+            buffer.position(buffer.position() + chunk);
+            left -= chunk;
+        }
+    }
+
+    /**
+     * Дочитывает файл так, чтобы в буфере с текущей позиции было не меньше {@code bytes} байт
+     *
+     * @return {@code false} - если сегмент закончился раньше
+     */
+    private boolean ensure(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        if (bufferOffset + buffer.position() + bytes > segmentSize) {
+            return false;
+        }
+        bufferOffset += buffer.position();
+        if (buffer.capacity() < bytes) {
+            buffer = ByteBuffer.allocate(bytes).put(buffer);
+        } else {
+            buffer.compact();
+        }
+        long readFrom = bufferOffset + buffer.position();
+        buffer.limit((int) Math.min(buffer.capacity(), segmentSize - bufferOffset));
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, readFrom);
+            if (read < 0) {
+                break;
+            }
+            readFrom += read;
+        }
+        buffer.flip();
+        return buffer.remaining() >= bytes;
+    }
+}
@@ -10,6 +10,11 @@ public interface KvsClient {
 
     String createTable(String tableName) throws DatabaseExecutionException;
 
+    /**
+     * Создает таблицу на заданном движке хранения ("log", "lsm", "memory")
+     */
+    String createTable(String tableName, String engineName) throws DatabaseExecutionException;
+
     String get(String tableName, String key) throws DatabaseExecutionException;
 
     String set(String tableName, String key, String value) throws DatabaseExecutionException;
@@ -48,7 +48,12 @@ public class SimpleKvsClient implements KvsClient {
 
     @Override
     public String createTable(String tableName) throws DatabaseExecutionException {
-        CreateTableKvsCommand createTableKvsCommand = new CreateTableKvsCommand(databaseName, tableName);
+        return createTable(tableName, null);
+    }
+
+    @Override
+    public String createTable(String tableName, String engineName) throws DatabaseExecutionException {
+        CreateTableKvsCommand createTableKvsCommand = new CreateTableKvsCommand(databaseName, tableName, engineName);
         try {
             return createCommand(createTableKvsCommand);
         } catch (DatabaseExecutionException e) {
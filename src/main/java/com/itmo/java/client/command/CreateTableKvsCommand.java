@@ -14,10 +14,19 @@ public class CreateTableKvsCommand implements KvsCommand {
 
     private final String databaseName;
     private final String tableName;
+    /**
+     * Движок хранения таблицы ("log", "lsm", "memory"), {@code null} - движок по умолчанию сервера
+     */
+    private final String engineName;
     private final int id;
     public CreateTableKvsCommand(String databaseName, String tableName) {
+        this(databaseName, tableName, null);
+    }
+
+    public CreateTableKvsCommand(String databaseName, String tableName, String engineName) {
         this.databaseName = databaseName;
         this.tableName = tableName;
+        this.engineName = engineName;
         id = idGen.incrementAndGet();
     }
 
@@ -32,7 +41,11 @@ public class CreateTableKvsCommand implements KvsCommand {
         RespBulkString commandName = new RespBulkString(COMMAND_NAME.getBytes(StandardCharsets.UTF_8));
         RespBulkString respBulkDbName = new RespBulkString(databaseName.getBytes(StandardCharsets.UTF_8));
         RespBulkString respBulkTableName = new RespBulkString(tableName.getBytes(StandardCharsets.UTF_8));
-        return new RespArray(respCommandId, commandName, respBulkDbName, respBulkTableName);
+        if (engineName == null) {
+            return new RespArray(respCommandId, commandName, respBulkDbName, respBulkTableName);
+        }
+        RespBulkString respBulkEngineName = new RespBulkString(engineName.getBytes(StandardCharsets.UTF_8));
+        return new RespArray(respCommandId, commandName, respBulkDbName, respBulkTableName, respBulkEngineName);
     }
 
     @Override
@@ -6,10 +6,12 @@ import com.itmo.java.protocol.model.RespCommandId;
 import com.itmo.java.protocol.model.RespError;
 import com.itmo.java.protocol.model.RespObject;
 
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 public class RespReader implements AutoCloseable {
     private final InputStream is;
@@ -21,6 +23,13 @@ public class RespReader implements AutoCloseable {
     private static final byte CR = '\r';
     private static final byte LF = '\n';
 
+    /**
+     * Размер, до которого bulk строка и массив читаются в заранее выделенный массив точного размера.
+     * Размер больше этого задан клиентом и ничем не подтвержден, поэтому такие объекты
+     * читаются частями по мере прихода данных
+     */
+    private static final int MAX_PREALLOCATED_SIZE = 64 * 1024;
+
     public RespReader(InputStream is) {
         this.is = is;
     }
@@ -32,11 +41,11 @@ public class RespReader implements AutoCloseable {
         if (isHasArray) {
             return true;
         }
-        byte[] currentRespObjectType = is.readNBytes(1);
-        if (currentRespObjectType.length == 0){
-            throw new EOFException("end of the stream instead of " + String.valueOf(RespArray.CODE));
+        int currentRespObjectType = is.read();
+        if (currentRespObjectType < 0){
+            throw new EOFException("end of the stream instead of " + (char) RespArray.CODE);
         }
-        if (currentRespObjectType[0] == RespArray.CODE){
+        if (currentRespObjectType == RespArray.CODE){
             isHasArray = true;
             return true;
         }
@@ -52,57 +61,79 @@ public class RespReader implements AutoCloseable {
      */
     public RespObject readObject() throws IOException {
         try {
-            byte[] firstSymbol = is.readNBytes(1);
-            if (firstSymbol.length == 0){
+            int firstSymbol = is.read();
+            if (firstSymbol < 0){
                 throw new EOFException("end of the stream instead of first symbol of RespObject");
             }
-            if (firstSymbol[0] == RespError.CODE){
+            if (firstSymbol == RespError.CODE){
                 return readError();
             }
-            if(firstSymbol[0] == RespBulkString.CODE){
+            if(firstSymbol == RespBulkString.CODE){
                 return readBulkString();
             }
-            if(firstSymbol[0] == RespCommandId.CODE){
+            if(firstSymbol == RespCommandId.CODE){
                 return readCommandId();
             }
-            throw new IOException("unknown byte" + new String(firstSymbol));
+            throw new IOException("unknown byte" + (char) firstSymbol);
         } catch (IOException e){
             throw new IOException("IOException in reading object", e);
         }
     }
 
-    private String readStringUntilSymbol(byte symbol) throws IOException {
+    private byte[] readBytesUntilSymbol(byte symbol) throws IOException {
         try{
-            StringBuilder readString = new StringBuilder();
-            byte[] readByte = is.readNBytes(1);
-            if (readByte.length == 0){
-                throw new EOFException("end of the stream instead of symbol " + String.valueOf(symbol));
-            }
-            while (readByte[0] != symbol){
-                readString.append(new String(readByte));
-                readByte = is.readNBytes(1);
-                if (readByte.length == 0){
-                    throw new EOFException("end of the stream");
-                }
+            ByteArrayOutputStream readBytes = new ByteArrayOutputStream();
+            int readByte = readByte();
+            while (readByte != symbol){
+                readBytes.write(readByte);
+                readByte = readByte();
             }
-            return readString.toString();
+            return readBytes.toByteArray();
         } catch (IOException e) {
             throw new IOException("IOException in reading until Symbol", e);
         }
 
     }
 
-
+    /**
+     * Читает десятичное число до CR прямо из байтов, без промежуточной строки
+     */
     private int readInt() throws IOException {
         try{
-            return Integer.parseInt(readStringUntilSymbol(CR));
+            int readByte = readByte();
+            boolean negative = readByte == '-';
+            if (negative) {
+                readByte = readByte();
+            }
+            if (readByte == CR) {
+                throw new IOException("expected reading int");
+            }
+            long value = 0;
+            while (readByte != CR) {
+                if (readByte < '0' || readByte > '9' || value > Integer.MAX_VALUE) {
+                    throw new IOException("expected reading int");
+                }
+                value = value * 10 + (readByte - '0');
+                readByte = readByte();
+            }
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE || value < Integer.MIN_VALUE) {
+                throw new IOException("expected reading int");
+            }
+            return (int) value;
         } catch (IOException e) {
             throw new IOException("IO exception in reading int", e);
-        } catch (NumberFormatException e) {
-            throw new IOException("expected reading int", e);
         }
     }
 
+    private int readByte() throws IOException {
+        int readByte = is.read();
+        if (readByte < 0) {
+            throw new EOFException("end of the stream");
+        }
+        return readByte;
+    }
+
     /**
      * Считывает объект ошибки
      *
@@ -111,9 +142,9 @@ public class RespReader implements AutoCloseable {
      */
     public RespError readError() throws IOException {
         try{
-            String errorMessage = readStringUntilSymbol(CR);
+            byte[] errorMessage = readBytesUntilSymbol(CR);
             readCompareByte(LF);
-            return new RespError(errorMessage.getBytes(StandardCharsets.UTF_8));
+            return new RespError(errorMessage);
         } catch (IOException e) {
             throw new IOException("IO exception in reading Error", e);
         }
@@ -132,7 +163,21 @@ public class RespReader implements AutoCloseable {
             if (bulkSize == -1){
                 return RespBulkString.NULL_STRING;
             }
-            byte[] bulkString = is.readNBytes(bulkSize);
+            if (bulkSize < 0) {
+                throw new IOException("negative bulk string size " + bulkSize);
+            }
+            byte[] bulkString;
+            if (bulkSize <= MAX_PREALLOCATED_SIZE) {
+                bulkString = new byte[bulkSize];
+                if (is.readNBytes(bulkString, 0, bulkSize) < bulkSize) {
+                    throw new EOFException("end of the stream inside bulk string");
+                }
+            } else {
+                bulkString = is.readNBytes(bulkSize);
+                if (bulkString.length < bulkSize) {
+                    throw new EOFException("end of the stream inside bulk string");
+                }
+            }
             readCompareByte(CR);
             readCompareByte(LF);
             return new RespBulkString(bulkString);
@@ -155,9 +200,21 @@ public class RespReader implements AutoCloseable {
             }
             int arraySize = readInt();
             readCompareByte(LF);
-            RespObject[] listObjects = new RespObject[arraySize];
-            for (int i = 0; i < arraySize; i++){
-                listObjects[i] = readObject();
+            if (arraySize < 0) {
+                throw new IOException("negative array size " + arraySize);
+            }
+            RespObject[] listObjects;
+            if (arraySize <= MAX_PREALLOCATED_SIZE) {
+                listObjects = new RespObject[arraySize];
+                for (int i = 0; i < arraySize; i++){
+                    listObjects[i] = readObject();
+                }
+            } else {
+                List<RespObject> objects = new ArrayList<>();
+                for (int i = 0; i < arraySize; i++){
+                    objects.add(readObject());
+                }
+                listObjects = objects.toArray(new RespObject[0]);
             }
             isHasArray = false;
             return new RespArray(listObjects);
@@ -175,11 +232,7 @@ public class RespReader implements AutoCloseable {
      */
     public RespCommandId readCommandId() throws IOException {
         try {
-            byte[] commandId1 = is.readNBytes(1);
-            byte[] commandId2 = is.readNBytes(1);
-            byte[] commandId3 = is.readNBytes(1);
-            byte[] commandId4 = is.readNBytes(1);
-            int commandId = ((commandId1[0] << 24) + (commandId2[0]<< 16) + (commandId3[0] << 8) + (commandId4[0] << 0));
+            int commandId = (readByte() << 24) | (readByte() << 16) | (readByte() << 8) | readByte();
             readCompareByte(CR);
             readCompareByte(LF);
             return new RespCommandId(commandId);
@@ -189,13 +242,10 @@ public class RespReader implements AutoCloseable {
     }
 
     private void readCompareByte(byte compareWith) throws IOException {
-        byte[] nextByte;
         try {
-            nextByte = is.readNBytes(1);
-            if (nextByte.length == 0){
-                throw new EOFException("end of the stream");
-            } else if (nextByte[0] != compareWith) {
-                throw new IOException("expected symbol:  " + String.valueOf(compareWith) + " but get: " + String.valueOf(nextByte[0]));
+            int nextByte = readByte();
+            if (nextByte != compareWith) {
+                throw new IOException("expected symbol:  " + String.valueOf(compareWith) + " but get: " + String.valueOf(nextByte));
             }
         } catch (IOException e) {
             throw new IOException("IO exception in reading byte", e);
@@ -45,7 +45,17 @@ public class RespBulkString implements RespObject {
     public String asString() {
         if (data == null)
             return null;
-        return new String(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Байты строки как есть, без копирования
+     *
+     * @return байты, если данные есть. Если нет - null
+     */
+    @Override
+    public byte[] asBytes() {
+        return data;
     }
 
     @Override
@@ -25,6 +25,14 @@ public interface RespObject {
      */
     String asString();
 
+    /**
+     * @return байты значения команды без перекодирования. По умолчанию - {@link #asString()} в UTF-8
+     */
+    default byte[] asBytes() {
+        String string = asString();
+        return string == null ? null : string.getBytes(StandardCharsets.UTF_8);
+    }
+
     /**
      * Сериализует данный объект в RESP и записывает байты в переданный OutputStream.
      */
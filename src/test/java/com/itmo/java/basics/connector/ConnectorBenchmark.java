@@ -0,0 +1,209 @@
+package com.itmo.java.basics.connector;
+
+import com.itmo.java.basics.DatabaseServer;
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.ServerConfig;
+import com.itmo.java.basics.config.StorageConfig;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.initialization.impl.DatabaseInitializer;
+import com.itmo.java.basics.initialization.impl.DatabaseServerInitializer;
+import com.itmo.java.protocol.RespReader;
+import com.itmo.java.protocol.RespWriter;
+import com.itmo.java.protocol.model.RespArray;
+import com.itmo.java.protocol.model.RespBulkString;
+import com.itmo.java.protocol.model.RespCommandId;
+import com.itmo.java.protocol.model.RespObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Замер {@link JavaSocketServerConnector} при большом числе соединений: сначала открываются простаивающие
+ * соединения, которые не присылают команд, затем занятые клиенты в отдельных потоках шлют GET_KEY (90%)
+ * и SET_KEY (10%) по случайным ключам, каждый следующую команду после ответа на предыдущую.
+ * Печатает пропускную способность и задержку команд занятых клиентов (p50, p99, p99.9),
+ * а в конце проверяет, что простаивающие соединения по-прежнему обслуживаются.
+ * <p>
+ * Запуск: {@code java -cp target/classes:target/test-classes com.itmo.java.basics.connector.ConnectorBenchmark
+ * [простаивающих] [занятых] [секунд] [maxConnections]}
+ */
+public class ConnectorBenchmark {
+    private static final int PORT = 18080;
+    private static final String DB = "db";
+    private static final String TABLE = "t";
+    private static final int KEYS = 10_000;
+    private static final int VALUE_SIZE = 100;
+    private static final int SOCKET_TIMEOUT_MILLIS = 5_000;
+    /**
+     * Сколько задержек запоминает один занятый клиент
+     */
+    private static final int MAX_SAMPLES = 200_000;
+
+    public static void main(String[] args) throws Exception {
+        int idle = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int busy = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int maxConnections = args.length > 3 ? Integer.parseInt(args[3]) : ServerConfig.DEFAULT_MAX_CONNECTIONS;
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        Path root = Files.createTempDirectory("connector-bench");
+        ExecutionEnvironment env = new ExecutionEnvironmentImpl(
+                new DatabaseConfig(root.toString(), StorageConfig.builder().build()));
+        DatabaseServer server = DatabaseServer.initialize(env, new DatabaseServerInitializer(new DatabaseInitializer()));
+        JavaSocketServerConnector connector = new JavaSocketServerConnector(server,
+                new ServerConfig(ServerConfig.DEFAULT_HOST, PORT, maxConnections));
+        connector.start();
+        List<Client> idleClients = new ArrayList<>();
+        try {
+            long startNanos = System.nanoTime();
+            for (int i = 0; i < idle; i++) {
+                idleClients.add(new Client());
+            }
+            System.out.printf("opened %d idle connections in %d ms%n", idle, (System.nanoTime() - startNanos) / 1_000_000);
+            try (Client admin = new Client()) {
+                admin.send(command("CREATE_DATABASE", DB));
+                admin.send(command("CREATE_TABLE", DB, TABLE));
+            }
+
+            long[][] latencies = runBusyClients(busy, seconds);
+            report(idle, busy, seconds, latencies);
+
+            int answering = 0;
+            for (Client client : idleClients) {
+                try {
+                    if (!client.send(command("GET_KEY", DB, TABLE, "k1")).isError()) {
+                        answering++;
+                    }
+                } catch (IOException e) {
+                    // соединение не обслуживается
+                }
+            }
+            System.out.printf("idle connections answering afterwards: %d/%d%n", answering, idle);
+        } finally {
+            for (Client client : idleClients) {
+                client.close();
+            }
+            connector.close();
+            server.close();
+        }
+    }
+
+    /**
+     * @return задержки команд каждого клиента, наносекунды
+     */
+    private static long[][] runBusyClients(int busy, int seconds) throws Exception {
+        AtomicBoolean stopped = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long[][] latencies = new long[busy][];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < busy; i++) {
+            int clientNumber = i;
+            threads.add(new Thread(() -> {
+                Random random = new Random(clientNumber);
+                long[] samples = new long[MAX_SAMPLES];
+                int sampleCount = 0;
+                byte[] value = new byte[VALUE_SIZE];
+                try (Client client = new Client()) {
+                    while (!stopped.get()) {
+                        String key = "k" + random.nextInt(KEYS);
+                        RespArray message = random.nextInt(10) == 0
+                                ? new RespArray(new RespCommandId(clientNumber), bulk("SET_KEY"), bulk(DB), bulk(TABLE),
+                                        bulk(key), new RespBulkString(value))
+                                : command("GET_KEY", DB, TABLE, key);
+                        long startNanos = System.nanoTime();
+                        RespObject result = client.send(message);
+                        if (sampleCount < samples.length) {
+                            samples[sampleCount++] = System.nanoTime() - startNanos;
+                        }
+                        if (result.isError()) {
+                            throw new IllegalStateException("command failed: " + result);
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+                latencies[clientNumber] = Arrays.copyOf(samples, sampleCount);
+            }, "busy-client-" + clientNumber));
+        }
+        threads.forEach(Thread::start);
+        Thread.sleep(seconds * 1000L);
+        stopped.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure.get() != null) {
+            System.out.println("busy client failed: " + failure.get());
+        }
+        return latencies;
+    }
+
+    private static void report(int idle, int busy, int seconds, long[][] latencies) {
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        if (all.length == 0) {
+            System.out.println("no commands completed");
+            return;
+        }
+        System.out.printf("idle=%d busy=%d: %,d ops/s, p50 %d us, p99 %d us, p99.9 %d us%n", idle, busy,
+                all.length / seconds, all[all.length / 2] / 1000, all[(int) (all.length * 0.99)] / 1000,
+                all[(int) (all.length * 0.999)] / 1000);
+    }
+
+    private static RespArray command(String name, String... arguments) {
+        RespObject[] objects = new RespObject[arguments.length + 2];
+        objects[0] = new RespCommandId(0);
+        objects[1] = bulk(name);
+        for (int i = 0; i < arguments.length; i++) {
+            objects[i + 2] = bulk(arguments[i]);
+        }
+        return new RespArray(objects);
+    }
+
+    private static RespBulkString bulk(String value) {
+        return new RespBulkString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Клиентское соединение: команда отправляется, и ответ на нее читается в том же потоке
+     */
+    private static class Client implements Closeable {
+        private final Socket socket;
+        private final RespReader reader;
+        private final BufferedOutputStream output;
+        private final RespWriter writer;
+
+        Client() throws IOException {
+            socket = new Socket(ServerConfig.DEFAULT_HOST, PORT);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+            reader = new RespReader(new BufferedInputStream(socket.getInputStream()));
+            output = new BufferedOutputStream(socket.getOutputStream());
+            writer = new RespWriter(output);
+        }
+
+        RespObject send(RespArray command) throws IOException {
+            writer.write(command);
+            output.flush();
+            return reader.readObject();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
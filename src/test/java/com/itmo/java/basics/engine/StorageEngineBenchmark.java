@@ -0,0 +1,158 @@
+package com.itmo.java.basics.engine;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DurabilityMode;
+import com.itmo.java.basics.config.StorageConfig;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.initialization.impl.DatabaseInitializer;
+import com.itmo.java.basics.initialization.impl.DatabaseServerInitializer;
+import com.itmo.java.basics.initialization.impl.InitializationContextImpl;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.impl.DatabaseImpl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Сравнение движков хранения на одной нагрузке - пара к {@link StorageEngineConformanceTest}, который проверяет,
+ * что движки ведут себя одинаково. Для каждого движка в новой директории:
+ * - загрузка: запись всех ключей в случайном порядке
+ * - чтение существующих и отсутствующих ключей (p50 и p99 одной операции)
+ * - смешанная запись: перезапись (90%) и удаление (10%) случайных ключей
+ * - размер таблицы на диске и время открытия после перезапуска (для движков, которые хранят данные на диске)
+ * <p>
+ * Журнал пишется без fsync ({@link DurabilityMode#NONE}), чтобы сравнивались движки, а не диск.
+ * Фоновая компактизация включена, как на сервере.
+ * <p>
+ * Запуск: {@code java -cp target/classes:target/test-classes com.itmo.java.basics.engine.StorageEngineBenchmark
+ * [ключей] [движки...]}
+ */
+public class StorageEngineBenchmark {
+    private static final String DB = "db";
+    private static final String TABLE = "t";
+    private static final int VALUE_SIZE = 100;
+    private static final List<String> ENGINES = Arrays.asList("log", "lsm", "memory");
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        List<String> engines = args.length > 1 ? Arrays.asList(args).subList(1, args.length) : ENGINES;
+        for (String engine : engines) {
+            run(engine, keys);
+        }
+    }
+
+    private static void run(String engine, int keys) throws Exception {
+        Path root = Files.createTempDirectory("engine-bench");
+        StorageConfig config = StorageConfig.builder()
+                .durability(DurabilityMode.NONE)
+                .build();
+        ExecutionEnvironment env = new ExecutionEnvironmentImpl(new DatabaseConfig(root.toString(), config));
+        try {
+            Database db = DatabaseImpl.create(DB, root, env.getStorageContext());
+            db.createTableIfNotExists(TABLE, engine);
+            byte[] value = new byte[VALUE_SIZE];
+            Random random = new Random(1);
+
+            int[] order = shuffled(keys, random);
+            long startNanos = System.nanoTime();
+            for (int key : order) {
+                db.write(TABLE, key(key), value);
+            }
+            report(engine, "load", keys, System.nanoTime() - startNanos);
+
+            long[] latencies = new long[keys];
+            for (int i = 0; i < keys; i++) {
+                String key = key(random.nextInt(keys));
+                long operationStart = System.nanoTime();
+                if (db.read(TABLE, key).isEmpty()) {
+                    throw new IllegalStateException(engine + ": key " + key + " is lost");
+                }
+                latencies[i] = System.nanoTime() - operationStart;
+            }
+            reportLatencies(engine, "get hit", latencies);
+
+            for (int i = 0; i < keys; i++) {
+                String key = "missing" + random.nextInt(keys);
+                long operationStart = System.nanoTime();
+                db.read(TABLE, key);
+                latencies[i] = System.nanoTime() - operationStart;
+            }
+            reportLatencies(engine, "get miss", latencies);
+
+            startNanos = System.nanoTime();
+            for (int i = 0; i < keys; i++) {
+                String key = key(random.nextInt(keys));
+                if (random.nextInt(10) == 0) {
+                    db.delete(TABLE, key);
+                } else {
+                    db.write(TABLE, key, value);
+                }
+            }
+            report(engine, "set/delete", keys, System.nanoTime() - startNanos);
+
+            if (!"memory".equals(engine)) {
+                env.getStorageContext().close();
+                System.out.printf("%-6s %-10s %,d KiB%n", engine, "disk", directorySize(root) / 1024);
+                startNanos = System.nanoTime();
+                env = new ExecutionEnvironmentImpl(new DatabaseConfig(root.toString(), config));
+                new DatabaseServerInitializer(new DatabaseInitializer())
+                        .perform(new InitializationContextImpl(env, null, null, null));
+                long reopenNanos = System.nanoTime() - startNanos;
+                env.getDatabase(DB).orElseThrow().read(TABLE, key(0));
+                System.out.printf("%-6s %-10s %.1f ms%n", engine, "reopen", reopenNanos / 1e6);
+            }
+        } finally {
+            env.getStorageContext().close();
+            deleteRecursively(root);
+        }
+    }
+
+    private static int[] shuffled(int keys, Random random) {
+        int[] order = new int[keys];
+        for (int i = 0; i < keys; i++) {
+            order[i] = i;
+        }
+        for (int i = keys - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+
+    private static void report(String engine, String workload, int operations, long elapsedNanos) {
+        System.out.printf("%-6s %-10s %,.0f ops/s%n", engine, workload, operations / (elapsedNanos / 1e9));
+    }
+
+    private static void reportLatencies(String engine, String workload, long[] latencies) {
+        Arrays.sort(latencies);
+        System.out.printf("%-6s %-10s p50 %.2f us, p99 %.2f us%n", engine, workload,
+                latencies[latencies.length / 2] / 1e3, latencies[(int) (latencies.length * 0.99)] / 1e3);
+    }
+
+    private static String key(int key) {
+        return "user:" + key;
+    }
+
+    private static long directorySize(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+    }
+
+    private static void deleteRecursively(Path root) throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
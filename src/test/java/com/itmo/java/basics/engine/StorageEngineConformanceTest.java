@@ -0,0 +1,159 @@
+package com.itmo.java.basics.engine;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.StorageConfig;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.engine.impl.TableMetadata;
+import com.itmo.java.basics.exceptions.DatabaseException;
+import com.itmo.java.basics.initialization.impl.DatabaseInitializer;
+import com.itmo.java.basics.initialization.impl.DatabaseServerInitializer;
+import com.itmo.java.basics.initialization.impl.InitializationContextImpl;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.impl.DatabaseImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assume.assumeFalse;
+
+/**
+ * Проверяет, что все движки хранения ведут себя одинаково с точки зрения {@link Database}
+ */
+@RunWith(Parameterized.class)
+public class StorageEngineConformanceTest {
+    private static final String DB = "db";
+    private static final String TABLE = "t";
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<String> engines() {
+        return Arrays.asList("log", "lsm", "memory");
+    }
+
+    @Parameterized.Parameter
+    public String engineName;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path root;
+    private StorageConfig config;
+    private ExecutionEnvironment env;
+    private Database db;
+
+    @Before
+    public void createTable() throws Exception {
+        root = folder.getRoot().toPath();
+        config = StorageConfig.builder()
+                .segmentMaxBytes(4096)
+                .compactionEnabled(false)
+                .build();
+        env = new ExecutionEnvironmentImpl(new DatabaseConfig(root.toString(), config));
+        db = DatabaseImpl.create(DB, root, env.getStorageContext());
+        db.createTableIfNotExists(TABLE, engineName);
+    }
+
+    @After
+    public void closeStorage() {
+        env.getStorageContext().close();
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws Exception {
+        db.write(TABLE, "key", bytes("value"));
+
+        assertArrayEquals(bytes("value"), db.read(TABLE, "key").get());
+        assertFalse(db.read(TABLE, "absent").isPresent());
+    }
+
+    @Test
+    public void overwriteReplacesValue() throws Exception {
+        db.write(TABLE, "key", bytes("first"));
+        db.write(TABLE, "key", bytes("second"));
+
+        assertArrayEquals(bytes("second"), db.read(TABLE, "key").get());
+    }
+
+    @Test
+    public void deleteRemovesKey() throws Exception {
+        db.write(TABLE, "key", bytes("value"));
+        db.write(TABLE, "other", bytes("kept"));
+        db.delete(TABLE, "key");
+
+        assertFalse(db.read(TABLE, "key").isPresent());
+        assertArrayEquals(bytes("kept"), db.read(TABLE, "other").get());
+
+        db.write(TABLE, "key", bytes("again"));
+        assertArrayEquals(bytes("again"), db.read(TABLE, "key").get());
+    }
+
+    @Test
+    public void nullKeyIsRejected() {
+        assertThrows(DatabaseException.class, () -> db.write(TABLE, (byte[]) null, bytes("value")));
+        assertThrows(DatabaseException.class, () -> db.read(TABLE, (byte[]) null));
+        assertThrows(DatabaseException.class, () -> db.delete(TABLE, (byte[]) null));
+    }
+
+    @Test
+    public void engineIsRecordedInMetadata() throws Exception {
+        Optional<String> recorded = TableMetadata.readEngineName(root.resolve(DB).resolve(TABLE));
+
+        assertEquals(Optional.of(engineName), recorded);
+    }
+
+    @Test
+    public void reopenedDatabaseKeepsData() throws Exception {
+        assumeFalse("memory engine is not persistent", "memory".equals(engineName));
+        Map<String, byte[]> expected = new HashMap<>();
+        for (int i = 0; i < 200; i++) {
+            String key = "key" + (i % 50);
+            byte[] value = bytes("value" + i);
+            db.write(TABLE, key, value);
+            expected.put(key, value);
+        }
+        for (int i = 0; i < 50; i += 7) {
+            db.delete(TABLE, "key" + i);
+            expected.remove("key" + i);
+        }
+
+        // перезапуск: фоновые задачи первого экземпляра (сброс memtable LSM-таблицы) не должны идти
+        // параллельно с восстановлением второго
+        env.getStorageContext().close();
+        ExecutionEnvironment reopened = new ExecutionEnvironmentImpl(new DatabaseConfig(root.toString(), config));
+        new DatabaseServerInitializer(new DatabaseInitializer())
+                .perform(new InitializationContextImpl(reopened, null, null, null));
+        Database restored = reopened.getDatabase(DB).get();
+
+        for (int i = 0; i < 50; i++) {
+            String key = "key" + i;
+            Optional<byte[]> value = restored.read(TABLE, key);
+            if (expected.containsKey(key)) {
+                assertArrayEquals(key, expected.get(key), value.get());
+            } else {
+                assertFalse(key, value.isPresent());
+            }
+        }
+        assertEquals(Optional.of(engineName), TableMetadata.readEngineName(root.resolve(DB).resolve(TABLE)));
+        reopened.getStorageContext().close();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,163 @@
+package com.itmo.java.basics.index.impl;
+
+import com.itmo.java.basics.index.DatabaseKey;
+import com.itmo.java.basics.index.TableIndex;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MappedTableIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path tablePath;
+    private MappedTableIndex index;
+
+    @Before
+    public void setUp() {
+        tablePath = folder.getRoot().toPath();
+        index = new MappedTableIndex(tablePath, 0);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        index.close();
+    }
+
+    @Test
+    public void matchesMapThroughSplitsAndRemovals() throws Exception {
+        Random random = new Random(13);
+        Map<DatabaseKey, Long> expected = new HashMap<>();
+        List<DatabaseKey> keys = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            keys.add(key("key-" + i));
+        }
+        for (int step = 0; step < 100_000; step++) {
+            DatabaseKey key = keys.get(random.nextInt(keys.size()));
+            if (random.nextInt(4) == 0) {
+                assertEquals(expected.remove(key) != null, index.remove(key));
+            } else {
+                long location = TableIndex.location(random.nextInt(100), random.nextInt(1 << 20));
+                expected.put(key, location);
+                index.put(key, TableIndex.segmentIdOf(location), TableIndex.offsetOf(location));
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        assertMatches(expected, keys);
+    }
+
+    @Test
+    public void collidingKeysGoToOverflowPages() throws Exception {
+        List<DatabaseKey> keys = collidingKeys();
+        assertEquals(1, keys.stream().mapToInt(DatabaseKey::hashCode).distinct().count());
+        Map<DatabaseKey, Long> expected = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            index.put(keys.get(i), 1, i);
+            expected.put(keys.get(i), TableIndex.location(1, i));
+        }
+        for (int i = 0; i < keys.size(); i += 3) {
+            index.markDeleted(keys.get(i));
+            expected.put(keys.get(i), TableIndex.DELETED);
+        }
+        assertMatches(expected, keys);
+
+        for (int i = 1; i < keys.size(); i += 2) {
+            assertTrue(index.remove(keys.get(i)));
+            expected.remove(keys.get(i));
+        }
+        assertFalse(index.remove(keys.get(1)));
+        assertEquals(expected.size(), index.size());
+        assertMatches(expected, keys);
+
+        for (int i = 1; i < keys.size(); i += 2) {
+            index.put(keys.get(i), 2, i);
+            expected.put(keys.get(i), TableIndex.location(2, i));
+        }
+        assertEquals(keys.size(), index.size());
+        assertMatches(expected, keys);
+    }
+
+    @Test
+    public void compactStorageFreesRemovedKeys() throws Exception {
+        String padding = "p".repeat(100);
+        List<DatabaseKey> keys = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            keys.add(key(i + padding));
+            index.put(keys.get(i), 1, i);
+        }
+        Map<DatabaseKey, Long> expected = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            if (i % 4 == 0) {
+                expected.put(keys.get(i), TableIndex.location(1, i));
+            } else {
+                index.remove(keys.get(i));
+            }
+        }
+        long sizeBefore = index.getKeysFileSize();
+
+        index.compactStorage();
+
+        assertTrue(index.getKeysFileSize() * 3 < sizeBefore);
+        assertMatches(expected, keys);
+        index.put(key("after"), 3, 0);
+        assertEquals(TableIndex.location(3, 0), index.getLocation(key("after")));
+    }
+
+    @Test
+    public void closeDeletesFiles() throws Exception {
+        index.put(key("a"), 1, 1);
+        Path directory = tablePath.resolve(MappedTableIndex.DIRECTORY_NAME);
+        assertTrue(Files.isDirectory(directory));
+
+        index.close();
+
+        assertFalse(Files.exists(directory));
+        assertEquals(TableIndex.NO_LOCATION, index.getLocation(key("a")));
+        index = new MappedTableIndex(tablePath, 0);
+        index.put(key("a"), 2, 2);
+        assertEquals(TableIndex.location(2, 2), index.getLocation(key("a")));
+    }
+
+    private void assertMatches(Map<DatabaseKey, Long> expected, List<DatabaseKey> keys) {
+        for (DatabaseKey key : keys) {
+            assertEquals(expected.getOrDefault(key, TableIndex.NO_LOCATION).longValue(), index.getLocation(key));
+        }
+    }
+
+    /**
+     * Ключи из двухбайтовых блоков с одинаковым 31 * a + b: у всех ключей одной длины один хеш
+     */
+    private static List<DatabaseKey> collidingKeys() {
+        byte[][] blocks = {{0, 62}, {1, 31}, {2, 0}};
+        List<DatabaseKey> keys = new ArrayList<>();
+        int blockCount = 6;
+        int combinations = (int) Math.pow(blocks.length, blockCount);
+        for (int combination = 0; combination < combinations; combination++) {
+            byte[] bytes = new byte[blockCount * 2];
+            for (int i = 0, rest = combination; i < blockCount; i++, rest /= blocks.length) {
+                System.arraycopy(blocks[rest % blocks.length], 0, bytes, i * 2, 2);
+            }
+            keys.add(new DatabaseKey(bytes));
+        }
+        return keys;
+    }
+
+    private static DatabaseKey key(String key) {
+        return new DatabaseKey(key.getBytes(StandardCharsets.UTF_8));
+    }
+}
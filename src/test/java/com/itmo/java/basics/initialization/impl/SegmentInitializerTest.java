@@ -0,0 +1,102 @@
+package com.itmo.java.basics.initialization.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.StorageConfig;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.impl.DatabaseImpl;
+import com.itmo.java.basics.logic.impl.SegmentNames;
+import com.itmo.java.basics.logic.io.SegmentBloomFilter;
+import com.itmo.java.basics.logic.io.SegmentHintFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentInitializerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Сегменты меньше максимального размера, которые не последние в таблице (как результаты компактизации),
+     * после перезапуска должны считаться закрытыми на запись: для них снова пишутся hint-файл и фильтр Блума,
+     * а новые записи идут только в последний сегмент
+     */
+    @Test
+    public void segmentsBeforeLastAreSealedOnReopen() throws Exception {
+        Path root = folder.getRoot().toPath();
+        ExecutionEnvironment env = new ExecutionEnvironmentImpl(new DatabaseConfig(root.toString(), config(1024)));
+        Database db = DatabaseImpl.create("db", root, env.getStorageContext());
+        db.createTableIfNotExists("t");
+        for (int i = 0; i < 200; i++) {
+            db.write("t", "key" + i, bytes("value" + i));
+        }
+        Path tablePath = root.resolve("db").resolve("t");
+        List<Path> segments = segmentsOf(tablePath);
+        assertTrue(segments.size() > 2);
+        for (Path segment : segments) {
+            Files.deleteIfExists(SegmentHintFile.pathFor(segment));
+            Files.deleteIfExists(SegmentBloomFilter.pathFor(segment));
+        }
+        Map<Path, Long> sizes = new HashMap<>();
+        for (Path segment : segments) {
+            sizes.put(segment, Files.size(segment));
+        }
+
+        ExecutionEnvironment reopened = new ExecutionEnvironmentImpl(new DatabaseConfig(root.toString(), config(1 << 20)));
+        new DatabaseServerInitializer(new DatabaseInitializer())
+                .perform(new InitializationContextImpl(reopened, null, null, null));
+        Database restored = reopened.getDatabase("db").get();
+        restored.write("t", "after-reopen", bytes("new"));
+
+        Path last = segments.get(segments.size() - 1);
+        for (Path segment : segments.subList(0, segments.size() - 1)) {
+            assertTrue("no hint file for " + segment, Files.exists(SegmentHintFile.pathFor(segment)));
+            assertTrue("no bloom filter for " + segment, Files.exists(SegmentBloomFilter.pathFor(segment)));
+            assertEquals("sealed segment " + segment + " was appended", sizes.get(segment), Long.valueOf(Files.size(segment)));
+        }
+        assertTrue(Files.size(last) > sizes.get(last));
+        for (int i = 0; i < 200; i++) {
+            assertArrayEquals(bytes("value" + i), restored.read("t", "key" + i).get());
+        }
+        assertArrayEquals(bytes("new"), restored.read("t", "after-reopen").get());
+        env.getStorageContext().close();
+        reopened.getStorageContext().close();
+    }
+
+    private static StorageConfig config(long segmentMaxBytes) {
+        return StorageConfig.builder()
+                .segmentMaxBytes(segmentMaxBytes)
+                .compactionEnabled(false)
+                .checkpointIntervalMillis(0)
+                .build();
+    }
+
+    private static List<Path> segmentsOf(Path tablePath) throws Exception {
+        try (Stream<Path> files = Files.list(tablePath)) {
+            return files.filter(file -> file.getFileName().toString().startsWith("t_"))
+                    .filter(file -> !SegmentHintFile.isHintFile(file.getFileName().toString()))
+                    .filter(file -> !SegmentBloomFilter.isBloomFile(file.getFileName().toString()))
+                    .sorted(Comparator.comparing(file -> file.getFileName().toString(), SegmentNames.order("t")))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,103 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.index.DatabaseKey;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LiveRecordSorterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void smallInputIsSortedInMemory() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (LiveRecordSorter sorter = new LiveRecordSorter(directory, "s", LiveRecordSorter.DEFAULT_BUFFER_BYTES)) {
+            sorter.add(key("b"), 2);
+            sorter.add(key("a"), 1);
+            sorter.add(key("c"), 3);
+
+            assertEquals(0, sorter.getRunCount());
+            assertEquals(Arrays.asList("a:1", "b:2", "c:3"), sorted(sorter));
+        }
+    }
+
+    @Test
+    public void spilledRunsAreMergedInKeyOrder() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        Random random = new Random(7);
+        Map<DatabaseKey, Long> expected = new HashMap<>();
+        try (LiveRecordSorter sorter = new LiveRecordSorter(directory, "s", 4 * 1024)) {
+            for (long location = 0; expected.size() < 5_000; location++) {
+                byte[] bytes = new byte[1 + random.nextInt(12)];
+                random.nextBytes(bytes);
+                DatabaseKey key = new DatabaseKey(bytes);
+                if (expected.putIfAbsent(key, location) == null) {
+                    sorter.add(key, location);
+                }
+            }
+            assertTrue(sorter.getRunCount() > 1);
+            assertEquals(expected.size(), sorter.size());
+
+            List<DatabaseKey> keys = new ArrayList<>();
+            try (LiveRecordSorter.Cursor cursor = sorter.sorted()) {
+                while (cursor.next()) {
+                    assertEquals(expected.get(cursor.key()), Long.valueOf(cursor.location()));
+                    keys.add(cursor.key());
+                }
+            }
+            assertEquals(expected.size(), keys.size());
+            for (int i = 1; i < keys.size(); i++) {
+                assertTrue(Arrays.compareUnsigned(keys.get(i - 1).getBytes(), keys.get(i).getBytes()) < 0);
+            }
+
+            Map<DatabaseKey, Long> visited = new HashMap<>();
+            sorter.forEach(visited::put);
+            assertEquals(expected, visited);
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertFalse("runs are left after close", files.findAny().isPresent());
+        }
+    }
+
+    @Test
+    public void runFilesAreTemporarySegmentFiles() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        try (LiveRecordSorter sorter = new LiveRecordSorter(directory, "t_5_c0001", 1)) {
+            sorter.add(key("a"), 1);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> assertTrue(file.toString(),
+                        SortedSegment.isTemporaryFile(file.getFileName().toString())));
+            }
+        }
+    }
+
+    private static List<String> sorted(LiveRecordSorter sorter) throws Exception {
+        List<String> result = new ArrayList<>();
+        try (LiveRecordSorter.Cursor cursor = sorter.sorted()) {
+            while (cursor.next()) {
+                result.add(new String(cursor.key().getBytes(), StandardCharsets.UTF_8) + ":" + cursor.location());
+            }
+        }
+        return result;
+    }
+
+    private static DatabaseKey key(String value) {
+        return new DatabaseKey(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,208 @@
+package com.itmo.java.basics.logic.impl;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.DurabilityMode;
+import com.itmo.java.basics.config.StorageConfig;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.logic.Table;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Читатели, идущие мимо блокировки таблицы, не должны терять опубликованные писателем значения
+ * и видеть откат к более старым версиям, пока параллельно идут ротация сегментов (у LSM-таблицы - сброс memtable)
+ * и компакция
+ */
+@RunWith(Parameterized.class)
+public class TableReadVisibilityTest {
+    private static final long RUN_MILLIS = 2_000;
+    private static final int KEYS = 5_000;
+    private static final int READERS = 3;
+    private static final byte[] COUNTER = "ctr".getBytes(StandardCharsets.US_ASCII);
+
+    @Parameterized.Parameters(name = "engine={0}, sorted={1}, mmap={2}")
+    public static List<Object[]> configurations() {
+        return Arrays.asList(new Object[][]{
+                {"log", false, false},
+                {"log", false, true},
+                {"log", true, false},
+                {"log", true, true},
+                {"lsm", false, false},
+        });
+    }
+
+    @Parameterized.Parameter(0)
+    public String engineName;
+
+    @Parameterized.Parameter(1)
+    public boolean sortedCompaction;
+
+    @Parameterized.Parameter(2)
+    public boolean mmapEnabled;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public Timeout timeout = new Timeout(30, TimeUnit.SECONDS);
+
+    private StorageContext storageContext;
+    private Table table;
+
+    @Before
+    public void createTable() throws Exception {
+        Path root = folder.getRoot().toPath();
+        StorageConfig config = StorageConfig.builder()
+                .compactionMinSegments(2)
+                .compactionIntervalMillis(30)
+                .compactionBytesPerSecond(1L << 30)
+                .segmentMaxBytes(100_000)
+                .sortedCompaction(sortedCompaction)
+                .mmapEnabled(mmapEnabled)
+                .durability(DurabilityMode.NONE)
+                .checkpointIntervalMillis(100)
+                .build();
+        ExecutionEnvironment env = new ExecutionEnvironmentImpl(new DatabaseConfig(root.toString(), config));
+        storageContext = env.getStorageContext();
+        Path databasePath = Files.createDirectory(root.resolve("db"));
+        table = storageContext.getStorageEngines().get(engineName).createTable("t", databasePath, storageContext);
+    }
+
+    @After
+    public void closeStorage() {
+        // иначе фоновые компакция и чекпоинт продолжат работать с уже удаленной директорией
+        storageContext.close();
+    }
+
+    @Test
+    public void readersSeePublishedWrites() throws Exception {
+        // > 0 - номер записи, которая лежит по ключу, < 0 - номер удаления ключа
+        AtomicLongArray published = new AtomicLongArray(KEYS);
+        AtomicLong counter = new AtomicLong();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            Random random = new Random(1);
+            try {
+                for (long seq = 1; !stop.get(); seq++) {
+                    int k = random.nextInt(KEYS);
+                    if (random.nextInt(8) == 0) {
+                        // удаление объявляется до начала, чтобы читатель не принял его за потерю записи
+                        published.set(k, -seq);
+                        table.delete(key(k));
+                    } else {
+                        table.write(key(k), value(seq, 50 + random.nextInt(400)));
+                        published.set(k, seq);
+                    }
+                    table.write(COUNTER, value(seq, 10));
+                    counter.set(seq);
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }, "writer");
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < READERS; i++) {
+            int seed = 100 + i;
+            readers.add(new Thread(() -> {
+                Random random = new Random(seed);
+                long lastCounter = 0;
+                try {
+                    while (!stop.get()) {
+                        int k = random.nextInt(KEYS);
+                        long expected = published.get(k);
+                        Optional<byte[]> value = table.read(key(k));
+                        if (expected > 0 && value.isEmpty() && published.get(k) == expected) {
+                            throw new AssertionError("k" + k + " written as " + expected + " but not found");
+                        }
+                        if (expected > 0 && value.isPresent() && seqOf(value.get()) < expected) {
+                            throw new AssertionError("k" + k + " written as " + expected + " but read " + seqOf(value.get()));
+                        }
+                        long minCounter = Math.max(counter.get(), lastCounter);
+                        Optional<byte[]> counterValue = table.read(COUNTER);
+                        if (minCounter == 0 && counterValue.isEmpty()) {
+                            continue;
+                        }
+                        long read = seqOf(counterValue.orElseThrow(() -> new AssertionError("counter disappeared")));
+                        if (read < minCounter) {
+                            throw new AssertionError("counter went back from " + minCounter + " to " + read);
+                        }
+                        lastCounter = read;
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "reader-" + i));
+        }
+
+        writer.start();
+        readers.forEach(Thread::start);
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        while (System.currentTimeMillis() < deadline && failure.get() == null) {
+            Thread.sleep(50);
+        }
+        stop.set(true);
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("concurrent access failed", failure.get());
+        }
+
+        assertTrue("writer made no progress", counter.get() > 0);
+        for (int k = 0; k < KEYS; k++) {
+            long expected = published.get(k);
+            Optional<byte[]> value = table.read(key(k));
+            if (expected > 0) {
+                assertTrue("k" + k + " is lost", value.isPresent());
+                assertEquals("k" + k, expected, seqOf(value.get()));
+            } else {
+                assertFalse("k" + k + " is not deleted", value.isPresent());
+            }
+        }
+    }
+
+    private static byte[] key(int k) {
+        return ("k" + k).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] value(long seq, int size) {
+        byte[] prefix = (seq + ":").getBytes(StandardCharsets.US_ASCII);
+        return Arrays.copyOf(prefix, Math.max(size, prefix.length));
+    }
+
+    private static long seqOf(byte[] value) {
+        int end = 0;
+        while (value[end] != ':') {
+            end++;
+        }
+        return Long.parseLong(new String(value, 0, end, StandardCharsets.US_ASCII));
+    }
+}
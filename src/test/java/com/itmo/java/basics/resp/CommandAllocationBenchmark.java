@@ -0,0 +1,85 @@
+package com.itmo.java.basics.resp;
+
+import com.itmo.java.basics.config.DatabaseConfig;
+import com.itmo.java.basics.config.StorageConfig;
+import com.itmo.java.basics.console.DatabaseCommandResult;
+import com.itmo.java.basics.console.ExecutionEnvironment;
+import com.itmo.java.basics.console.impl.ExecutionEnvironmentImpl;
+import com.itmo.java.basics.logic.Database;
+import com.itmo.java.basics.logic.impl.DatabaseImpl;
+import com.itmo.java.protocol.RespReader;
+import com.itmo.java.protocol.model.RespArray;
+import com.itmo.java.protocol.model.RespBulkString;
+import com.itmo.java.protocol.model.RespCommandId;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Замер выделенной памяти и времени на одну команду: RESP-команды SET_KEY и GET_KEY читаются из памяти,
+ * разбираются {@link CommandReader} и исполняются в текущем потоке, без сети.
+ * Память считается по {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}
+ * за вычетом входного буфера команд.
+ * <p>
+ * Запуск: {@code java -cp target/classes:target/test-classes com.itmo.java.basics.resp.CommandAllocationBenchmark [команд]}
+ */
+public class CommandAllocationBenchmark {
+    private static final int KEYS = 10_000;
+    private static final int VALUE_SIZE = 100;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int commands = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        Path root = Files.createTempDirectory("alloc-bench");
+        StorageConfig config = StorageConfig.builder()
+                .compactionEnabled(false)
+                .segmentMaxBytes(256 << 20)
+                .build();
+        ExecutionEnvironment env = new ExecutionEnvironmentImpl(new DatabaseConfig(root.toString(), config));
+        Database db = DatabaseImpl.create("db", root, env.getStorageContext());
+        env.addDatabase(db);
+        db.createTableIfNotExists("t");
+
+        byte[] value = new byte[VALUE_SIZE];
+        ByteArrayOutputStream sets = new ByteArrayOutputStream();
+        ByteArrayOutputStream gets = new ByteArrayOutputStream();
+        for (int i = 0; i < commands; i++) {
+            new RespArray(new RespCommandId(i), bulk("SET_KEY"), bulk("db"), bulk("t"),
+                    bulk("key" + i % KEYS), new RespBulkString(value)).write(sets);
+            new RespArray(new RespCommandId(i), bulk("GET_KEY"), bulk("db"), bulk("t"),
+                    bulk("key" + i * 7 % KEYS)).write(gets);
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            run("SET", sets.toByteArray(), commands, env);
+            run("GET", gets.toByteArray(), commands, env);
+        }
+    }
+
+    private static void run(String name, byte[] input, int commands, ExecutionEnvironment env) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        CommandReader reader = new CommandReader(new RespReader(new ByteArrayInputStream(input)), env);
+        long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < commands; i++) {
+            reader.hasNextCommand();
+            DatabaseCommandResult result = reader.readCommand().execute();
+            if (!result.isSuccess()) {
+                throw new IOException(name + " failed: " + result.getPayLoad());
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore - input.length;
+        System.out.printf("%s: %.0f B/op, %.2f us/op%n", name, allocated / (double) commands, elapsedNanos / 1e3 / commands);
+    }
+
+    private static RespBulkString bulk(String value) {
+        return new RespBulkString(value.getBytes(StandardCharsets.UTF_8));
+    }
+}
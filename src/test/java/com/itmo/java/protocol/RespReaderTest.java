@@ -0,0 +1,86 @@
+package com.itmo.java.protocol;
+
+import com.itmo.java.protocol.model.RespArray;
+import com.itmo.java.protocol.model.RespBulkString;
+import com.itmo.java.protocol.model.RespCommandId;
+import com.itmo.java.protocol.model.RespObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class RespReaderTest {
+
+    @Test
+    public void readsBinaryBulkStrings() throws Exception {
+        byte[] small = {0, -1, '\r', '\n', 42};
+        byte[] large = new byte[200_000];
+        Arrays.fill(large, (byte) 7);
+        RespArray written = new RespArray(new RespCommandId(1), new RespBulkString(small), new RespBulkString(large),
+                RespBulkString.NULL_STRING);
+
+        RespArray read = reader(bytesOf(written)).readArray();
+
+        List<RespObject> objects = read.getObjects();
+        assertEquals(4, objects.size());
+        assertArrayEquals(small, ((RespBulkString) objects.get(1)).asBytes());
+        assertArrayEquals(large, ((RespBulkString) objects.get(2)).asBytes());
+        assertEquals(RespBulkString.NULL_STRING, objects.get(3));
+    }
+
+    @Test
+    public void hugeDeclaredBulkStringIsNotAllocatedUpFront() {
+        // массив такого размера не может выделить ни одна JVM: чтение обязано дождаться данных
+        RespReader reader = reader(ascii("$" + Integer.MAX_VALUE + "\r\nabc"));
+
+        IOException e = assertThrows(IOException.class, reader::readObject);
+        assertTrue(hasCause(e, EOFException.class));
+    }
+
+    @Test
+    public void hugeDeclaredArrayIsNotAllocatedUpFront() {
+        RespReader reader = reader(ascii("*" + Integer.MAX_VALUE + "\r\n$1\r\na\r\n"));
+
+        IOException e = assertThrows(IOException.class, reader::readArray);
+        assertTrue(hasCause(e, EOFException.class));
+    }
+
+    @Test
+    public void negativeSizesAreRejected() {
+        assertThrows(IOException.class, () -> reader(ascii("$-2\r\n")).readObject());
+        assertThrows(IOException.class, () -> reader(ascii("*-1\r\n")).readArray());
+    }
+
+    private static RespReader reader(byte[] bytes) {
+        return new RespReader(new ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] bytesOf(RespObject object) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        object.write(out);
+        return out.toByteArray();
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static boolean hasCause(Throwable e, Class<? extends Throwable> type) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (type.isInstance(cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}